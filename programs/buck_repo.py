@@ -115,6 +115,7 @@ RESOURCES = {
     "path_to_pywatchman": "third-party/py/pywatchman",
     "path_to_scandir_py": "third-party/py/scandir/scandir.py",
     "path_to_sh_binary_template": "src/com/facebook/buck/shell/sh_binary_template",
+    "path_to_spawn_helper_py": "src/com/facebook/buck/util/spawn/spawn_helper.py",
     "path_to_static_content": "webserver/static",
     "report_generator_jar": "build/report-generator.jar",
     "testrunner_classes": "build/testrunner/classes",
@@ -54,6 +54,7 @@ EXPORTED_RESOURCES = [
     Resource("path_to_pywatchman"),
     Resource("path_to_scandir_py", basename='scandir.py'),
     Resource("path_to_sh_binary_template"),
+    Resource("path_to_spawn_helper_py", basename='spawn_helper.py'),
     Resource("jacoco_agent_jar"),
     Resource("report_generator_jar"),
     Resource("path_to_static_content"),
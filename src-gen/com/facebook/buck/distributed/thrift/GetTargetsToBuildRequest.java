@@ -34,12 +34,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @SuppressWarnings({"cast", "rawtypes", "serial", "unchecked"})
-@Generated(value = "Autogenerated by Thrift Compiler (0.9.3)", date = "2017-01-20")
+@Generated(value = "Autogenerated by Thrift Compiler (0.9.3)", date = "2026-10-19")
 public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTargetsToBuildRequest, GetTargetsToBuildRequest._Fields>, java.io.Serializable, Cloneable, Comparable<GetTargetsToBuildRequest> {
   private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("GetTargetsToBuildRequest");
 
   private static final org.apache.thrift.protocol.TField MINION_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("minionId", org.apache.thrift.protocol.TType.STRING, (short)1);
   private static final org.apache.thrift.protocol.TField BUILD_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("buildId", org.apache.thrift.protocol.TType.STRUCT, (short)2);
+  private static final org.apache.thrift.protocol.TField FINISHED_TARGETS_FIELD_DESC = new org.apache.thrift.protocol.TField("finishedTargets", org.apache.thrift.protocol.TType.LIST, (short)3);
+  private static final org.apache.thrift.protocol.TField MAX_TARGETS_TO_BUILD_FIELD_DESC = new org.apache.thrift.protocol.TField("maxTargetsToBuild", org.apache.thrift.protocol.TType.I32, (short)4);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -49,11 +51,15 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
 
   public String minionId; // optional
   public com.facebook.buck.distributed.thrift.BuildId buildId; // optional
+  public List<String> finishedTargets; // optional
+  public int maxTargetsToBuild; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
     MINION_ID((short)1, "minionId"),
-    BUILD_ID((short)2, "buildId");
+    BUILD_ID((short)2, "buildId"),
+    FINISHED_TARGETS((short)3, "finishedTargets"),
+    MAX_TARGETS_TO_BUILD((short)4, "maxTargetsToBuild");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -72,6 +78,10 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
           return MINION_ID;
         case 2: // BUILD_ID
           return BUILD_ID;
+        case 3: // FINISHED_TARGETS
+          return FINISHED_TARGETS;
+        case 4: // MAX_TARGETS_TO_BUILD
+          return MAX_TARGETS_TO_BUILD;
         default:
           return null;
       }
@@ -112,7 +122,9 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
   }
 
   // isset id assignments
-  private static final _Fields optionals[] = {_Fields.MINION_ID,_Fields.BUILD_ID};
+  private static final int __MAXTARGETSTOBUILD_ISSET_ID = 0;
+  private byte __isset_bitfield = 0;
+  private static final _Fields optionals[] = {_Fields.MINION_ID,_Fields.BUILD_ID,_Fields.FINISHED_TARGETS,_Fields.MAX_TARGETS_TO_BUILD};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -120,6 +132,11 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
     tmpMap.put(_Fields.BUILD_ID, new org.apache.thrift.meta_data.FieldMetaData("buildId", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, com.facebook.buck.distributed.thrift.BuildId.class)));
+    tmpMap.put(_Fields.FINISHED_TARGETS, new org.apache.thrift.meta_data.FieldMetaData("finishedTargets", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+            new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING))));
+    tmpMap.put(_Fields.MAX_TARGETS_TO_BUILD, new org.apache.thrift.meta_data.FieldMetaData("maxTargetsToBuild", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(GetTargetsToBuildRequest.class, metaDataMap);
   }
@@ -131,12 +148,18 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
    * Performs a deep copy on <i>other</i>.
    */
   public GetTargetsToBuildRequest(GetTargetsToBuildRequest other) {
+    __isset_bitfield = other.__isset_bitfield;
     if (other.isSetMinionId()) {
       this.minionId = other.minionId;
     }
     if (other.isSetBuildId()) {
       this.buildId = new com.facebook.buck.distributed.thrift.BuildId(other.buildId);
     }
+    if (other.isSetFinishedTargets()) {
+      List<String> __this__finishedTargets = new ArrayList<String>(other.finishedTargets);
+      this.finishedTargets = __this__finishedTargets;
+    }
+    this.maxTargetsToBuild = other.maxTargetsToBuild;
   }
 
   public GetTargetsToBuildRequest deepCopy() {
@@ -147,6 +170,9 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
   public void clear() {
     this.minionId = null;
     this.buildId = null;
+    this.finishedTargets = null;
+    setMaxTargetsToBuildIsSet(false);
+    this.maxTargetsToBuild = 0;
   }
 
   public String getMinionId() {
@@ -197,6 +223,68 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
     }
   }
 
+  public int getFinishedTargetsSize() {
+    return (this.finishedTargets == null) ? 0 : this.finishedTargets.size();
+  }
+
+  public java.util.Iterator<String> getFinishedTargetsIterator() {
+    return (this.finishedTargets == null) ? null : this.finishedTargets.iterator();
+  }
+
+  public void addToFinishedTargets(String elem) {
+    if (this.finishedTargets == null) {
+      this.finishedTargets = new ArrayList<String>();
+    }
+    this.finishedTargets.add(elem);
+  }
+
+  public List<String> getFinishedTargets() {
+    return this.finishedTargets;
+  }
+
+  public GetTargetsToBuildRequest setFinishedTargets(List<String> finishedTargets) {
+    this.finishedTargets = finishedTargets;
+    return this;
+  }
+
+  public void unsetFinishedTargets() {
+    this.finishedTargets = null;
+  }
+
+  /** Returns true if field finishedTargets is set (has been assigned a value) and false otherwise */
+  public boolean isSetFinishedTargets() {
+    return this.finishedTargets != null;
+  }
+
+  public void setFinishedTargetsIsSet(boolean value) {
+    if (!value) {
+      this.finishedTargets = null;
+    }
+  }
+
+  public int getMaxTargetsToBuild() {
+    return this.maxTargetsToBuild;
+  }
+
+  public GetTargetsToBuildRequest setMaxTargetsToBuild(int maxTargetsToBuild) {
+    this.maxTargetsToBuild = maxTargetsToBuild;
+    setMaxTargetsToBuildIsSet(true);
+    return this;
+  }
+
+  public void unsetMaxTargetsToBuild() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __MAXTARGETSTOBUILD_ISSET_ID);
+  }
+
+  /** Returns true if field maxTargetsToBuild is set (has been assigned a value) and false otherwise */
+  public boolean isSetMaxTargetsToBuild() {
+    return EncodingUtils.testBit(__isset_bitfield, __MAXTARGETSTOBUILD_ISSET_ID);
+  }
+
+  public void setMaxTargetsToBuildIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __MAXTARGETSTOBUILD_ISSET_ID, value);
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case MINION_ID:
@@ -215,6 +303,22 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
       }
       break;
 
+    case FINISHED_TARGETS:
+      if (value == null) {
+        unsetFinishedTargets();
+      } else {
+        setFinishedTargets((List<String>)value);
+      }
+      break;
+
+    case MAX_TARGETS_TO_BUILD:
+      if (value == null) {
+        unsetMaxTargetsToBuild();
+      } else {
+        setMaxTargetsToBuild((Integer)value);
+      }
+      break;
+
     }
   }
 
@@ -226,6 +330,12 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
     case BUILD_ID:
       return getBuildId();
 
+    case FINISHED_TARGETS:
+      return getFinishedTargets();
+
+    case MAX_TARGETS_TO_BUILD:
+      return getMaxTargetsToBuild();
+
     }
     throw new IllegalStateException();
   }
@@ -241,6 +351,10 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
       return isSetMinionId();
     case BUILD_ID:
       return isSetBuildId();
+    case FINISHED_TARGETS:
+      return isSetFinishedTargets();
+    case MAX_TARGETS_TO_BUILD:
+      return isSetMaxTargetsToBuild();
     }
     throw new IllegalStateException();
   }
@@ -276,6 +390,24 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
         return false;
     }
 
+    boolean this_present_finishedTargets = true && this.isSetFinishedTargets();
+    boolean that_present_finishedTargets = true && that.isSetFinishedTargets();
+    if (this_present_finishedTargets || that_present_finishedTargets) {
+      if (!(this_present_finishedTargets && that_present_finishedTargets))
+        return false;
+      if (!this.finishedTargets.equals(that.finishedTargets))
+        return false;
+    }
+
+    boolean this_present_maxTargetsToBuild = true && this.isSetMaxTargetsToBuild();
+    boolean that_present_maxTargetsToBuild = true && that.isSetMaxTargetsToBuild();
+    if (this_present_maxTargetsToBuild || that_present_maxTargetsToBuild) {
+      if (!(this_present_maxTargetsToBuild && that_present_maxTargetsToBuild))
+        return false;
+      if (this.maxTargetsToBuild != that.maxTargetsToBuild)
+        return false;
+    }
+
     return true;
   }
 
@@ -293,6 +425,16 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
     if (present_buildId)
       list.add(buildId);
 
+    boolean present_finishedTargets = true && (isSetFinishedTargets());
+    list.add(present_finishedTargets);
+    if (present_finishedTargets)
+      list.add(finishedTargets);
+
+    boolean present_maxTargetsToBuild = true && (isSetMaxTargetsToBuild());
+    list.add(present_maxTargetsToBuild);
+    if (present_maxTargetsToBuild)
+      list.add(maxTargetsToBuild);
+
     return list.hashCode();
   }
 
@@ -324,6 +466,26 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetFinishedTargets()).compareTo(other.isSetFinishedTargets());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetFinishedTargets()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.finishedTargets, other.finishedTargets);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    lastComparison = Boolean.valueOf(isSetMaxTargetsToBuild()).compareTo(other.isSetMaxTargetsToBuild());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetMaxTargetsToBuild()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.maxTargetsToBuild, other.maxTargetsToBuild);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -363,6 +525,22 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
       }
       first = false;
     }
+    if (isSetFinishedTargets()) {
+      if (!first) sb.append(", ");
+      sb.append("finishedTargets:");
+      if (this.finishedTargets == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.finishedTargets);
+      }
+      first = false;
+    }
+    if (isSetMaxTargetsToBuild()) {
+      if (!first) sb.append(", ");
+      sb.append("maxTargetsToBuild:");
+      sb.append(this.maxTargetsToBuild);
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -385,6 +563,8 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
 
   private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
     try {
+      // it doesn't seem like you should have to do this, but java serialization is wacky, and doesn't call the default constructor.
+      __isset_bitfield = 0;
       read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
     } catch (org.apache.thrift.TException te) {
       throw new java.io.IOException(te);
@@ -426,6 +606,32 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 3: // FINISHED_TARGETS
+            if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+              {
+                org.apache.thrift.protocol.TList _list0 = iprot.readListBegin();
+                struct.finishedTargets = new ArrayList<String>(_list0.size);
+                String _elem1;
+                for (int _i2 = 0; _i2 < _list0.size; ++_i2)
+                {
+                  _elem1 = iprot.readString();
+                  struct.finishedTargets.add(_elem1);
+                }
+                iprot.readListEnd();
+              }
+              struct.setFinishedTargetsIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          case 4: // MAX_TARGETS_TO_BUILD
+            if (schemeField.type == org.apache.thrift.protocol.TType.I32) {
+              struct.maxTargetsToBuild = iprot.readI32();
+              struct.setMaxTargetsToBuildIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -455,6 +661,25 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
           oprot.writeFieldEnd();
         }
       }
+      if (struct.finishedTargets != null) {
+        if (struct.isSetFinishedTargets()) {
+          oprot.writeFieldBegin(FINISHED_TARGETS_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRING, struct.finishedTargets.size()));
+            for (String _iter3 : struct.finishedTargets)
+            {
+              oprot.writeString(_iter3);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+      }
+      if (struct.isSetMaxTargetsToBuild()) {
+        oprot.writeFieldBegin(MAX_TARGETS_TO_BUILD_FIELD_DESC);
+        oprot.writeI32(struct.maxTargetsToBuild);
+        oprot.writeFieldEnd();
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -479,19 +704,37 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
       if (struct.isSetBuildId()) {
         optionals.set(1);
       }
-      oprot.writeBitSet(optionals, 2);
+      if (struct.isSetFinishedTargets()) {
+        optionals.set(2);
+      }
+      if (struct.isSetMaxTargetsToBuild()) {
+        optionals.set(3);
+      }
+      oprot.writeBitSet(optionals, 4);
       if (struct.isSetMinionId()) {
         oprot.writeString(struct.minionId);
       }
       if (struct.isSetBuildId()) {
         struct.buildId.write(oprot);
       }
+      if (struct.isSetFinishedTargets()) {
+        {
+          oprot.writeI32(struct.finishedTargets.size());
+          for (String _iter4 : struct.finishedTargets)
+          {
+            oprot.writeString(_iter4);
+          }
+        }
+      }
+      if (struct.isSetMaxTargetsToBuild()) {
+        oprot.writeI32(struct.maxTargetsToBuild);
+      }
     }
 
     @Override
     public void read(org.apache.thrift.protocol.TProtocol prot, GetTargetsToBuildRequest struct) throws org.apache.thrift.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(2);
+      BitSet incoming = iprot.readBitSet(4);
       if (incoming.get(0)) {
         struct.minionId = iprot.readString();
         struct.setMinionIdIsSet(true);
@@ -501,6 +744,23 @@ public class GetTargetsToBuildRequest implements org.apache.thrift.TBase<GetTarg
         struct.buildId.read(iprot);
         struct.setBuildIdIsSet(true);
       }
+      if (incoming.get(2)) {
+        {
+          org.apache.thrift.protocol.TList _list5 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRING, iprot.readI32());
+          struct.finishedTargets = new ArrayList<String>(_list5.size);
+          String _elem6;
+          for (int _i7 = 0; _i7 < _list5.size; ++_i7)
+          {
+            _elem6 = iprot.readString();
+            struct.finishedTargets.add(_elem6);
+          }
+        }
+        struct.setFinishedTargetsIsSet(true);
+      }
+      if (incoming.get(3)) {
+        struct.maxTargetsToBuild = iprot.readI32();
+        struct.setMaxTargetsToBuildIsSet(true);
+      }
     }
   }
 
@@ -34,7 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @SuppressWarnings({"cast", "rawtypes", "serial", "unchecked"})
-@Generated(value = "Autogenerated by Thrift Compiler (0.9.3)", date = "2017-01-20")
+@Generated(value = "Autogenerated by Thrift Compiler (0.9.3)", date = "2026-10-19")
 public class GetTargetsToBuildResponse implements org.apache.thrift.TBase<GetTargetsToBuildResponse, GetTargetsToBuildResponse._Fields>, java.io.Serializable, Cloneable, Comparable<GetTargetsToBuildResponse> {
   private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("GetTargetsToBuildResponse");
 
@@ -453,13 +453,13 @@ public class GetTargetsToBuildResponse implements org.apache.thrift.TBase<GetTar
           case 2: // BUILD_TARGETS
             if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
               {
-                org.apache.thrift.protocol.TList _list0 = iprot.readListBegin();
-                struct.buildTargets = new ArrayList<String>(_list0.size);
-                String _elem1;
-                for (int _i2 = 0; _i2 < _list0.size; ++_i2)
+                org.apache.thrift.protocol.TList _list8 = iprot.readListBegin();
+                struct.buildTargets = new ArrayList<String>(_list8.size);
+                String _elem9;
+                for (int _i10 = 0; _i10 < _list8.size; ++_i10)
                 {
-                  _elem1 = iprot.readString();
-                  struct.buildTargets.add(_elem1);
+                  _elem9 = iprot.readString();
+                  struct.buildTargets.add(_elem9);
                 }
                 iprot.readListEnd();
               }
@@ -495,9 +495,9 @@ public class GetTargetsToBuildResponse implements org.apache.thrift.TBase<GetTar
           oprot.writeFieldBegin(BUILD_TARGETS_FIELD_DESC);
           {
             oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRING, struct.buildTargets.size()));
-            for (String _iter3 : struct.buildTargets)
+            for (String _iter11 : struct.buildTargets)
             {
-              oprot.writeString(_iter3);
+              oprot.writeString(_iter11);
             }
             oprot.writeListEnd();
           }
@@ -535,9 +535,9 @@ public class GetTargetsToBuildResponse implements org.apache.thrift.TBase<GetTar
       if (struct.isSetBuildTargets()) {
         {
           oprot.writeI32(struct.buildTargets.size());
-          for (String _iter4 : struct.buildTargets)
+          for (String _iter12 : struct.buildTargets)
           {
-            oprot.writeString(_iter4);
+            oprot.writeString(_iter12);
           }
         }
       }
@@ -553,13 +553,13 @@ public class GetTargetsToBuildResponse implements org.apache.thrift.TBase<GetTar
       }
       if (incoming.get(1)) {
         {
-          org.apache.thrift.protocol.TList _list5 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRING, iprot.readI32());
-          struct.buildTargets = new ArrayList<String>(_list5.size);
-          String _elem6;
-          for (int _i7 = 0; _i7 < _list5.size; ++_i7)
+          org.apache.thrift.protocol.TList _list13 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRING, iprot.readI32());
+          struct.buildTargets = new ArrayList<String>(_list13.size);
+          String _elem14;
+          for (int _i15 = 0; _i15 < _list13.size; ++_i15)
           {
-            _elem6 = iprot.readString();
-            struct.buildTargets.add(_elem6);
+            _elem14 = iprot.readString();
+            struct.buildTargets.add(_elem14);
           }
         }
         struct.setBuildTargetsIsSet(true);
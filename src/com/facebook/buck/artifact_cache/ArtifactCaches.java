@@ -16,6 +16,8 @@
 package com.facebook.buck.artifact_cache;
 
 import com.facebook.buck.cli.BuckConfig;
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.LatencyHistogram;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.NetworkEvent.BytesReceivedEvent;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -62,6 +64,9 @@ public class ArtifactCaches implements ArtifactCacheFactory {
 
   private static final Logger LOG = Logger.get(ArtifactCaches.class);
 
+  private static final LatencyHistogram FETCH_LATENCY =
+      new LatencyHistogram("buck_artifact_cache", "fetch_latency", ImmutableMap.of());
+
   private final ArtifactCacheBuckConfig buckConfig;
   private final BuckEventBus buckEventBus;
   private final ProjectFilesystem projectFilesystem;
@@ -112,6 +117,13 @@ public class ArtifactCaches implements ArtifactCacheFactory {
     return builder;
   }
 
+  /**
+   * @return counters reporting how long fetches from the caches created by any instance take.
+   */
+  public static ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(FETCH_LATENCY);
+  }
+
   @Override
   public ArtifactCache newInstance() {
     return newInstance(false);
@@ -234,7 +246,7 @@ public class ArtifactCaches implements ArtifactCacheFactory {
         buckConfig.getTwoLevelCachingMinimumSize(),
         buckConfig.getTwoLevelCachingMaximumSize());
 
-    return result;
+    return new FetchLatencyArtifactCacheDecorator(result, FETCH_LATENCY);
   }
 
   private static void initializeDirCaches(
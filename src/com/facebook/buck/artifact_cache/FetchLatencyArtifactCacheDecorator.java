@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.counters.LatencyHistogram;
+import com.facebook.buck.io.BorrowablePath;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.rules.RuleKey;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Decorator for wrapping a {@link ArtifactCache} to record how long each fetch takes.
+ */
+public class FetchLatencyArtifactCacheDecorator implements ArtifactCache {
+  private final ArtifactCache delegate;
+  private final LatencyHistogram fetchLatency;
+
+  public FetchLatencyArtifactCacheDecorator(
+      ArtifactCache delegate,
+      LatencyHistogram fetchLatency) {
+    this.delegate = delegate;
+    this.fetchLatency = fetchLatency;
+  }
+
+  @Override
+  public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+    long startNanos = System.nanoTime();
+    try {
+      return delegate.fetch(ruleKey, output);
+    } finally {
+      fetchLatency.recordSince(startNanos);
+    }
+  }
+
+  @Override
+  public ListenableFuture<Void> store(
+      ArtifactInfo info,
+      BorrowablePath output) {
+    return delegate.store(info, output);
+  }
+
+  @Override
+  public boolean isStoreSupported() {
+    return delegate.isStoreSupported();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @VisibleForTesting
+  ArtifactCache getDelegate() {
+    return delegate;
+  }
+}
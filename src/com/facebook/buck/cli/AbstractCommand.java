@@ -284,7 +284,8 @@ public abstract class AbstractCommand implements Command {
         buckConfig.getResourceAllocationFairness(),
         buckConfig.getManagedThreadCount(),
         buckConfig.getDefaultResourceAmounts(),
-        buckConfig.getMaximumResourceAmounts());
+        buckConfig.getMaximumResourceAmounts(),
+        buckConfig.isAdaptiveSchedulingEnabled());
   }
 
   protected ImmutableList<String> getOptions() {
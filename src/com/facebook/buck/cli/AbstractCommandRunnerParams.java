@@ -19,12 +19,15 @@ import com.facebook.buck.android.AndroidPlatformTarget;
 import com.facebook.buck.artifact_cache.ArtifactCacheFactory;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.httpserver.WebServer;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.log.InvocationInfo;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
+import com.facebook.buck.rules.durations.RuleDurationStore;
+import com.facebook.buck.rules.durations.RuleResourceProfileStore;
 import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.timing.Clock;
@@ -34,6 +37,7 @@ import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.environment.BuildEnvironmentDescription;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.facebook.buck.util.spawn.SpawnHelper;
 import com.facebook.buck.versions.VersionedTargetGraphCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Supplier;
@@ -82,6 +86,13 @@ public interface AbstractCommandRunnerParams {
 
   Optional<ConcurrentMap<String, WorkerProcessPool>> getPersistentWorkerPools();
 
+  Optional<JarIndexCache> getPersistentJarIndexCache();
+
+  /**
+   * Helper that launches processes without forking the daemon, if enabled.
+   */
+  Optional<SpawnHelper> getSpawnHelper();
+
   BuckConfig getBuckConfig();
 
   FileHashCache getFileHashCache();
@@ -95,4 +106,8 @@ public interface AbstractCommandRunnerParams {
   KnownBuildRuleTypesFactory getKnownBuildRuleTypesFactory();
 
   Optional<InvocationInfo> getInvocationInfo();
+
+  Optional<RuleDurationStore> getRuleDurationStore();
+
+  Optional<RuleResourceProfileStore> getRuleResourceProfileStore();
 }
@@ -483,6 +483,10 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("log", "compress_traces", false);
   }
 
+  public boolean getBinaryTraces() {
+    return getBooleanValue(LOG_SECTION, "binary_traces", false);
+  }
+
   public ProjectTestsMode xcodeProjectTestsMode() {
     return getEnum("project", "xcode_project_tests_mode", ProjectTestsMode.class).orElse(
         ProjectTestsMode.WITH_TESTS);
@@ -959,6 +963,18 @@ public class BuckConfig implements ConfigPathGetter {
         false);
   }
 
+  /**
+   * @return whether resource aware scheduling should also hold jobs back while the host is short of
+   *     CPU or memory, and size jobs by what rules of the same type used in earlier builds.
+   */
+  public boolean isAdaptiveSchedulingEnabled() {
+    return isResourceAwareSchedulingEnabled() &&
+        config.getBooleanValue(
+            RESOURCES_SECTION_HEADER,
+            "adaptive_scheduling_enabled",
+            false);
+  }
+
   public boolean isGrayscaleImageProcessingEnabled() {
     return config.getBooleanValue(
         RESOURCES_SECTION_HEADER,
@@ -1042,6 +1058,14 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("build", "versions", false);
   }
 
+  /**
+   * @return whether the daemon should launch processes through a resident spawn helper instead of
+   *     forking itself.
+   */
+  public boolean getUseSpawnHelper() {
+    return getBooleanValue("build", "spawn_helper", false);
+  }
+
   /**
    * @return whether to enabled versions on targets command.
    */
@@ -31,11 +31,13 @@ import com.facebook.buck.distributed.DistBuildService;
 import com.facebook.buck.distributed.DistBuildState;
 import com.facebook.buck.distributed.DistBuildTargetGraphCodec;
 import com.facebook.buck.distributed.DistBuildTypeCoercerFactory;
+import com.facebook.buck.distributed.FileContentsUploader;
 import com.facebook.buck.distributed.thrift.BuckVersion;
 import com.facebook.buck.distributed.thrift.BuildJobState;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.json.BuildFileParseException;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
@@ -56,6 +58,7 @@ import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
 import com.facebook.buck.rules.CachingBuildEngineDelegate;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.ConstructorArgMarshaller;
+import com.facebook.buck.rules.CriticalPathEstimator;
 import com.facebook.buck.rules.LocalCachingBuildEngineDelegate;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -81,6 +84,7 @@ import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.spawn.SpawnHelper;
 import com.facebook.buck.versions.VersionException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
@@ -298,6 +302,8 @@ public class BuildCommand extends AbstractCommand {
       BuckEventBus eventBus,
       Optional<TargetDevice> targetDevice,
       Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools,
+      Optional<JarIndexCache> persistentJarIndexCache,
+      Optional<SpawnHelper> spawnHelper,
       Platform platform,
       ImmutableMap<String, String> environment,
       ObjectMapper objectMapper,
@@ -332,6 +338,8 @@ public class BuildCommand extends AbstractCommand {
         adbOptions,
         targetDeviceOptions,
         persistentWorkerPools,
+        persistentJarIndexCache,
+        spawnHelper,
         executors);
   }
 
@@ -513,7 +521,8 @@ public class BuildCommand extends AbstractCommand {
       final CommandRunnerParams params,
       TargetGraphAndBuildTargets targetGraphAndBuildTargets,
       ActionGraphAndResolver actionGraphAndResolver,
-      final WeightedListeningExecutorService executorService)
+      final WeightedListeningExecutorService executorService,
+      Optional<FileContentsUploader> fileContentsUploader)
       throws InterruptedException, IOException {
 
     DistBuildCellIndexer cellIndexer =
@@ -529,7 +538,8 @@ public class BuildCommand extends AbstractCommand {
         cellIndexer,
         executorService,
         params.getBuckConfig().getKeySeed(),
-        params.getBuckConfig());
+        params.getBuckConfig(),
+        fileContentsUploader);
 
     return DistBuildState.dump(
         cellIndexer,
@@ -580,14 +590,14 @@ public class BuildCommand extends AbstractCommand {
         targetGraphAndBuildTargets.getBuildTargets().stream().map(
             t -> t.getFullyQualifiedName()).collect(Collectors.toSet()));
 
-    BuildJobState jobState = computeDistributedBuildJobState(
-        targetGraphCodec,
-        params,
-        targetGraphAndBuildTargets,
-        graphs.actionGraph,
-        executorService);
-
     if (distributedBuildStateFile != null) {
+      BuildJobState jobState = computeDistributedBuildJobState(
+          targetGraphCodec,
+          params,
+          targetGraphAndBuildTargets,
+          graphs.actionGraph,
+          executorService,
+          Optional.empty());
       Path stateDumpPath = Paths.get(distributedBuildStateFile);
       BuildJobStateSerializer.serialize(
           jobState,
@@ -602,17 +612,30 @@ public class BuildCommand extends AbstractCommand {
                DistBuildFactory.newDistBuildLogStateTracker(
                    params.getInvocationInfo().get().getLogDirectoryPath(),
                    filesystem)) {
-        DistBuildClientExecutor build = new DistBuildClientExecutor(
-            jobState,
-            service,
-            distBuildLogStateTracker,
-            1000 /* millisBetweenStatusPoll */,
-            buckVersion);
-        int exitCode = build.executeAndPrintFailuresToEventBus(
-            executorService,
-            filesystem,
-            fileHashCache,
-            params.getBuckEventBus());
+        int exitCode;
+        // Upload the source files while the rule keys are still being computed.
+        try (FileContentsUploader fileContentsUploader =
+                 FileContentsUploader.create(service, executorService)) {
+          BuildJobState jobState = computeDistributedBuildJobState(
+              targetGraphCodec,
+              params,
+              targetGraphAndBuildTargets,
+              graphs.actionGraph,
+              executorService,
+              Optional.of(fileContentsUploader));
+          DistBuildClientExecutor build = new DistBuildClientExecutor(
+              jobState,
+              service,
+              distBuildLogStateTracker,
+              1000 /* millisBetweenStatusPoll */,
+              buckVersion,
+              Optional.of(fileContentsUploader.finish()));
+          exitCode = build.executeAndPrintFailuresToEventBus(
+              executorService,
+              filesystem,
+              fileHashCache,
+              params.getBuckEventBus());
+        }
 
         // After dist-build is complete, start build locally and we'll find everything in the cache.
         // TODO(shivanker): Add a flag to disable building, and only fetch from the cache.
@@ -797,17 +820,23 @@ public class BuildCommand extends AbstractCommand {
               cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
               params.getObjectMapper(),
               actionGraphAndResolver.getResolver(),
-              cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+              cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(
+                  params.getRuleResourceProfileStore()),
               new RuleKeyFactoryManager(
                   rootCellBuckConfig.getKeySeed(),
                   cachingBuildEngineDelegate.createFileHashCacheLoader()::getUnchecked,
                   actionGraphAndResolver.getResolver(),
-                  cachingBuildEngineBuckConfig.getBuildInputRuleKeyFileSizeLimit())),
+                  cachingBuildEngineBuckConfig.getBuildInputRuleKeyFileSizeLimit()),
+              cachingBuildEngineBuckConfig.isCriticalPathSchedulingEnabled() ?
+                  Optional.of(new CriticalPathEstimator(params.getRuleDurationStore())) :
+                  Optional.empty()),
           artifactCache,
           params.getConsole(),
           params.getBuckEventBus(),
           Optional.empty(),
           params.getPersistentWorkerPools(),
+          params.getPersistentJarIndexCache(),
+          params.getSpawnHelper(),
           rootCellBuckConfig.getPlatform(),
           rootCellBuckConfig.getEnvironment(),
           params.getObjectMapper(),
@@ -20,6 +20,7 @@ import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator
 
 import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.HostResourceMonitor;
 import com.facebook.buck.util.concurrent.LimitedThreadPoolExecutor;
 import com.facebook.buck.util.concurrent.LinkedBlockingStack;
 import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
@@ -32,6 +33,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 
@@ -54,6 +56,9 @@ public class CommandThreadManager implements AutoCloseable {
 
   private final WeightedListeningExecutorService executor;
 
+  // Only set when this manager created the monitor, and so has to stop it.
+  private Optional<HostResourceMonitor> hostResourceMonitor = Optional.empty();
+
   // How long to wait for the executor service to shutdown.
   private final long shutdownTimeout;
   private final TimeUnit shutdownTimeoutUnit;
@@ -113,16 +118,35 @@ public class CommandThreadManager implements AutoCloseable {
       ConcurrencyLimit concurrencyLimit,
       long shutdownTimeout,
       TimeUnit shutdownTimeoutUnit) {
+    this(
+        name,
+        concurrencyLimit,
+        concurrencyLimit.adaptiveScheduling ?
+            Optional.of(HostResourceMonitor.create()) :
+            Optional.empty(),
+        shutdownTimeout,
+        shutdownTimeoutUnit);
+  }
+
+  private CommandThreadManager(
+      String name,
+      ConcurrencyLimit concurrencyLimit,
+      Optional<HostResourceMonitor> hostResourceMonitor,
+      long shutdownTimeout,
+      TimeUnit shutdownTimeoutUnit) {
     this(
         name,
         new ListeningMultiSemaphore(
             concurrencyLimit.maximumAmounts,
-            concurrencyLimit.resourceAllocationFairness),
+            concurrencyLimit.resourceAllocationFairness,
+            hostResourceMonitor),
         concurrencyLimit.defaultAmounts,
         concurrencyLimit.managedThreadCount,
         concurrencyLimit.loadLimit,
         shutdownTimeout,
         shutdownTimeoutUnit);
+    this.hostResourceMonitor = hostResourceMonitor;
+    hostResourceMonitor.ifPresent(HostResourceMonitor::startSampling);
   }
 
   public CommandThreadManager(
@@ -141,6 +165,7 @@ public class CommandThreadManager implements AutoCloseable {
 
   @Override
   public void close() throws InterruptedException {
+    hostResourceMonitor.ifPresent(HostResourceMonitor::close);
     boolean shutdown = MostExecutors.shutdown(
         executor,
         shutdownTimeout,
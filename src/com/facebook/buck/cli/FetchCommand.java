@@ -133,6 +133,8 @@ public class FetchCommand extends BuildCommand {
           params.getBuckEventBus(),
           Optional.empty(),
           params.getPersistentWorkerPools(),
+          params.getPersistentJarIndexCache(),
+          params.getSpawnHelper(),
           params.getPlatform(),
           params.getEnvironment(),
           params.getObjectMapper(),
@@ -32,6 +32,7 @@ import com.facebook.buck.config.Config;
 import com.facebook.buck.config.Configs;
 import com.facebook.buck.counters.CounterRegistry;
 import com.facebook.buck.counters.CounterRegistryImpl;
+import com.facebook.buck.counters.EventDispatchLagCounter;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventListener;
 import com.facebook.buck.event.BuckInitializationDurationEvent;
@@ -56,6 +57,7 @@ import com.facebook.buck.event.listener.SuperConsoleEventBusListener;
 import com.facebook.buck.httpserver.WebServer;
 import com.facebook.buck.io.AsynchronousDirectoryContentsCleaner;
 import com.facebook.buck.io.BuckPaths;
+import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.PathOrGlobMatcher;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -63,6 +65,7 @@ import com.facebook.buck.io.ProjectWatch;
 import com.facebook.buck.io.Watchman;
 import com.facebook.buck.io.WatchmanCursor;
 import com.facebook.buck.io.WatchmanDiagnosticEventListener;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.jvm.java.JavacOptions;
 import com.facebook.buck.log.CommandThreadFactory;
@@ -75,6 +78,7 @@ import com.facebook.buck.model.BuckVersion;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserConfig;
+import com.facebook.buck.python.PythonBuckConfig;
 import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.CellProvider;
@@ -85,6 +89,11 @@ import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
 import com.facebook.buck.rules.RelativeCellName;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.rules.durations.RuleDurationListener;
+import com.facebook.buck.rules.durations.RuleDurationStore;
+import com.facebook.buck.rules.durations.RuleResourceProfileListener;
+import com.facebook.buck.rules.durations.RuleResourceProfileStore;
+import com.facebook.buck.rules.keys.RuleKeyBuilder;
 import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.test.TestConfig;
@@ -126,6 +135,7 @@ import com.facebook.buck.util.network.RemoteLogBuckConfig;
 import com.facebook.buck.util.perf.PerfStatsTracking;
 import com.facebook.buck.util.perf.ProcessTracker;
 import com.facebook.buck.util.shutdown.NonReentrantSystemExit;
+import com.facebook.buck.util.spawn.SpawnHelper;
 import com.facebook.buck.util.versioncontrol.DefaultVersionControlCmdLineInterfaceFactory;
 import com.facebook.buck.util.versioncontrol.VersionControlBuckConfig;
 import com.facebook.buck.util.versioncontrol.VersionControlStatsGenerator;
@@ -342,6 +352,8 @@ public final class Main {
     private final EventBus fileEventBus;
     private final Optional<WebServer> webServer;
     private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
+    private final JarIndexCache jarIndexCache;
+    private final Optional<SpawnHelper> spawnHelper;
     private final VersionedTargetGraphCache versionedTargetGraphCache;
     private final ActionGraphCache actionGraphCache;
     private final BroadcastEventListener broadcastEventListener;
@@ -413,6 +425,15 @@ public final class Main {
       cursor = cursorBuilder.build();
       LOG.debug("Using Watchman Cursor: %s", cursor);
       persistentWorkerPools = new ConcurrentHashMap<>();
+      jarIndexCache = new JarIndexCache();
+      if (cell.getBuckConfig().getUseSpawnHelper() && Platform.detect() != Platform.WINDOWS) {
+        spawnHelper = Optional.of(
+            new SpawnHelper(
+                new PythonBuckConfig(cell.getBuckConfig(), new ExecutableFinder())
+                    .getPythonInterpreter()));
+      } else {
+        spawnHelper = Optional.empty();
+      }
       JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(cell.getFilesystem());
     }
 
@@ -495,6 +516,14 @@ public final class Main {
       return persistentWorkerPools;
     }
 
+    private JarIndexCache getJarIndexCache() {
+      return jarIndexCache;
+    }
+
+    private Optional<SpawnHelper> getSpawnHelper() {
+      return spawnHelper;
+    }
+
     private void watchClient(final NGContext context) {
       context.addClientListener(() -> {
         if (isSessionLeader && commandSemaphoreNgClient.orElse(null) == context) {
@@ -567,6 +596,7 @@ public final class Main {
     @Override
     public void close() throws IOException {
       shutdownPersistentWorkerPools();
+      shutdownSpawnHelper();
       shutdownWebServer();
     }
 
@@ -580,6 +610,16 @@ public final class Main {
       }
     }
 
+    private void shutdownSpawnHelper() {
+      if (spawnHelper.isPresent()) {
+        try {
+          spawnHelper.get().close();
+        } catch (IOException e) {
+          LOG.error(e);
+        }
+      }
+    }
+
     private void shutdownWebServer() {
       if (webServer.isPresent()) {
         try {
@@ -1042,6 +1082,9 @@ public final class Main {
         Optional<WebServer> webServer = getWebServerIfDaemon(context, rootCell);
         Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools =
             getPersistentWorkerPoolsIfDaemon(context, rootCell);
+        Optional<JarIndexCache> persistentJarIndexCache =
+            getJarIndexCacheIfDaemon(context, rootCell);
+        Optional<SpawnHelper> spawnHelper = getSpawnHelperIfDaemon(context, rootCell);
 
         TestConfig testConfig = new TestConfig(buckConfig);
         ArtifactCacheBuckConfig cacheBuckConfig = new ArtifactCacheBuckConfig(buckConfig);
@@ -1149,6 +1192,17 @@ public final class Main {
                       .resolve(ProgressEstimator.PROGRESS_ESTIMATIONS_JSON),
                   buildEventBus,
                   objectMapper);
+          RuleDurationStore ruleDurationStore =
+              new RuleDurationStore(
+                  filesystem.resolve(filesystem.getBuckPaths().getBuckOut())
+                      .resolve(RuleDurationStore.RULE_DURATIONS_JSON),
+                  objectMapper);
+          progressEstimator.setRuleDurationStore(ruleDurationStore);
+          RuleResourceProfileStore ruleResourceProfileStore =
+              new RuleResourceProfileStore(
+                  filesystem.resolve(filesystem.getBuckPaths().getBuckOut())
+                      .resolve(RuleResourceProfileStore.RULE_RESOURCES_JSON),
+                  objectMapper);
           consoleListener.setProgressEstimator(progressEstimator);
 
           BuildEnvironmentDescription buildEnvironmentDescription =
@@ -1175,6 +1229,8 @@ public final class Main {
               rootCell.getKnownBuildRuleTypes(),
               clientEnvironment,
               counterRegistry,
+              ruleDurationStore,
+              ruleResourceProfileStore,
               commandEventListeners
           );
 
@@ -1280,6 +1336,12 @@ public final class Main {
           //
           // The counters will be unregistered once the counter registry is closed.
           counterRegistry.registerCounters(parser.getCounters());
+          counterRegistry.registerCounters(
+              ImmutableList.of(new EventDispatchLagCounter(buildEventBus)));
+          // Latency histograms of hot paths that are shared by every instance of their class.
+          counterRegistry.registerCounters(DefaultFileHashCache.getCounters());
+          counterRegistry.registerCounters(RuleKeyBuilder.getCounters());
+          counterRegistry.registerCounters(ArtifactCaches.getCounters());
 
           JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
 
@@ -1333,6 +1395,8 @@ public final class Main {
                     .setClock(clock)
                     .setProcessManager(processManager)
                     .setPersistentWorkerPools(persistentWorkerPools)
+                    .setPersistentJarIndexCache(persistentJarIndexCache)
+                    .setSpawnHelper(spawnHelper)
                     .setWebServer(webServer)
                     .setBuckConfig(buckConfig)
                     .setFileHashCache(fileHashCache)
@@ -1342,6 +1406,8 @@ public final class Main {
                     .setActionGraphCache(actionGraphCache)
                     .setKnownBuildRuleTypesFactory(factory)
                     .setInvocationInfo(Optional.of(invocationInfo))
+                    .setRuleDurationStore(ruleDurationStore)
+                    .setRuleResourceProfileStore(ruleResourceProfileStore)
                     .build());
           } catch (InterruptedException | ClosedByInterruptException e) {
             exitCode = INTERRUPTED_EXIT_CODE;
@@ -1687,6 +1753,28 @@ public final class Main {
     return Optional.empty();
   }
 
+  private Optional<JarIndexCache> getJarIndexCacheIfDaemon(
+      Optional<NGContext> context,
+      Cell cell)
+      throws IOException {
+    if (context.isPresent()) {
+      Daemon daemon = getDaemon(cell, objectMapper);
+      return Optional.of(daemon.getJarIndexCache());
+    }
+    return Optional.empty();
+  }
+
+  private Optional<SpawnHelper> getSpawnHelperIfDaemon(
+      Optional<NGContext> context,
+      Cell cell)
+      throws IOException {
+    if (context.isPresent()) {
+      Daemon daemon = getDaemon(cell, objectMapper);
+      return daemon.getSpawnHelper();
+    }
+    return Optional.empty();
+  }
+
   private void loadListenersFromBuckConfig(
       ImmutableList.Builder<BuckEventListener> eventListeners,
       ProjectFilesystem projectFilesystem,
@@ -1753,13 +1841,17 @@ public final class Main {
       KnownBuildRuleTypes knownBuildRuleTypes,
       ImmutableMap<String, String> environment,
       CounterRegistry counterRegistry,
+      RuleDurationStore ruleDurationStore,
+      RuleResourceProfileStore ruleResourceProfileStore,
       Iterable<BuckEventListener> commandSpecificEventListeners
   ) {
     ImmutableList.Builder<BuckEventListener> eventListenersBuilder =
         ImmutableList.<BuckEventListener>builder()
             .add(new JavaUtilsLoggingBuildListener())
             .add(consoleEventBusListener)
-            .add(new LoggingBuildListener());
+            .add(new LoggingBuildListener())
+            .add(new RuleDurationListener(ruleDurationStore))
+            .add(new RuleResourceProfileListener(ruleResourceProfileStore));
 
     if (buckConfig.isChromeTraceCreationEnabled()) {
       try {
@@ -1769,16 +1861,17 @@ public final class Main {
             clock,
             objectMapper,
             buckConfig.getMaxTraces(),
-            buckConfig.getCompressTraces()));
+            buckConfig.getCompressTraces(),
+            buckConfig.getBinaryTraces()));
       } catch (IOException e) {
         LOG.error("Unable to create ChromeTrace listener!");
       }
     } else {
       LOG.warn("::: ChromeTrace listener disabled");
     }
-    if (webServer.isPresent()) {
-      eventListenersBuilder.add(webServer.get().createListener());
-    }
+    Optional<BuckEventListener> webServerListener =
+        webServer.map(WebServer::createListener);
+    webServerListener.ifPresent(eventListenersBuilder::add);
 
     loadListenersFromBuckConfig(eventListenersBuilder, projectFilesystem, buckConfig);
 
@@ -1823,7 +1916,14 @@ public final class Main {
     eventListenersBuilder.addAll(commandSpecificEventListeners);
 
     ImmutableList<BuckEventListener> eventListeners = eventListenersBuilder.build();
-    eventListeners.forEach(buckEventBus::register);
+    for (BuckEventListener eventListener : eventListeners) {
+      // The web server only feeds the browser UI, it should never hold up the build.
+      buckEventBus.register(
+          eventListener,
+          webServerListener.isPresent() && webServerListener.get() == eventListener ?
+              BuckEventBus.OverflowPolicy.DROP :
+              BuckEventBus.OverflowPolicy.BLOCK);
+    }
 
 
     return eventListeners;
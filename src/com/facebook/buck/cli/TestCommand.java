@@ -30,6 +30,7 @@ import com.facebook.buck.rules.BuildEngine;
 import com.facebook.buck.rules.BuildEvent;
 import com.facebook.buck.rules.CachingBuildEngine;
 import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
+import com.facebook.buck.rules.CriticalPathEstimator;
 import com.facebook.buck.rules.Description;
 import com.facebook.buck.rules.ExternalTestRunnerRule;
 import com.facebook.buck.rules.ExternalTestRunnerTestSpec;
@@ -540,12 +541,16 @@ public class TestCommand extends BuildCommand {
                 cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
                 params.getObjectMapper(),
                 actionGraphAndResolver.getResolver(),
-                cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(
+                    params.getRuleResourceProfileStore()),
                 new RuleKeyFactoryManager(
                     params.getBuckConfig().getKeySeed(),
                     localCachingBuildEngineDelegate.createFileHashCacheLoader()::getUnchecked,
                     actionGraphAndResolver.getResolver(),
-                    cachingBuildEngineBuckConfig.getBuildInputRuleKeyFileSizeLimit()));
+                    cachingBuildEngineBuckConfig.getBuildInputRuleKeyFileSizeLimit()),
+                cachingBuildEngineBuckConfig.isCriticalPathSchedulingEnabled() ?
+                    Optional.of(new CriticalPathEstimator(params.getRuleDurationStore())) :
+                    Optional.empty());
         try (Build build = createBuild(
             params.getBuckConfig(),
             actionGraphAndResolver.getActionGraph(),
@@ -558,6 +563,8 @@ public class TestCommand extends BuildCommand {
             params.getBuckEventBus(),
             getTargetDeviceOptional(),
             params.getPersistentWorkerPools(),
+            params.getPersistentJarIndexCache(),
+            params.getSpawnHelper(),
             params.getPlatform(),
             params.getEnvironment(),
             params.getObjectMapper(),
@@ -24,6 +24,7 @@ import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.ThrowableConsoleEvent;
 import com.facebook.buck.io.BuckPaths;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildId;
@@ -55,6 +56,8 @@ import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.facebook.buck.util.spawn.SpawnHelper;
+import com.facebook.buck.util.spawn.SpawnHelperProcessExecutor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
@@ -123,11 +126,13 @@ public class Build implements Closeable {
       Optional<AdbOptions> adbOptions,
       Optional<TargetDeviceOptions> targetDeviceOptions,
       Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools,
+      Optional<JarIndexCache> persistentJarIndexCache,
+      Optional<SpawnHelper> spawnHelper,
       Map<ExecutorPool, ListeningExecutorService> executors) {
     this.actionGraph = actionGraph;
     this.ruleResolver = ruleResolver;
     this.rootCell = rootCell;
-    this.executionContext = ExecutionContext.builder()
+    ExecutionContext.Builder executionContextBuilder = ExecutionContext.builder()
         .setConsole(console)
         .setAndroidPlatformTargetSupplier(androidPlatformTargetSupplier)
         .setTargetDevice(targetDevice)
@@ -146,8 +151,12 @@ public class Build implements Closeable {
         .setPersistentWorkerPools(persistentWorkerPools)
         .setTargetDeviceOptions(targetDeviceOptions)
         .setExecutors(executors)
-        .setCellPathResolver(rootCell.getCellPathResolver())
-        .build();
+        .setCellPathResolver(rootCell.getCellPathResolver());
+    persistentJarIndexCache.ifPresent(executionContextBuilder::setJarIndexCache);
+    spawnHelper.ifPresent(
+        helper -> executionContextBuilder.setProcessExecutor(
+            new SpawnHelperProcessExecutor(console, helper)));
+    this.executionContext = executionContextBuilder.build();
     this.artifactCache = artifactCache;
     this.buildEngine = buildEngine;
     this.javaPackageFinder = javaPackageFinder;
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.ListenerDispatchStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports how far behind the listeners of a {@link BuckEventBus} are, per listener.
+ */
+public class EventDispatchLagCounter extends Counter {
+
+  public static final String CATEGORY = "buck_event_bus";
+  public static final String NAME = "event_dispatch";
+
+  private final BuckEventBus eventBus;
+
+  public EventDispatchLagCounter(BuckEventBus eventBus) {
+    super(CATEGORY, NAME, ImmutableMap.of());
+    this.eventBus = eventBus;
+  }
+
+  @Override
+  public Optional<CounterSnapshot> flush() {
+    ImmutableList<ListenerDispatchStats> allStats = eventBus.getAndResetDispatchStats();
+    CounterSnapshot.Builder snapshot = CounterSnapshot.builderForCounter(this);
+    boolean hasData = false;
+    for (ListenerDispatchStats stats : allStats) {
+      if (stats.getDispatchedEvents() == 0 && stats.getDroppedEvents() == 0) {
+        continue;
+      }
+      hasData = true;
+      String listener = stats.getListener().substring(stats.getListener().lastIndexOf('.') + 1);
+      snapshot.putValues(listener + "_dispatched", stats.getDispatchedEvents());
+      snapshot.putValues(listener + "_max_backlog", stats.getMaxBacklog());
+      snapshot.putValues(
+          listener + "_max_lag_ms",
+          TimeUnit.NANOSECONDS.toMillis(stats.getMaxLagNanos()));
+      snapshot.putValues(listener + "_dropped", stats.getDroppedEvents());
+    }
+    return hasData ? Optional.of(snapshot.build()) : Optional.empty();
+  }
+}
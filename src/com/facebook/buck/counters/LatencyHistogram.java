@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies that is cheap enough to record from hot paths.
+ *
+ * Samples go into log-linear buckets (16 buckets for every power of two, so any reported value is
+ * within about 6% of the real one), and every thread records into one of several stripes picked by
+ * its id, so concurrent threads rarely touch the same memory. Nothing is aggregated until the
+ * counter is flushed, at which point the stripes are summed, reset and reported as percentiles.
+ * Every flush also writes a summary line to the build log.
+ */
+public class LatencyHistogram extends Counter {
+
+  private static final Logger LOG = Logger.get(LatencyHistogram.class);
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Anything above about 73 minutes is recorded as 73 minutes.
+  private static final int MAX_EXPONENT = 41;
+  @VisibleForTesting
+  static final long MAX_TRACKABLE_NANOS = (1L << (MAX_EXPONENT + 1)) - 1;
+  @VisibleForTesting
+  static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_NANOS) + 1;
+
+  private static final int MAX_STRIPES = 64;
+
+  private final AtomicLongArray[] stripes;
+  private final int stripeMask;
+
+  public LatencyHistogram(String category, String name, ImmutableMap<String, String> tags) {
+    this(category, name, tags, Runtime.getRuntime().availableProcessors());
+  }
+
+  @VisibleForTesting
+  LatencyHistogram(
+      String category,
+      String name,
+      ImmutableMap<String, String> tags,
+      int concurrency) {
+    super(category, name, tags);
+    Preconditions.checkArgument(concurrency > 0);
+    int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(concurrency * 2 - 1) << 1);
+    this.stripes = new AtomicLongArray[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+    }
+    this.stripeMask = stripeCount - 1;
+  }
+
+  /**
+   * Records how long an operation that started at {@code startNanos}, as returned by
+   * {@link System#nanoTime()}, took.
+   */
+  public void recordSince(long startNanos) {
+    recordNanos(System.nanoTime() - startNanos);
+  }
+
+  public void recordNanos(long nanos) {
+    int stripe = (int) Thread.currentThread().getId() & stripeMask;
+    stripes[stripe].incrementAndGet(bucketIndex(nanos));
+  }
+
+  @Override
+  public Optional<CounterSnapshot> flush() {
+    long[] buckets = new long[BUCKET_COUNT];
+    long count = 0;
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        // Reading before swapping saves a write for the many buckets that are always empty.
+        if (stripe.get(i) != 0) {
+          long bucketCount = stripe.getAndSet(i, 0);
+          buckets[i] += bucketCount;
+          count += bucketCount;
+        }
+      }
+    }
+    if (count == 0) {
+      return Optional.empty();
+    }
+
+    long p50 = valueAtPercentile(buckets, count, 50);
+    long p90 = valueAtPercentile(buckets, count, 90);
+    long p99 = valueAtPercentile(buckets, count, 99);
+    long max = valueAtPercentile(buckets, count, 100);
+    LOG.info(
+        "%s.%s: count=%d p50=%dus p90=%dus p99=%dus max=%dus",
+        getCategory(),
+        getName(),
+        count,
+        TimeUnit.NANOSECONDS.toMicros(p50),
+        TimeUnit.NANOSECONDS.toMicros(p90),
+        TimeUnit.NANOSECONDS.toMicros(p99),
+        TimeUnit.NANOSECONDS.toMicros(max));
+
+    CounterSnapshot.Builder snapshot = CounterSnapshot.builderForCounter(this);
+    snapshot.putValues(getName() + "_count", count);
+    snapshot.putValues(getName() + "_p50_ns", p50);
+    snapshot.putValues(getName() + "_p90_ns", p90);
+    snapshot.putValues(getName() + "_p99_ns", p99);
+    snapshot.putValues(getName() + "_max_ns", max);
+    return Optional.of(snapshot.build());
+  }
+
+  private static long valueAtPercentile(long[] buckets, long count, int percentile) {
+    long rank = Math.max(1, (count * percentile + 99) / 100);
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        return highestValueInBucket(i);
+      }
+    }
+    return MAX_TRACKABLE_NANOS;
+  }
+
+  @VisibleForTesting
+  static int bucketIndex(long nanos) {
+    long value = Math.min(Math.max(nanos, 0), MAX_TRACKABLE_NANOS);
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  @VisibleForTesting
+  static long highestValueInBucket(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    long subBucket = index % SUB_BUCKET_COUNT;
+    return ((SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
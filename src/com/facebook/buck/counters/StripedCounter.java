@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that threads can increment concurrently without contending on a lock or on a single
+ * memory location. Unlike {@link IntegerCounter}, it is meant to be bumped from hot paths.
+ */
+public class StripedCounter extends Counter {
+
+  private final LongAdder count;
+
+  public StripedCounter(String category, String name, ImmutableMap<String, String> tags) {
+    super(category, name, tags);
+    this.count = new LongAdder();
+  }
+
+  public void inc() {
+    count.increment();
+  }
+
+  public void inc(long delta) {
+    count.add(delta);
+  }
+
+  public long get() {
+    return count.sum();
+  }
+
+  @Override
+  public Optional<CounterSnapshot> flush() {
+    long value = count.sumThenReset();
+    if (value == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        CounterSnapshot.builderForCounter(this)
+            .putValues(getName(), value)
+            .build());
+  }
+}
@@ -83,6 +83,28 @@ interface AbstractCxxPlatform extends FlavorConvertible {
 
   SymbolNameTool getSymbolNameTool();
 
+  /**
+   * @return whether compilations should leave their debug info in separate {@code .dwo} files.
+   */
+  @Value.Default
+  default boolean getSplitDwarf() {
+    return false;
+  }
+
+  /**
+   * @return whether compilations should produce ThinLTO bitcode, to be optimized module by module
+   *     when linked.
+   */
+  @Value.Default
+  default boolean getThinLto() {
+    return false;
+  }
+
+  /**
+   * @return the tool which packages the {@code .dwo} files of a binary into a {@code .dwp} file.
+   */
+  Optional<Tool> getDwp();
+
   String getSharedLibraryExtension();
   String getSharedLibraryVersionedExtensionFormat();
 
@@ -27,6 +27,7 @@ import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.DependencyAggregation;
+import com.facebook.buck.rules.PathSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
@@ -49,16 +50,27 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 
 import org.immutables.value.Value;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -71,6 +83,18 @@ abstract class AbstractCxxSourceRuleFactory {
   private static final String COMPILE_FLAVOR_PREFIX = "compile-";
   private static final Flavor AGGREGATED_PREPROCESS_DEPS_FLAVOR =
       ImmutableFlavor.of("preprocessor-deps");
+  private static final String UNITY_PREFIX = "unity-";
+  private static final String INFERRED_PCH_PREFIX = "auto-pch-";
+
+  /**
+   * Source types which can be compiled as part of a unity translation unit.
+   */
+  private static final ImmutableSet<CxxSource.Type> UNITY_SOURCE_TYPES =
+      Sets.immutableEnumSet(
+          CxxSource.Type.C,
+          CxxSource.Type.CXX,
+          CxxSource.Type.OBJC,
+          CxxSource.Type.OBJCXX);
 
   @Value.Parameter
   protected abstract BuildRuleParams getParams();
@@ -99,6 +123,26 @@ abstract class AbstractCxxSourceRuleFactory {
   @Value.Parameter
   protected abstract Optional<SymlinkTree> getSandboxTree();
 
+  /**
+   * The maximum number of sources to compile together in a single unity translation unit.  The
+   * default of one compiles every source on its own.
+   */
+  @Value.Default
+  protected int getUnityBatchSize() {
+    return 1;
+  }
+
+  /**
+   * Whether to infer a precompiled header from the dep files of previous builds when the rule
+   * doesn't set one.
+   *
+   * @see PrecompiledHeaderInference
+   */
+  @Value.Default
+  protected boolean getInferPrecompiledHeaders() {
+    return false;
+  }
+
   @Value.Check
   protected void checkPrefixAndPrecompiledHeaderArgs() {
     if (getPrefixHeader().isPresent() && getPrecompiledHeader().isPresent()) {
@@ -107,6 +151,14 @@ abstract class AbstractCxxSourceRuleFactory {
     }
   }
 
+  @Value.Check
+  protected void checkUnityBatchSize() {
+    Preconditions.checkState(
+        getUnityBatchSize() >= 1,
+        "Unity batch size must be at least 1, got %s.",
+        getUnityBatchSize());
+  }
+
   private ImmutableSortedSet<BuildRule> getPreprocessDeps() {
     ImmutableSortedSet.Builder<BuildRule> builder = ImmutableSortedSet.naturalOrder();
     for (CxxPreprocessorInput input : getCxxPreprocessorInput()) {
@@ -306,6 +358,7 @@ abstract class AbstractCxxSourceRuleFactory {
         .addAllPlatformFlags(getPicType().getFlags(compiler))
         // Add in the platform specific compiler flags.
         .addAllPlatformFlags(getPlatformCompileFlags(source.getType()))
+        .addAllPlatformFlags(getCodeGenerationFlags(source.getType()))
         // Add custom compiler flags.
         .addAllRuleFlags(getRuleCompileFlags(source.getType()))
         // Add custom per-file flags.
@@ -359,6 +412,32 @@ abstract class AbstractCxxSourceRuleFactory {
 
   }
 
+  /**
+   * @return the code generation flags for objects compiled from the given type: splitting the
+   *     debug info out into {@code .dwo} files and emitting ThinLTO bitcode, if the platform asks
+   *     for them.  These are only used for the object files that end up being linked, and never
+   *     for precompiled headers.
+   */
+  private ImmutableList<String> getCodeGenerationFlags(CxxSource.Type outputType) {
+    switch (outputType) {
+      case C_CPP_OUTPUT:
+      case CXX_CPP_OUTPUT:
+      case OBJC_CPP_OUTPUT:
+      case OBJCXX_CPP_OUTPUT:
+        ImmutableList.Builder<String> flags = ImmutableList.builder();
+        if (getCxxPlatform().getSplitDwarf()) {
+          flags.add(CxxPreprocessAndCompile.SPLIT_DWARF_FLAG);
+        }
+        if (getCxxPlatform().getThinLto()) {
+          flags.add(CxxPreprocessAndCompile.THIN_LTO_FLAG);
+        }
+        return flags.build();
+      // $CASES-OMITTED$
+      default:
+        return ImmutableList.of();
+    }
+  }
+
   private CxxToolFlags computePreprocessorFlags(
       CxxSource.Type type,
       ImmutableList<String> sourceFlags) {
@@ -456,6 +535,24 @@ abstract class AbstractCxxSourceRuleFactory {
   public CxxPreprocessAndCompile createPreprocessAndCompileBuildRule(
       String name,
       CxxSource source) {
+    return createPreprocessAndCompileBuildRule(
+        name,
+        source,
+        ImmutableList.of(),
+        Optional.empty());
+  }
+
+  /**
+   * @param includedSources the sources included by {@code source}, when it is a unity translation
+   *     unit.
+   * @param inferredPrecompiledHeader a {@link CxxPrecompiledHeaderTemplate} to use when the rule
+   *     doesn't set a precompiled header of its own.
+   */
+  private CxxPreprocessAndCompile createPreprocessAndCompileBuildRule(
+      String name,
+      CxxSource source,
+      ImmutableList<SourcePath> includedSources,
+      Optional<SourcePath> inferredPrecompiledHeader) {
 
     BuildTarget target = createCompileBuildTarget(name);
     LOG.verbose("Creating preprocess and compile %s for %s", target, source);
@@ -472,7 +569,12 @@ abstract class AbstractCxxSourceRuleFactory {
                 getCxxPlatform(),
                 CxxSourceTypes.getPreprocessorOutputType(source.getType()))
                 .resolve(getResolver()),
-            computeCompilerFlags(source.getType(), source.getFlags()));
+            CxxToolFlags.concat(
+                computeCompilerFlags(source.getType(), source.getFlags()),
+                CxxToolFlags.copyOf(
+                    getCodeGenerationFlags(
+                        CxxSourceTypes.getPreprocessorOutputType(source.getType())),
+                    ImmutableList.of())));
     depsBuilder.add(compilerDelegate);
 
     PreprocessorDelegateCacheValue preprocessorDelegateValue = preprocessorDelegates.getUnchecked(
@@ -482,6 +584,17 @@ abstract class AbstractCxxSourceRuleFactory {
 
     depsBuilder.add(source);
 
+    if (!includedSources.isEmpty()) {
+      try {
+        preprocessorDelegate = preprocessorDelegate.withIncludedSources(includedSources);
+      } catch (PreprocessorDelegate.ConflictingHeadersException e) {
+        throw e.getHumanReadableExceptionForBuildTarget(getParams().getBuildTarget());
+      }
+      for (SourcePath includedSource : includedSources) {
+        depsBuilder.add(includedSource);
+      }
+    }
+
     Preprocessor preprocessor = preprocessorDelegate.getPreprocessor();
 
     if (getPrecompiledHeader().isPresent() &&
@@ -494,13 +607,15 @@ abstract class AbstractCxxSourceRuleFactory {
           "and/or 'cxx.pch_enabled' option).");
     }
 
+    Optional<SourcePath> precompiledHeader =
+        getPrecompiledHeader().isPresent() ? getPrecompiledHeader() : inferredPrecompiledHeader;
     Optional<CxxPrecompiledHeader> precompiledHeaderRule = Optional.empty();
     if (canUsePrecompiledHeaders(getCxxBuckConfig(), preprocessor, source.getType()) &&
-        (getPrefixHeader().isPresent() || getPrecompiledHeader().isPresent())) {
+        (getPrefixHeader().isPresent() || precompiledHeader.isPresent())) {
       precompiledHeaderRule = Optional.of(
-          requirePrecompiledHeaderBuildRule(preprocessorDelegateValue, source));
+          requirePrecompiledHeaderBuildRule(preprocessorDelegateValue, source, precompiledHeader));
       depsBuilder.add(precompiledHeaderRule.get());
-      if (getPrecompiledHeader().isPresent()) {
+      if (precompiledHeader.isPresent()) {
         // For a precompiled header (and not a prefix header), we may need extra include paths.
         // The PCH build might have involved some deps that this rule does not have, so we
         // would need to pull in its include paths to ensure any includes that happen during this
@@ -535,6 +650,17 @@ abstract class AbstractCxxSourceRuleFactory {
 
   @VisibleForTesting
   CxxPreprocessAndCompile requirePreprocessAndCompileBuildRule(String name, CxxSource source) {
+    return requirePreprocessAndCompileBuildRule(name, source, Optional.empty());
+  }
+
+  /**
+   * @param inferredPrecompiledHeader a {@link CxxPrecompiledHeaderTemplate} to use when the rule
+   *     doesn't set a precompiled header of its own.
+   */
+  private CxxPreprocessAndCompile requirePreprocessAndCompileBuildRule(
+      String name,
+      CxxSource source,
+      Optional<SourcePath> inferredPrecompiledHeader) {
 
     BuildTarget target = createCompileBuildTarget(name);
     Optional<CxxPreprocessAndCompile> existingRule = getResolver().getRuleOptionalWithType(
@@ -547,7 +673,249 @@ abstract class AbstractCxxSourceRuleFactory {
       return existingRule.get();
     }
 
-    return createPreprocessAndCompileBuildRule(name, source);
+    return createPreprocessAndCompileBuildRule(
+        name,
+        source,
+        ImmutableList.of(),
+        inferredPrecompiledHeader);
+  }
+
+  /**
+   * Groups the sources which can be compiled as unity translation units into batches of at most
+   * {@link #getUnityBatchSize()} sources.
+   *
+   * Sources are batched by type in path order, so that batches (and hence their rule keys) don't
+   * depend on the order in which sources are listed.  A batch mixing different per-file flags
+   * can't be compiled as one translation unit, so it is dropped and its sources are compiled one
+   * by one, like any source which ended up in a batch of its own.
+   */
+  @VisibleForTesting
+  ImmutableList<ImmutableList<Map.Entry<String, CxxSource>>> getUnityBatches(
+      ImmutableMap<String, CxxSource> sources) {
+    // The sandbox already maps the sources, so we leave sandboxed builds alone.
+    if (getUnityBatchSize() == 1 || getSandboxTree().isPresent()) {
+      return ImmutableList.of();
+    }
+
+    ListMultimap<CxxSource.Type, Map.Entry<String, CxxSource>> sourcesByType =
+        MultimapBuilder.enumKeys(CxxSource.Type.class).arrayListValues().build();
+    sources.entrySet().stream()
+        .filter(entry -> UNITY_SOURCE_TYPES.contains(entry.getValue().getType()))
+        .sorted(Map.Entry.comparingByKey())
+        .forEach(entry -> sourcesByType.put(entry.getValue().getType(), entry));
+
+    ImmutableList.Builder<ImmutableList<Map.Entry<String, CxxSource>>> batches =
+        ImmutableList.builder();
+    for (CxxSource.Type type : sourcesByType.keySet()) {
+      for (List<Map.Entry<String, CxxSource>> batch :
+          Lists.partition(sourcesByType.get(type), getUnityBatchSize())) {
+        if (batch.size() < 2) {
+          continue;
+        }
+        if (batch.stream().map(entry -> entry.getValue().getFlags()).distinct().count() > 1) {
+          LOG.debug(
+              "Per-file flags differ between %s, compiling them separately.",
+              Lists.transform(batch, Map.Entry::getKey));
+          continue;
+        }
+        batches.add(ImmutableList.copyOf(batch));
+      }
+    }
+    return batches.build();
+  }
+
+  /**
+   * @return the name of the unity translation unit for the given batch of sources, which
+   *     identifies the batch by the sources in it.
+   */
+  private static String getUnityName(ImmutableList<Map.Entry<String, CxxSource>> batch) {
+    Hasher hasher = Hashing.murmur3_32().newHasher();
+    for (Map.Entry<String, CxxSource> entry : batch) {
+      hasher.putString(entry.getKey(), StandardCharsets.UTF_8);
+      hasher.putByte((byte) 0);
+    }
+    // Replace `c++` with `cxx`; avoid default scrubbing which would make it the cryptic `c__`.
+    String langCode =
+        batch.get(0).getValue().getType().getLanguage().replaceAll("c\\+\\+", "cxx");
+    return UNITY_PREFIX + langCode + "-" + hasher.hash();
+  }
+
+  private CxxUnitySource requireUnitySourceBuildRule(
+      String name,
+      ImmutableList<Map.Entry<String, CxxSource>> batch) {
+    BuildTarget target = BuildTarget.builder(getParams().getBuildTarget())
+        .addFlavors(getCxxPlatform().getFlavor(), ImmutableFlavor.of(name))
+        .build();
+    Optional<CxxUnitySource> existingRule =
+        getResolver().getRuleOptionalWithType(target, CxxUnitySource.class);
+    if (existingRule.isPresent()) {
+      return existingRule.get();
+    }
+
+    ImmutableList<SourcePath> sources = batch.stream()
+        .map(entry -> entry.getValue().getPath())
+        .collect(MoreCollectors.toImmutableList());
+    String extension = Files.getFileExtension(batch.get(0).getKey());
+    CxxUnitySource rule = new CxxUnitySource(
+        getParams().copyWithChanges(
+            target,
+            Suppliers.ofInstance(
+                ImmutableSortedSet.copyOf(getRuleFinder().filterBuildRuleInputs(sources))),
+            Suppliers.ofInstance(ImmutableSortedSet.of())),
+        sources,
+        BuildTargets.getGenPath(getParams().getProjectFilesystem(), target, "%s")
+            .resolve(extension.isEmpty() ? name : name + "." + extension));
+    getResolver().addToIndex(rule);
+    return rule;
+  }
+
+  /**
+   * @return a {@link CxxPreprocessAndCompile} rule that compiles the given batch of sources as a
+   *     single unity translation unit.
+   */
+  @VisibleForTesting
+  CxxPreprocessAndCompile requireUnityPreprocessAndCompileBuildRule(
+      ImmutableList<Map.Entry<String, CxxSource>> batch) {
+    String name = getUnityName(batch);
+    BuildTarget target = createCompileBuildTarget(name);
+    Optional<CxxPreprocessAndCompile> existingRule = getResolver().getRuleOptionalWithType(
+        target, CxxPreprocessAndCompile.class);
+    if (existingRule.isPresent()) {
+      return existingRule.get();
+    }
+
+    CxxUnitySource unitySource = requireUnitySourceBuildRule(name, batch);
+    CxxSource firstSource = batch.get(0).getValue();
+    return createPreprocessAndCompileBuildRule(
+        name,
+        CxxSource.of(
+            firstSource.getType(),
+            new BuildTargetSourcePath(unitySource.getBuildTarget()),
+            firstSource.getFlags()),
+        unitySource.getSources(),
+        Optional.empty());
+  }
+
+  /**
+   * Infers a precompiled header for each precompiled header language from the headers the given
+   * sources start by including, as recorded when they were last built.
+   *
+   * @return the inferred {@link CxxPrecompiledHeaderTemplate} of each source that starts by
+   *     including every header going into it, keyed by source name.
+   */
+  private ImmutableMap<String, SourcePath> requireInferredPrecompiledHeaders(
+      ImmutableMap<String, CxxSource> sources) {
+    if (!getInferPrecompiledHeaders() ||
+        getPrefixHeader().isPresent() ||
+        getPrecompiledHeader().isPresent() ||
+        !getCxxBuckConfig().isPCHEnabled()) {
+      return ImmutableMap.of();
+    }
+
+    Map<String, ImmutableMap.Builder<String, ImmutableList<Path>>> leadingHeadersByLanguage =
+        new TreeMap<>();
+    for (Map.Entry<String, CxxSource> entry : sources.entrySet()) {
+      CxxSource.Type type = entry.getValue().getType();
+      if (!CxxSourceTypes.isPreprocessableType(type) ||
+          !type.getPrecompiledHeaderLanguage().isPresent() ||
+          !(entry.getValue().getPath() instanceof PathSourcePath)) {
+        continue;
+      }
+      Optional<ImmutableList<Path>> recordedHeaders =
+          PrecompiledHeaderInference.getRecordedHeaders(
+              getParams().getProjectFilesystem(),
+              createCompileBuildTarget(entry.getKey()));
+      if (!recordedHeaders.isPresent()) {
+        continue;
+      }
+      PathSourcePath sourcePath = (PathSourcePath) entry.getValue().getPath();
+      Optional<String> contents = sourcePath.getFilesystem()
+          .readFileIfItExists(getPathResolver().getRelativePath(sourcePath));
+      if (contents.isPresent()) {
+        leadingHeadersByLanguage
+            .computeIfAbsent(
+                type.getPrecompiledHeaderLanguage().get(),
+                language -> ImmutableMap.builder())
+            .put(
+                entry.getKey(),
+                PrecompiledHeaderInference.getLeadingHeaders(
+                    contents.get(),
+                    recordedHeaders.get()));
+      }
+    }
+
+    ImmutableMap.Builder<String, SourcePath> precompiledHeaders = ImmutableMap.builder();
+    for (Map.Entry<String, ImmutableMap.Builder<String, ImmutableList<Path>>> entry :
+        leadingHeadersByLanguage.entrySet()) {
+      Optional<InferredPrecompiledHeader> inferred = PrecompiledHeaderInference.infer(
+          entry.getValue().build(),
+          getCxxBuckConfig().getAutoPchMinSources(),
+          getCxxBuckConfig().getAutoPchMinShare());
+      if (!inferred.isPresent()) {
+        continue;
+      }
+      LOG.debug(
+          "Inferred a %s precompiled header of %d headers for %d sources of %s.",
+          entry.getKey(),
+          inferred.get().getHeaders().size(),
+          inferred.get().getSources().size(),
+          getParams().getBuildTarget());
+      CxxPrecompiledHeaderTemplate template =
+          requireInferredPrecompiledHeaderTemplate(entry.getKey(), inferred.get().getHeaders());
+      for (String name : inferred.get().getSources()) {
+        precompiledHeaders.put(name, new BuildTargetSourcePath(template.getBuildTarget()));
+      }
+    }
+    return precompiledHeaders.build();
+  }
+
+  /**
+   * @return a {@link CxxPrecompiledHeaderTemplate} for a generated header which includes each of
+   *     the given headers in order.
+   */
+  private CxxPrecompiledHeaderTemplate requireInferredPrecompiledHeaderTemplate(
+      String language,
+      ImmutableList<Path> headers) {
+    String name = INFERRED_PCH_PREFIX +
+        (getPicType() == PicType.PIC ? "pic-" : "") +
+        language.replaceAll("-header$", "").replaceAll("c\\+\\+", "cxx");
+    BuildTarget templateTarget = BuildTarget.builder(getParams().getBuildTarget())
+        .addFlavors(
+            getCxxPlatform().getFlavor(),
+            ImmutableFlavor.of(Flavor.replaceInvalidCharacters(name)))
+        .build();
+    Optional<CxxPrecompiledHeaderTemplate> existingRule =
+        getResolver().getRuleOptionalWithType(templateTarget, CxxPrecompiledHeaderTemplate.class);
+    if (existingRule.isPresent()) {
+      return existingRule.get();
+    }
+
+    BuildTarget headerTarget = BuildTarget.builder(getParams().getBuildTarget())
+        .addFlavors(
+            getCxxPlatform().getFlavor(),
+            ImmutableFlavor.of(Flavor.replaceInvalidCharacters(name + "-header")))
+        .build();
+    CxxUnitySource header = new CxxUnitySource(
+        getParams().copyWithChanges(
+            headerTarget,
+            Suppliers.ofInstance(ImmutableSortedSet.of()),
+            Suppliers.ofInstance(ImmutableSortedSet.of())),
+        headers.stream()
+            .map(path -> new PathSourcePath(getParams().getProjectFilesystem(), path))
+            .collect(MoreCollectors.toImmutableList()),
+        BuildTargets.getGenPath(getParams().getProjectFilesystem(), headerTarget, "%s.h"));
+    getResolver().addToIndex(header);
+
+    CxxPrecompiledHeaderTemplate template = new CxxPrecompiledHeaderTemplate(
+        getParams().copyWithChanges(
+            templateTarget,
+            Suppliers.ofInstance(ImmutableSortedSet.of(header)),
+            Suppliers.ofInstance(ImmutableSortedSet.of())),
+        getResolver(),
+        getPathResolver(),
+        new BuildTargetSourcePath(headerTarget));
+    getResolver().addToIndex(template);
+    return template;
   }
 
   /**
@@ -555,12 +923,14 @@ abstract class AbstractCxxSourceRuleFactory {
    *
    * The PCH is requested either via a {@code prefix_header='<em>pathToHeaderFileOrTarget</em>'},
    * transparently converting the prefix header to a precompiled header, or a precompiled header
-   * requested with {@code precompiled_header='<em>//:ruleToPCHTemplate</em>'}.
+   * requested with {@code precompiled_header='<em>//:ruleToPCHTemplate</em>'} or inferred for
+   * the source.
    *
    * @param preprocessorDelegateCacheValue
    * @param source One of the sources belonging to the rule for which we are building this PCH.
    *        Needed in order to obtain the language type and compiler flags for PCH itself.
    *        Used in the {@link CxxPreprocessAndCompile} rule which builds that source.
+   * @param precompiledHeader the PCH template to use, if not using the prefix header.
    * @see #buildPrecompiledHeaderFromPrefixHeader(
    *          PreprocessorDelegateCacheValue, CxxSource, DepsBuilder, SourcePath)
    * @see #buildPrecompiledHeaderFromTemplateRule(
@@ -568,9 +938,10 @@ abstract class AbstractCxxSourceRuleFactory {
    */
   private CxxPrecompiledHeader requirePrecompiledHeaderBuildRule(
       PreprocessorDelegateCacheValue preprocessorDelegateCacheValue,
-      CxxSource source) {
+      CxxSource source,
+      Optional<SourcePath> precompiledHeader) {
 
-    Preconditions.checkState(getPrefixHeader().isPresent() ^ getPrecompiledHeader().isPresent());
+    Preconditions.checkState(getPrefixHeader().isPresent() ^ precompiledHeader.isPresent());
 
     // Compilers only accept precompiled headers generated with the same flags and language options.
     // As such, each prefix header may generate multiple pch files, and need unique build targets
@@ -590,7 +961,7 @@ abstract class AbstractCxxSourceRuleFactory {
               preprocessorDelegateCacheValue,
               source,
               depsBuilder,
-              getPrecompiledHeader().get());
+              precompiledHeader.get());
   }
 
   private CxxPrecompiledHeader buildPrecompiledHeaderFromPrefixHeader(
@@ -673,9 +1044,12 @@ abstract class AbstractCxxSourceRuleFactory {
         headerPath,
         depsBuilder,
         pchTemplateTarget.getUnflavoredBuildTarget(),
-        ImmutableSortedSet.of(
-            getCxxPlatform().getFlavor(),
-            ImmutableFlavor.of(Flavor.replaceInvalidCharacters(pchBaseID))));
+        // Inferred templates are flavors of the rule using them, so keep those flavors apart.
+        ImmutableSortedSet.<Flavor>naturalOrder()
+            .addAll(pchTemplateTarget.getFlavors())
+            .add(getCxxPlatform().getFlavor())
+            .add(ImmutableFlavor.of(Flavor.replaceInvalidCharacters(pchBaseID)))
+            .build());
   }
 
   /**
@@ -782,11 +1156,32 @@ abstract class AbstractCxxSourceRuleFactory {
   ImmutableMap<CxxPreprocessAndCompile, SourcePath> requirePreprocessAndCompileRules(
       ImmutableMap<String, CxxSource> sources) {
 
+    // Each unity batch takes the place of the first of its sources.
+    Map<String, ImmutableList<Map.Entry<String, CxxSource>>> unityBatches = new HashMap<>();
+    Set<String> batchedSources = new HashSet<>();
+    for (ImmutableList<Map.Entry<String, CxxSource>> batch : getUnityBatches(sources)) {
+      unityBatches.put(batch.get(0).getKey(), batch);
+      batch.forEach(entry -> batchedSources.add(entry.getKey()));
+    }
+
+    ImmutableMap<String, SourcePath> inferredPrecompiledHeaders =
+        requireInferredPrecompiledHeaders(
+            sources.entrySet().stream()
+                .filter(entry -> !batchedSources.contains(entry.getKey()))
+                .collect(MoreCollectors.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue)));
+
     return sources.entrySet().stream()
+        .filter(entry ->
+            unityBatches.containsKey(entry.getKey()) ||
+                !batchedSources.contains(entry.getKey()))
         .map(entry -> {
           String name = entry.getKey();
           CxxSource source = entry.getValue();
 
+          if (unityBatches.containsKey(name)) {
+            return requireUnityPreprocessAndCompileBuildRule(unityBatches.get(name));
+          }
+
           Preconditions.checkState(
               CxxSourceTypes.isPreprocessableType(source.getType()) ||
                   CxxSourceTypes.isCompilableType(source.getType()));
@@ -796,7 +1191,10 @@ abstract class AbstractCxxSourceRuleFactory {
           // If it's a preprocessable source, use a combine preprocess-and-compile build rule.
           // Otherwise, use a regular compile rule.
           if (CxxSourceTypes.isPreprocessableType(source.getType())) {
-            return requirePreprocessAndCompileBuildRule(name, source);
+            return requirePreprocessAndCompileBuildRule(
+                name,
+                source,
+                Optional.ofNullable(inferredPrecompiledHeaders.get(name)));
           } else {
             return requireCompileBuildRule(name, source);
           }
@@ -852,6 +1250,40 @@ abstract class AbstractCxxSourceRuleFactory {
       ImmutableMap<String, CxxSource> sources,
       PicType pic,
       Optional<SymlinkTree> sandboxTree) {
+    return requirePreprocessAndCompileRules(
+        params,
+        resolver,
+        pathResolver,
+        ruleFinder,
+        cxxBuckConfig,
+        cxxPlatform,
+        cxxPreprocessorInput,
+        compilerFlags,
+        prefixHeader,
+        precompiledHeader,
+        sources,
+        pic,
+        sandboxTree,
+        /* unityBatchSize */ 1,
+        /* inferPrecompiledHeaders */ false);
+  }
+
+  public static ImmutableMap<CxxPreprocessAndCompile, SourcePath> requirePreprocessAndCompileRules(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      SourcePathResolver pathResolver,
+      SourcePathRuleFinder ruleFinder,
+      CxxBuckConfig cxxBuckConfig,
+      CxxPlatform cxxPlatform,
+      ImmutableList<CxxPreprocessorInput> cxxPreprocessorInput,
+      ImmutableMultimap<CxxSource.Type, String> compilerFlags,
+      Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
+      ImmutableMap<String, CxxSource> sources,
+      PicType pic,
+      Optional<SymlinkTree> sandboxTree,
+      int unityBatchSize,
+      boolean inferPrecompiledHeaders) {
     CxxSourceRuleFactory factory = CxxSourceRuleFactory.of(
         params,
         resolver,
@@ -864,7 +1296,9 @@ abstract class AbstractCxxSourceRuleFactory {
         prefixHeader,
         precompiledHeader,
         pic,
-        sandboxTree);
+        sandboxTree)
+        .withUnityBatchSize(unityBatchSize)
+        .withInferPrecompiledHeaders(inferPrecompiledHeaders);
     return factory.requirePreprocessAndCompileRules(sources);
   }
 
@@ -18,27 +18,21 @@ package com.facebook.buck.cxx;
 
 import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
 
-import com.facebook.buck.cxx.elf.Elf;
 import com.facebook.buck.cxx.elf.ElfDynamicSection;
-import com.facebook.buck.cxx.elf.ElfHeader;
-import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.cxx.elf.ElfFileProcessor;
+import com.facebook.buck.cxx.elf.ElfScrubbers;
 import com.facebook.buck.io.ProjectFilesystem;
-import com.facebook.buck.model.Pair;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.collect.ImmutableList;
 
 import org.immutables.value.Value;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.EnumSet;
-import java.util.Optional;
 
 /**
  * A step which scrubs all information from the ".dynamic" section of an ELF file which is relevant
@@ -48,55 +42,21 @@ import java.util.Optional;
 @BuckStyleTuple
 abstract class AbstractElfDynamicSectionScrubberStep implements Step {
 
-  static final String SECTION = ".dynamic";
+  static final String SECTION = ElfScrubbers.DYNAMIC_SECTION;
 
   // We only care about these attributes -- zero out the rest.
   static final EnumSet<ElfDynamicSection.DTag> WHITELISTED_TAGS =
-      EnumSet.of(
-          ElfDynamicSection.DTag.DT_NEEDED,
-          ElfDynamicSection.DTag.DT_SONAME);
+      ElfScrubbers.WHITELISTED_DYNAMIC_TAGS;
 
   abstract ProjectFilesystem getFilesystem();
   abstract Path getPath();
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    try (FileChannel channel =
-             FileChannel.open(
-                 getFilesystem().resolve(getPath()),
-                 StandardOpenOption.READ,
-                 StandardOpenOption.WRITE)) {
-      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
-      Elf elf = new Elf(buffer);
-      Optional<ElfSection> section = elf.getSectionByName(SECTION).map(Pair::getSecond);
-      if (!section.isPresent()) {
-        throw new IOException(
-            String.format(
-                "Error parsing ELF file %s: no such section \"%s\"",
-                getPath(),
-                SECTION));
-      }
-      for (ByteBuffer body = section.get().body; body.hasRemaining(); ) {
-        ElfDynamicSection.DTag dTag =
-            ElfDynamicSection.DTag.valueOf(
-                elf.header.ei_class == ElfHeader.EIClass.ELFCLASS32 ?
-                    Elf.Elf32.getElf32Sword(body) :
-                    (int) Elf.Elf64.getElf64Sxword(body));
-        if (!WHITELISTED_TAGS.contains(dTag)) {
-          if (elf.header.ei_class == ElfHeader.EIClass.ELFCLASS32) {
-            Elf.Elf32.putElf32Addr(body, 0);  // d_ptr
-          } else {
-            Elf.Elf64.putElf64Addr(body, 0);  // d_ptr
-          }
-        } else {
-          if (elf.header.ei_class == ElfHeader.EIClass.ELFCLASS32) {
-            Elf.Elf32.getElf32Addr(body);  // d_ptr
-          } else {
-            Elf.Elf64.getElf64Addr(body);  // d_ptr
-          }
-        }
-      }
-    }
+    ElfFileProcessor.process(
+        getFilesystem().resolve(getPath()),
+        READ_WRITE,
+        ImmutableList.of(ElfScrubbers.scrubDynamicSection()));
     return StepExecutionResult.SUCCESS;
   }
 
@@ -18,7 +18,7 @@ package com.facebook.buck.cxx;
 
 import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 
-import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfFileProcessor;
 import com.facebook.buck.cxx.elf.ElfSection;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.shell.DefaultShellStep;
@@ -34,10 +34,7 @@ import com.google.common.collect.ImmutableSet;
 import org.immutables.value.Value;
 
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 
 /**
  * A step which extracts specific sections from an ELF file and compacts them into a new ELF file.
@@ -56,26 +53,24 @@ abstract class AbstractElfExtractSectionsStep implements Step {
   // section.
   private ImmutableMap<String, Long> getNewSectionAddresses() throws IOException {
     ImmutableMap.Builder<String, Long> addresses = ImmutableMap.builder();
-    try (FileChannel channel =
-             FileChannel.open(
-                 getFilesystem().resolve(getInput()),
-                 StandardOpenOption.READ)) {
-      MappedByteBuffer buffer = channel.map(READ_ONLY, 0, channel.size());
-      Elf elf = new Elf(buffer);
-
-      // We start placing sections right after the program headers.
-      long end = elf.header.e_phoff + elf.header.e_phnum * elf.header.e_phentsize;
-      for (int index = 0; index < elf.getNumberOfSections(); index++) {
-        ElfSection section = elf.getSectionByIndex(index);
-        String name = elf.getSectionName(section.header);
-        // If this is a target section, assign it the current address, then increment the next
-        // address by this sections size.
-        if (getSections().contains(name)) {
-          addresses.put(name, end);
-          end += section.header.sh_size;
-        }
-      }
-    }
+    ElfFileProcessor.process(
+        getFilesystem().resolve(getInput()),
+        READ_ONLY,
+        ImmutableList.<ElfFileProcessor.Operation>of(
+            (path, elf) -> {
+              // We start placing sections right after the program headers.
+              long end = elf.header.e_phoff + elf.header.e_phnum * elf.header.e_phentsize;
+              for (int index = 0; index < elf.getNumberOfSections(); index++) {
+                ElfSection section = elf.getSectionByIndex(index);
+                String name = elf.getSectionName(section.header);
+                // If this is a target section, assign it the current address, then increment the
+                // next address by this sections size.
+                if (getSections().contains(name)) {
+                  addresses.put(name, end);
+                  end += section.header.sh_size;
+                }
+              }
+            }));
     return addresses.build();
   }
 
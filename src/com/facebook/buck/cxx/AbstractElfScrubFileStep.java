@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+import com.facebook.buck.cxx.elf.ElfFileProcessor;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.collect.ImmutableList;
+
+import org.immutables.value.Value;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A step which runs several in place edits over an ELF file, sharing a single mapping and parse
+ * of the file between them.
+ */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractElfScrubFileStep implements Step {
+
+  abstract ProjectFilesystem getFilesystem();
+  abstract Path getPath();
+  abstract ImmutableList<ElfFileProcessor.Operation> getOperations();
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    ElfFileProcessor.process(getFilesystem().resolve(getPath()), READ_WRITE, getOperations());
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public final String getShortName() {
+    return "scrub_elf_file";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "Scrub ELF file " + getPath();
+  }
+
+}
@@ -31,6 +31,7 @@ import com.facebook.buck.rules.Tool;
 import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.CompositeStep;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.step.fs.MkdirStep;
@@ -42,6 +43,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * A {@link com.facebook.buck.rules.BuildRule} which builds an "ar" archive from input files
@@ -179,11 +181,13 @@ public class Archive extends AbstractBuildRuleWithResolver implements SupportsIn
               .equals(getProjectFilesystem().getRootPath()));
     }
 
-    ImmutableList.Builder<Step> builder = ImmutableList.builder();
+    ImmutableList<Path> inputPaths = inputs.stream()
+        .map(resolver::getRelativePath)
+        .collect(MoreCollectors.toImmutableList());
 
-    builder.add(
-        new MkdirStep(getProjectFilesystem(), output.getParent()),
-        new RmStep(getProjectFilesystem(), output),
+    ImmutableList.Builder<Step> archiveSteps = ImmutableList.builder();
+
+    archiveSteps.add(
         new ArchiveStep(
             getProjectFilesystem(),
             archiver.getEnvironment(),
@@ -191,13 +195,11 @@ public class Archive extends AbstractBuildRuleWithResolver implements SupportsIn
             archiverFlags,
             archiver.getArchiveOptions(contents == Contents.THIN),
             output,
-            inputs.stream()
-                .map(resolver::getRelativePath)
-                .collect(MoreCollectors.toImmutableList()),
+            inputPaths,
             archiver));
 
     if (archiver.isRanLibStepRequired()) {
-      builder.add(
+      archiveSteps.add(
           new RanlibStep(
               getProjectFilesystem(),
               ranlib.getEnvironment(),
@@ -207,7 +209,32 @@ public class Archive extends AbstractBuildRuleWithResolver implements SupportsIn
     }
 
     if (!archiver.getScrubbers().isEmpty()) {
-      builder.add(new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
+      archiveSteps.add(
+          new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
+    }
+
+    ImmutableList.Builder<Step> builder = ImmutableList.builder();
+
+    builder.add(
+        new MkdirStep(getProjectFilesystem(), output.getParent()),
+        new RmStep(getProjectFilesystem(), output));
+
+    // Unless the user passed flags we'd have to interpret, write the archive ourselves, which
+    // saves running the archiver, ranlib and the scrubbers over the output.
+    Optional<ArchiveWriter.Format> format = archiver.getArchiveFormat();
+    if (format.isPresent() &&
+        archiverFlags.isEmpty() &&
+        (contents == Contents.NORMAL || format.get() == ArchiveWriter.Format.GNU)) {
+      builder.add(
+          new WriteArchiveStep(
+              getProjectFilesystem(),
+              format.get(),
+              contents == Contents.THIN,
+              output,
+              inputPaths,
+              new CompositeStep(archiveSteps.build())));
+    } else {
+      builder.addAll(archiveSteps.build());
     }
 
     return builder.build();
@@ -230,6 +257,13 @@ public class Archive extends AbstractBuildRuleWithResolver implements SupportsIn
     return output;
   }
 
+  /**
+   * @return the object files packaged by this archive, in the order they were added.
+   */
+  public ImmutableList<SourcePath> getInputs() {
+    return inputs;
+  }
+
   public Contents getContents() {
     return contents;
   }
@@ -22,6 +22,7 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.CommandSplitter;
+import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
 import com.google.common.base.Joiner;
@@ -33,6 +34,7 @@ import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
@@ -80,11 +82,14 @@ public class ArchiveStep implements Step {
     this.archiver = archiver;
   }
 
-  private ImmutableList<String> getAllInputs() throws IOException {
-    ImmutableList.Builder<String> allInputs = ImmutableList.builder();
-
-    // Inputs can either be files or directories.  In the case of the latter, we add all files
-    // found from a recursive search.
+  /**
+   * Inputs can either be files or directories.  In the case of the latter, we add all files found
+   * from a recursive search.
+   */
+  static ImmutableList<Path> getAllInputs(
+      ProjectFilesystem filesystem,
+      ImmutableList<Path> inputs) throws IOException {
+    ImmutableList.Builder<Path> allInputs = ImmutableList.builder();
     for (Path input : inputs) {
       if (filesystem.isDirectory(input)) {
         // We make sure to sort the files we find under the directories so that we get
@@ -99,12 +104,13 @@ public class ArchiveStep implements Step {
                 return FileVisitResult.CONTINUE;
               }
             });
-        allInputs.addAll(dirFiles);
+        for (String dirFile : dirFiles) {
+          allInputs.add(Paths.get(dirFile));
+        }
       } else {
-        allInputs.add(input.toString());
+        allInputs.add(input);
       }
     }
-
     return allInputs.build();
   }
 
@@ -129,7 +135,9 @@ public class ArchiveStep implements Step {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws IOException, InterruptedException {
-    ImmutableList<String> allInputs = getAllInputs();
+    ImmutableList<String> allInputs = getAllInputs(filesystem, inputs).stream()
+        .map(Object::toString)
+        .collect(MoreCollectors.toImmutableList());
     if (allInputs.isEmpty()) {
       filesystem.writeContentsToPath("!<arch>\n", output);
       return StepExecutionResult.SUCCESS;
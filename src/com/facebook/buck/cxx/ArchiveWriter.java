@@ -0,0 +1,414 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.cxx.elf.ElfSectionHeader;
+import com.facebook.buck.cxx.elf.ElfSymbolTable;
+import com.facebook.buck.model.Pair;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes "ar" archives, including the symbol index linkers use to pick members, without running
+ * the archiver tool.  Every member header gets the same timestamp, owner, group and mode that
+ * {@link ObjectFileScrubbers} would otherwise patch in after the fact, so the output is
+ * deterministic as written.
+ *
+ * Only ELF objects can be indexed.  {@link #index} gives up on any other input, in which case the
+ * archive has to be built by the archiver tool.
+ */
+public class ArchiveWriter {
+
+  /**
+   * The archive variants we know how to write.
+   */
+  public enum Format {
+
+    /**
+     * SysV/GNU archives, with a "/" (or "/SYM64/") symbol index and a "//" long name table.
+     */
+    GNU(ObjectFileScrubbers.PaddingStyle.LEFT),
+
+    /**
+     * BSD archives, with a "__.SYMDEF SORTED" symbol index and long names stored with each member.
+     */
+    BSD(ObjectFileScrubbers.PaddingStyle.RIGHT),
+    ;
+
+    private final ObjectFileScrubbers.PaddingStyle paddingStyle;
+
+    Format(ObjectFileScrubbers.PaddingStyle paddingStyle) {
+      this.paddingStyle = paddingStyle;
+    }
+
+  }
+
+  private static final int HEADER_SIZE = 60;
+  private static final int SHN_UNDEF = 0;
+  @SuppressWarnings("PMD.AvoidUsingOctalValues")
+  private static final int MEMBER_MODE = 0100644;
+  private static final long MAX_32_BIT_OFFSET = 0xffffffffL;
+  private static final String BSD_SYMBOL_TABLE_NAME = "__.SYMDEF SORTED";
+  private static final int BSD_SYMBOL_TABLE_NAME_SIZE = 20;
+
+  private final Format format;
+  private final boolean thin;
+  private final ImmutableList<Member> members;
+
+  private ArchiveWriter(Format format, boolean thin, ImmutableList<Member> members) {
+    this.format = format;
+    this.thin = thin;
+    this.members = members;
+  }
+
+  /**
+   * Reads the symbols defined by each input, in preparation to write them to an archive.
+   *
+   * @param output the absolute path of the archive, which thin archives refer to members from.
+   * @param inputs the absolute paths of the members, in the order they should be archived.
+   * @return the writer for the archive, or nothing if any of the inputs can't be indexed.
+   */
+  public static Optional<ArchiveWriter> index(
+      Format format,
+      boolean thin,
+      Path output,
+      ImmutableList<Path> inputs) throws IOException {
+    Preconditions.checkArgument(!thin || format == Format.GNU, "Only GNU archives can be thin.");
+    Preconditions.checkArgument(output.isAbsolute());
+
+    ImmutableList.Builder<Member> members = ImmutableList.builder();
+    for (Path input : inputs) {
+      Preconditions.checkArgument(input.isAbsolute());
+      Optional<ImmutableList<String>> symbols;
+      long size;
+      try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+        size = channel.size();
+        symbols = getDefinedSymbols(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+      }
+      if (!symbols.isPresent()) {
+        return Optional.empty();
+      }
+      String name = thin ?
+          output.getParent().relativize(input).toString().replace('\\', '/') :
+          input.getFileName().toString();
+      members.add(new Member(input, name, size, symbols.get()));
+    }
+    return Optional.of(new ArchiveWriter(format, thin, members.build()));
+  }
+
+  /**
+   * @return the global symbols defined by the given ELF object, or nothing if it isn't one we can
+   *     parse.
+   */
+  @VisibleForTesting
+  static Optional<ImmutableList<String>> getDefinedSymbols(ByteBuffer buffer) {
+    if (!Elf.isElf(buffer)) {
+      return Optional.empty();
+    }
+    try {
+      Elf elf = new Elf(buffer);
+      ImmutableList.Builder<String> symbols = ImmutableList.builder();
+      for (int index = 0; index < elf.getNumberOfSections(); index++) {
+        ElfSection section = elf.getSectionByIndex(index);
+        if (section.header.sh_type != ElfSectionHeader.SHType.SHT_SYMTAB) {
+          continue;
+        }
+        ByteBuffer stringTable = elf.getSectionByIndex((int) section.header.sh_link).body;
+        ElfSymbolTable table = ElfSymbolTable.parse(elf.header.ei_class, section.body);
+        for (ElfSymbolTable.Entry entry : table.entries) {
+          if (entry.st_shndx != SHN_UNDEF &&
+              entry.st_info.st_bind != ElfSymbolTable.Entry.Info.Bind.STB_LOCAL) {
+            symbols.add(getString(stringTable, (int) entry.st_name));
+          }
+        }
+      }
+      return Optional.of(symbols.build());
+    } catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+      // Either the object is malformed, or it uses ELF extensions we don't know about.
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Symbol names are just bytes, so we carry them around as ISO-8859-1 strings, which map every
+   * byte to a character and back.
+   */
+  private static String getString(ByteBuffer stringTable, int offset) {
+    int end = offset;
+    while (stringTable.get(end) != 0) {
+      end++;
+    }
+    byte[] bytes = new byte[end - offset];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = stringTable.get(offset + i);
+    }
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  public void write(OutputStream out) throws IOException {
+    if (members.isEmpty()) {
+      out.write(ObjectFileScrubbers.GLOBAL_HEADER);
+    } else if (format == Format.GNU) {
+      writeGnu(out);
+    } else {
+      writeBsd(out);
+    }
+  }
+
+  private void writeGnu(OutputStream out) throws IOException {
+    // Thin archives refer to members by path, which always goes to the long name table.
+    ByteArrayOutputStream longNames = new ByteArrayOutputStream();
+    List<String> headerNames = new ArrayList<>(members.size());
+    for (Member member : members) {
+      if (thin || member.name.length() > 15) {
+        headerNames.add("/" + longNames.size());
+        longNames.write((member.name + "/\n").getBytes(StandardCharsets.UTF_8));
+      } else {
+        headerNames.add(member.name + "/");
+      }
+    }
+
+    int symbolCount = 0;
+    long symbolNamesSize = 0;
+    for (Member member : members) {
+      symbolCount += member.symbols.size();
+      for (String symbol : member.symbols) {
+        symbolNamesSize += symbol.length() + 1;
+      }
+    }
+
+    // Offsets in the symbol table are 32-bit, unless the archive outgrows them.
+    boolean wide = false;
+    long symbolTableSize;
+    long[] offsets;
+    while (true) {
+      int wordSize = wide ? 8 : 4;
+      symbolTableSize = padToEven(wordSize * (1L + symbolCount) + symbolNamesSize);
+      long position = ObjectFileScrubbers.GLOBAL_HEADER.length;
+      if (symbolCount > 0) {
+        position += HEADER_SIZE + symbolTableSize;
+      }
+      if (longNames.size() > 0) {
+        position += HEADER_SIZE + padToEven(longNames.size());
+      }
+      offsets = getMemberOffsets(position);
+      if (wide || offsets[offsets.length - 1] <= MAX_32_BIT_OFFSET) {
+        break;
+      }
+      wide = true;
+    }
+
+    out.write(thin ? ObjectFileScrubbers.GLOBAL_THIN_HEADER : ObjectFileScrubbers.GLOBAL_HEADER);
+
+    // Like ar, leave out the symbol table when there's nothing in it.  It's padded with a NUL,
+    // which counts towards its size.
+    if (symbolCount > 0) {
+      writeHeader(out, wide ? "/SYM64/" : "/", symbolTableSize);
+      ByteBuffer symbolTable = ByteBuffer.allocate((int) symbolTableSize);
+      symbolTable.order(ByteOrder.BIG_ENDIAN);
+      putWord(symbolTable, wide, symbolCount);
+      for (int i = 0; i < members.size(); i++) {
+        for (int j = 0; j < members.get(i).symbols.size(); j++) {
+          putWord(symbolTable, wide, offsets[i]);
+        }
+      }
+      for (Member member : members) {
+        for (String symbol : member.symbols) {
+          symbolTable.put(symbol.getBytes(StandardCharsets.ISO_8859_1));
+          symbolTable.put((byte) 0);
+        }
+      }
+      out.write(symbolTable.array());
+    }
+
+    if (longNames.size() > 0) {
+      writeHeader(out, "//", longNames.size());
+      longNames.writeTo(out);
+      writePadding(out, longNames.size());
+    }
+
+    for (int i = 0; i < members.size(); i++) {
+      Member member = members.get(i);
+      writeHeader(out, headerNames.get(i), member.size);
+      if (!thin) {
+        Files.copy(member.path, out);
+        writePadding(out, member.size);
+      }
+    }
+  }
+
+  private void writeBsd(OutputStream out) throws IOException {
+    // Linkers binary search the symbol table, so it's sorted by name.  The sort is stable, so the
+    // first member defining a symbol still comes first.
+    List<Pair<String, Integer>> symbols = new ArrayList<>();
+    for (int i = 0; i < members.size(); i++) {
+      for (String symbol : members.get(i).symbols) {
+        symbols.add(new Pair<>(symbol, i));
+      }
+    }
+    symbols.sort(Comparator.comparing(Pair::getFirst));
+
+    ByteArrayOutputStream symbolNames = new ByteArrayOutputStream();
+    List<Integer> symbolNameOffsets = new ArrayList<>(symbols.size());
+    for (Pair<String, Integer> symbol : symbols) {
+      symbolNameOffsets.add(symbolNames.size());
+      symbolNames.write(symbol.getFirst().getBytes(StandardCharsets.ISO_8859_1));
+      symbolNames.write(0);
+    }
+    while (symbolNames.size() % 4 != 0) {
+      symbolNames.write(0);
+    }
+
+    int symbolTableSize =
+        BSD_SYMBOL_TABLE_NAME_SIZE + 4 + 8 * symbols.size() + 4 + symbolNames.size();
+    long[] offsets = getMemberOffsets(
+        ObjectFileScrubbers.GLOBAL_HEADER.length + HEADER_SIZE + symbolTableSize);
+    Preconditions.checkState(
+        offsets[offsets.length - 1] <= MAX_32_BIT_OFFSET,
+        "BSD archives with members past 4GB aren't supported.");
+
+    out.write(ObjectFileScrubbers.GLOBAL_HEADER);
+
+    writeHeader(out, "#1/" + BSD_SYMBOL_TABLE_NAME_SIZE, symbolTableSize);
+    ByteBuffer symbolTable = ByteBuffer.allocate(symbolTableSize);
+    symbolTable.order(ByteOrder.LITTLE_ENDIAN);
+    symbolTable.put(
+        Strings.padEnd(BSD_SYMBOL_TABLE_NAME, BSD_SYMBOL_TABLE_NAME_SIZE, '\0')
+            .getBytes(StandardCharsets.US_ASCII));
+    symbolTable.putInt(8 * symbols.size());
+    for (int i = 0; i < symbols.size(); i++) {
+      symbolTable.putInt(symbolNameOffsets.get(i));
+      symbolTable.putInt((int) offsets[symbols.get(i).getSecond()]);
+    }
+    symbolTable.putInt(symbolNames.size());
+    symbolTable.put(symbolNames.toByteArray());
+    out.write(symbolTable.array());
+
+    for (Member member : members) {
+      byte[] name = member.name.getBytes(StandardCharsets.UTF_8);
+      if (hasBsdLongName(member)) {
+        writeHeader(out, "#1/" + name.length, name.length + member.size);
+        out.write(name);
+      } else {
+        writeHeader(out, member.name, member.size);
+      }
+      Files.copy(member.path, out);
+      writePadding(out, getBsdDataSize(member));
+    }
+  }
+
+  private static boolean hasBsdLongName(Member member) {
+    return member.name.length() > 16 || member.name.contains(" ");
+  }
+
+  private static long getBsdDataSize(Member member) {
+    return hasBsdLongName(member) ?
+        member.name.getBytes(StandardCharsets.UTF_8).length + member.size :
+        member.size;
+  }
+
+  /**
+   * @return the offsets of the member headers, given where the first member starts.
+   */
+  private long[] getMemberOffsets(long position) {
+    long[] offsets = new long[members.size()];
+    for (int i = 0; i < members.size(); i++) {
+      offsets[i] = position;
+      position += HEADER_SIZE;
+      if (format == Format.BSD) {
+        position += padToEven(getBsdDataSize(members.get(i)));
+      } else if (!thin) {
+        position += padToEven(members.get(i).size);
+      }
+    }
+    return offsets;
+  }
+
+  private void writeHeader(OutputStream out, String name, long size) throws IOException {
+    String header =
+        Strings.padEnd(name, 16, ' ') +
+        pad(String.valueOf(ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP), 12) +
+        pad("0", 6) +
+        pad("0", 6) +
+        pad(String.format("0%o", MEMBER_MODE), 8) +
+        Strings.padEnd(String.valueOf(size), 10, ' ') +
+        "`\n";
+    Preconditions.checkState(header.length() == HEADER_SIZE, "Invalid member name %s", name);
+    out.write(header.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private String pad(String value, int length) {
+    return format.paddingStyle == ObjectFileScrubbers.PaddingStyle.LEFT ?
+        Strings.padStart(value, length, ' ') :
+        Strings.padEnd(value, length, ' ');
+  }
+
+  private static void writePadding(OutputStream out, long size) throws IOException {
+    if (size % 2 != 0) {
+      out.write('\n');
+    }
+  }
+
+  private static long padToEven(long size) {
+    return size + size % 2;
+  }
+
+  private static void putWord(ByteBuffer buffer, boolean wide, long value) {
+    if (wide) {
+      buffer.putLong(value);
+    } else {
+      buffer.putInt((int) value);
+    }
+  }
+
+  private static class Member {
+
+    private final Path path;
+    private final String name;
+    private final long size;
+    private final ImmutableList<String> symbols;
+
+    private Member(Path path, String name, long size, ImmutableList<String> symbols) {
+      this.path = path;
+      this.name = name;
+      this.size = size;
+      this.symbols = symbols;
+    }
+
+  }
+
+}
@@ -20,6 +20,8 @@ import com.facebook.buck.io.FileScrubber;
 import com.facebook.buck.rules.Tool;
 import com.google.common.collect.ImmutableList;
 
+import java.util.Optional;
+
 public interface Archiver extends Tool {
 
   ImmutableList<FileScrubber> getScrubbers();
@@ -31,4 +33,10 @@ public interface Archiver extends Tool {
   ImmutableList<String> outputArgs(String outputPath);
 
   boolean isRanLibStepRequired();
+
+  /**
+   * @return the format of the archives this archiver creates, if they can be written without
+   *     running it.
+   */
+  Optional<ArchiveWriter.Format> getArchiveFormat();
 }
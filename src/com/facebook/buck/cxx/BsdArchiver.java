@@ -32,6 +32,7 @@ import com.google.common.collect.ImmutableMap;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Optional;
 
 public class BsdArchiver implements Archiver {
 
@@ -150,6 +151,11 @@ public class BsdArchiver implements Archiver {
     return true;
   }
 
+  @Override
+  public Optional<ArchiveWriter.Format> getArchiveFormat() {
+    return Optional.of(ArchiveWriter.Format.BSD);
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return tool.getDeps(ruleFinder);
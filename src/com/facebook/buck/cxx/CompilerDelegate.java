@@ -22,6 +22,8 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 
 import java.util.Optional;
@@ -89,6 +91,19 @@ class CompilerDelegate implements RuleKeyAppendable {
     return compilerFlags;
   }
 
+  /**
+   * @return a delegate for the same compiler which leaves out the given flags.
+   */
+  public CompilerDelegate withoutFlags(ImmutableSet<String> flags) {
+    return new CompilerDelegate(
+        resolver,
+        sanitizer,
+        compiler,
+        CxxToolFlags.copyOf(
+            Iterables.filter(compilerFlags.getPlatformFlags(), flag -> !flags.contains(flag)),
+            Iterables.filter(compilerFlags.getRuleFlags(), flag -> !flags.contains(flag))));
+  }
+
   public ImmutableMap<String, String> getEnvironment() {
     return compiler.getEnvironment();
   }
@@ -162,6 +162,23 @@ public class CxxBinaryDescription implements
           cxxLinkAndCompileRules.compileRules);
     }
 
+    if (flavors.contains(CxxDwp.RULE_FLAVOR)) {
+      CxxLinkAndCompileRules cxxLinkAndCompileRules = CxxDescriptionEnhancer
+          .createBuildRulesForCxxBinaryDescriptionArg(
+              targetGraph,
+              params.withoutFlavor(CxxDwp.RULE_FLAVOR),
+              resolver,
+              cxxBuckConfig,
+              cxxPlatform,
+              args,
+              flavoredStripStyle,
+              flavoredLinkerMapMode);
+      return CxxDescriptionEnhancer.createCxxDwpRule(
+          params,
+          cxxLinkAndCompileRules.getCxxLink(),
+          cxxPlatform);
+    }
+
     if (flavors.contains(CxxCompilationDatabase.UBER_COMPILATION_DATABASE)) {
       return CxxDescriptionEnhancer.createUberCompilationDatabase(
           cxxPlatforms.getValue(flavors).isPresent() ?
@@ -322,6 +339,7 @@ public class CxxBinaryDescription implements
             CxxDescriptionEnhancer.HEADER_SYMLINK_TREE_FLAVOR,
             CxxCompilationDatabase.COMPILATION_DATABASE,
             CxxCompilationDatabase.UBER_COMPILATION_DATABASE,
+            CxxDwp.RULE_FLAVOR,
             CxxInferEnhancer.InferFlavors.INFER.get(),
             CxxInferEnhancer.InferFlavors.INFER_ANALYZE.get(),
             CxxInferEnhancer.InferFlavors.INFER_CAPTURE_ALL.get(),
@@ -25,6 +25,7 @@ import com.facebook.buck.rules.BuildRuleType;
 import com.facebook.buck.rules.RuleScheduleInfo;
 import com.facebook.buck.rules.Tool;
 import com.facebook.buck.rules.ToolProvider;
+import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.google.common.base.Preconditions;
@@ -276,6 +277,75 @@ public class CxxBuckConfig {
     return delegate.getBooleanValue(cxxSection, "sandbox_sources", false);
   }
 
+  /**
+   * @return whether to compile with {@code -gsplit-dwarf}, which leaves the debug info in a
+   *     {@code .dwo} file next to each object instead of copying it into every object and link.
+   */
+  public boolean shouldUseSplitDwarf() {
+    return delegate.getBooleanValue(cxxSection, "split_dwarf", false);
+  }
+
+  /**
+   * @return whether to compile to ThinLTO bitcode, and run the ThinLTO backend of each module of a
+   *     link as its own cacheable build rule ahead of a final native link.
+   */
+  public boolean shouldUseThinLto() {
+    return delegate.getBooleanValue(cxxSection, "thin_lto", false);
+  }
+
+  /**
+   * @return the number of sources that {@code cxx_library} rules compile together in each unity
+   *     translation unit.  The default of one disables unity builds.
+   */
+  public int getUnityBatchSize() {
+    int batchSize = delegate.getInteger(cxxSection, "unity_batch_size").orElse(1);
+    if (batchSize < 1) {
+      throw new HumanReadableException(
+          "%s.unity_batch_size must be at least 1, got %d",
+          cxxSection,
+          batchSize);
+    }
+    return batchSize;
+  }
+
+  /**
+   * @return whether {@code cxx_library} rules without a prefix or precompiled header should get a
+   *     precompiled header inferred from the headers their sources included in previous builds.
+   */
+  public boolean shouldInferPrecompiledHeaders() {
+    return delegate.getBooleanValue(cxxSection, "auto_pch", false);
+  }
+
+  /**
+   * @return the number of sources of a library which must share an inferred precompiled header
+   *     for it to be worth building.
+   */
+  public int getAutoPchMinSources() {
+    int minSources = delegate.getInteger(cxxSection, "auto_pch_min_sources").orElse(4);
+    if (minSources < 2) {
+      throw new HumanReadableException(
+          "%s.auto_pch_min_sources must be at least 2, got %d",
+          cxxSection,
+          minSources);
+    }
+    return minSources;
+  }
+
+  /**
+   * @return the fraction of the sources of a library which must include a header for it to be
+   *     part of an inferred precompiled header.
+   */
+  public float getAutoPchMinShare() {
+    float minShare = delegate.getFloat(cxxSection, "auto_pch_min_share").orElse(0.5f);
+    if (minShare <= 0 || minShare > 1) {
+      throw new HumanReadableException(
+          "%s.auto_pch_min_share must be more than 0 and at most 1, got %s",
+          cxxSection,
+          minShare);
+    }
+    return minShare;
+  }
+
   public Archive.Contents getArchiveContents() {
     return delegate.getEnum(
         cxxSection,
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.json.JsonConcatenate;
 import com.facebook.buck.log.Logger;
@@ -986,6 +987,65 @@ public class CxxDescriptionEnhancer {
     }
   }
 
+  /**
+   * Create a rule packaging the split DWARF debug info of every object linked into the given
+   * binary.
+   *
+   * @param params the params of the rule to create, flavored with {@link CxxDwp#RULE_FLAVOR}.
+   */
+  public static CxxDwp createCxxDwpRule(
+      BuildRuleParams params,
+      CxxLink cxxLink,
+      CxxPlatform cxxPlatform) {
+    if (!cxxPlatform.getSplitDwarf()) {
+      throw new HumanReadableException(
+          "%s: split DWARF must be enabled with cxx.split_dwarf to build a dwp package.",
+          params.getBuildTarget());
+    }
+    if (!cxxPlatform.getDwp().isPresent()) {
+      throw new HumanReadableException(
+          "%s: no dwp tool is configured for platform %s, set cxx.dwp.",
+          params.getBuildTarget(),
+          cxxPlatform.getFlavor());
+    }
+
+    // The objects are linked either directly or through archives. Anything else the link depends
+    // on, eg, shared libraries, carries its own debug info, so the traversal stops there.
+    final ImmutableSortedSet.Builder<CxxPreprocessAndCompile> compileRules =
+        ImmutableSortedSet.naturalOrder();
+    new AbstractBreadthFirstTraversal<BuildRule>(cxxLink.getDeps()) {
+      @Override
+      public Iterable<BuildRule> visit(BuildRule rule) {
+        if (rule instanceof CxxPreprocessAndCompile) {
+          CxxPreprocessAndCompile compileRule = (CxxPreprocessAndCompile) rule;
+          if (compileRule.getSplitDwarfOutput().isPresent()) {
+            compileRules.add(compileRule);
+          }
+        } else if (rule instanceof Archive) {
+          return rule.getDeps();
+        }
+        return ImmutableSet.of();
+      }
+    }.start();
+
+    ImmutableSortedSet<CxxPreprocessAndCompile> dwoRules = compileRules.build();
+    return new CxxDwp(
+        params.copyWithChanges(
+            params.getBuildTarget(),
+            Suppliers.ofInstance(ImmutableSortedSet.copyOf(dwoRules)),
+            Suppliers.ofInstance(ImmutableSortedSet.of())),
+        cxxPlatform.getDwp().get(),
+        dwoRules.stream()
+            .<SourcePath>map(rule -> new BuildTargetSourcePath(
+                rule.getBuildTarget(),
+                rule.getSplitDwarfOutput().get()))
+            .collect(MoreCollectors.toImmutableSortedSet()),
+        BuildTargets.getGenPath(
+            params.getProjectFilesystem(),
+            params.getBuildTarget(),
+            "%s.dwp"));
+  }
+
   /**
    * Create all build rules needed to generate the compilation database.
    *
@@ -1009,7 +1069,9 @@ public class CxxDescriptionEnhancer {
         cxxBuckConfig,
         cxxPlatform,
         CxxSourceRuleFactory.PicType.PIC,
-        arg);
+        arg,
+        // Tools reading the database expect an entry for each source, so don't batch them.
+        /* unityBatchSize */ 1);
     return CxxCompilationDatabase.createCompilationDatabase(
         params,
         objects.keySet());
@@ -1082,7 +1144,8 @@ public class CxxDescriptionEnhancer {
       CxxBuckConfig cxxBuckConfig,
       CxxPlatform cxxPlatform,
       CxxSourceRuleFactory.PicType pic,
-      CxxConstructorArg args) throws NoSuchBuildTargetException {
+      CxxConstructorArg args,
+      int unityBatchSize) throws NoSuchBuildTargetException {
     ImmutableMultimap<CxxSource.Type, String> exportedPreprocessorFlags;
     ImmutableMap<Path, SourcePath> exportedHeaders;
     boolean shouldCreatePrivateHeadersSymlinks = true;
@@ -1172,7 +1235,10 @@ public class CxxDescriptionEnhancer {
             cxxPlatform,
             args),
         pic,
-        sandboxTree);
+        sandboxTree,
+        unityBatchSize,
+        args instanceof CxxLibraryDescription.Arg &&
+            cxxBuckConfig.shouldInferPrecompiledHeaders());
   }
 
   public static Optional<SymlinkTree> createSandboxTree(
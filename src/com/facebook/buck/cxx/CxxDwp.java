@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.ImmutableFlavor;
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.Tool;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.file.Path;
+
+/**
+ * Packages the {@code .dwo} files written by split DWARF compilation of a binary's objects into a
+ * single {@code .dwp} file, so that the debug info can be shipped alongside the binary.
+ */
+public class CxxDwp extends AbstractBuildRule implements SupportsInputBasedRuleKey {
+
+  public static final Flavor RULE_FLAVOR = ImmutableFlavor.of("dwp");
+
+  @AddToRuleKey
+  private final Tool dwp;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> dwoFiles;
+  @AddToRuleKey(stringify = true)
+  private final Path output;
+
+  public CxxDwp(
+      BuildRuleParams buildRuleParams,
+      Tool dwp,
+      ImmutableSortedSet<SourcePath> dwoFiles,
+      Path output) {
+    super(buildRuleParams);
+    Preconditions.checkArgument(
+        buildRuleParams.getBuildTarget().getFlavors().contains(RULE_FLAVOR),
+        "CxxDwp rule %s should contain %s flavor", this, RULE_FLAVOR);
+    this.dwp = dwp;
+    this.dwoFiles = dwoFiles;
+    this.output = output;
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context, BuildableContext buildableContext) {
+    SourcePathResolver resolver = context.getSourcePathResolver();
+    buildableContext.recordArtifact(output);
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), output.getParent()),
+        new DwpStep(
+            getProjectFilesystem(),
+            dwp.getEnvironment(),
+            dwp.getCommandPrefix(resolver),
+            dwoFiles.stream()
+                .map(resolver::getRelativePath)
+                .collect(MoreCollectors.toImmutableList()),
+            output));
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return output;
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.immutables.value.Value;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out the files a source may include without running the preprocessor, by following its
+ * {@code #include}, {@code #include_next} and {@code #import} directives through the include
+ * search paths.
+ *
+ * <p>Conditional compilation isn't evaluated: the directives in every branch are followed, and
+ * every match of an include in the search paths is taken, so the result is a superset of what
+ * the preprocessor reads.  Includes which aren't found, e.g. system headers, are left out.
+ * Scanning gives up when an include is named by a macro, as there's no telling what it expands
+ * to.
+ */
+class CxxIncludeScanner {
+
+  private static final Logger LOG = Logger.get(CxxIncludeScanner.class);
+
+  private static final long MAX_SCANNED_FILES = 100_000;
+
+  private static final Pattern INCLUDE_DIRECTIVE =
+      Pattern.compile("^\\s*(?:include|include_next|import)\\b\\s*(.*)$");
+  private static final Pattern INCLUDE_OPERAND = Pattern.compile("^(?:\"([^\"]*)\"|<([^>]*)>)");
+
+  /**
+   * Files are parsed once, and parsed again only if they changed since, as the same headers are
+   * included by most of the sources of a build.
+   */
+  private final Cache<Path, ScannedFile> scannedFiles =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_SCANNED_FILES)
+          .build();
+
+  /**
+   * @param source the absolute path of the file to scan.
+   * @param quoteSearchPath directories searched for {@code "..."} includes only, after the
+   *     directory of the including file.
+   * @param searchPath directories searched for all includes.
+   * @return the absolute paths of the files the source may include, directly or not, as they were
+   *     found in the search paths, or nothing if that can't be worked out.
+   */
+  public Optional<ImmutableSet<Path>> scan(
+      Path source,
+      ImmutableList<Path> quoteSearchPath,
+      ImmutableList<Path> searchPath)
+      throws IOException {
+    Set<Path> includes = new LinkedHashSet<>();
+    Deque<Path> pending = new ArrayDeque<>();
+    pending.add(source);
+    while (!pending.isEmpty()) {
+      Path file = pending.remove();
+      Optional<ScannedFile> parsed = parse(file);
+      if (!parsed.isPresent()) {
+        continue;
+      }
+      if (parsed.get().hasComputedInclude()) {
+        LOG.verbose("%s includes a file named by a macro, giving up on scanning %s.", file, source);
+        return Optional.empty();
+      }
+      for (IncludeDirective include : parsed.get().getIncludes()) {
+        for (Path found : find(file, include, quoteSearchPath, searchPath)) {
+          if (!found.equals(source) && includes.add(found)) {
+            pending.add(found);
+          }
+        }
+      }
+    }
+    return Optional.of(ImmutableSet.copyOf(includes));
+  }
+
+  private static ImmutableList<Path> find(
+      Path includingFile,
+      IncludeDirective include,
+      ImmutableList<Path> quoteSearchPath,
+      ImmutableList<Path> searchPath) {
+    ImmutableList.Builder<Path> directories = ImmutableList.builder();
+    if (include.isQuoted()) {
+      directories.add(includingFile.getParent());
+      directories.addAll(quoteSearchPath);
+    }
+    directories.addAll(searchPath);
+
+    ImmutableList.Builder<Path> found = ImmutableList.builder();
+    for (Path directory : directories.build()) {
+      Path candidate = MorePaths.normalize(directory.resolve(include.getName()));
+      if (Files.isRegularFile(candidate)) {
+        found.add(candidate);
+      }
+    }
+    return found.build();
+  }
+
+  private Optional<ScannedFile> parse(Path file) throws IOException {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+    ScannedFile parsed = scannedFiles.getIfPresent(file);
+    if (parsed == null ||
+        !parsed.getLastModifiedTime().equals(attributes.lastModifiedTime()) ||
+        parsed.getSize() != attributes.size()) {
+      // Only the bytes of directives matter, so decode in a way that keeps every byte as is.
+      String contents = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+      parsed = parse(contents, attributes.lastModifiedTime(), attributes.size());
+      scannedFiles.put(file, parsed);
+    }
+    return Optional.of(parsed);
+  }
+
+  /**
+   * Pulls the include directives out of the given file contents, skipping comments and string
+   * literals and joining continued lines the way the preprocessor does.
+   */
+  @VisibleForTesting
+  static ScannedFile parse(String contents, FileTime lastModifiedTime, long size) {
+    ImmutableList.Builder<IncludeDirective> includes = ImmutableList.builder();
+    boolean computedInclude = false;
+
+    StringBuilder directive = new StringBuilder();
+    boolean atLineStart = true;
+    boolean inDirective = false;
+    int length = contents.length();
+    int i = 0;
+    while (i <= length) {
+      char c = i < length ? contents.charAt(i) : '\n';
+      char next = i + 1 < length ? contents.charAt(i + 1) : '\0';
+
+      if (c == '\\' && (next == '\n' || next == '\r')) {
+        i += next == '\r' && i + 2 < length && contents.charAt(i + 2) == '\n' ? 3 : 2;
+      } else if (c == '/' && next == '*') {
+        int end = contents.indexOf("*/", i + 2);
+        i = end == -1 ? length : end + 2;
+        if (inDirective) {
+          directive.append(' ');
+        }
+      } else if (c == '/' && next == '/') {
+        while (i < length && contents.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '\n') {
+        if (inDirective) {
+          Matcher matcher = INCLUDE_DIRECTIVE.matcher(directive);
+          if (matcher.matches()) {
+            Matcher operand = INCLUDE_OPERAND.matcher(matcher.group(1));
+            if (operand.find()) {
+              includes.add(
+                  operand.group(1) != null ?
+                      IncludeDirective.of(true, operand.group(1)) :
+                      IncludeDirective.of(false, operand.group(2)));
+            } else {
+              computedInclude = true;
+            }
+          }
+          directive.setLength(0);
+        }
+        atLineStart = true;
+        inDirective = false;
+        i++;
+      } else if (atLineStart && Character.isWhitespace(c)) {
+        i++;
+      } else if (atLineStart && c == '#') {
+        atLineStart = false;
+        inDirective = true;
+        i++;
+      } else if (inDirective && c == '<') {
+        // Header names in angle brackets aren't string literals, even when they contain quotes.
+        int end = contents.indexOf('>', i);
+        int endOfLine = contents.indexOf('\n', i);
+        end = end == -1 || (endOfLine != -1 && endOfLine < end) ? i : end;
+        directive.append(contents, i, end + 1);
+        atLineStart = false;
+        i = end + 1;
+      } else if (c == '"' || c == '\'') {
+        int end = skipLiteral(contents, i);
+        if (inDirective) {
+          directive.append(contents, i, end);
+        }
+        atLineStart = false;
+        i = end;
+      } else {
+        if (inDirective) {
+          directive.append(c);
+        }
+        atLineStart = false;
+        i++;
+      }
+    }
+
+    return ScannedFile.of(lastModifiedTime, size, includes.build(), computedInclude);
+  }
+
+  /**
+   * @return the index just past the string or character literal starting at {@code start}, or of
+   *     the end of its line if it isn't terminated.
+   */
+  private static int skipLiteral(String contents, int start) {
+    char quote = contents.charAt(start);
+    int i = start + 1;
+    while (i < contents.length()) {
+      char c = contents.charAt(i);
+      if (c == quote) {
+        return i + 1;
+      } else if (c == '\n') {
+        return i;
+      } else if (c == '\\' && i + 1 < contents.length()) {
+        i += 2;
+      } else {
+        i++;
+      }
+    }
+    return i;
+  }
+
+  @Value.Immutable
+  @BuckStyleTuple
+  interface AbstractIncludeDirective {
+    /**
+     * Whether the name is in quotes, as opposed to angle brackets.
+     */
+    boolean isQuoted();
+
+    String getName();
+  }
+
+  @Value.Immutable
+  @BuckStyleTuple
+  interface AbstractScannedFile {
+    FileTime getLastModifiedTime();
+
+    long getSize();
+
+    ImmutableList<IncludeDirective> getIncludes();
+
+    /**
+     * Whether the file includes something named by a macro.
+     */
+    boolean hasComputedInclude();
+  }
+}
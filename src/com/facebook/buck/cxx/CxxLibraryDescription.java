@@ -230,7 +230,8 @@ public class CxxLibraryDescription implements
             cxxBuckConfig,
             cxxPlatform,
             CxxSourceRuleFactory.PicType.PIC,
-            arg);
+            arg,
+            cxxBuckConfig.getUnityBatchSize());
 
     return NativeLinkableInput.builder()
         .addAllArgs(
@@ -282,7 +283,8 @@ public class CxxLibraryDescription implements
             cxxBuckConfig,
             cxxPlatform,
             CxxSourceRuleFactory.PicType.PIC,
-            args);
+            args,
+            cxxBuckConfig.getUnityBatchSize());
 
     // Setup the rules to link the shared library.
     BuildTarget sharedTarget =
@@ -450,7 +452,8 @@ public class CxxLibraryDescription implements
             cxxBuckConfig,
             cxxPlatform,
             pic,
-            args);
+            args,
+            cxxBuckConfig.getUnityBatchSize());
 
     // Write a build rule to create the archive for this C/C++ library.
     BuildTarget staticTarget =
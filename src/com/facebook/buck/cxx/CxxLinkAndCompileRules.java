@@ -43,6 +43,10 @@ public class CxxLinkAndCompileRules {
     this.deps = deps;
   }
 
+  CxxLink getCxxLink() {
+    return cxxLink;
+  }
+
   public BuildRule getBinaryRule() {
     if (cxxStrip.isPresent()) {
       return cxxStrip.get();
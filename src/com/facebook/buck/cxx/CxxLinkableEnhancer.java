@@ -19,14 +19,19 @@ package com.facebook.buck.cxx;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.model.ImmutableFlavor;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.args.HasSourcePath;
 import com.facebook.buck.rules.args.SanitizedArg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
@@ -46,6 +51,9 @@ import com.google.common.collect.Ordering;
 
 import java.nio.file.Path;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -57,6 +65,11 @@ public class CxxLinkableEnhancer {
       Linker.LinkType.MACH_O_BUNDLE
   );
 
+  private static final Arg WHOLE_ARCHIVE_ARG = new StringArg("-Wl,--whole-archive");
+  private static final Arg NO_WHOLE_ARCHIVE_ARG = new StringArg("-Wl,--no-whole-archive");
+  private static final Arg START_LIB_ARG = new StringArg("-Wl,--start-lib");
+  private static final Arg END_LIB_ARG = new StringArg("-Wl,--end-lib");
+
   // Utility class doesn't instantiate.
   private CxxLinkableEnhancer() {}
 
@@ -100,7 +113,16 @@ public class CxxLinkableEnhancer {
     }
     argsBuilder.addAll(StringArg.from(cxxPlatform.getRuntimeLdflags().get(runtimeDepType)));
 
-    final ImmutableList<Arg> allArgs = argsBuilder.build();
+    final ImmutableList<Arg> allArgs =
+        cxxPlatform.getThinLto() ?
+            createThinLtoRules(
+                params,
+                ruleResolver,
+                ruleFinder,
+                target,
+                linker,
+                argsBuilder.build()) :
+            argsBuilder.build();
 
     // Build the C/C++ link step.
     return new CxxLink(
@@ -121,6 +143,152 @@ public class CxxLinkableEnhancer {
         cxxBuckConfig.shouldCacheLinks());
   }
 
+  /**
+   * Splits the code generation of a ThinLTO link out of it.  A thin link writes an index for
+   * each bitcode module, then each module is compiled to native code by its own cacheable rule,
+   * and the link itself only sees native objects.
+   *
+   * Objects from static archives are passed straight to the linker between {@code --start-lib}
+   * and {@code --end-lib}, which keeps archive semantics while letting them be replaced by their
+   * native code.  When the modules of a link can't all be named relative to its cell, the linker
+   * is left to do the whole ThinLTO step in-process instead.
+   *
+   * @return the arguments of the final link.
+   */
+  private static ImmutableList<Arg> createThinLtoRules(
+      BuildRuleParams params,
+      BuildRuleResolver ruleResolver,
+      SourcePathRuleFinder ruleFinder,
+      BuildTarget target,
+      Linker linker,
+      ImmutableList<Arg> args) {
+    SourcePathResolver resolver = new SourcePathResolver(ruleFinder);
+
+    // Pass the objects of archives to the linker directly.  Archives linked as a whole become
+    // plain objects, the others become lazily loaded ones.
+    ImmutableList.Builder<Arg> expandedArgsBuilder = ImmutableList.builder();
+    boolean wholeArchive = false;
+    for (Arg arg : args) {
+      if (arg.equals(WHOLE_ARCHIVE_ARG)) {
+        wholeArchive = true;
+      } else if (arg.equals(NO_WHOLE_ARCHIVE_ARG)) {
+        wholeArchive = false;
+      }
+      Optional<Archive> archive = getRuleOfArg(ruleFinder, arg, Archive.class);
+      if (!archive.isPresent()) {
+        expandedArgsBuilder.add(arg);
+        continue;
+      }
+      if (!wholeArchive) {
+        expandedArgsBuilder.add(START_LIB_ARG);
+      }
+      expandedArgsBuilder.addAll(SourcePathArg.from(resolver, archive.get().getInputs()));
+      if (!wholeArchive) {
+        expandedArgsBuilder.add(END_LIB_ARG);
+      }
+    }
+    ImmutableList<Arg> expandedArgs = expandedArgsBuilder.build();
+
+    Map<SourcePath, CxxPreprocessAndCompile> modules = new LinkedHashMap<>();
+    for (Arg arg : expandedArgs) {
+      Optional<CxxPreprocessAndCompile> compile =
+          getRuleOfArg(ruleFinder, arg, CxxPreprocessAndCompile.class);
+      if (!compile.isPresent() || !compile.get().isThinLtoModule()) {
+        continue;
+      }
+      SourcePath module = ((HasSourcePath) arg).getPath();
+      if (!(module instanceof BuildTargetSourcePath) ||
+          !((BuildTargetSourcePath) module).getTarget().getCellPath()
+              .equals(target.getCellPath())) {
+        LOG.debug("%s: linking %s in-process, as module %s is in another cell", target, module);
+        return ImmutableList.<Arg>builder()
+            .addAll(args)
+            .add(new StringArg(CxxPreprocessAndCompile.THIN_LTO_FLAG))
+            .build();
+      }
+      modules.put(module, compile.get());
+    }
+    if (modules.isEmpty()) {
+      return args;
+    }
+
+    BuildTarget indexTarget = target.withAppendedFlavors(CxxThinLtoIndex.RULE_FLAVOR);
+    CxxThinLtoIndex index = ruleResolver.getRuleOptionalWithType(
+        indexTarget,
+        CxxThinLtoIndex.class).orElseGet(
+            () -> ruleResolver.addToIndex(
+                new CxxThinLtoIndex(
+                    params.copyWithChanges(
+                        indexTarget,
+                        () -> FluentIterable.from(expandedArgs)
+                            .transformAndConcat(arg -> arg.getDeps(ruleFinder))
+                            .append(linker.getDeps(ruleFinder))
+                            .toSortedSet(Ordering.natural()),
+                        Suppliers.ofInstance(ImmutableSortedSet.of())),
+                    linker,
+                    BuildTargets.getGenPath(params.getProjectFilesystem(), indexTarget, "%s"),
+                    expandedArgs)));
+
+    ImmutableSortedSet<SourcePath> linkModules = ImmutableSortedSet.copyOf(modules.keySet());
+    Map<SourcePath, SourcePath> nativeObjects = new HashMap<>();
+    for (Map.Entry<SourcePath, CxxPreprocessAndCompile> entry : modules.entrySet()) {
+      Path modulePath = resolver.getRelativePath(entry.getKey());
+      BuildTarget backendTarget = target.withAppendedFlavors(
+          ImmutableFlavor.of(
+              "thinlto-" + CxxFlavorSanitizer.sanitize(modulePath.toString())));
+      // Code generation happens here now, so this is where the debug info gets written.
+      CompilerDelegate compilerDelegate = entry.getValue().getCompilerDelegate().withoutFlags(
+          ImmutableSet.of(
+              CxxPreprocessAndCompile.THIN_LTO_FLAG,
+              CxxPreprocessAndCompile.SPLIT_DWARF_FLAG));
+      CxxThinLtoBackend backend = ruleResolver.getRuleOptionalWithType(
+          backendTarget,
+          CxxThinLtoBackend.class).orElseGet(
+              () -> ruleResolver.addToIndex(
+                  new CxxThinLtoBackend(
+                      params.copyWithChanges(
+                          backendTarget,
+                          () -> ImmutableSortedSet.<BuildRule>naturalOrder()
+                              .add(index)
+                              .addAll(modules.values())
+                              .addAll(compilerDelegate.getCompiler().getDeps(ruleFinder))
+                              .build(),
+                          Suppliers.ofInstance(ImmutableSortedSet.of())),
+                      compilerDelegate,
+                      entry.getKey(),
+                      new BuildTargetSourcePath(indexTarget, index.getIndexPath(modulePath)),
+                      new BuildTargetSourcePath(indexTarget, index.getImportsPath(modulePath)),
+                      linkModules,
+                      BuildTargets.getGenPath(
+                          params.getProjectFilesystem(),
+                          backendTarget,
+                          "%s.o"))));
+      nativeObjects.put(entry.getKey(), new BuildTargetSourcePath(backend.getBuildTarget()));
+    }
+
+    ImmutableList.Builder<Arg> linkArgs = ImmutableList.builder();
+    for (Arg arg : expandedArgs) {
+      SourcePath nativeObject =
+          arg instanceof HasSourcePath ?
+              nativeObjects.get(((HasSourcePath) arg).getPath()) :
+              null;
+      linkArgs.add(nativeObject == null ? arg : new SourcePathArg(resolver, nativeObject));
+    }
+    return linkArgs.build();
+  }
+
+  private static <T extends BuildRule> Optional<T> getRuleOfArg(
+      SourcePathRuleFinder ruleFinder,
+      Arg arg,
+      Class<T> ruleClass) {
+    if (!(arg instanceof HasSourcePath)) {
+      return Optional.empty();
+    }
+    return ruleFinder.getRule(((HasSourcePath) arg).getPath())
+        .filter(ruleClass::isInstance)
+        .map(ruleClass::cast);
+  }
+
   /**
    * Construct a {@link CxxLink} rule that builds a native linkable from top-level input objects
    * and a dependency tree of {@link NativeLinkable} dependencies.
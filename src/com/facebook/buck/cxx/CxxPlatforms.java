@@ -121,6 +121,15 @@ public class CxxPlatforms {
                 .orElse(arDelegate)))
         .setRanlib(new LazyDelegatingTool(() -> getTool("ranlib", config).orElse(ranlib)))
         .setStrip(getTool("strip", config).orElse(strip))
+        // Split DWARF is an ELF feature.
+        .setSplitDwarf(
+            config.shouldUseSplitDwarf() &&
+                (platform == Platform.LINUX || platform == Platform.FREEBSD))
+        .setDwp(getTool("dwp", config))
+        // The distributed ThinLTO pipeline relies on ELF linker options.
+        .setThinLto(
+            config.shouldUseThinLto() &&
+                (platform == Platform.LINUX || platform == Platform.FREEBSD))
         .setSharedLibraryExtension(sharedLibraryExtension)
         .setSharedLibraryVersionedExtensionFormat(sharedLibraryVersionedExtensionFormat)
         .setStaticLibraryExtension(staticLibraryExtension)
@@ -230,6 +230,7 @@ public class CxxPrecompiledHeader
         getProjectFilesystem(),
         CxxPreprocessAndCompileStep.Operation.GENERATE_PCH,
         resolver.getRelativePath(getSourcePathToOutput()),
+        Optional.empty(),
         getDepFilePath(resolver),
         // TODO(10194465): This uses relative path so as to get relative paths in the dep file
         resolver.getRelativePath(input),
@@ -37,6 +37,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -50,6 +51,23 @@ public class CxxPreprocessAndCompile
     extends AbstractBuildRule
     implements SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey {
 
+  /**
+   * Compiler flag which moves most of the debug info out of the object file and into a
+   * {@code .dwo} file next to it.
+   */
+  static final String SPLIT_DWARF_FLAG = "-gsplit-dwarf";
+
+  /**
+   * Compiler flag which makes the compiler write LLVM bitcode with a ThinLTO summary instead of
+   * native code, leaving code generation to the link.
+   */
+  static final String THIN_LTO_FLAG = "-flto=thin";
+
+  /**
+   * Shared by every compile rule, so that each header is only scanned once across the build.
+   */
+  private static final CxxIncludeScanner INCLUDE_SCANNER = new CxxIncludeScanner();
+
   @AddToRuleKey
   private final CxxPreprocessAndCompileStep.Operation operation;
   @AddToRuleKey
@@ -190,6 +208,35 @@ public class CxxPreprocessAndCompile
     return output.getFileSystem().getPath(output.toString() + ".dep");
   }
 
+  /**
+   * @return the {@code .dwo} file holding the debug info split out of the object file, if the
+   *     compiler was asked to produce one.
+   */
+  public Optional<Path> getSplitDwarfOutput() {
+    if (!operation.isCompile() ||
+        !Iterables.contains(compilerDelegate.getCompilerFlags().getAllFlags(), SPLIT_DWARF_FLAG)) {
+      return Optional.empty();
+    }
+    // The compiler replaces the last extension of the object file, so "foo.c.o" gets a
+    // "foo.c.dwo".
+    String name = output.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    return Optional.of(
+        output.resolveSibling((dot == -1 ? name : name.substring(0, dot)) + ".dwo"));
+  }
+
+  /**
+   * @return whether this rule writes a ThinLTO bitcode module rather than a native object file.
+   */
+  public boolean isThinLtoModule() {
+    return operation.isCompile() &&
+        Iterables.contains(compilerDelegate.getCompilerFlags().getAllFlags(), THIN_LTO_FLAG);
+  }
+
+  CompilerDelegate getCompilerDelegate() {
+    return compilerDelegate;
+  }
+
   @VisibleForTesting
   CxxPreprocessAndCompileStep makeMainStep(
       SourcePathResolver resolver, Path scratchDir, boolean useArgfile) {
@@ -237,6 +284,7 @@ public class CxxPreprocessAndCompile
         getProjectFilesystem(),
         operation,
         output,
+        getSplitDwarfOutput(),
         getDepFilePath(),
         getRelativeInputPathIfPossible(resolver),
         inputType,
@@ -270,6 +318,10 @@ public class CxxPreprocessAndCompile
       BuildContext context,
       BuildableContext buildableContext) {
     buildableContext.recordArtifact(output);
+    Optional<Path> splitDwarfOutput = getSplitDwarfOutput();
+    if (splitDwarfOutput.isPresent()) {
+      buildableContext.recordArtifact(splitDwarfOutput.get());
+    }
     return ImmutableList.of(
         new MkdirStep(getProjectFilesystem(), output.getParent()),
         new MakeCleanDirectoryStep(getProjectFilesystem(), getScratchPath()),
@@ -335,6 +387,22 @@ public class CxxPreprocessAndCompile
     return (SourcePath path) -> false;
   }
 
+  /**
+   * Rules out the headers that neither the input nor the prefix or precompiled header can reach
+   * through their include directives.
+   */
+  @Override
+  public Predicate<SourcePath> getPossibleInputsPredicate() throws IOException {
+    if (!preprocessDelegate.isPresent()) {
+      return (SourcePath path) -> true;
+    }
+    ImmutableList.Builder<SourcePath> sources = ImmutableList.builder();
+    sources.add(input);
+    preprocessDelegate.get().getPrefixHeader().ifPresent(sources::add);
+    precompiledHeaderRule.ifPresent(pch -> sources.add(pch.getInput()));
+    return preprocessDelegate.get().getPossibleInputsPredicate(INCLUDE_SCANNER, sources.build());
+  }
+
   @Override
   public ImmutableList<SourcePath> getInputsAfterBuildingLocally(BuildContext context)
       throws IOException {
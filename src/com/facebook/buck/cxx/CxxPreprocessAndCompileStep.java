@@ -23,7 +23,6 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.Console;
-import com.facebook.buck.util.DefaultProcessExecutor;
 import com.facebook.buck.util.Escaper;
 import com.facebook.buck.util.LineProcessorRunnable;
 import com.facebook.buck.util.MoreThrowables;
@@ -56,6 +55,10 @@ public class CxxPreprocessAndCompileStep implements Step {
   private final ProjectFilesystem filesystem;
   private final Operation operation;
   private final Path output;
+  /**
+   * The {@code .dwo} file the compiler writes next to the object, when using split DWARF.
+   */
+  private final Optional<Path> splitDwarfOutput;
   private final Path depFile;
   private final Path input;
   private final CxxSource.Type inputType;
@@ -79,6 +82,7 @@ public class CxxPreprocessAndCompileStep implements Step {
       ProjectFilesystem filesystem,
       Operation operation,
       Path output,
+      Optional<Path> splitDwarfOutput,
       Path depFile,
       Path input,
       CxxSource.Type inputType,
@@ -96,6 +100,7 @@ public class CxxPreprocessAndCompileStep implements Step {
     this.filesystem = filesystem;
     this.operation = operation;
     this.output = output;
+    this.splitDwarfOutput = splitDwarfOutput;
     this.depFile = depFile;
     this.input = input;
     this.inputType = inputType;
@@ -221,7 +226,9 @@ public class CxxPreprocessAndCompileStep implements Step {
         getDescription(context));
 
     // Start the process.
-    ProcessExecutor executor = new DefaultProcessExecutor(Console.createNullConsole());
+    Console nullConsole = Console.createNullConsole();
+    ProcessExecutor executor = context.getProcessExecutor()
+        .cloneWithOutputStreams(nullConsole.getStdOut(), nullConsole.getStdErr());
     ProcessExecutor.LaunchedProcess process = executor.launchProcess(params);
 
     // We buffer error messages in memory, as these are typically small.
@@ -284,8 +291,20 @@ public class CxxPreprocessAndCompileStep implements Step {
     try {
       LOG.debug("%s %s -> %s", operation.toString().toLowerCase(), input, output);
 
+      // Compilers don't write a .dwo file when there's no debug info to put in it, but the rule
+      // always records one, so leave an empty file in its place.  `dwp` skips those.
+      if (splitDwarfOutput.isPresent()) {
+        filesystem.deleteFileAtPathIfExists(splitDwarfOutput.get());
+      }
+
       int exitCode = executeCompilation(context);
 
+      if (exitCode == 0 &&
+          splitDwarfOutput.isPresent() &&
+          !filesystem.exists(splitDwarfOutput.get())) {
+        filesystem.writeContentsToPath("", splitDwarfOutput.get());
+      }
+
       // If the compilation completed successfully and we didn't effect debug-info normalization
       // through #line directive modification, perform the in-place update of the compilation per
       // above.  This locates the relevant debug section and swaps out the expanded actual
@@ -297,6 +316,12 @@ public class CxxPreprocessAndCompileStep implements Step {
               path,
               filesystem.getRootPath().toAbsolutePath());
           FILE_LAST_MODIFIED_DATE_SCRUBBER.scrubFileWithPath(path);
+          // The split out debug info records the compilation directory too.
+          if (splitDwarfOutput.isPresent() && filesystem.getFileSize(splitDwarfOutput.get()) > 0) {
+            getSanitizer().restoreCompilationDirectory(
+                filesystem.getRootPath().toAbsolutePath().resolve(splitDwarfOutput.get()),
+                filesystem.getRootPath().toAbsolutePath());
+          }
         } catch (IOException e) {
           context.logError(e, "error updating compilation directory");
           return StepExecutionResult.ERROR;
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+/**
+ * Compiles one bitcode module of a distributed ThinLTO link to native code, using the index
+ * written for it by {@link CxxThinLtoIndex}.
+ *
+ * Every module of the link is in the rule key, but only through the dependency file: the imports
+ * file written by the thin link says which modules the backend reads.  Changing a module only
+ * rebuilds the backends which import from it, as long as the indexes they get don't change.
+ */
+public class CxxThinLtoBackend
+    extends AbstractBuildRule
+    implements SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey {
+
+  @AddToRuleKey
+  private final CompilerDelegate compilerDelegate;
+  @AddToRuleKey
+  private final SourcePath module;
+  @AddToRuleKey
+  private final SourcePath index;
+  @AddToRuleKey
+  private final SourcePath imports;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> linkModules;
+  @AddToRuleKey(stringify = true)
+  private final Path output;
+
+  public CxxThinLtoBackend(
+      BuildRuleParams params,
+      CompilerDelegate compilerDelegate,
+      SourcePath module,
+      SourcePath index,
+      SourcePath imports,
+      ImmutableSortedSet<SourcePath> linkModules,
+      Path output) {
+    super(params);
+    this.compilerDelegate = compilerDelegate;
+    this.module = module;
+    this.index = index;
+    this.imports = imports;
+    this.linkModules = linkModules;
+    this.output = output;
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    SourcePathResolver resolver = context.getSourcePathResolver();
+    buildableContext.recordArtifact(output);
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), output.getParent()),
+        new CxxThinLtoBackendStep(
+            getProjectFilesystem(),
+            compilerDelegate.getEnvironment(),
+            compilerDelegate.getCommand(CxxToolFlags.of()),
+            resolver.getRelativePath(module),
+            resolver.getRelativePath(index),
+            output));
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return output;
+  }
+
+  public SourcePath getModule() {
+    return module;
+  }
+
+  @Override
+  public boolean useDependencyFileRuleKeys() {
+    return true;
+  }
+
+  @Override
+  public Predicate<SourcePath> getCoveredByDepFilePredicate() {
+    return path -> !path.equals(module) && linkModules.contains(path);
+  }
+
+  @Override
+  public Predicate<SourcePath> getExistenceOfInterestPredicate() {
+    return path -> false;
+  }
+
+  @Override
+  public ImmutableList<SourcePath> getInputsAfterBuildingLocally(BuildContext context)
+      throws IOException {
+    SourcePathResolver resolver = context.getSourcePathResolver();
+
+    // The imports file names the modules with the paths they were passed to the linker with.
+    ImmutableMap.Builder<String, SourcePath> modulesByPath = ImmutableMap.builder();
+    for (SourcePath linkModule : linkModules) {
+      modulesByPath.put(resolver.getRelativePath(linkModule).toString(), linkModule);
+    }
+    ImmutableMap<String, SourcePath> modules = modulesByPath.build();
+
+    ImmutableSortedSet.Builder<SourcePath> inputs = ImmutableSortedSet.naturalOrder();
+    inputs.add(module, index, imports);
+    for (String line : getProjectFilesystem().readLines(resolver.getRelativePath(imports))) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      SourcePath imported = modules.get(line.trim());
+      if (imported == null) {
+        throw new IOException(
+            String.format(
+                "%s: imports module %s which is not part of the link", getBuildTarget(), line));
+      }
+      inputs.add(imported);
+    }
+    return inputs.build().asList();
+  }
+}
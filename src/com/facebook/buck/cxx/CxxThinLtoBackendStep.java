@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.shell.ShellStep;
+import com.facebook.buck.step.ExecutionContext;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Compile a ThinLTO bitcode module to native code, importing functions from other modules as
+ * told by the index the thin link wrote for it.
+ */
+public class CxxThinLtoBackendStep extends ShellStep {
+
+  private final ProjectFilesystem filesystem;
+  private final ImmutableMap<String, String> environment;
+  private final ImmutableList<String> compilerCommand;
+  private final Path module;
+  private final Path index;
+  private final Path output;
+
+  public CxxThinLtoBackendStep(
+      ProjectFilesystem filesystem,
+      ImmutableMap<String, String> environment,
+      ImmutableList<String> compilerCommand,
+      Path module,
+      Path index,
+      Path output) {
+    super(filesystem.getRootPath());
+    this.filesystem = filesystem;
+    this.environment = environment;
+    this.compilerCommand = compilerCommand;
+    this.module = module;
+    this.index = index;
+    this.output = output;
+  }
+
+  @Override
+  protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
+    ImmutableList.Builder<String> command = ImmutableList.<String>builder()
+        .addAll(compilerCommand)
+        .add("-c")
+        .add("-x", "ir")
+        .add(module.toString());
+    // The linker leaves an empty index for archive members it didn't load, which the compiler
+    // would reject.  Nothing links against those, so they are compiled on their own.
+    try {
+      if (filesystem.getFileSize(index) > 0) {
+        command.add("-fthinlto-index=" + index);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return command
+        .add("-o", output.toString())
+        .build();
+  }
+
+  @Override
+  public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
+    return environment;
+  }
+
+  @Override
+  public String getShortName() {
+    return "thinlto backend";
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.ImmutableFlavor;
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.args.StringArg;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.LogContentsOfFileStep;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.Path;
+import java.util.logging.Level;
+
+/**
+ * The thin link of a distributed ThinLTO build.  It runs the linker over the summaries of the
+ * bitcode modules of a link, without generating any code, and writes a module index next to the
+ * path of each module under its output directory: {@code <module>.thinlto.bc} tells the backend
+ * which functions to import into that module, and {@code <module>.imports} lists the modules they
+ * come from.  The modules are then compiled to native code independently by
+ * {@link CxxThinLtoBackend} rules.
+ */
+public class CxxThinLtoIndex extends AbstractBuildRule implements SupportsInputBasedRuleKey {
+
+  public static final Flavor RULE_FLAVOR = ImmutableFlavor.of("thinlto-index");
+
+  @AddToRuleKey
+  private final Linker linker;
+  @AddToRuleKey(stringify = true)
+  private final Path outputDir;
+  @AddToRuleKey
+  private final ImmutableList<Arg> args;
+
+  public CxxThinLtoIndex(
+      BuildRuleParams params,
+      Linker linker,
+      Path outputDir,
+      ImmutableList<Arg> args) {
+    super(params);
+    Preconditions.checkArgument(
+        params.getBuildTarget().getFlavors().contains(RULE_FLAVOR),
+        "CxxThinLtoIndex rule %s should contain %s flavor", this, RULE_FLAVOR);
+    this.linker = linker;
+    this.outputDir = outputDir;
+    this.args = args;
+  }
+
+  /**
+   * @return the path of the index written for a module, given the path the module was passed to
+   *     the linker with.
+   */
+  public Path getIndexPath(Path module) {
+    return outputDir.resolve(module + ".thinlto.bc");
+  }
+
+  /**
+   * @return the path of the list of modules a module imports from, given the path the module was
+   *     passed to the linker with.
+   */
+  public Path getImportsPath(Path module) {
+    return outputDir.resolve(module + ".imports");
+  }
+
+  private ImmutableList<Arg> getIndexArgs() {
+    // The modules are passed to the linker with paths relative to the cell root, so replacing the
+    // empty prefix puts their indexes under the output directory.
+    return ImmutableList.<Arg>builder()
+        .addAll(args)
+        .addAll(
+            StringArg.from(
+                CxxPreprocessAndCompile.THIN_LTO_FLAG,
+                "-Wl,-plugin-opt,thinlto-index-only",
+                "-Wl,-plugin-opt,thinlto-emit-imports-files",
+                "-Wl,-plugin-opt,thinlto-prefix-replace=;" + outputDir + "/"))
+        .build();
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    buildableContext.recordArtifact(outputDir);
+    Path scratchDir =
+        BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "%s-tmp");
+    Path argFilePath = getProjectFilesystem().getRootPath().resolve(
+        BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "%s.argsfile"));
+    Path fileListPath = getProjectFilesystem().getRootPath().resolve(
+        BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "%s__filelist.txt"));
+
+    return ImmutableList.of(
+        new MakeCleanDirectoryStep(getProjectFilesystem(), outputDir),
+        new MakeCleanDirectoryStep(getProjectFilesystem(), scratchDir),
+        new RmStep(getProjectFilesystem(), argFilePath),
+        CxxPrepareForLinkStep.create(
+            argFilePath,
+            fileListPath,
+            // The modules have to be passed in order, so never hide them in a file list.
+            ImmutableList.of(),
+            // Nothing is written here, as the linker stops once the indexes are written.
+            outputDir.resolve("index-only"),
+            getIndexArgs(),
+            linker,
+            getBuildTarget().getCellPath(),
+            context.getSourcePathResolver()),
+        new CxxLinkStep(
+            getProjectFilesystem().getRootPath(),
+            linker.getEnvironment(),
+            linker.getCommandPrefix(context.getSourcePathResolver()),
+            argFilePath,
+            getProjectFilesystem().getRootPath().resolve(scratchDir)),
+        new LogContentsOfFileStep(getProjectFilesystem().resolve(argFilePath), Level.FINEST),
+        new RmStep(getProjectFilesystem(), argFilePath),
+        new RmStep(getProjectFilesystem(), scratchDir, RmStep.Mode.RECURSIVE));
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return outputDir;
+  }
+}
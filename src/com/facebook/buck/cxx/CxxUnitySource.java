@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.WriteFileStep;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.Path;
+
+/**
+ * Generates a unity translation unit, i.e. a source file which just includes each of the given
+ * sources in order, so that they can be compiled with a single compiler invocation.  Inferred
+ * precompiled headers are generated the same way from the headers they are made of.
+ */
+public class CxxUnitySource extends AbstractBuildRule {
+
+  @AddToRuleKey
+  private final ImmutableList<SourcePath> sources;
+  @AddToRuleKey(stringify = true)
+  private final Path output;
+
+  public CxxUnitySource(
+      BuildRuleParams params,
+      ImmutableList<SourcePath> sources,
+      Path output) {
+    super(params);
+    Preconditions.checkArgument(!sources.isEmpty());
+    this.sources = sources;
+    this.output = output;
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    buildableContext.recordArtifact(output);
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), output.getParent()),
+        new WriteFileStep(
+            getProjectFilesystem(),
+            getContents(context.getSourcePathResolver()),
+            output,
+            /* executable */ false));
+  }
+
+  /**
+   * Sources are included relative to the generated file, so that the output doesn't depend on
+   * where the project lives and that the compiler resolves them without any extra search paths.
+   */
+  @VisibleForTesting
+  String getContents(SourcePathResolver resolver) {
+    Path outputDir = getProjectFilesystem().resolve(output).getParent();
+    StringBuilder contents = new StringBuilder();
+    for (SourcePath source : sources) {
+      Path includePath = outputDir.relativize(resolver.getAbsolutePath(source));
+      contents
+          .append("#include \"")
+          .append(includePath.toString().replace('\\', '/'))
+          .append("\"\n");
+    }
+    return contents.toString();
+  }
+
+  public ImmutableList<SourcePath> getSources() {
+    return sources;
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return output;
+  }
+}
@@ -39,6 +39,10 @@ public class DebugSectionFinder {
           .put(".zdebug_str", ImmutableSet.of(STRINGS, COMPRESSED))
           .put(".zdebug_line", ImmutableSet.of(STRINGS, COMPRESSED))
           .put(".zdebug_info", ImmutableSet.of(STRINGS, COMPRESSED))
+          // Split DWARF sections, found in .dwo files
+          .put(".debug_str.dwo", ImmutableSet.of(STRINGS))
+          .put(".debug_line.dwo", ImmutableSet.of(STRINGS))
+          .put(".debug_info.dwo", ImmutableSet.of(STRINGS))
           // STABS sections
           .put(".stabstr", ImmutableSet.of(STRINGS))
           .build();
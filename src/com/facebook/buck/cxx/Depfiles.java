@@ -29,12 +29,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -58,110 +58,122 @@ public class Depfiles {
       ADD_PREREQ
   }
 
-  private static final String WHITESPACE_CHARS = " \n\r\t";
-  private static final String ESCAPED_TARGET_CHARS = ": #";
-  private static final String ESCAPED_PREREQ_CHARS = " #";
-
   /**
    * Parses the input as a .d Makefile as emitted by {@code gcc -MD}
    * and returns the (target, [dep, dep2, ...]) inside.
    */
   public static Depfile parseDepfile(Readable readable) throws IOException {
+    StringBuilder contents = new StringBuilder();
+    CharBuffer buffer = CharBuffer.allocate(4096);
+    while (readable.read(buffer) != -1) {
+      buffer.flip();
+      contents.append(buffer);
+      buffer.clear();
+    }
+    return parseDepfile(ByteBuffer.wrap(contents.toString().getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Parses the UTF-8 encoded contents of a .d Makefile as emitted by {@code gcc -MD} and returns
+   * the (target, [dep, dep2, ...]) inside.
+   *
+   * All the characters with a special meaning are ASCII, so the parser works on the raw bytes and
+   * only decodes the identifiers it finds.
+   */
+  public static Depfile parseDepfile(ByteBuffer buffer) throws IOException {
     String target = null;
     ImmutableList.Builder<String> prereqsBuilder = ImmutableList.builder();
     State state = State.LOOKING_FOR_TARGET;
-    StringBuilder identifierBuilder = new StringBuilder();
-
-    CharBuffer buffer = CharBuffer.allocate(4096);
+    byte[] identifier = new byte[256];
+    int identifierLength = 0;
     int numBackslashes = 0;
 
-    while (readable.read(buffer) != -1) {
-      buffer.flip();
+    while (buffer.hasRemaining()) {
+      byte c = buffer.get();
+      Action action = Action.NONE;
+      boolean isBackslash = c == '\\';
+      boolean isCarriageReturn = c == '\r';
+      boolean isNewline = c == '\n';
+      boolean isWhitespace = c == ' ' || c == '\t' || isNewline || isCarriageReturn;
+      boolean inIdentifier = identifierLength > 0;
+      boolean isEscaped = c == ' ' || c == '#' || (state == State.LOOKING_FOR_TARGET && c == ':');
 
-      while (buffer.hasRemaining()) {
-        char c = buffer.get();
-        Action action = Action.NONE;
-        boolean isBackslash = c == '\\';
-        boolean isCarriageReturn = c == '\r';
-        boolean isNewline = c == '\n';
-        boolean isWhitespace = WHITESPACE_CHARS.indexOf(c) != -1;
-        boolean inIdentifier = identifierBuilder.length() > 0;
-        boolean isEscaped;
-        if (state == State.LOOKING_FOR_TARGET) {
-          isEscaped = ESCAPED_TARGET_CHARS.indexOf(c) != -1;
-        } else {
-          isEscaped = ESCAPED_PREREQ_CHARS.indexOf(c) != -1;
+      if (isBackslash) {
+        // We need to count the number of backslashes in case the
+        // first non-backslash is an escaped character.
+        numBackslashes++;
+      } else if (numBackslashes > 0 && isEscaped) {
+        // Consume one backslash to escape the special char.
+        numBackslashes--;
+        if (inIdentifier) {
+          action = Action.APPEND_TO_IDENTIFIER;
         }
-
-        if (isBackslash) {
-          // We need to count the number of backslashes in case the
-          // first non-backslash is an escaped character.
-          numBackslashes++;
-        } else if (numBackslashes > 0 && isEscaped) {
-          // Consume one backslash to escape the special char.
-          numBackslashes--;
-          if (inIdentifier) {
-            action = Action.APPEND_TO_IDENTIFIER;
+      } else if (isWhitespace) {
+        if (numBackslashes == 0) {
+          if (state == State.FOUND_TARGET && inIdentifier) {
+            action = Action.ADD_PREREQ;
           }
-        } else if (isWhitespace) {
-          if (numBackslashes == 0) {
-            if (state == State.FOUND_TARGET && inIdentifier) {
-              action = Action.ADD_PREREQ;
-            }
-            if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
-              state = State.LOOKING_FOR_TARGET;
-            }
-          } else if (isNewline) {
-            // Consume one backslash to escape \n or \r\n.
-            numBackslashes--;
-          } else if (!isCarriageReturn) {
-            action = Action.APPEND_TO_IDENTIFIER;
+          if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
+            state = State.LOOKING_FOR_TARGET;
           }
-        } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
-          state = State.FOUND_TARGET;
-          action = Action.SET_TARGET;
-        } else {
+        } else if (isNewline) {
+          // Consume one backslash to escape \n or \r\n.
+          numBackslashes--;
+        } else if (!isCarriageReturn) {
           action = Action.APPEND_TO_IDENTIFIER;
         }
+      } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
+        state = State.FOUND_TARGET;
+        action = Action.SET_TARGET;
+      } else {
+        action = Action.APPEND_TO_IDENTIFIER;
+      }
 
-        if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
-          int numBackslashesToAppend;
-          if (isEscaped || isWhitespace) {
-            // Backslashes escape themselves before an escaped character or whitespace.
-            numBackslashesToAppend = numBackslashes / 2;
-          } else {
-            // Backslashes are literal before a non-escaped character.
-            numBackslashesToAppend = numBackslashes;
-          }
-
-          for (int i = 0; i < numBackslashesToAppend; i++) {
-            identifierBuilder.append('\\');
-          }
-          numBackslashes = 0;
+      if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
+        int numBackslashesToAppend;
+        if (isEscaped || isWhitespace) {
+          // Backslashes escape themselves before an escaped character or whitespace.
+          numBackslashesToAppend = numBackslashes / 2;
+        } else {
+          // Backslashes are literal before a non-escaped character.
+          numBackslashesToAppend = numBackslashes;
         }
 
-        switch (action) {
-          case NONE:
-            break;
-          case APPEND_TO_IDENTIFIER:
-            identifierBuilder.append(c);
-            break;
-          case SET_TARGET:
-            if (target != null) {
-              throw new HumanReadableException(
-                  "Depfile parser cannot handle .d file with multiple targets");
-            }
-            target = identifierBuilder.toString();
-            identifierBuilder.setLength(0);
-            break;
-          case ADD_PREREQ:
-            prereqsBuilder.add(identifierBuilder.toString());
-            identifierBuilder.setLength(0);
-            break;
+        if (identifierLength + numBackslashesToAppend > identifier.length) {
+          identifier =
+              Arrays.copyOf(identifier, 2 * (identifierLength + numBackslashesToAppend));
         }
+        Arrays.fill(
+            identifier,
+            identifierLength,
+            identifierLength + numBackslashesToAppend,
+            (byte) '\\');
+        identifierLength += numBackslashesToAppend;
+        numBackslashes = 0;
       }
 
-      buffer.clear();
+      switch (action) {
+        case NONE:
+          break;
+        case APPEND_TO_IDENTIFIER:
+          if (identifierLength == identifier.length) {
+            identifier = Arrays.copyOf(identifier, 2 * identifier.length);
+          }
+          identifier[identifierLength++] = c;
+          break;
+        case SET_TARGET:
+          if (target != null) {
+            throw new HumanReadableException(
+                "Depfile parser cannot handle .d file with multiple targets");
+          }
+          target = new String(identifier, 0, identifierLength, StandardCharsets.UTF_8);
+          identifierLength = 0;
+          break;
+        case ADD_PREREQ:
+          prereqsBuilder.add(new String(identifier, 0, identifierLength, StandardCharsets.UTF_8));
+          identifierLength = 0;
+          break;
+      }
     }
 
     ImmutableList<String> prereqs = prereqsBuilder.build();
@@ -207,14 +219,13 @@ public class Depfiles {
     // prerequisites both in the values and the keys of the replacement map.
     Logger.get(Depfiles.class).debug("Processing dependency file %s as Makefile", sourceDepFile);
     ImmutableList.Builder<Path> resultBuilder = ImmutableList.builder();
-    try (InputStream input = filesystem.newFileInputStream(sourceDepFile);
-         BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-         SimplePerfEvent.Scope perfEvent = SimplePerfEvent.scope(
+    try (SimplePerfEvent.Scope perfEvent = SimplePerfEvent.scope(
              eventBus,
              PerfEventId.of("depfile-parse"),
              ImmutableMap.of(
                  "input", inputPath, "output", outputPath))) {
-      ImmutableList<String> prereqs = Depfiles.parseDepfile(reader).getPrereqs();
+      ImmutableList<String> prereqs =
+          Depfiles.parseDepfile(filesystem.mapFileForReading(sourceDepFile)).getPrereqs();
 
       // Additional files passed in via command-line flags (e.g. `-fsanitize-blacklist=<file>`)
       // appear first in the dep file, followed by the input source file.  So, just skip over
@@ -236,15 +247,18 @@ public class Depfiles {
         Path header = filesystem.resolve(rawHeader).normalize();
         Optional<Path> absolutePath =
             headerPathNormalizer.getAbsolutePathForUnnormalizedPath(header);
-        Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
         if (absolutePath.isPresent()) {
           Preconditions.checkState(absolutePath.get().isAbsolute());
           resultBuilder.add(absolutePath.get());
-        } else if (
-            headerVerification.getMode() != HeaderVerification.Mode.IGNORE &&
-                !(headerVerification.isWhitelisted(header.toString()) ||
-                    repoRelativePath.map(path -> headerVerification.isWhitelisted(path.toString()))
-                        .orElse(false))) {
+          continue;
+        }
+        if (headerVerification.getMode() == HeaderVerification.Mode.IGNORE) {
+          continue;
+        }
+        Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
+        if (!(headerVerification.isWhitelisted(header.toString()) ||
+                repoRelativePath.map(path -> headerVerification.isWhitelisted(path.toString()))
+                    .orElse(false))) {
           String errorMessage = String.format(
               "%s: included an untracked header \"%s\"",
               inputPath,
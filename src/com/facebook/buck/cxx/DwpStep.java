@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.shell.ShellStep;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Run dwp to package the {@code .dwo} files of a binary into a single {@code .dwp} file.
+ */
+public class DwpStep extends ShellStep {
+
+  private final ProjectFilesystem filesystem;
+  private final ImmutableMap<String, String> environment;
+  private final ImmutableList<String> dwpCommandPrefix;
+  private final ImmutableList<Path> dwoFiles;
+  private final Path output;
+
+  public DwpStep(
+      ProjectFilesystem filesystem,
+      ImmutableMap<String, String> environment,
+      ImmutableList<String> dwpCommandPrefix,
+      ImmutableList<Path> dwoFiles,
+      Path output) {
+    super(filesystem.getRootPath());
+    this.filesystem = filesystem;
+    this.environment = environment;
+    this.dwpCommandPrefix = dwpCommandPrefix;
+    this.dwoFiles = dwoFiles;
+    this.output = output;
+  }
+
+  /**
+   * Sources compiled without debug info leave an empty placeholder behind, which dwp would reject.
+   * The inputs are listed explicitly rather than found through the binary with "-e", as that is
+   * broken for DWARF 5 in some versions of binutils.
+   */
+  private ImmutableList<Path> getNonEmptyDwoFiles() throws IOException {
+    ImmutableList.Builder<Path> nonEmpty = ImmutableList.builder();
+    for (Path dwoFile : dwoFiles) {
+      if (filesystem.getFileSize(dwoFile) > 0) {
+        nonEmpty.add(dwoFile);
+      }
+    }
+    return nonEmpty.build();
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws InterruptedException, IOException {
+    // dwp refuses to run without inputs, so write the empty package ourselves.
+    if (getNonEmptyDwoFiles().isEmpty()) {
+      filesystem.writeContentsToPath("", output);
+      return StepExecutionResult.SUCCESS;
+    }
+    return super.execute(context);
+  }
+
+  @Override
+  protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
+    try {
+      return ImmutableList.<String>builder()
+          .addAll(dwpCommandPrefix)
+          .add("-o")
+          .add(output.toString())
+          .addAll(Iterables.transform(getNonEmptyDwoFiles(), Object::toString))
+          .build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
+    return environment;
+  }
+
+  @Override
+  public String getShortName() {
+    return "dwp";
+  }
+
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.cxx.elf.ElfScrubbers;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRuleWithResolver;
@@ -116,18 +117,14 @@ class ElfSharedLibraryInterface
             context.getSourcePathResolver().getAbsolutePath(input),
             output,
             SECTIONS),
-        ElfClearProgramHeadersStep.of(getProjectFilesystem(), output),
-        ElfSymbolTableScrubberStep.of(
+        ElfScrubFileStep.of(
             getProjectFilesystem(),
             output,
-            /* section */ ".dynsym",
-            /* allowMissing */ false),
-        ElfSymbolTableScrubberStep.of(
-            getProjectFilesystem(),
-            output,
-            /* section */ ".symtab",
-            /* allowMissing */ true),
-        ElfDynamicSectionScrubberStep.of(getProjectFilesystem(), output));
+            ImmutableList.of(
+                ElfScrubbers.clearProgramHeaders(),
+                ElfScrubbers.scrubSymbolTable(".dynsym", /* allowMissing */ false),
+                ElfScrubbers.scrubSymbolTable(".symtab", /* allowMissing */ true),
+                ElfScrubbers.scrubDynamicSection())));
   }
 
   @Override
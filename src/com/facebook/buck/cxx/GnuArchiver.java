@@ -27,6 +27,8 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Optional;
+
 public class GnuArchiver implements Archiver {
 
   private final Tool tool;
@@ -63,6 +65,11 @@ public class GnuArchiver implements Archiver {
     return true;
   }
 
+  @Override
+  public Optional<ArchiveWriter.Format> getArchiveFormat() {
+    return Optional.of(ArchiveWriter.Format.GNU);
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return tool.getDeps(ruleFinder);
@@ -20,16 +20,35 @@ import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import java.nio.file.Path;
 import java.util.AbstractMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 public class HeaderPathNormalizer {
 
+  /**
+   * The mappings contributed by each {@link CxxHeaders}, shared by every rule that includes them.
+   * A library's exported headers are part of the normalizer of each of its dependents' compile
+   * rules, so this saves resolving and normalizing the same paths over and over, and keeps a
+   * single copy of them in memory.  Keys are weak and compared by identity, so entries go away
+   * along with the action graph that created them.  Values must not hold on to anything that
+   * reaches the action graph, such as a {@link SourcePathResolver}, or the keys would never be
+   * collected, so only the mappings themselves are kept.
+   */
+  private static final Cache<CxxHeaders, Mappings> CXX_HEADERS_CACHE =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build();
+
   private final SourcePathResolver pathResolver;
 
   /**
@@ -114,7 +133,11 @@ public class HeaderPathNormalizer {
       // PathShortener, and many Paths are constructed and stored due to HeaderPathNormalizer
       // containing exported headers of all transitive dependencies of a library. This amounts to
       // large memory usage. See t15541313. Once that is fixed, this hack can be deleted.
-      V previous = map.put(MorePaths.dropInternalCaches(key), value);
+      putNormalized(map, MorePaths.dropInternalCaches(key), value);
+    }
+
+    private <V> void putNormalized(Map<Path, V> map, Path key, V value) {
+      V previous = map.put(key, value);
       Preconditions.checkState(previous == null || previous.equals(value),
           "Expected header path to be consistent but key %s mapped to different values: " +
               "(old: %s, new: %s)",
@@ -150,6 +173,36 @@ public class HeaderPathNormalizer {
       return this;
     }
 
+    /**
+     * Adds the mappings for all the headers in the given {@link CxxHeaders}, computing them only
+     * the first time these headers are seen across the build.
+     */
+    public Builder addCxxHeaders(CxxHeaders cxxHeaders) {
+      Mappings cached;
+      try {
+        cached = CXX_HEADERS_CACHE.get(
+            cxxHeaders,
+            () -> {
+              Builder builder = new Builder(pathResolver);
+              cxxHeaders.addToHeaderPathNormalizer(builder);
+              return new Mappings(
+                  ImmutableMap.copyOf(builder.headers),
+                  ImmutableMap.copyOf(builder.normalized));
+            });
+      } catch (ExecutionException | UncheckedExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+      // The keys were normalized when the cached normalizer was built.
+      for (Map.Entry<Path, SourcePath> entry : cached.headers.entrySet()) {
+        putNormalized(headers, entry.getKey(), entry.getValue());
+      }
+      for (Map.Entry<Path, SourcePath> entry : cached.normalized.entrySet()) {
+        putNormalized(normalized, entry.getKey(), entry.getValue());
+      }
+      return this;
+    }
+
     public Builder addHeaderDir(SourcePath sourcePath) {
       return addHeader(sourcePath);
     }
@@ -167,4 +220,19 @@ public class HeaderPathNormalizer {
 
   }
 
+  /**
+   * The path mappings of a {@link HeaderPathNormalizer}, without the resolver.
+   */
+  private static class Mappings {
+    private final ImmutableMap<Path, SourcePath> headers;
+    private final ImmutableMap<Path, SourcePath> normalized;
+
+    private Mappings(
+        ImmutableMap<Path, SourcePath> headers,
+        ImmutableMap<Path, SourcePath> normalized) {
+      this.headers = headers;
+      this.normalized = normalized;
+    }
+  }
+
 }
@@ -28,6 +28,8 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Optional;
+
 public class LazyDelegatingArchiver implements Archiver {
   private Supplier<Archiver> delegate;
 
@@ -65,6 +67,11 @@ public class LazyDelegatingArchiver implements Archiver {
     return delegate.get().isRanLibStepRequired();
   }
 
+  @Override
+  public Optional<ArchiveWriter.Format> getArchiveFormat() {
+    return delegate.get().getArchiveFormat();
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return delegate.get().getDeps(ruleFinder);
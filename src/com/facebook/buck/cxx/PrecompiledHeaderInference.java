@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.BuildInfo;
+import com.facebook.buck.rules.DefaultOnDiskBuildInfo;
+import com.facebook.buck.rules.keys.DependencyFileEntry;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.immutables.value.Value;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.InvalidPathException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Infers a precompiled header for a library from the headers its sources start by including, as
+ * matched against the headers recorded for their dependency file rule keys the last time they
+ * were built.  The leading includes which enough of the sources share, in the same order, are
+ * precompiled, and only the sources which start with every one of them use the result, so that no
+ * source sees a header it didn't include before, or sees it in a different order or before a
+ * macro it defines.
+ */
+class PrecompiledHeaderInference {
+
+  private static final Logger LOG = Logger.get(PrecompiledHeaderInference.class);
+
+  private static final ObjectMapper OBJECT_MAPPER = ObjectMappers.newDefaultInstance();
+
+  /**
+   * Only files with these extensions are precompiled.  Other included files, like {@code .inc} or
+   * {@code .def} files, are often meant to be included several times.
+   */
+  private static final ImmutableSet<String> HEADER_EXTENSIONS =
+      ImmutableSet.of("h", "hh", "hpp", "hxx", "h++", "H");
+
+  private static final Pattern LEADING_INCLUDE =
+      Pattern.compile("^#\\s*(?:include|import)\\s*(?:\"([^\"]+)\"|<([^>]+)>)\\s*$");
+  private static final Pattern PRAGMA_ONCE = Pattern.compile("^#\\s*pragma\\s+once\\s*$");
+
+  private PrecompiledHeaderInference() {}
+
+  /**
+   * @return the headers that the given compile rule included the last time it was built locally,
+   *     in the order it included them, or nothing if there is no record of it.
+   */
+  static Optional<ImmutableList<Path>> getRecordedHeaders(
+      ProjectFilesystem filesystem,
+      BuildTarget compileTarget) {
+    Optional<ImmutableList<String>> entries =
+        new DefaultOnDiskBuildInfo(compileTarget, filesystem, OBJECT_MAPPER)
+            .getValues(BuildInfo.MetadataKey.DEP_FILE);
+    if (!entries.isPresent()) {
+      return Optional.empty();
+    }
+
+    Path buckOut = filesystem.getBuckPaths().getBuckOut();
+    Set<Path> headers = new LinkedHashSet<>();
+    for (String entry : entries.get()) {
+      DependencyFileEntry dependency;
+      try {
+        dependency = OBJECT_MAPPER.readValue(entry, DependencyFileEntry.class);
+      } catch (IOException e) {
+        LOG.debug(e, "Ignoring unreadable dep file of %s.", compileTarget);
+        return Optional.empty();
+      }
+      Path path = dependency.pathToFile();
+      // Generated headers, headers outside of the project and headers which went away since the
+      // last build are left out.
+      if (!dependency.pathWithinArchive().isPresent() &&
+          !path.isAbsolute() &&
+          !path.startsWith(buckOut) &&
+          HEADER_EXTENSIONS.contains(MorePaths.getFileExtension(path)) &&
+          filesystem.exists(path)) {
+        headers.add(path);
+      }
+    }
+    return Optional.of(ImmutableList.copyOf(headers));
+  }
+
+  /**
+   * Works out the headers a source includes before anything else, from the {@code #include} and
+   * {@code #import} directives it starts with.  Each is matched to the one recorded header its
+   * name is a suffix of, and the list ends at the first directive which isn't matched that way.
+   *
+   * @param contents the contents of the source.
+   * @param recordedHeaders the headers the source included the last time it was built.
+   * @return the headers the source directly includes first, in order.
+   */
+  static ImmutableList<Path> getLeadingHeaders(
+      String contents,
+      ImmutableList<Path> recordedHeaders) {
+    ImmutableList.Builder<Path> headers = ImmutableList.builder();
+    for (String name : getLeadingIncludes(contents)) {
+      List<Path> matches;
+      try {
+        matches = recordedHeaders.stream()
+            .filter(header -> header.endsWith(name))
+            .collect(Collectors.toList());
+      } catch (InvalidPathException e) {
+        break;
+      }
+      if (matches.size() != 1) {
+        break;
+      }
+      headers.add(matches.get(0));
+    }
+    return headers.build();
+  }
+
+  /**
+   * @return the names of the files the given source includes before any other directive or code,
+   *     skipping blank lines, comments and {@code #pragma once}.
+   */
+  @VisibleForTesting
+  static ImmutableList<String> getLeadingIncludes(String contents) {
+    ImmutableList.Builder<String> includes = ImmutableList.builder();
+    StringBuilder line = new StringBuilder();
+    int length = contents.length();
+    int i = 0;
+    while (i <= length) {
+      char c = i < length ? contents.charAt(i) : '\n';
+      char next = i + 1 < length ? contents.charAt(i + 1) : '\0';
+      if (c == '\\' && (next == '\n' || next == '\r')) {
+        i += next == '\r' && i + 2 < length && contents.charAt(i + 2) == '\n' ? 3 : 2;
+      } else if (c == '/' && next == '*') {
+        int end = contents.indexOf("*/", i + 2);
+        i = end == -1 ? length : end + 2;
+        line.append(' ');
+      } else if (c == '/' && next == '/') {
+        while (i < length && contents.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '\n') {
+        String directive = line.toString().trim();
+        line.setLength(0);
+        if (!directive.isEmpty() && !PRAGMA_ONCE.matcher(directive).matches()) {
+          Matcher include = LEADING_INCLUDE.matcher(directive);
+          if (!include.matches()) {
+            break;
+          }
+          includes.add(include.group(1) != null ? include.group(1) : include.group(2));
+        }
+        i++;
+      } else {
+        line.append(c);
+        i++;
+      }
+    }
+    return includes.build();
+  }
+
+  /**
+   * Picks the headers to precompile for a group of sources which can share a precompiled header.
+   *
+   * <p>A precompiled header can only stand in for the includes a source starts with, so the
+   * headers picked are a common leading prefix of the headers each source starts with.  The
+   * prefix is grown one header at a time, taking the next header most of the sources still in the
+   * group agree on, as long as the sources which agree still make up {@code minShare} of the
+   * sources, and at least {@code minSources} of them.
+   *
+   * @param leadingHeaders the headers each source directly includes first, in order, keyed by
+   *     source name.
+   */
+  @VisibleForTesting
+  static Optional<InferredPrecompiledHeader> infer(
+      ImmutableMap<String, ImmutableList<Path>> leadingHeaders,
+      int minSources,
+      float minShare) {
+    int threshold =
+        Math.max(minSources, (int) Math.ceil(minShare * leadingHeaders.size()));
+    if (leadingHeaders.size() < threshold) {
+      return Optional.empty();
+    }
+
+    SortedSet<String> sources = new TreeSet<>(leadingHeaders.keySet());
+    ImmutableList.Builder<Path> headers = ImmutableList.builder();
+    for (int index = 0; ; index++) {
+      Map<Path, SortedSet<String>> sourcesByHeader = new TreeMap<>();
+      for (String source : sources) {
+        ImmutableList<Path> sourceHeaders = leadingHeaders.get(source);
+        if (sourceHeaders.size() > index) {
+          sourcesByHeader
+              .computeIfAbsent(sourceHeaders.get(index), key -> new TreeSet<>())
+              .add(source);
+        }
+      }
+      // Ties go to the first header in path order, so that the result doesn't depend on the
+      // order of the sources.
+      Map.Entry<Path, SortedSet<String>> next = null;
+      for (Map.Entry<Path, SortedSet<String>> entry : sourcesByHeader.entrySet()) {
+        if (next == null || entry.getValue().size() > next.getValue().size()) {
+          next = entry;
+        }
+      }
+      if (next == null || next.getValue().size() < threshold) {
+        break;
+      }
+      headers.add(next.getKey());
+      sources = next.getValue();
+    }
+
+    ImmutableList<Path> inferredHeaders = headers.build();
+    if (inferredHeaders.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        InferredPrecompiledHeader.of(inferredHeaders, ImmutableSortedSet.copyOf(sources)));
+  }
+
+  @Value.Immutable
+  @BuckStyleTuple
+  interface AbstractInferredPrecompiledHeader {
+    /**
+     * The headers to precompile, in the order they should be included.
+     */
+    ImmutableList<Path> getHeaders();
+
+    /**
+     * The names of the sources which should use the precompiled header.
+     */
+    ImmutableSortedSet<String> getSources();
+  }
+}
@@ -26,21 +26,26 @@ import com.facebook.buck.rules.SymlinkTree;
 import com.facebook.buck.rules.args.RuleKeyAppendableFunction;
 import com.facebook.buck.rules.coercer.FrameworkPath;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.MoreSuppliers;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Predicate;
 
 /**
@@ -69,6 +74,12 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
    */
   private final Optional<CxxIncludePaths> leadingIncludePaths;
 
+  /**
+   * Sources which are included by the input, when it is a unity translation unit.  They are
+   * tracked like headers, so that they show up in the rule key and are accepted in dep files.
+   */
+  private final ImmutableList<SourcePath> includedSources;
+
   private final PathShortener minLengthPathRepresentation;
 
   private final Supplier<HeaderPathNormalizer> headerPathNormalizer =
@@ -79,7 +90,7 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
               HeaderPathNormalizer.Builder builder =
                   new HeaderPathNormalizer.Builder(resolver);
               for (CxxHeaders include : preprocessorFlags.getIncludes()) {
-                include.addToHeaderPathNormalizer(builder);
+                builder.addCxxHeaders(include);
               }
               if (preprocessorFlags.getPrefixHeader().isPresent()) {
                 SourcePath headerPath = preprocessorFlags.getPrefixHeader().get();
@@ -91,6 +102,9 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
                     sandbox.get().getRoot());
                 builder.addSymlinkTree(root, sandbox.get().getLinks());
               }
+              for (SourcePath includedSource : includedSources) {
+                builder.addHeader(includedSource);
+              }
               return builder.build();
             }
           });
@@ -105,6 +119,30 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
       RuleKeyAppendableFunction<FrameworkPath, Path> frameworkPathSearchPathFunction,
       Optional<SymlinkTree> sandbox,
       Optional<CxxIncludePaths> leadingIncludePaths) throws ConflictingHeadersException {
+    this(
+        resolver,
+        sanitizer,
+        headerVerification,
+        workingDir,
+        preprocessor,
+        preprocessorFlags,
+        frameworkPathSearchPathFunction,
+        sandbox,
+        leadingIncludePaths,
+        ImmutableList.of());
+  }
+
+  private PreprocessorDelegate(
+      SourcePathResolver resolver,
+      DebugPathSanitizer sanitizer,
+      HeaderVerification headerVerification,
+      Path workingDir,
+      Preprocessor preprocessor,
+      PreprocessorFlags preprocessorFlags,
+      RuleKeyAppendableFunction<FrameworkPath, Path> frameworkPathSearchPathFunction,
+      Optional<SymlinkTree> sandbox,
+      Optional<CxxIncludePaths> leadingIncludePaths,
+      ImmutableList<SourcePath> includedSources) throws ConflictingHeadersException {
     this.preprocessor = preprocessor;
     this.preprocessorFlags = preprocessorFlags;
     this.sanitizer = sanitizer;
@@ -115,6 +153,7 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
     this.frameworkPathSearchPathFunction = frameworkPathSearchPathFunction;
     this.sandbox = sandbox;
     this.leadingIncludePaths = leadingIncludePaths;
+    this.includedSources = includedSources;
 
     checkForConflictingHeaders();
   }
@@ -130,7 +169,23 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
         this.preprocessorFlags,
         this.frameworkPathSearchPathFunction,
         this.sandbox,
-        Optional.of(leadingIncludePaths));
+        Optional.of(leadingIncludePaths),
+        this.includedSources);
+  }
+
+  public PreprocessorDelegate withIncludedSources(
+      ImmutableList<SourcePath> includedSources) throws ConflictingHeadersException {
+    return new PreprocessorDelegate(
+        this.resolver,
+        this.sanitizer,
+        this.headerVerification,
+        this.workingDir,
+        this.preprocessor,
+        this.preprocessorFlags,
+        this.frameworkPathSearchPathFunction,
+        this.sandbox,
+        this.leadingIncludePaths,
+        includedSources);
   }
 
   public Preprocessor getPreprocessor() {
@@ -142,6 +197,9 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
     sink.setReflectively("preprocessor", preprocessor);
     sink.setReflectively("frameworkPathSearchPathFunction", frameworkPathSearchPathFunction);
     sink.setReflectively("headerVerification", headerVerification);
+    if (!includedSources.isEmpty()) {
+      sink.setReflectively("includedSources", includedSources);
+    }
     preprocessorFlags.appendToRuleKey(sink, sanitizer);
   }
 
@@ -277,6 +335,61 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
     return inputs.build();
   }
 
+  /**
+   * @return a predicate which rules out the headers of the include paths that none of the given
+   *     files can include, according to the {@link CxxIncludeScanner}.  Only headers known one by
+   *     one, i.e. those of symlink trees, are ever ruled out.
+   * @see com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey#getPossibleInputsPredicate()
+   */
+  public Predicate<SourcePath> getPossibleInputsPredicate(
+      CxxIncludeScanner scanner,
+      Iterable<SourcePath> sources)
+      throws IOException {
+    ImmutableList<CxxHeaders> includes = ImmutableList.<CxxHeaders>builder()
+        .addAll(
+            leadingIncludePaths
+                .map(CxxIncludePaths::getIPaths)
+                .orElse(ImmutableSet.of()))
+        .addAll(preprocessorFlags.getCxxIncludePaths().getIPaths())
+        .build();
+
+    ImmutableList.Builder<Path> quoteSearchPath = ImmutableList.builder();
+    ImmutableList.Builder<Path> searchPath = ImmutableList.builder();
+    for (CxxHeaders headers : includes) {
+      // Header maps point into the root, so search the root itself.
+      Path root = resolver.getAbsolutePath(headers.getRoot());
+      if (headers.getIncludeType() == CxxPreprocessables.IncludeType.IQUOTE) {
+        quoteSearchPath.add(root);
+      } else {
+        searchPath.add(root);
+      }
+    }
+
+    HeaderPathNormalizer headerPathNormalizer = getHeaderPathNormalizer();
+    Set<Path> possibleIncludes = new HashSet<>();
+    for (SourcePath source : sources) {
+      Optional<ImmutableSet<Path>> scanned = scanner.scan(
+          resolver.getAbsolutePath(source),
+          quoteSearchPath.build(),
+          searchPath.build());
+      if (!scanned.isPresent()) {
+        return (SourcePath path) -> true;
+      }
+      for (Path path : scanned.get()) {
+        possibleIncludes.add(
+            headerPathNormalizer.getAbsolutePathForUnnormalizedPath(path).orElse(path));
+      }
+    }
+
+    ImmutableSet<SourcePath> knownHeaders = includes.stream()
+        .filter(CxxSymlinkTreeHeaders.class::isInstance)
+        .flatMap(headers -> ((CxxSymlinkTreeHeaders) headers).getNameToPathMap().values().stream())
+        .collect(MoreCollectors.toImmutableSet());
+    return (SourcePath path) ->
+        !knownHeaders.contains(path) ||
+            possibleIncludes.contains(resolver.getAbsolutePath(path));
+  }
+
   public Predicate<SourcePath> getCoveredByDepFilePredicate() {
     // TODO(jkeljo): I didn't know how to implement this, and didn't have time to figure it out.
     return (SourcePath path) -> true;
@@ -27,6 +27,8 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Optional;
+
 public class WindowsArchiver implements Archiver {
 
   private final Tool tool;
@@ -60,6 +62,11 @@ public class WindowsArchiver implements Archiver {
     return false;
   }
 
+  @Override
+  public Optional<ArchiveWriter.Format> getArchiveFormat() {
+    return Optional.empty();
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return tool.getDeps(ruleFinder);
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Create an object archive with {@link ArchiveWriter}, falling back to the given steps, which
+ * normally run the archiver tool, when the inputs aren't objects it can index.
+ */
+public class WriteArchiveStep implements Step {
+
+  private static final Logger LOG = Logger.get(WriteArchiveStep.class);
+
+  private final ProjectFilesystem filesystem;
+  private final ArchiveWriter.Format format;
+  private final boolean thin;
+  private final Path output;
+  private final ImmutableList<Path> inputs;
+  private final Step fallback;
+
+  public WriteArchiveStep(
+      ProjectFilesystem filesystem,
+      ArchiveWriter.Format format,
+      boolean thin,
+      Path output,
+      ImmutableList<Path> inputs,
+      Step fallback) {
+    Preconditions.checkArgument(!output.isAbsolute());
+    for (Path input : inputs) {
+      Preconditions.checkArgument(!input.isAbsolute());
+    }
+    this.filesystem = filesystem;
+    this.format = format;
+    this.thin = thin;
+    this.output = output;
+    this.inputs = inputs;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Optional<ArchiveWriter> writer =
+        ArchiveWriter.index(
+            format,
+            thin,
+            filesystem.resolve(output),
+            ArchiveStep.getAllInputs(filesystem, inputs).stream()
+                .map(filesystem::resolve)
+                .collect(MoreCollectors.toImmutableList()));
+    if (!writer.isPresent()) {
+      LOG.debug("Can't index the inputs of %s, running the archiver instead.", output);
+      return fallback.execute(context);
+    }
+    try (OutputStream out = new BufferedOutputStream(filesystem.newFileOutputStream(output))) {
+      writer.get().write(out);
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "write %s archive %s (or %s)",
+        format,
+        output,
+        fallback.getDescription(context));
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+
+}
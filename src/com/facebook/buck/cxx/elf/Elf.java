@@ -45,6 +45,13 @@ public class Elf {
     this.sections = new ArrayList<>(Collections.<ElfSection>nCopies(header.e_shnum, null));
   }
 
+  /**
+   * @return the whole file, for edits which don't fall within a section.
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
   public int getNumberOfSections() {
     return header.e_shnum;
   }
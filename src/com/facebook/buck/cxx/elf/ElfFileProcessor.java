@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx.elf;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs operations over memory mapped ELF files.  Each file is opened, mapped and parsed once, no
+ * matter how many operations look at it, and the sections the operations see are views of the
+ * mapping rather than copies, so writes to them go straight to the file.
+ */
+public class ElfFileProcessor {
+
+  /**
+   * Work done on the parsed contents of one ELF file.
+   */
+  public interface Operation {
+
+    /**
+     * @param path the file being processed, for error messages.
+     */
+    void process(Path path, Elf elf) throws IOException;
+
+  }
+
+  // Utility class, do not instantiate.
+  private ElfFileProcessor() {}
+
+  /**
+   * Runs the operations, in order, over a single mapping of the file.
+   *
+   * @param mode {@link FileChannel.MapMode#READ_WRITE} if the operations modify the file.
+   */
+  public static void process(
+      Path path,
+      FileChannel.MapMode mode,
+      List<? extends Operation> operations)
+      throws IOException {
+    try (FileChannel channel =
+             mode == FileChannel.MapMode.READ_ONLY ?
+                 FileChannel.open(path, StandardOpenOption.READ) :
+                 FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(mode, 0, channel.size());
+      Elf elf = new Elf(buffer);
+      for (Operation operation : operations) {
+        operation.process(path, elf);
+      }
+    }
+  }
+
+  /**
+   * Runs the operations over each of the files, processing the files in parallel on the given
+   * executor.  Every file is processed even if some fail, and the first failure is then rethrown.
+   */
+  public static void processAll(
+      Iterable<Path> paths,
+      FileChannel.MapMode mode,
+      List<? extends Operation> operations,
+      ListeningExecutorService executor)
+      throws IOException, InterruptedException {
+    ImmutableList.Builder<ListenableFuture<Void>> builder = ImmutableList.builder();
+    for (Path path : paths) {
+      builder.add(
+          executor.submit(
+              () -> {
+                process(path, mode, operations);
+                return null;
+              }));
+    }
+    ImmutableList<ListenableFuture<Void>> futures = builder.build();
+    try {
+      Futures.successfulAsList(futures).get();
+      for (ListenableFuture<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx.elf;
+
+import com.facebook.buck.model.Pair;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Optional;
+
+/**
+ * {@link ElfFileProcessor.Operation}s which scrub link time information out of ELF files in
+ * place, so that shared library interfaces only change when their dynamic linking interface does.
+ */
+public class ElfScrubbers {
+
+  /**
+   * The section index all defined symbols are moved to by {@link #scrubSymbolTable}.
+   */
+  public static final int STABLE_SECTION = 1;
+
+  public static final String DYNAMIC_SECTION = ".dynamic";
+
+  private static final int ELF32_SYMBOL_SIZE = 16;
+  private static final int ELF64_SYMBOL_SIZE = 24;
+
+  /**
+   * The entries of the {@value #DYNAMIC_SECTION} section kept by {@link #scrubDynamicSection}.
+   */
+  public static final EnumSet<ElfDynamicSection.DTag> WHITELISTED_DYNAMIC_TAGS =
+      EnumSet.of(
+          ElfDynamicSection.DTag.DT_NEEDED,
+          ElfDynamicSection.DTag.DT_SONAME);
+
+  // Utility class, do not instantiate.
+  private ElfScrubbers() {}
+
+  /**
+   * @return an operation which zeros out the program headers.
+   */
+  public static ElfFileProcessor.Operation clearProgramHeaders() {
+    return (path, elf) -> {
+      Preconditions.checkState(
+          elf.header.e_phoff == (int) elf.header.e_phoff,
+          "program headers are expected to be within 4GB of beginning of file");
+      ByteBuffer buffer = elf.getBuffer();
+      buffer.position((int) elf.header.e_phoff);
+      for (int index = 0; index < elf.header.e_phnum * elf.header.e_phentsize; index++) {
+        buffer.put((byte) 0);
+      }
+    };
+  }
+
+  /**
+   * @return an operation which scrubs the given symbol table of addresses, sizes and section
+   *     indexes, which depend on the layout of the file rather than on its interface.
+   */
+  public static ElfFileProcessor.Operation scrubSymbolTable(
+      String sectionName,
+      boolean allowMissing) {
+    return (path, elf) -> {
+      Optional<ElfSection> section = elf.getSectionByName(sectionName).map(Pair::getSecond);
+      if (!section.isPresent()) {
+        if (allowMissing) {
+          return;
+        }
+        throw new IOException(
+            String.format(
+                "Error parsing ELF file %s: no such section \"%s\"",
+                path,
+                sectionName));
+      }
+
+      fixUpSymbolTable(elf.header.ei_class, section.get().body);
+    };
+  }
+
+  /**
+   * Rewrites the entries of the symbol table in place, touching only the fields which change.
+   */
+  private static void fixUpSymbolTable(ElfHeader.EIClass eiClass, ByteBuffer table) {
+    boolean elf32 = eiClass == ElfHeader.EIClass.ELFCLASS32;
+    int entrySize = elf32 ? ELF32_SYMBOL_SIZE : ELF64_SYMBOL_SIZE;
+
+    // The first symbol serves as the undefined symbol index, so always leave it alone and start
+    // processing symbols after it.
+    for (int index = 1; (index + 1) * entrySize <= table.limit(); index++) {
+      int entry = index * entrySize;
+
+      // A section index of 0 is special and means the symbol is undefined, so we must maintain
+      // that.  Otherwise, if it's non-zero, fix it up to an arbitrary stable section value so the
+      // number and ordering of sections can never affect the content of the symbol table.
+      int shndx = entry + (elf32 ? 14 : 6);
+      if ((table.getShort(shndx) & 0xffff) > 0) {
+        table.putShort(shndx, (short) STABLE_SECTION);
+      }
+
+      // Substitute non-zero addresses, dependent on size/layout of sections with a stable address
+      // determined by the index of this symbol table entry in the symbol table.  For functions,
+      // set the size to zero.
+      ElfSymbolTable.Entry.Info.Type type =
+          ElfSymbolTable.Entry.Info.Type.ofIntValue(table.get(entry + (elf32 ? 12 : 4)) & 0xF);
+      if (elf32) {
+        if (table.getInt(entry + 4) != 0) {
+          table.putInt(entry + 4, index);
+        }
+        if (type == ElfSymbolTable.Entry.Info.Type.STT_FUNC) {
+          table.putInt(entry + 8, 0);
+        }
+      } else {
+        if (table.getLong(entry + 8) != 0) {
+          table.putLong(entry + 8, index);
+        }
+        if (type == ElfSymbolTable.Entry.Info.Type.STT_FUNC) {
+          table.putLong(entry + 16, 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return an operation which zeros out the values of all the entries of the
+   *     {@value #DYNAMIC_SECTION} section which aren't relevant at link time.
+   */
+  public static ElfFileProcessor.Operation scrubDynamicSection() {
+    return (path, elf) -> {
+      Optional<ElfSection> section = elf.getSectionByName(DYNAMIC_SECTION).map(Pair::getSecond);
+      if (!section.isPresent()) {
+        throw new IOException(
+            String.format(
+                "Error parsing ELF file %s: no such section \"%s\"",
+                path,
+                DYNAMIC_SECTION));
+      }
+      ByteBuffer body = section.get().body;
+      body.rewind();
+      while (body.hasRemaining()) {
+        ElfDynamicSection.DTag dTag =
+            ElfDynamicSection.DTag.valueOf(
+                elf.header.ei_class == ElfHeader.EIClass.ELFCLASS32 ?
+                    Elf.Elf32.getElf32Sword(body) :
+                    (int) Elf.Elf64.getElf64Sxword(body));
+        if (!WHITELISTED_DYNAMIC_TAGS.contains(dTag)) {
+          if (elf.header.ei_class == ElfHeader.EIClass.ELFCLASS32) {
+            Elf.Elf32.putElf32Addr(body, 0);  // d_ptr
+          } else {
+            Elf.Elf64.putElf64Addr(body, 0);  // d_ptr
+          }
+        } else {
+          if (elf.header.ei_class == ElfHeader.EIClass.ELFCLASS32) {
+            Elf.Elf32.getElf32Addr(body);  // d_ptr
+          } else {
+            Elf.Elf64.getElf64Addr(body);  // d_ptr
+          }
+        }
+      }
+    };
+  }
+
+}
@@ -77,6 +77,41 @@ public class BuildTargetsQueue {
       }
     }
 
+    return createQueue(visitedTargets, allReverseDeps, numberOfDependencies);
+  }
+
+  /**
+   * Creates a queue straight from a dependency graph without going through the ActionGraph.
+   *
+   * @param dependencies map from each fully qualified target name to the targets it depends on.
+   *     Every dependency must itself be a key of the map.
+   */
+  public static BuildTargetsQueue newQueue(Map<String, ? extends Iterable<String>> dependencies) {
+    Map<String, Set<String>> allReverseDeps = Maps.newHashMap();
+    Map<String, Integer> numberOfDependencies = Maps.newHashMap();
+    for (Map.Entry<String, ? extends Iterable<String>> entry : dependencies.entrySet()) {
+      Set<String> uniqueDeps = Sets.newHashSet(entry.getValue());
+      numberOfDependencies.put(entry.getKey(), uniqueDeps.size());
+      for (String dependencyTarget : uniqueDeps) {
+        Preconditions.checkArgument(
+            dependencies.containsKey(dependencyTarget),
+            "Dependency [%s] of [%s] is not part of the graph.",
+            dependencyTarget,
+            entry.getKey());
+        if (!allReverseDeps.containsKey(dependencyTarget)) {
+          allReverseDeps.put(dependencyTarget, Sets.newHashSet());
+        }
+        allReverseDeps.get(dependencyTarget).add(entry.getKey());
+      }
+    }
+
+    return createQueue(dependencies.keySet(), allReverseDeps, numberOfDependencies);
+  }
+
+  private static BuildTargetsQueue createQueue(
+      Set<String> visitedTargets,
+      Map<String, Set<String>> allReverseDeps,
+      Map<String, Integer> numberOfDependencies) {
     // Do the reference counting and create the EnqueuedTargets.
     List<EnqueuedTarget> zeroDependencyTargets = Lists.newArrayList();
     Map<String, EnqueuedTarget> allEnqueuedTargets = Maps.newHashMap();
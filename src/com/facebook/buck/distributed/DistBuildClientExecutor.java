@@ -54,6 +54,7 @@ public class DistBuildClientExecutor {
   private final DistBuildLogStateTracker distBuildLogStateTracker;
   private final BuildJobState buildJobState;
   private final BuckVersion buckVersion;
+  private final Optional<ListenableFuture<Void>> fileContentsUpload;
   private int millisBetweenStatusPoll;
 
   public DistBuildClientExecutor(
@@ -62,6 +63,27 @@ public class DistBuildClientExecutor {
       DistBuildLogStateTracker distBuildLogStateTracker,
       int millisBetweenStatusPoll,
       BuckVersion buckVersion) {
+    this(
+        buildJobState,
+        distBuildService,
+        distBuildLogStateTracker,
+        millisBetweenStatusPoll,
+        buckVersion,
+        Optional.empty());
+  }
+
+  /**
+   * @param fileContentsUpload if present, the file contents of the build are already being
+   *     uploaded (see {@link FileContentsUploader}) and this future tracks it.
+   */
+  public DistBuildClientExecutor(
+      BuildJobState buildJobState,
+      DistBuildService distBuildService,
+      DistBuildLogStateTracker distBuildLogStateTracker,
+      int millisBetweenStatusPoll,
+      BuckVersion buckVersion,
+      Optional<ListenableFuture<Void>> fileContentsUpload) {
+    this.fileContentsUpload = fileContentsUpload;
     this.buildJobState = buildJobState;
     this.distBuildService = distBuildService;
     this.distBuildLogStateTracker = distBuildLogStateTracker;
@@ -82,8 +104,14 @@ public class DistBuildClientExecutor {
     logDebugInfo(job);
 
     List<ListenableFuture<Void>> asyncJobs = new LinkedList<>();
-    LOG.info("Uploading local changes.");
-    asyncJobs.add(distBuildService.uploadMissingFiles(buildJobState.fileHashes, executorService));
+    if (fileContentsUpload.isPresent()) {
+      LOG.info("Waiting for the streamed upload of local changes.");
+      asyncJobs.add(fileContentsUpload.get());
+    } else {
+      LOG.info("Uploading local changes.");
+      asyncJobs.add(
+          distBuildService.uploadMissingFiles(buildJobState.fileHashes, executorService));
+    }
 
     LOG.info("Uploading target graph.");
     asyncJobs.add(distBuildService.uploadTargetGraph(buildJobState, id, executorService));
@@ -35,6 +35,8 @@ public class DistBuildConfig {
 
   private static final String ALWAYS_MATERIALIZE_WHITELIST = "always_materialize_whitelist";
 
+  private static final String MINION_STREAMING_BUILD_SLOTS = "minion_streaming_build_slots";
+
   private final SlbBuckConfig frontendConfig;
   private final BuckConfig buckConfig;
 
@@ -55,6 +57,14 @@ public class DistBuildConfig {
     return buckConfig.getOptionalPathList(STAMPEDE_SECTION, ALWAYS_MATERIALIZE_WHITELIST);
   }
 
+  /**
+   * @return if set, the number of targets each Minion builds concurrently while streaming its
+   *     progress to the Coordinator, instead of building whole batches.
+   */
+  public Optional<Integer> getMinionStreamingBuildSlots() {
+    return buckConfig.getInteger(STAMPEDE_SECTION, MINION_STREAMING_BUILD_SLOTS);
+  }
+
   public long getFrontendRequestTimeoutMillis() {
     return buckConfig.getLong(STAMPEDE_SECTION, FRONTEND_REQUEST_TIMEOUT_MILLIS).orElse(
         DEFAULT_DEFAULT_REQUEST_TIMEOUT_MILLIS);
@@ -53,6 +53,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -77,6 +78,33 @@ public class DistBuildFileHashes {
       ListeningExecutorService executorService,
       final int keySeed,
       final BuckConfig buckConfig) {
+    this(
+        actionGraph,
+        sourcePathResolver,
+        ruleFinder,
+        rootCellFileHashCache,
+        cellIndexer,
+        executorService,
+        keySeed,
+        buckConfig,
+        Optional.empty());
+  }
+
+  /**
+   * @param fileContentsUploader if present, file contents are streamed to it while the rule keys
+   *     are being computed. The caller is responsible for calling
+   *     {@link FileContentsUploader#finish()} once {@link #getFileHashes()} has returned.
+   */
+  public DistBuildFileHashes(
+      ActionGraph actionGraph,
+      final SourcePathResolver sourcePathResolver,
+      SourcePathRuleFinder ruleFinder,
+      final FileHashCache rootCellFileHashCache,
+      final Function<? super Path, Integer> cellIndexer,
+      ListeningExecutorService executorService,
+      final int keySeed,
+      final BuckConfig buckConfig,
+      final Optional<FileContentsUploader> fileContentsUploader) {
 
     this.remoteFileHashes = CacheBuilder.newBuilder().build(
         new CacheLoader<ProjectFilesystem, BuildJobStateFileHashes>() {
@@ -97,7 +125,8 @@ public class DistBuildFileHashes {
                         DefaultFileHashCache.createDefaultFileHashCache(key))),
                 key,
                 remoteFileHashes.get(key),
-                new DistBuildConfig(buckConfig));
+                new DistBuildConfig(buckConfig),
+                fileContentsUploader);
           }
         });
     this.ruleKeyFactories =
@@ -182,7 +182,7 @@ public class DistBuildService implements Closeable {
     return uploadMissingFilesFromList(requiredFiles, executorService);
   }
 
-  private ListenableFuture<Void> uploadMissingFilesFromList(
+  public ListenableFuture<Void> uploadMissingFilesFromList(
       final List<FileInfo> fileList,
       ListeningExecutorService executorService) {
     return executorService.submit(new Callable<Void>() {
@@ -56,6 +56,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
@@ -86,36 +87,36 @@ public class DistBuildSlaveExecutor {
 
   public int buildAndReturnExitCode() throws IOException, InterruptedException {
     createBuildEngineDelegate();
-    LocalBuilder localBuilder = new LocalBuilderImpl();
-
-    DistBuildModeRunner runner = null;
-    switch (args.getDistBuildMode()) {
-      case REMOTE_BUILD:
-        runner = new RemoteBuildModeRunner(
-            localBuilder,
-            args.getState().getRemoteState().getTopLevelTargets());
-        break;
-
-      case COORDINATOR:
-        runner = newCoordinatorMode();
-        break;
-
-      case MINION:
-        runner = newMinionMode(localBuilder);
-        break;
-
-      case COORDINATOR_AND_MINION:
-        runner = new CoordinatorAndMinionModeRunner(
-            newCoordinatorMode(),
-            newMinionMode(localBuilder));
-        break;
-
-      default:
-        LOG.error("Unknown distributed build mode [%s].", args.getDistBuildMode().toString());
-        return -1;
-    }
+    try (LocalBuilderImpl localBuilder = new LocalBuilderImpl()) {
+      DistBuildModeRunner runner = null;
+      switch (args.getDistBuildMode()) {
+        case REMOTE_BUILD:
+          runner = new RemoteBuildModeRunner(
+              localBuilder,
+              args.getState().getRemoteState().getTopLevelTargets());
+          break;
+
+        case COORDINATOR:
+          runner = newCoordinatorMode();
+          break;
+
+        case MINION:
+          runner = newMinionMode(localBuilder);
+          break;
+
+        case COORDINATOR_AND_MINION:
+          runner = new CoordinatorAndMinionModeRunner(
+              newCoordinatorMode(),
+              newMinionMode(localBuilder));
+          break;
+
+        default:
+          LOG.error("Unknown distributed build mode [%s].", args.getDistBuildMode().toString());
+          return -1;
+      }
 
-    return runner.runAndReturnExitCode();
+      return runner.runAndReturnExitCode();
+    }
   }
 
   private MinionModeRunner newMinionMode(LocalBuilder localBuilder) {
@@ -123,7 +124,9 @@ public class DistBuildSlaveExecutor {
         args.getCoordinatorAddress(),
         args.getCoordinatorPort(),
         localBuilder,
-        getStampedeBuildIdForCoordinator());
+        getStampedeBuildIdForCoordinator(),
+        MinionModeRunner.DEFAULT_RETRY_BACKOFF_MILLIS,
+        new DistBuildConfig(args.getRemoteRootCellConfig()).getMinionStreamingBuildSlots());
   }
 
   private CoordinatorModeRunner newCoordinatorMode() {
@@ -273,10 +276,18 @@ public class DistBuildSlaveExecutor {
     return args.getStampedeBuildId().orElse(new BuildId().setId("LOCAL_DEBUG_FILE"));
   }
 
-  private class LocalBuilderImpl implements LocalBuilder {
+  /**
+   * Builds through a single {@link CachingBuildEngine} and {@link Build} that live as long as this
+   * builder, so that a streaming Minion building targets concurrently shares one set of in-flight
+   * rule results, scheduling state and resource limits instead of racing several engines.
+   */
+  private class LocalBuilderImpl implements LocalBuilder, Closeable {
     private final BuckConfig distBuildConfig;
     private final CachingBuildEngineBuckConfig engineConfig;
 
+    @Nullable
+    private Build build;
+
     public LocalBuilderImpl() {
       this.distBuildConfig = args.getRemoteRootCellConfig();
       this.engineConfig = distBuildConfig.getView(CachingBuildEngineBuckConfig.class);
@@ -285,6 +296,19 @@ public class DistBuildSlaveExecutor {
     @Override
     public int buildLocallyAndReturnExitCode(Iterable<String> targetsToBuild)
         throws IOException, InterruptedException {
+      return getOrCreateBuild().executeAndPrintFailuresToEventBus(
+          fullyQualifiedNameToBuildTarget(targetsToBuild),
+          /* isKeepGoing */ true,
+          args.getBuckEventBus(),
+          args.getConsole(),
+          Optional.empty());
+    }
+
+    private synchronized Build getOrCreateBuild() {
+      if (build != null) {
+        return build;
+      }
+
       BuildEngine buildEngine = new CachingBuildEngine(
           Preconditions.checkNotNull(cachingBuildEngineDelegate),
           args.getExecutorService(),
@@ -304,7 +328,7 @@ public class DistBuildSlaveExecutor {
               engineConfig.getBuildInputRuleKeyFileSizeLimit()));
 
       // TODO(ruibm): Fix this to work with Android.
-      try (Build build = new Build(
+      build = new Build(
           Preconditions.checkNotNull(actionGraphAndResolver).getActionGraph(),
           Preconditions.checkNotNull(actionGraphAndResolver).getResolver(),
           args.getRootCell(),
@@ -334,14 +358,17 @@ public class DistBuildSlaveExecutor {
           Optional.empty(),
           Optional.empty(),
           Optional.empty(),
-          args.getExecutors())) {
+          Optional.empty(),
+          Optional.empty(),
+          args.getExecutors());
+      return build;
+    }
 
-        return build.executeAndPrintFailuresToEventBus(
-            fullyQualifiedNameToBuildTarget(targetsToBuild),
-          /* isKeepGoing */ true,
-            args.getBuckEventBus(),
-            args.getConsole(),
-            Optional.empty());
+    @Override
+    public synchronized void close() throws IOException {
+      if (build != null) {
+        build.close();
+        build = null;
       }
     }
   }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed;
+
+import com.facebook.buck.distributed.thrift.BuildJobStateFileHashEntry;
+import com.facebook.buck.distributed.thrift.FileInfo;
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Uploads the contents of the files recorded by {@link RecordingFileHashLoader} while the rule key
+ * walk is still running, instead of waiting for the whole {@link DistBuildFileHashes} to be
+ * computed. Files are batched into chunks that are uploaded in parallel, and each distinct
+ * content hash is only uploaded once no matter how many paths or cells it shows up in.
+ *
+ * <p>Callers must {@link #close()} the uploader. If that happens before {@link #finish()}, for
+ * example because computing the job state failed, the uploads still in flight are cancelled.
+ */
+public class FileContentsUploader implements AutoCloseable {
+  private static final Logger LOG = Logger.get(FileContentsUploader.class);
+
+  public static final int DEFAULT_MAX_FILES_PER_CHUNK = 1000;
+  public static final long DEFAULT_MAX_BYTES_PER_CHUNK = 16 * 1024 * 1024;
+
+  private final Function<List<FileInfo>, ListenableFuture<Void>> chunkUploader;
+  private final int maxFilesPerChunk;
+  private final long maxBytesPerChunk;
+  private final Set<String> seenContentHashes;
+
+  @GuardedBy("this")
+  private List<FileInfo> currentChunk;
+  @GuardedBy("this")
+  private long currentChunkBytes;
+  @GuardedBy("this")
+  private final List<ListenableFuture<Void>> uploads;
+  @GuardedBy("this")
+  private boolean finished;
+  @GuardedBy("this")
+  private boolean closed;
+
+  public FileContentsUploader(
+      Function<List<FileInfo>, ListenableFuture<Void>> chunkUploader,
+      int maxFilesPerChunk,
+      long maxBytesPerChunk) {
+    Preconditions.checkArgument(maxFilesPerChunk > 0);
+    Preconditions.checkArgument(maxBytesPerChunk > 0);
+    this.chunkUploader = chunkUploader;
+    this.maxFilesPerChunk = maxFilesPerChunk;
+    this.maxBytesPerChunk = maxBytesPerChunk;
+    this.seenContentHashes = Sets.newConcurrentHashSet();
+    this.currentChunk = Lists.newArrayList();
+    this.currentChunkBytes = 0;
+    this.uploads = Lists.newArrayList();
+    this.finished = false;
+    this.closed = false;
+  }
+
+  public static FileContentsUploader create(
+      final DistBuildService service,
+      final ListeningExecutorService executorService) {
+    return new FileContentsUploader(
+        chunk -> service.uploadMissingFilesFromList(chunk, executorService),
+        DEFAULT_MAX_FILES_PER_CHUNK,
+        DEFAULT_MAX_BYTES_PER_CHUNK);
+  }
+
+  /**
+   * @return whether the contents of this entry need to be stored on the frontend. Symlinks that
+   *     point outside of the project and directories are re-created remotely from their metadata.
+   */
+  public static boolean needsUpload(BuildJobStateFileHashEntry entry) {
+    return !entry.isSetRootSymLink() && !entry.isIsDirectory() && entry.isSetContents();
+  }
+
+  /**
+   * Queues the contents of the entry for upload, unless the same contents were queued before.
+   * Thread safe.
+   */
+  public void add(BuildJobStateFileHashEntry entry) {
+    if (!needsUpload(entry) || !seenContentHashes.add(entry.getHashCode())) {
+      return;
+    }
+
+    FileInfo fileInfo = new FileInfo()
+        .setContentHash(entry.getHashCode())
+        .setContent(entry.getContents());
+    synchronized (this) {
+      if (closed) {
+        // Rule key computations that outlive a failed upload may still report files.
+        return;
+      }
+      Preconditions.checkState(!finished, "Cannot add files after the upload has finished.");
+      currentChunk.add(fileInfo);
+      currentChunkBytes += entry.getContents().length;
+      if (currentChunk.size() >= maxFilesPerChunk || currentChunkBytes >= maxBytesPerChunk) {
+        uploadCurrentChunk();
+      }
+    }
+  }
+
+  /**
+   * Uploads whatever is left and stops accepting new files.
+   *
+   * @return future that completes once every chunk has been uploaded.
+   */
+  public ListenableFuture<Void> finish() {
+    ImmutableList<ListenableFuture<Void>> allUploads;
+    synchronized (this) {
+      Preconditions.checkState(!finished, "The upload has already finished.");
+      finished = true;
+      if (!currentChunk.isEmpty()) {
+        uploadCurrentChunk();
+      }
+      allUploads = ImmutableList.copyOf(uploads);
+    }
+    LOG.info(
+        "Queued [%d] distinct files for upload in [%d] chunks.",
+        seenContentHashes.size(),
+        allUploads.size());
+    return Futures.transform(Futures.allAsList(allUploads), Functions.constant(null));
+  }
+
+  /**
+   * Stops accepting new files. If {@link #finish()} was never called, the files that were not
+   * uploaded yet are dropped and the uploads still in flight are cancelled.
+   */
+  @Override
+  public void close() {
+    ImmutableList<ListenableFuture<Void>> abandonedUploads;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (finished) {
+        return;
+      }
+      finished = true;
+      currentChunk = Lists.newArrayList();
+      currentChunkBytes = 0;
+      abandonedUploads = ImmutableList.copyOf(uploads);
+    }
+    LOG.debug("Upload closed before it finished, cancelling [%d] chunks.", abandonedUploads.size());
+    for (ListenableFuture<Void> upload : abandonedUploads) {
+      upload.cancel(true);
+    }
+  }
+
+  @GuardedBy("this")
+  private void uploadCurrentChunk() {
+    LOG.debug("Uploading a chunk of [%d] files.", currentChunk.size());
+    // The uploader only schedules the work, so it is fine to call it while holding the lock.
+    uploads.add(chunkUploader.apply(currentChunk));
+    currentChunk = Lists.newArrayList();
+    currentChunkBytes = 0;
+  }
+}
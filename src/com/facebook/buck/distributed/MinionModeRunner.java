@@ -19,33 +19,95 @@ package com.facebook.buck.distributed;
 import com.facebook.buck.distributed.thrift.BuildId;
 import com.facebook.buck.distributed.thrift.FinishedBuildingResponse;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildResponse;
+import com.facebook.buck.distributed.thrift.MinionHeartbeatResponse;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MinionModeRunner implements DistBuildModeRunner {
   private static final Logger LOG = Logger.get(MinionModeRunner.class);
 
-  private static final int RETRY_BACKOFF_MILLIS = 1000;
+  public static final int DEFAULT_RETRY_BACKOFF_MILLIS = 1000;
+  // Must be comfortably below MinionWorkloadAllocator.DEFAULT_LEASE_TIMEOUT_MILLIS.
+  public static final long DEFAULT_HEARTBEAT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
   private final String coordinatorAddress;
   private final int coordinatorPort;
   private final LocalBuilder builder;
   private final BuildId stampedeBuildid;
+  private final long retryBackoffMillis;
+  private final Optional<Integer> streamingBuildSlots;
 
   public MinionModeRunner(
       String coordinatorAddress,
       int coordinatorPort,
       LocalBuilder builder,
       BuildId stampedeBuildid) {
+    this(
+        coordinatorAddress,
+        coordinatorPort,
+        builder,
+        stampedeBuildid,
+        DEFAULT_RETRY_BACKOFF_MILLIS);
+  }
+
+  public MinionModeRunner(
+      String coordinatorAddress,
+      int coordinatorPort,
+      LocalBuilder builder,
+      BuildId stampedeBuildid,
+      long retryBackoffMillis) {
+    this(
+        coordinatorAddress,
+        coordinatorPort,
+        builder,
+        stampedeBuildid,
+        retryBackoffMillis,
+        Optional.empty());
+  }
+
+  /**
+   * @param streamingBuildSlots if present, the Minion builds up to this many targets at a time,
+   *     reporting each one to the Coordinator as soon as it finishes and pulling new work whenever
+   *     a slot frees up. Otherwise it builds whole batches handed out by the Coordinator. A
+   *     streaming Minion calls {@code builder} concurrently, so it should build every target
+   *     through one shared engine.
+   */
+  public MinionModeRunner(
+      String coordinatorAddress,
+      int coordinatorPort,
+      LocalBuilder builder,
+      BuildId stampedeBuildid,
+      long retryBackoffMillis,
+      Optional<Integer> streamingBuildSlots) {
+    Preconditions.checkArgument(
+        !streamingBuildSlots.isPresent() || streamingBuildSlots.get() > 0,
+        "A streaming Minion needs at least one build slot.");
     this.builder = builder;
+    this.retryBackoffMillis = retryBackoffMillis;
+    this.streamingBuildSlots = streamingBuildSlots;
     this.stampedeBuildid = stampedeBuildid;
     Preconditions.checkArgument(
         coordinatorPort > 0,
@@ -60,35 +122,100 @@ public class MinionModeRunner implements DistBuildModeRunner {
              new ThriftCoordinatorClient(coordinatorAddress, coordinatorPort, stampedeBuildid)) {
       client.start();
       final String minionId = generateNewMinionId();
+      final AtomicBoolean heldLease = new AtomicBoolean(false);
+      ScheduledExecutorService heartbeatService = Executors.newSingleThreadScheduledExecutor();
+      heartbeatService.scheduleAtFixedRate(
+          () -> sendHeartbeat(client, minionId, heldLease),
+          DEFAULT_HEARTBEAT_INTERVAL_MILLIS,
+          DEFAULT_HEARTBEAT_INTERVAL_MILLIS,
+          TimeUnit.MILLISECONDS);
+      try {
+        if (streamingBuildSlots.isPresent()) {
+          return streamUntilCoordinatorSaysStop(client, minionId, streamingBuildSlots.get());
+        }
+        return buildUntilCoordinatorSaysStop(client, minionId);
+      } finally {
+        heartbeatService.shutdownNow();
+      }
+    }
+  }
+
+  private int buildUntilCoordinatorSaysStop(ThriftCoordinatorClient client, String minionId)
+      throws IOException, InterruptedException {
+    while (true) {
+      GetTargetsToBuildResponse response = client.getTargetsToBuild(minionId);
+      switch (response.getAction()) {
+        case BUILD_TARGETS:
+          List<String> targetsToBuild = Lists.newArrayList(response.getBuildTargets());
+          LOG.debug(String.format(
+              "Minion [%s] is about to build [%d] targets: [%s]",
+              minionId,
+              targetsToBuild.size(),
+              Joiner.on(", ").join(targetsToBuild)));
+          int buildExitCode = builder.buildLocallyAndReturnExitCode(targetsToBuild);
+          LOG.debug(String.format(
+              "Minion [%s] finished with exit code [%d].",
+              minionId,
+              buildExitCode));
+          FinishedBuildingResponse finishedResponse = client.finishedBuilding(
+              minionId,
+              buildExitCode);
+          if (!finishedResponse.isContinueBuilding()) {
+            return 0;
+          }
+          break;
+
+        case RETRY_LATER:
+          try {
+            Thread.sleep(retryBackoffMillis);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          break;
+
+        case CLOSE_CLIENT:
+          return 0;
+
+        case UNKNOWN:
+        default:
+          throw new RuntimeException(String.format(
+              "CoordinatorClient received unexpected action [%s].",
+              response.getAction()));
+      }
+    }
+  }
+
+  private int streamUntilCoordinatorSaysStop(
+      ThriftCoordinatorClient client,
+      String minionId,
+      int buildSlots) throws IOException, InterruptedException {
+    ExecutorService buildExecutor =
+        MostExecutors.newMultiThreadExecutor("minion-build", buildSlots);
+    CompletionService<Integer> completionService = new ExecutorCompletionService<>(buildExecutor);
+    Map<Future<Integer>, String> targetsBeingBuilt = Maps.newHashMap();
+    List<String> finishedTargets = Lists.newArrayList();
+    try {
       while (true) {
-        GetTargetsToBuildResponse response = client.getTargetsToBuild(minionId);
+        GetTargetsToBuildResponse response = client.getTargetsToBuild(
+            minionId,
+            finishedTargets,
+            buildSlots - targetsBeingBuilt.size());
+        finishedTargets.clear();
         switch (response.getAction()) {
           case BUILD_TARGETS:
-            List<String> targetsToBuild = Lists.newArrayList(response.getBuildTargets());
-            LOG.debug(String.format(
-                "Minion [%s] is about to build [%d] targets: [%s]",
-                minionId,
-                targetsToBuild.size(),
-                Joiner.on(", ").join(targetsToBuild)));
-            int buildExitCode = builder.buildLocallyAndReturnExitCode(targetsToBuild);
             LOG.debug(String.format(
-                "Minion [%s] finished with exit code [%d].",
+                "Minion [%s] is about to start building [%d] targets: [%s]",
                 minionId,
-                buildExitCode));
-            FinishedBuildingResponse finishedResponse = client.finishedBuilding(
-                minionId,
-                buildExitCode);
-            if (!finishedResponse.isContinueBuilding()) {
-              return 0;
+                response.getBuildTargetsSize(),
+                Joiner.on(", ").join(response.getBuildTargets())));
+            for (String target : response.getBuildTargets()) {
+              Future<Integer> future = completionService.submit(
+                  () -> builder.buildLocallyAndReturnExitCode(ImmutableList.of(target)));
+              targetsBeingBuilt.put(future, target);
             }
             break;
 
           case RETRY_LATER:
-            try {
-              Thread.sleep(RETRY_BACKOFF_MILLIS);
-            } catch (InterruptedException e) {
-              throw new RuntimeException(e);
-            }
             break;
 
           case CLOSE_CLIENT:
@@ -100,7 +227,65 @@ public class MinionModeRunner implements DistBuildModeRunner {
                 "CoordinatorClient received unexpected action [%s].",
                 response.getAction()));
         }
+
+        // Only block until a slot frees up if there is no room for more work. Otherwise wake up
+        // in a bit to check whether the Coordinator has anything new.
+        Future<Integer> finished = targetsBeingBuilt.size() < buildSlots ?
+            completionService.poll(retryBackoffMillis, TimeUnit.MILLISECONDS) :
+            completionService.take();
+        while (finished != null) {
+          String target = Preconditions.checkNotNull(targetsBeingBuilt.remove(finished));
+          int buildExitCode = getBuildExitCode(finished);
+          if (buildExitCode != 0) {
+            LOG.debug(String.format(
+                "Minion [%s] failed to build [%s] with exit code [%d].",
+                minionId,
+                target,
+                buildExitCode));
+            client.finishedBuilding(minionId, buildExitCode);
+            return buildExitCode;
+          }
+          finishedTargets.add(target);
+          finished = completionService.poll();
+        }
+      }
+    } finally {
+      buildExecutor.shutdownNow();
+    }
+  }
+
+  private static int getBuildExitCode(Future<Integer> finished)
+      throws IOException, InterruptedException {
+    try {
+      return finished.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), InterruptedException.class);
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * @param heldLease whether the previous heartbeat found this Minion holding a lease. An idle
+   *     Minion legitimately holds none, so only losing a lease that was held is worth a warning.
+   */
+  private static void sendHeartbeat(
+      ThriftCoordinatorClient client,
+      String minionId,
+      AtomicBoolean heldLease) {
+    try {
+      MinionHeartbeatResponse response = client.minionHeartbeat(minionId);
+      boolean holdsLease = response.isContinueBuilding();
+      if (heldLease.getAndSet(holdsLease) && !holdsLease) {
+        LOG.warn(String.format(
+            "Minion [%s] no longer holds a lease on its targets.",
+            minionId));
+      } else if (!holdsLease) {
+        LOG.debug(String.format("Minion [%s] does not hold a lease.", minionId));
       }
+    } catch (IOException | RuntimeException e) {
+      // Missing a heartbeat is not fatal. The lease only expires after several are missed.
+      LOG.warn(e, String.format("Minion [%s] failed to send a heartbeat.", minionId));
     }
   }
 
@@ -16,83 +16,316 @@
 
 package com.facebook.buck.distributed;
 
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.timing.Clock;
+import com.facebook.buck.timing.DefaultClock;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Allocates and keeps track of what BuildTargets are allocated to which Minions.
+ *
+ * Minions either work in batches ({@link #getTargetsToBuild} followed by
+ * {@link #finishedBuildingTargets}) or stream ({@link #updateMinionWorkload}), reporting each
+ * target as soon as it finishes and pulling new ones whenever they have free build slots.
+ *
+ * Every allocation is a lease that the Minion renews by heartbeating or by talking to the
+ * Coordinator. When a lease expires the Minion is considered lost and its targets are handed out
+ * again. When there is no more work to hand out, targets that have been building for longer than
+ * the speculation threshold are speculatively re-issued to idle Minions, and whichever copy
+ * finishes first wins.
  * NOTE: Not thread safe.
  */
 public class MinionWorkloadAllocator {
+  private static final Logger LOG = Logger.get(MinionWorkloadAllocator.class);
+
+  public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  public static final long DEFAULT_SPECULATION_THRESHOLD_MILLIS = TimeUnit.MINUTES.toMillis(2);
 
   private final BuildTargetsQueue queue;
   private final int maxTargetsPerMinion;
+  private final long leaseTimeoutMillis;
+  private final long speculationThresholdMillis;
+  private final Clock clock;
   private final Map<String, MinionWorkload> minionAllocations;
   private final List<String> targetsNotAssignedYet;
+  private final Set<String> assignedTargets;
+  private final Set<String> finishedTargets;
+  private final Set<String> speculatedTargets;
 
   public MinionWorkloadAllocator(BuildTargetsQueue queue, int maxTargetsPerMinion) {
+    this(
+        queue,
+        maxTargetsPerMinion,
+        DEFAULT_LEASE_TIMEOUT_MILLIS,
+        DEFAULT_SPECULATION_THRESHOLD_MILLIS,
+        new DefaultClock());
+  }
+
+  public MinionWorkloadAllocator(
+      BuildTargetsQueue queue,
+      int maxTargetsPerMinion,
+      long leaseTimeoutMillis,
+      long speculationThresholdMillis,
+      Clock clock) {
+    Preconditions.checkArgument(leaseTimeoutMillis > 0);
+    Preconditions.checkArgument(speculationThresholdMillis > 0);
     this.queue = queue;
     this.minionAllocations = Maps.newHashMap();
     this.targetsNotAssignedYet =
         Lists.newArrayList(queue.dequeueZeroDependencyNodes(ImmutableList.of()));
+    this.assignedTargets = Sets.newHashSet();
+    this.finishedTargets = Sets.newHashSet();
+    this.speculatedTargets = Sets.newHashSet();
     this.maxTargetsPerMinion = maxTargetsPerMinion;
+    this.leaseTimeoutMillis = leaseTimeoutMillis;
+    this.speculationThresholdMillis = speculationThresholdMillis;
+    this.clock = clock;
   }
 
   public ImmutableList<String> getTargetsToBuild(String minionId) {
+    long nowMillis = clock.currentTimeMillis();
+    expireLeases(nowMillis);
+
     // Return existing one if already allocated.
-    if (minionAllocations.containsKey(minionId)) {
-      return minionAllocations.get(minionId).getTargetsBeingBuilt();
+    MinionWorkload existingWorkload = minionAllocations.get(minionId);
+    if (existingWorkload != null &&
+        !existingWorkload.isExpired() &&
+        !existingWorkload.getTargetsBeingBuilt().isEmpty()) {
+      existingWorkload.renewLease(nowMillis);
+      return existingWorkload.getTargetsBeingBuilt();
     }
 
-    // Make sure we keep the list of targets ready to build stocked up.
-    if (targetsNotAssignedYet.size() < maxTargetsPerMinion) {
-      targetsNotAssignedYet.addAll(queue.dequeueZeroDependencyNodes(ImmutableList.of()));
+    return assignTargets(minionId, maxTargetsPerMinion, nowMillis);
+  }
+
+  /**
+   * Streaming counterpart of {@link #getTargetsToBuild} and {@link #finishedBuildingTargets}.
+   *
+   * @param finishedTargets targets the Minion finished building since its previous update.
+   * @param maxTargetsToBuild number of free build slots the Minion has.
+   * @return the new targets allocated to the Minion, on top of the ones it is still building.
+   */
+  public ImmutableList<String> updateMinionWorkload(
+      String minionId,
+      Iterable<String> finishedTargets,
+      int maxTargetsToBuild) {
+    long nowMillis = clock.currentTimeMillis();
+    MinionWorkload minionWorkload = minionAllocations.get(minionId);
+    for (String target : finishedTargets) {
+      if (minionWorkload != null) {
+        minionWorkload.removeTarget(target);
+      }
     }
+    markTargetsAsFinished(minionId, finishedTargets);
+    expireLeases(nowMillis);
 
-    if (targetsNotAssignedYet.isEmpty()) {
+    if (maxTargetsToBuild <= 0) {
+      heartbeat(minionId);
       return ImmutableList.of();
     }
+    return assignTargets(minionId, maxTargetsToBuild, nowMillis);
+  }
+
+  /**
+   * Renews the lease of the workload currently allocated to the Minion.
+   *
+   * @return false if the Minion holds no valid lease, ie, it has been declared lost.
+   */
+  public boolean heartbeat(String minionId) {
+    long nowMillis = clock.currentTimeMillis();
+    MinionWorkload minionWorkload = minionAllocations.get(minionId);
+    if (minionWorkload == null || minionWorkload.isExpired()) {
+      return false;
+    }
+    minionWorkload.renewLease(nowMillis);
+    return true;
+  }
+
+  public void finishedBuildingTargets(String minionId) {
+    MinionWorkload minionWorkload = minionAllocations.remove(minionId);
+    if (minionWorkload == null) {
+      LOG.warn("Minion [%s] finished building but had no workload allocated.", minionId);
+      return;
+    }
+    markTargetsAsFinished(minionId, minionWorkload.getTargetsBeingBuilt());
+  }
 
-    // Assign new minionWorkload to the worker.
+  public boolean isBuildFinished() {
+    return targetsNotAssignedYet.isEmpty() && finishedTargets.containsAll(assignedTargets);
+  }
 
-    // NOTE: This is just a view into the original collection. It's not a clone.
-    int lastIndex = Math.min(targetsNotAssignedYet.size(), maxTargetsPerMinion);
-    List<String> viewIntoTargetsToBuild = targetsNotAssignedYet.subList(0, lastIndex);
-    ImmutableList<String> targetsToBuild = ImmutableList.copyOf(viewIntoTargetsToBuild);
+  private ImmutableList<String> assignTargets(
+      String minionId,
+      int maxTargetsToAssign,
+      long nowMillis) {
+    ImmutableList<String> targetsToBuild;
+    if (targetsNotAssignedYet.isEmpty()) {
+      targetsToBuild = findTargetsToSpeculate(maxTargetsToAssign, nowMillis);
+      if (!targetsToBuild.isEmpty()) {
+        LOG.info(
+            "Speculatively re-issuing [%d] straggling targets to Minion [%s].",
+            targetsToBuild.size(),
+            minionId);
+      }
+    } else {
+      // NOTE: This is just a view into the original collection. It's not a clone.
+      int lastIndex = Math.min(targetsNotAssignedYet.size(), maxTargetsToAssign);
+      List<String> viewIntoTargetsToBuild = targetsNotAssignedYet.subList(0, lastIndex);
+      targetsToBuild = ImmutableList.copyOf(viewIntoTargetsToBuild);
 
-    // Because this is a view over the original List, the .clear() method will remove the
-    // items from the original list.
-    viewIntoTargetsToBuild.clear();
+      // Because this is a view over the original List, the .clear() method will remove the
+      // items from the original list.
+      viewIntoTargetsToBuild.clear();
+    }
 
-    MinionWorkload minionWorkload = new MinionWorkload(targetsToBuild);
-    minionAllocations.put(minionId, minionWorkload);
+    MinionWorkload minionWorkload = minionAllocations.get(minionId);
+    if (minionWorkload == null || minionWorkload.isExpired()) {
+      if (targetsToBuild.isEmpty()) {
+        // The Minion came back after being declared lost. Whatever it was doing is gone.
+        minionAllocations.remove(minionId);
+        return targetsToBuild;
+      }
+      minionWorkload = new MinionWorkload();
+      minionAllocations.put(minionId, minionWorkload);
+    }
+    minionWorkload.renewLease(nowMillis);
+    for (String target : targetsToBuild) {
+      minionWorkload.addTarget(target, nowMillis);
+    }
+    assignedTargets.addAll(targetsToBuild);
     return targetsToBuild;
   }
 
-  public void finishedBuildingTargets(String minionId) {
-    MinionWorkload minionWorkload = Preconditions.checkNotNull(minionAllocations.remove(minionId));
+  private void markTargetsAsFinished(String minionId, Iterable<String> targets) {
+    // Targets may have already been built by a speculative copy or, if this Minion's lease had
+    // expired, they may be waiting to be re-assigned.
+    List<String> newlyFinishedTargets = Lists.newArrayList();
+    for (String target : targets) {
+      if (!assignedTargets.contains(target)) {
+        LOG.warn("Minion [%s] finished target [%s] that was never allocated.", minionId, target);
+        continue;
+      }
+      if (finishedTargets.add(target)) {
+        newlyFinishedTargets.add(target);
+        targetsNotAssignedYet.remove(target);
+      }
+    }
     targetsNotAssignedYet.addAll(
-        queue.dequeueZeroDependencyNodes(minionWorkload.getTargetsBeingBuilt()));
+        queue.dequeueZeroDependencyNodes(ImmutableList.copyOf(newlyFinishedTargets)));
   }
 
-  public boolean isBuildFinished() {
-    return minionAllocations.size() == 0 && targetsNotAssignedYet.size() == 0;
+  private void expireLeases(long nowMillis) {
+    for (Map.Entry<String, MinionWorkload> allocation : minionAllocations.entrySet()) {
+      MinionWorkload minionWorkload = allocation.getValue();
+      if (minionWorkload.isExpired() ||
+          minionWorkload.getLeaseExpiryMillis() > nowMillis) {
+        continue;
+      }
+
+      minionWorkload.expire();
+      List<String> targetsToReassign = Lists.newArrayList();
+      for (String target : minionWorkload.getTargetsBeingBuilt()) {
+        if (!finishedTargets.contains(target) &&
+            !targetsNotAssignedYet.contains(target) &&
+            !isBeingBuiltByLiveMinion(target)) {
+          targetsToReassign.add(target);
+        }
+      }
+      LOG.warn(
+          "Lease of Minion [%s] expired. Re-assigning its [%d] unfinished targets.",
+          allocation.getKey(),
+          targetsToReassign.size());
+      // Lost work goes to the front of the line as other targets probably depend on it.
+      targetsNotAssignedYet.addAll(0, targetsToReassign);
+    }
   }
 
-  private static class MinionWorkload {
-    private final ImmutableList<String> targetsBeingBuilt;
+  private boolean isBeingBuiltByLiveMinion(String target) {
+    for (MinionWorkload minionWorkload : minionAllocations.values()) {
+      if (!minionWorkload.isExpired() && minionWorkload.isBuilding(target)) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    public MinionWorkload(ImmutableList<String> targetsBeingBuilt) {
-      this.targetsBeingBuilt = targetsBeingBuilt;
+  private ImmutableList<String> findTargetsToSpeculate(int maxTargets, long nowMillis) {
+    ImmutableList.Builder<String> targetsToSpeculate = ImmutableList.builder();
+    int count = 0;
+    for (MinionWorkload minionWorkload : minionAllocations.values()) {
+      if (minionWorkload.isExpired()) {
+        continue;
+      }
+
+      for (String target : minionWorkload.getTargetsBeingBuilt()) {
+        if (count >= maxTargets) {
+          return targetsToSpeculate.build();
+        }
+        if (nowMillis - minionWorkload.getStartMillis(target) >= speculationThresholdMillis &&
+            !finishedTargets.contains(target) &&
+            speculatedTargets.add(target)) {
+          targetsToSpeculate.add(target);
+          ++count;
+        }
+      }
+    }
+    return targetsToSpeculate.build();
+  }
+
+  private class MinionWorkload {
+    // Targets currently being built and the time at which they were allocated.
+    private final Map<String, Long> targetStartMillis;
+    private long leaseExpiryMillis;
+    private boolean expired;
+
+    public MinionWorkload() {
+      this.targetStartMillis = Maps.newLinkedHashMap();
+      this.expired = false;
     }
 
     public ImmutableList<String> getTargetsBeingBuilt() {
-      return targetsBeingBuilt;
+      return ImmutableList.copyOf(targetStartMillis.keySet());
+    }
+
+    public boolean isBuilding(String target) {
+      return targetStartMillis.containsKey(target);
+    }
+
+    public long getStartMillis(String target) {
+      return Preconditions.checkNotNull(targetStartMillis.get(target));
+    }
+
+    public void addTarget(String target, long nowMillis) {
+      targetStartMillis.put(target, nowMillis);
+    }
+
+    public void removeTarget(String target) {
+      targetStartMillis.remove(target);
+    }
+
+    public long getLeaseExpiryMillis() {
+      return leaseExpiryMillis;
+    }
+
+    public void renewLease(long nowMillis) {
+      leaseExpiryMillis = nowMillis + leaseTimeoutMillis;
+    }
+
+    public boolean isExpired() {
+      return expired;
+    }
+
+    public void expire() {
+      expired = true;
     }
   }
 }
@@ -57,6 +57,7 @@ public class RecordingFileHashLoader implements FileHashLoader {
   private final Set<Path> seenPaths;
   @GuardedBy("this")
   private final Set<ArchiveMemberPath> seenArchives;
+  private final Optional<FileContentsUploader> fileContentsUploader;
   private boolean materializeCurrentFileDuringPreloading = false;
 
   public RecordingFileHashLoader(
@@ -64,7 +65,21 @@ public class RecordingFileHashLoader implements FileHashLoader {
       ProjectFilesystem projectFilesystem,
       BuildJobStateFileHashes remoteFileHashes,
       DistBuildConfig distBuildConfig) {
+    this(delegate, projectFilesystem, remoteFileHashes, distBuildConfig, Optional.empty());
+  }
+
+  /**
+   * @param fileContentsUploader if present, the contents of every recorded file are handed to it
+   *     as soon as they are read, so they can be uploaded while the rest is still being recorded.
+   */
+  public RecordingFileHashLoader(
+      FileHashLoader delegate,
+      ProjectFilesystem projectFilesystem,
+      BuildJobStateFileHashes remoteFileHashes,
+      DistBuildConfig distBuildConfig,
+      Optional<FileContentsUploader> fileContentsUploader) {
     this.delegate = delegate;
+    this.fileContentsUploader = fileContentsUploader;
     this.projectFilesystem = projectFilesystem;
     this.remoteFileHashes = remoteFileHashes;
     this.distBuildConfig = distBuildConfig;
@@ -86,11 +101,13 @@ public class RecordingFileHashLoader implements FileHashLoader {
       if (projectFilesystem.isDirectory(nextPath)) {
         children = processDirectory(nextPath, remainingPaths);
       }
+      boolean firstTimeSeen;
       synchronized (this) {
-        if (!seenPaths.contains(nextPath)) {
-          seenPaths.add(nextPath);
-          record(nextPath, Optional.empty(), hashCode, children);
-        }
+        firstTimeSeen = seenPaths.add(nextPath);
+      }
+      // Reading the contents is the expensive bit, so do it without holding the lock.
+      if (firstTimeSeen) {
+        record(nextPath, Optional.empty(), hashCode, children);
       }
     }
 
@@ -170,7 +187,7 @@ public class RecordingFileHashLoader implements FileHashLoader {
 
   }
 
-  private synchronized void record(
+  private void record(
       Path path,
       Optional<String> memberPath,
       HashCode hashCode,
@@ -228,22 +245,28 @@ public class RecordingFileHashLoader implements FileHashLoader {
     fileHashEntry.setMaterializeDuringPreloading(materializeCurrentFileDuringPreloading);
 
     // TODO(alisdair04): handling for symlink to internal directory (including infinite loop).
-    remoteFileHashes.addToEntries(fileHashEntry);
+    synchronized (this) {
+      remoteFileHashes.addToEntries(fileHashEntry);
+    }
+    if (fileContentsUploader.isPresent()) {
+      fileContentsUploader.get().add(fileHashEntry);
+    }
   }
 
 
   @Override
   public HashCode get(ArchiveMemberPath archiveMemberPath) throws IOException {
     HashCode hashCode = delegate.get(archiveMemberPath);
+    boolean firstTimeSeen;
     synchronized (this) {
-      if (!seenArchives.contains(archiveMemberPath)) {
-        seenArchives.add(archiveMemberPath);
-        record(
-            archiveMemberPath.getArchivePath(),
-            Optional.of(archiveMemberPath.getMemberPath().toString()),
-            hashCode,
-            new LinkedList<>());
-      }
+      firstTimeSeen = seenArchives.add(archiveMemberPath);
+    }
+    if (firstTimeSeen) {
+      record(
+          archiveMemberPath.getArchivePath(),
+          Optional.of(archiveMemberPath.getMemberPath().toString()),
+          hashCode,
+          new LinkedList<>());
     }
     return hashCode;
   }
@@ -22,6 +22,8 @@ import com.facebook.buck.distributed.thrift.FinishedBuildingRequest;
 import com.facebook.buck.distributed.thrift.FinishedBuildingResponse;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildRequest;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildResponse;
+import com.facebook.buck.distributed.thrift.MinionHeartbeatRequest;
+import com.facebook.buck.distributed.thrift.MinionHeartbeatResponse;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.slb.ThriftException;
 import com.google.common.base.Preconditions;
@@ -36,10 +38,15 @@ import org.apache.thrift.transport.TTransportException;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
+/**
+ * Client side of the Coordinator thrift service. Calls are serialized as the underlying thrift
+ * client cannot be shared between threads and Minions heartbeat from a background thread.
+ */
 public class ThriftCoordinatorClient implements Closeable {
   private static final Logger LOG = Logger.get(ThriftCoordinatorClient.class);
 
@@ -59,7 +66,7 @@ public class ThriftCoordinatorClient implements Closeable {
     this.stampedeBuildId = stampedeBuildId;
   }
 
-  public ThriftCoordinatorClient start() throws IOException {
+  public synchronized ThriftCoordinatorClient start() throws IOException {
     transport = new TFramedTransport(new TSocket(remoteHost, remotePort));
 
     Stopwatch stopwatch = Stopwatch.createStarted();
@@ -88,7 +95,7 @@ public class ThriftCoordinatorClient implements Closeable {
     return this;
   }
 
-  public ThriftCoordinatorClient stop() {
+  public synchronized ThriftCoordinatorClient stop() {
     Preconditions.checkNotNull(transport, "The client has already been stopped.");
     transport.close();
     transport = null;
@@ -96,7 +103,7 @@ public class ThriftCoordinatorClient implements Closeable {
     return this;
   }
 
-  public GetTargetsToBuildResponse getTargetsToBuild(String minionId)
+  public synchronized GetTargetsToBuildResponse getTargetsToBuild(String minionId)
       throws IOException {
     LOG.debug(String.format("Minion [%s] is requesting targets to build.", minionId));
     Preconditions.checkNotNull(client, "Client was not started.");
@@ -111,7 +118,33 @@ public class ThriftCoordinatorClient implements Closeable {
     }
   }
 
-  public FinishedBuildingResponse finishedBuilding(String minionId, int minionExitCode)
+  /**
+   * Streaming version of {@link #getTargetsToBuild(String)}. Reports the targets that finished
+   * since the previous call and asks for at most maxTargetsToBuild new ones.
+   */
+  public synchronized GetTargetsToBuildResponse getTargetsToBuild(
+      String minionId,
+      List<String> finishedTargets,
+      int maxTargetsToBuild) throws IOException {
+    LOG.debug(String.format(
+        "Minion [%s] finished [%d] targets and is requesting up to [%d] more.",
+        minionId,
+        finishedTargets.size(),
+        maxTargetsToBuild));
+    Preconditions.checkNotNull(client, "Client was not started.");
+    GetTargetsToBuildRequest request = new GetTargetsToBuildRequest()
+        .setMinionId(minionId)
+        .setBuildId(stampedeBuildId)
+        .setFinishedTargets(finishedTargets)
+        .setMaxTargetsToBuild(maxTargetsToBuild);
+    try {
+      return client.getTargetsToBuild(request);
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+  }
+
+  public synchronized FinishedBuildingResponse finishedBuilding(String minionId, int minionExitCode)
       throws IOException {
     LOG.debug(String.format(
         "Minion [%s] is reporting that it finished building.",
@@ -129,8 +162,22 @@ public class ThriftCoordinatorClient implements Closeable {
     }
   }
 
+  public synchronized MinionHeartbeatResponse minionHeartbeat(String minionId)
+      throws IOException {
+    LOG.verbose(String.format("Minion [%s] is sending a heartbeat.", minionId));
+    Preconditions.checkNotNull(client, "Client was not started.");
+    MinionHeartbeatRequest request = new MinionHeartbeatRequest()
+        .setBuildId(stampedeBuildId)
+        .setMinionId(minionId);
+    try {
+      return client.minionHeartbeat(request);
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+  }
+
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
     if (client != null) {
       stop();
     }
@@ -23,11 +23,14 @@ import com.facebook.buck.distributed.thrift.FinishedBuildingResponse;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildAction;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildRequest;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildResponse;
+import com.facebook.buck.distributed.thrift.MinionHeartbeatRequest;
+import com.facebook.buck.distributed.thrift.MinionHeartbeatResponse;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.slb.ThriftException;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.apache.thrift.TException;
 import org.apache.thrift.server.TThreadedSelectorServer;
@@ -41,6 +44,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
@@ -52,7 +56,7 @@ public class ThriftCoordinatorServer implements Closeable {
   private static final long MAX_DIST_BUILD_DURATION_MILLIS = TimeUnit.HOURS.toMillis(2);
 
   // TODO(ruibm): Find some heuristic to compute this.
-  private static final int MAX_TARGETS_ALLOCATED_PER_MINION = 2;
+  public static final int DEFAULT_MAX_TARGETS_ALLOCATED_PER_MINION = 2;
 
   private final MinionWorkloadAllocator allocator;
   private final int port;
@@ -61,6 +65,9 @@ public class ThriftCoordinatorServer implements Closeable {
   private final Object lock;
   private final CompletableFuture<Integer> exitCodeFuture;
   private final BuildId stampedeBuildId;
+  private final AtomicInteger getTargetsToBuildRequestCount;
+  private final AtomicInteger finishedBuildingRequestCount;
+  private final AtomicInteger minionHeartbeatRequestCount;
 
   @Nullable
   private TNonblockingServerSocket transport;
@@ -70,10 +77,21 @@ public class ThriftCoordinatorServer implements Closeable {
   private Thread serverThread;
 
   public ThriftCoordinatorServer(int port, BuildTargetsQueue queue, BuildId stampedeBuildId) {
+    this(port, queue, stampedeBuildId, DEFAULT_MAX_TARGETS_ALLOCATED_PER_MINION);
+  }
+
+  public ThriftCoordinatorServer(
+      int port,
+      BuildTargetsQueue queue,
+      BuildId stampedeBuildId,
+      int maxTargetsAllocatedPerMinion) {
     this.stampedeBuildId = stampedeBuildId;
     this.lock = new Object();
     this.exitCodeFuture = new CompletableFuture<>();
-    this.allocator = new MinionWorkloadAllocator(queue, MAX_TARGETS_ALLOCATED_PER_MINION);
+    this.getTargetsToBuildRequestCount = new AtomicInteger(0);
+    this.finishedBuildingRequestCount = new AtomicInteger(0);
+    this.minionHeartbeatRequestCount = new AtomicInteger(0);
+    this.allocator = new MinionWorkloadAllocator(queue, maxTargetsAllocatedPerMinion);
     this.port = port;
     this.handler = new CoordinatorServiceHandler();
     this.processor = new CoordinatorService.Processor<CoordinatorService.Iface>(handler);
@@ -124,6 +142,16 @@ public class ThriftCoordinatorServer implements Closeable {
     }
   }
 
+  /**
+   * @return the number of times each coordinator RPC has been served so far, keyed by method name.
+   */
+  public ImmutableMap<String, Integer> getRpcCounts() {
+    return ImmutableMap.of(
+        "getTargetsToBuild", getTargetsToBuildRequestCount.get(),
+        "finishedBuilding", finishedBuildingRequestCount.get(),
+        "minionHeartbeat", minionHeartbeatRequestCount.get());
+  }
+
   public Future<Integer> getExitCode() {
     return exitCodeFuture;
   }
@@ -149,19 +177,36 @@ public class ThriftCoordinatorServer implements Closeable {
       LOG.debug(String.format(
           "Minion [%s] is requesting for new targets to build.",
           request.minionId));
+      getTargetsToBuildRequestCount.incrementAndGet();
       checkBuildId(request.getBuildId());
       synchronized (lock) {
         Preconditions.checkArgument(request.isSetMinionId());
 
         GetTargetsToBuildResponse response = new GetTargetsToBuildResponse();
-        if (allocator.isBuildFinished()) {
+        ImmutableList<String> targets = ImmutableList.of();
+        if (request.isSetMaxTargetsToBuild()) {
+          // Streaming mode: account for what finished before deciding whether the build is over.
+          targets = allocator.updateMinionWorkload(
+              request.getMinionId(),
+              request.isSetFinishedTargets() ?
+                  request.getFinishedTargets() :
+                  ImmutableList.of(),
+              request.getMaxTargetsToBuild());
+          if (allocator.isBuildFinished() && !getExitCode().isDone()) {
+            setBuildExitCode(0);
+          }
+        }
+
+        if (allocator.isBuildFinished() || getExitCode().isDone()) {
           LOG.debug(String.format(
               "Minion [%s] is being told to exit because the build has finished.",
               request.minionId));
           return response.setAction(GetTargetsToBuildAction.CLOSE_CLIENT);
         }
 
-        ImmutableList<String> targets = allocator.getTargetsToBuild(request.getMinionId());
+        if (!request.isSetMaxTargetsToBuild()) {
+          targets = allocator.getTargetsToBuild(request.getMinionId());
+        }
         if (targets.isEmpty()) {
           LOG.debug(String.format(
               "Minion [%s] is being told to retry getting more workload later.",
@@ -185,6 +230,7 @@ public class ThriftCoordinatorServer implements Closeable {
       LOG.info(String.format(
           "Minion [%s] has finished building.",
           request.getMinionId()));
+      finishedBuildingRequestCount.incrementAndGet();
       checkBuildId(request.getBuildId());
       synchronized (lock) {
         Preconditions.checkArgument(request.isSetMinionId());
@@ -212,6 +258,31 @@ public class ThriftCoordinatorServer implements Closeable {
       }
     }
 
+    @Override
+    public MinionHeartbeatResponse minionHeartbeat(MinionHeartbeatRequest request)
+        throws TException {
+      LOG.verbose(String.format(
+          "Minion [%s] sent a heartbeat.",
+          request.getMinionId()));
+      minionHeartbeatRequestCount.incrementAndGet();
+      checkBuildId(request.getBuildId());
+      synchronized (lock) {
+        Preconditions.checkArgument(request.isSetMinionId());
+        MinionHeartbeatResponse response = new MinionHeartbeatResponse();
+        if (getExitCode().isDone()) {
+          return response.setContinueBuilding(false);
+        }
+
+        boolean holdsLease = allocator.heartbeat(request.getMinionId());
+        if (!holdsLease) {
+          LOG.info(String.format(
+              "Minion [%s] sent a heartbeat but does not hold a valid lease.",
+              request.getMinionId()));
+        }
+        return response.setContinueBuilding(holdsLease);
+      }
+    }
+
     private void checkBuildId(BuildId buildId) {
       Preconditions.checkArgument(
           stampedeBuildId.equals(buildId),
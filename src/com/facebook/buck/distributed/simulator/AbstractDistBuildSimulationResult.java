@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.simulator;
+
+import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.immutables.value.Value;
+
+/**
+ * Measurements of a single {@link DistBuildSimulator} run.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+abstract class AbstractDistBuildSimulationResult {
+
+  public abstract int getExitCode();
+
+  /**
+   * @return wall time between the coordinator starting and the last minion finishing.
+   */
+  public abstract long getMakespanMillis();
+
+  /**
+   * @return lower bound of the makespan given infinite minions.
+   */
+  public abstract long getCriticalPathMillis();
+
+  public abstract int getBuildThreadsPerMinion();
+
+  /**
+   * @return for each minion, the sum of the durations of the rules it built.
+   */
+  public abstract ImmutableList<Long> getMinionBusyMillis();
+
+  /**
+   * @return number of requests the coordinator served, keyed by RPC name.
+   */
+  public abstract ImmutableMap<String, Integer> getCoordinatorRpcCounts();
+
+  public int getMinionCount() {
+    return getMinionBusyMillis().size();
+  }
+
+  /**
+   * @return fraction of the available build thread time that each minion spent building.
+   */
+  @Value.Derived
+  public ImmutableList<Double> getMinionUtilization() {
+    ImmutableList.Builder<Double> utilization = ImmutableList.builder();
+    for (long busyMillis : getMinionBusyMillis()) {
+      utilization.add(computeUtilization(busyMillis, getBuildThreadsPerMinion()));
+    }
+    return utilization.build();
+  }
+
+  /**
+   * @return fraction of the available build thread time of all minions that was spent building.
+   */
+  @Value.Derived
+  public double getOverallUtilization() {
+    long totalBusyMillis = 0;
+    for (long busyMillis : getMinionBusyMillis()) {
+      totalBusyMillis += busyMillis;
+    }
+    return computeUtilization(totalBusyMillis, getBuildThreadsPerMinion() * getMinionCount());
+  }
+
+  public int getTotalCoordinatorRpcCount() {
+    int total = 0;
+    for (int count : getCoordinatorRpcCounts().values()) {
+      total += count;
+    }
+    return total;
+  }
+
+  private double computeUtilization(long busyMillis, int buildThreads) {
+    long availableMillis = getMakespanMillis() * buildThreads;
+    if (availableMillis <= 0) {
+      return 0;
+    }
+    return (double) busyMillis / availableMillis;
+  }
+}
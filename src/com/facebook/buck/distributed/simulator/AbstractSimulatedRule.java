@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.simulator;
+
+import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import org.immutables.value.Value;
+
+/**
+ * A single node of a {@link SimulatedActionGraph}: a build target, the targets it depends on and
+ * how long it takes to build.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonDeserialize(as = SimulatedRule.class)
+abstract class AbstractSimulatedRule {
+
+  /**
+   * @return fully qualified name of the simulated BuildTarget.
+   */
+  @Value.Parameter
+  public abstract String getTarget();
+
+  /**
+   * @return fully qualified names of the targets this one depends on.
+   */
+  @Value.Parameter
+  public abstract ImmutableList<String> getDeps();
+
+  /**
+   * @return how long building this rule takes on a minion.
+   */
+  @Value.Parameter
+  public abstract long getDurationMillis();
+
+  @Value.Check
+  protected void check() {
+    Preconditions.checkState(
+        getDurationMillis() >= 0,
+        "Rule [%s] cannot have a negative duration.",
+        getTarget());
+  }
+}
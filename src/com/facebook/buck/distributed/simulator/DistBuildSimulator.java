@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.simulator;
+
+import com.facebook.buck.distributed.MinionModeRunner;
+import com.facebook.buck.distributed.ThriftCoordinatorServer;
+import com.facebook.buck.distributed.thrift.BuildId;
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs one {@link ThriftCoordinatorServer} and a number of {@link MinionModeRunner}s inside the
+ * current JVM and replays a {@link SimulatedActionGraph} through them. This exercises the real
+ * coordinator protocol and allocation policy without needing a frontend, so that scheduling
+ * changes can be measured before being rolled out.
+ */
+public class DistBuildSimulator {
+  private static final Logger LOG = Logger.get(DistBuildSimulator.class);
+
+  private static final BuildId SIMULATION_BUILD_ID = new BuildId().setId("simulation");
+  private static final long MAX_MINION_TEAR_DOWN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private final int minionCount;
+  private final int buildThreadsPerMinion;
+  private final int maxTargetsPerMinion;
+  private final long retryBackoffMillis;
+  private final boolean streamingMinions;
+
+  public DistBuildSimulator(
+      int minionCount,
+      int buildThreadsPerMinion,
+      int maxTargetsPerMinion,
+      long retryBackoffMillis) {
+    this(minionCount, buildThreadsPerMinion, maxTargetsPerMinion, retryBackoffMillis, false);
+  }
+
+  /**
+   * @param streamingMinions if true, minions report each target as it finishes and use one build
+   *     slot per build thread instead of building batches of maxTargetsPerMinion targets.
+   */
+  public DistBuildSimulator(
+      int minionCount,
+      int buildThreadsPerMinion,
+      int maxTargetsPerMinion,
+      long retryBackoffMillis,
+      boolean streamingMinions) {
+    Preconditions.checkArgument(minionCount > 0, "At least one minion is required.");
+    Preconditions.checkArgument(buildThreadsPerMinion > 0);
+    Preconditions.checkArgument(maxTargetsPerMinion > 0);
+    Preconditions.checkArgument(retryBackoffMillis >= 0);
+    this.minionCount = minionCount;
+    this.buildThreadsPerMinion = buildThreadsPerMinion;
+    this.maxTargetsPerMinion = maxTargetsPerMinion;
+    this.retryBackoffMillis = retryBackoffMillis;
+    this.streamingMinions = streamingMinions;
+  }
+
+  public DistBuildSimulationResult run(SimulatedActionGraph graph)
+      throws IOException, InterruptedException {
+    Preconditions.checkArgument(
+        !graph.getRules().isEmpty(),
+        "Cannot simulate the build of an empty graph.");
+
+    Set<String> builtTargets = Sets.newConcurrentHashSet();
+    List<SimulatedLocalBuilder> builders = Lists.newArrayList();
+    for (int i = 0; i < minionCount; ++i) {
+      builders.add(new SimulatedLocalBuilder(graph, builtTargets, buildThreadsPerMinion));
+    }
+
+    int port = findFreePort();
+    ExecutorService minionExecutor = Executors.newFixedThreadPool(minionCount);
+    try (ThriftCoordinatorServer server = new ThriftCoordinatorServer(
+        port,
+        graph.createBuildTargetsQueue(),
+        SIMULATION_BUILD_ID,
+        maxTargetsPerMinion)) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      server.start();
+
+      List<Future<Integer>> minions = Lists.newArrayList();
+      for (SimulatedLocalBuilder builder : builders) {
+        MinionModeRunner minion = new MinionModeRunner(
+            "localhost",
+            port,
+            builder,
+            SIMULATION_BUILD_ID,
+            retryBackoffMillis,
+            streamingMinions ? Optional.of(buildThreadsPerMinion) : Optional.empty());
+        minions.add(minionExecutor.submit(minion::runAndReturnExitCode));
+      }
+
+      int exitCode = server.waitUntilBuildCompletesAndReturnExitCode();
+      long makespanMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+      LOG.info("Simulated build finished with exit code [%d] in [%d] ms.", exitCode, makespanMillis);
+
+      if (exitCode == 0) {
+        // Idle minions are told to close the next time they ask for work.
+        for (Future<Integer> minion : minions) {
+          try {
+            minion.get(MAX_MINION_TEAR_DOWN_MILLIS, TimeUnit.MILLISECONDS);
+          } catch (ExecutionException | TimeoutException e) {
+            LOG.warn(e, "Simulated minion did not shut down cleanly.");
+          }
+        }
+      }
+
+      ImmutableList.Builder<Long> minionBusyMillis = ImmutableList.builder();
+      for (SimulatedLocalBuilder builder : builders) {
+        minionBusyMillis.add(builder.getBusyMillis());
+      }
+
+      return DistBuildSimulationResult.builder()
+          .setExitCode(exitCode)
+          .setMakespanMillis(makespanMillis)
+          .setCriticalPathMillis(graph.getCriticalPathMillis())
+          .setBuildThreadsPerMinion(buildThreadsPerMinion)
+          .setMinionBusyMillis(minionBusyMillis.build())
+          .setCoordinatorRpcCounts(server.getRpcCounts())
+          .build();
+    } finally {
+      minionExecutor.shutdownNow();
+    }
+  }
+
+  private static int findFreePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
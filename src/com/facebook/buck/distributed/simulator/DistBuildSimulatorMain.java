@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.simulator;
+
+import com.facebook.buck.distributed.ThriftCoordinatorServer;
+import com.facebook.buck.util.ObjectMappers;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+/**
+ * Command-line entry point of the {@link DistBuildSimulator}. Either replays a recorded graph
+ * (--graph) or a synthetic one and prints the measurements of the simulated distributed build.
+ */
+public class DistBuildSimulatorMain {
+
+  @Option(name = "--graph", usage = "JSON file with the list of rules to replay.")
+  @Nullable
+  private String graphPath = null;
+
+  @Option(name = "--minions", usage = "Number of simulated minions.")
+  private int minions = 4;
+
+  @Option(name = "--threads-per-minion", usage = "Number of build threads in each minion.")
+  private int threadsPerMinion = 4;
+
+  @Option(name = "--max-targets-per-minion", usage = "Targets handed to a minion per request.")
+  private int maxTargetsPerMinion =
+      ThriftCoordinatorServer.DEFAULT_MAX_TARGETS_ALLOCATED_PER_MINION;
+
+  @Option(name = "--retry-backoff-millis", usage = "How long idle minions wait to ask again.")
+  private long retryBackoffMillis = 10;
+
+  @Option(name = "--stream", usage = "Minions report targets as they finish instead of batches.")
+  private boolean stream = false;
+
+  @Option(name = "--rules", usage = "Number of rules of the synthetic graph.")
+  private int rules = 500;
+
+  @Option(name = "--layers", usage = "Number of layers of the synthetic graph.")
+  private int layers = 10;
+
+  @Option(name = "--max-deps", usage = "Maximum number of deps per rule of the synthetic graph.")
+  private int maxDeps = 4;
+
+  @Option(name = "--min-duration-millis", usage = "Minimum synthetic rule duration.")
+  private long minDurationMillis = 5;
+
+  @Option(name = "--max-duration-millis", usage = "Maximum synthetic rule duration.")
+  private long maxDurationMillis = 50;
+
+  @Option(name = "--seed", usage = "Seed used to generate the synthetic graph.")
+  private long seed = 0;
+
+  private DistBuildSimulatorMain() {}
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    DistBuildSimulatorMain options = new DistBuildSimulatorMain();
+    CmdLineParser parser = new CmdLineParser(options);
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.exit(1);
+    }
+    System.exit(options.run());
+  }
+
+  private int run() throws IOException, InterruptedException {
+    SimulatedActionGraph graph;
+    if (graphPath != null) {
+      graph = SimulatedActionGraph.readFromJson(
+          Paths.get(graphPath),
+          ObjectMappers.newDefaultInstance());
+    } else {
+      graph = SimulatedActionGraph.createSynthetic(
+          rules,
+          layers,
+          maxDeps,
+          minDurationMillis,
+          maxDurationMillis,
+          new Random(seed));
+    }
+
+    DistBuildSimulator simulator = new DistBuildSimulator(
+        minions,
+        threadsPerMinion,
+        maxTargetsPerMinion,
+        retryBackoffMillis,
+        stream);
+    DistBuildSimulationResult result = simulator.run(graph);
+
+    System.out.println(String.format("Rules:                %d", graph.getRules().size()));
+    System.out.println(String.format("Total rule time:      %d ms", graph.getTotalDurationMillis()));
+    System.out.println(String.format("Critical path:        %d ms", result.getCriticalPathMillis()));
+    System.out.println(String.format("Makespan:             %d ms", result.getMakespanMillis()));
+    System.out.println(String.format(
+        "Overall utilization:  %.1f%%",
+        result.getOverallUtilization() * 100));
+    for (int i = 0; i < result.getMinionCount(); ++i) {
+      System.out.println(String.format(
+          "  minion %d:           %.1f%%",
+          i,
+          result.getMinionUtilization().get(i) * 100));
+    }
+    for (Map.Entry<String, Integer> rpc : result.getCoordinatorRpcCounts().entrySet()) {
+      System.out.println(String.format("RPC %-18s%d", rpc.getKey() + ":", rpc.getValue()));
+    }
+    return result.getExitCode();
+  }
+}
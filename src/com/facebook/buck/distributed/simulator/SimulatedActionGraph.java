@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.simulator;
+
+import com.facebook.buck.distributed.BuildTargetsQueue;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The action graph replayed by the {@link DistBuildSimulator}. It can either be recorded from a
+ * real build and read from a JSON file (a list of {@link SimulatedRule}s) or be synthesized.
+ */
+public class SimulatedActionGraph {
+
+  private final ImmutableMap<String, SimulatedRule> rules;
+
+  private SimulatedActionGraph(ImmutableMap<String, SimulatedRule> rules) {
+    this.rules = rules;
+  }
+
+  public static SimulatedActionGraph of(Iterable<SimulatedRule> rules) {
+    ImmutableMap.Builder<String, SimulatedRule> builder = ImmutableMap.builder();
+    for (SimulatedRule rule : rules) {
+      builder.put(rule.getTarget(), rule);
+    }
+    ImmutableMap<String, SimulatedRule> rulesByTarget = builder.build();
+    for (SimulatedRule rule : rulesByTarget.values()) {
+      for (String dep : rule.getDeps()) {
+        Preconditions.checkArgument(
+            rulesByTarget.containsKey(dep),
+            "Rule [%s] depends on [%s] which is not part of the graph.",
+            rule.getTarget(),
+            dep);
+      }
+    }
+    return new SimulatedActionGraph(rulesByTarget);
+  }
+
+  public static SimulatedActionGraph readFromJson(Path path, ObjectMapper objectMapper)
+      throws IOException {
+    try (InputStream inputStream = Files.newInputStream(path)) {
+      List<SimulatedRule> rules = objectMapper.readValue(
+          inputStream,
+          new TypeReference<List<SimulatedRule>>() {});
+      return of(rules);
+    }
+  }
+
+  /**
+   * Synthesizes a layered DAG where every rule only depends on rules of earlier layers, which
+   * mimics the shape of most real action graphs: wide at the leaves and narrowing towards the
+   * top-level targets.
+   *
+   * @param numberOfRules total number of rules in the graph.
+   * @param numberOfLayers how many layers the rules are spread across. Rules of the first layer
+   *     have no dependencies.
+   * @param maxDepsPerRule upper bound of dependencies a rule picks from the previous layers.
+   * @param minDurationMillis lower bound of the uniformly distributed rule duration.
+   * @param maxDurationMillis upper bound of the uniformly distributed rule duration.
+   * @param random the source of randomness so that graphs are reproducible given a seed.
+   */
+  public static SimulatedActionGraph createSynthetic(
+      int numberOfRules,
+      int numberOfLayers,
+      int maxDepsPerRule,
+      long minDurationMillis,
+      long maxDurationMillis,
+      Random random) {
+    Preconditions.checkArgument(numberOfRules > 0);
+    Preconditions.checkArgument(numberOfLayers > 0 && numberOfLayers <= numberOfRules);
+    Preconditions.checkArgument(maxDepsPerRule >= 0);
+    Preconditions.checkArgument(minDurationMillis >= 0 && minDurationMillis <= maxDurationMillis);
+
+    List<SimulatedRule> rules = Lists.newArrayList();
+    List<String> previousLayersTargets = Lists.newArrayList();
+    int rulesPerLayer = numberOfRules / numberOfLayers;
+    for (int layer = 0; layer < numberOfLayers; ++layer) {
+      int rulesInThisLayer = layer == numberOfLayers - 1 ?
+          numberOfRules - layer * rulesPerLayer :
+          rulesPerLayer;
+      List<String> thisLayerTargets = Lists.newArrayList();
+      for (int i = 0; i < rulesInThisLayer; ++i) {
+        String target = String.format("//layer%d:rule%d", layer, i);
+        Set<String> deps = Sets.newLinkedHashSet();
+        if (!previousLayersTargets.isEmpty()) {
+          int numberOfDeps = random.nextInt(maxDepsPerRule + 1);
+          for (int dep = 0; dep < numberOfDeps; ++dep) {
+            deps.add(previousLayersTargets.get(random.nextInt(previousLayersTargets.size())));
+          }
+        }
+        long durationMillis = minDurationMillis +
+            (long) (random.nextDouble() * (maxDurationMillis - minDurationMillis));
+        rules.add(SimulatedRule.of(target, ImmutableList.copyOf(deps), durationMillis));
+        thisLayerTargets.add(target);
+      }
+      previousLayersTargets.addAll(thisLayerTargets);
+    }
+
+    return of(rules);
+  }
+
+  public ImmutableMap<String, SimulatedRule> getRules() {
+    return rules;
+  }
+
+  public long getDurationMillis(String target) {
+    return Preconditions.checkNotNull(
+        rules.get(target),
+        "Target [%s] is not part of the simulated graph.",
+        target).getDurationMillis();
+  }
+
+  public long getTotalDurationMillis() {
+    long total = 0;
+    for (SimulatedRule rule : rules.values()) {
+      total += rule.getDurationMillis();
+    }
+    return total;
+  }
+
+  /**
+   * @return the duration of the longest chain of dependent rules, which is the lower bound of the
+   *     makespan any scheduler can achieve.
+   */
+  public long getCriticalPathMillis() {
+    Map<String, Long> longestPathEndingAt = Maps.newHashMap();
+    long criticalPath = 0;
+    for (String target : rules.keySet()) {
+      criticalPath = Math.max(criticalPath, computeLongestPath(target, longestPathEndingAt));
+    }
+    return criticalPath;
+  }
+
+  private long computeLongestPath(String target, Map<String, Long> longestPathEndingAt) {
+    Long cached = longestPathEndingAt.get(target);
+    if (cached != null) {
+      return cached;
+    }
+    SimulatedRule rule = rules.get(target);
+    long longestDep = 0;
+    for (String dep : rule.getDeps()) {
+      longestDep = Math.max(longestDep, computeLongestPath(dep, longestPathEndingAt));
+    }
+    long result = longestDep + rule.getDurationMillis();
+    longestPathEndingAt.put(target, result);
+    return result;
+  }
+
+  public BuildTargetsQueue createBuildTargetsQueue() {
+    ImmutableMap.Builder<String, ImmutableList<String>> dependencies = ImmutableMap.builder();
+    for (SimulatedRule rule : rules.values()) {
+      dependencies.put(rule.getTarget(), rule.getDeps());
+    }
+    return BuildTargetsQueue.newQueue(dependencies.build());
+  }
+}
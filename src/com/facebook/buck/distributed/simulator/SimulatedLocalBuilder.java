@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.simulator;
+
+import com.facebook.buck.distributed.LocalBuilder;
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LocalBuilder} that pretends to build the targets of a {@link SimulatedActionGraph} by
+ * sleeping for their recorded duration on a fixed number of build threads, the same way a minion
+ * would build a batch in parallel.
+ *
+ * Every simulated rule checks that all of its dependencies were built before it, so a scheduling
+ * bug in the coordinator makes the simulated build fail instead of silently producing numbers.
+ */
+public class SimulatedLocalBuilder implements LocalBuilder {
+  private static final Logger LOG = Logger.get(SimulatedLocalBuilder.class);
+
+  private final SimulatedActionGraph graph;
+  private final Set<String> builtTargets;
+  private final int buildThreads;
+  private final AtomicLong busyMillis;
+  private final AtomicInteger batchesBuilt;
+  private final AtomicInteger rulesBuilt;
+
+  /**
+   * @param builtTargets set of already built targets, shared across all the simulated minions.
+   *     Must be thread safe.
+   */
+  public SimulatedLocalBuilder(
+      SimulatedActionGraph graph,
+      Set<String> builtTargets,
+      int buildThreads) {
+    this.graph = graph;
+    this.builtTargets = builtTargets;
+    this.buildThreads = buildThreads;
+    this.busyMillis = new AtomicLong(0);
+    this.batchesBuilt = new AtomicInteger(0);
+    this.rulesBuilt = new AtomicInteger(0);
+  }
+
+  @Override
+  public int buildLocallyAndReturnExitCode(Iterable<String> targetsToBuild)
+      throws IOException, InterruptedException {
+    batchesBuilt.incrementAndGet();
+    ExecutorService executor = Executors.newFixedThreadPool(buildThreads);
+    try {
+      List<Future<Boolean>> results = Lists.newArrayList();
+      for (String target : targetsToBuild) {
+        results.add(executor.submit(() -> buildTarget(target)));
+      }
+
+      int exitCode = 0;
+      for (Future<Boolean> result : results) {
+        try {
+          if (!result.get()) {
+            exitCode = 1;
+          }
+        } catch (ExecutionException e) {
+          throw new IOException("Simulated rule failed to build.", e);
+        }
+      }
+      return exitCode;
+    } finally {
+      MoreExecutors.shutdownAndAwaitTermination(executor, 1, TimeUnit.SECONDS);
+    }
+  }
+
+  private boolean buildTarget(String target) throws InterruptedException {
+    SimulatedRule rule = graph.getRules().get(target);
+    if (rule == null) {
+      LOG.error("Minion was asked to build unknown target [%s].", target);
+      return false;
+    }
+    for (String dep : rule.getDeps()) {
+      if (!builtTargets.contains(dep)) {
+        LOG.error("Target [%s] was scheduled before its dependency [%s] was built.", target, dep);
+        return false;
+      }
+    }
+
+    Thread.sleep(rule.getDurationMillis());
+    busyMillis.addAndGet(rule.getDurationMillis());
+    rulesBuilt.incrementAndGet();
+    builtTargets.add(target);
+    return true;
+  }
+
+  public int getBuildThreads() {
+    return buildThreads;
+  }
+
+  /**
+   * @return the sum of the durations of all rules built by this minion.
+   */
+  public long getBusyMillis() {
+    return busyMillis.get();
+  }
+
+  public int getBatchesBuilt() {
+    return batchesBuilt.get();
+  }
+
+  public int getRulesBuilt() {
+    return rulesBuilt.get();
+  }
+}
@@ -31,6 +31,15 @@ enum GetTargetsToBuildAction {
 struct GetTargetsToBuildRequest {
   1: optional string minionId;
   2: optional stampede.BuildId buildId;
+
+  // Only set by Minions building in streaming mode. Fully qualified names of the targets that
+  // finished building successfully since the previous request.
+  3: optional list<string> finishedTargets;
+
+  // Only set by Minions building in streaming mode. Number of build slots the Minion has free
+  // right now. The response will contain at most this many new targets, on top of the ones the
+  // Minion is already building. In streaming mode finishedBuilding is only called on failure.
+  4: optional i32 maxTargetsToBuild;
 }
 
 struct GetTargetsToBuildResponse {
@@ -50,19 +59,31 @@ struct FinishedBuildingResponse {
   1: optional bool continueBuilding;
 }
 
+struct MinionHeartbeatRequest {
+  1: optional string minionId;
+  2: optional stampede.BuildId buildId;
+}
+
+struct MinionHeartbeatResponse {
+  // False if the Coordinator no longer holds a lease for this Minion's workload (ie, it was
+  // declared dead and its targets were handed to other Minions) or if the build is over.
+  1: optional bool continueBuilding;
+}
+
 
 ##############################################################################
 ## Service
 ##############################################################################
 service CoordinatorService {
-  // Called by Minions to request workload to the Coordinator.
+  // Called by Minions to request workload to the Coordinator. Minions in streaming mode also
+  // use it to report targets as soon as they finish.
   GetTargetsToBuildResponse getTargetsToBuild(
       1:GetTargetsToBuildRequest request);
 
   // Called by Minions to tell the Coordinator they have just finished building their workload.
   FinishedBuildingResponse finishedBuilding(1:FinishedBuildingRequest request);
 
-
-  // TODO(ruibm): Some form of heartbeat protocol needs to exist between Minions and Coordinator to
-  // make sure if some Minion has silently died, the workload is picked up by a different machine.
+  // Called periodically by Minions while they are building to renew the lease on their workload.
+  // Workloads whose lease expires are handed out to other Minions.
+  MinionHeartbeatResponse minionHeartbeat(1:MinionHeartbeatRequest request);
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import com.facebook.buck.util.immutables.BuckStyleImmutable;
+
+import org.immutables.value.Value;
+
+/**
+ * How well a single listener registered on a {@link BuckEventBus} kept up with the events posted
+ * to it since the statistics were last reset.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+abstract class AbstractListenerDispatchStats {
+
+  /**
+   * @return the class name of the listener.
+   */
+  public abstract String getListener();
+
+  public abstract BuckEventBus.OverflowPolicy getOverflowPolicy();
+
+  public abstract long getDispatchedEvents();
+
+  /**
+   * @return the largest number of events that were waiting for the listener when it picked up a
+   *     batch.
+   */
+  public abstract long getMaxBacklog();
+
+  /**
+   * @return the longest time between an event being posted and it being handed to the listener.
+   */
+  public abstract long getMaxLagNanos();
+
+  /**
+   * @return the number of events the listener never saw because it fell too far behind. Always
+   *     zero for {@link BuckEventBus.OverflowPolicy#BLOCK} listeners.
+   */
+  public abstract long getDroppedEvents();
+}
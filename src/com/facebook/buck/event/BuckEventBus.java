@@ -19,21 +19,23 @@ import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.timing.Clock;
-import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
-import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
 
 /**
  * Thin wrapper around guava event bus.
+ * <p>
+ * An asynchronous bus hands events to its listeners through a {@link RingBufferEventDispatcher},
+ * where every listener consumes events on its own thread and at its own pace. A synchronous bus
+ * dispatches every event on the thread that posts it.
  */
 public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus {
 
@@ -44,8 +46,22 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
   private static final Supplier<Long> DEFAULT_THREAD_ID_SUPPLIER =
       () -> Thread.currentThread().getId();
 
+  /**
+   * What happens to the events posted for a listener that cannot keep up with them.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Events are never lost. Posting waits for the listener once it is a whole ring buffer behind.
+     */
+    BLOCK,
+    /**
+     * Posting never waits for the listener. It skips the events that it is too far behind to see.
+     */
+    DROP,
+  }
+
   private final Clock clock;
-  private final ExecutorService executorService;
+  private final Optional<RingBufferEventDispatcher> dispatcher;
   private final EventBus eventBus;
   private final Supplier<Long> threadIdSupplier;
   private final BuildId buildId;
@@ -62,10 +78,14 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
       BuildId buildId,
       int shutdownTimeoutMillis) {
     this.clock = clock;
-    this.executorService = async ?
-        MostExecutors.newSingleThreadExecutor(
-            new CommandThreadFactory(BuckEventBus.class.getSimpleName())) :
-        MoreExecutors.newDirectExecutorService();
+    this.dispatcher = async ?
+        Optional.of(
+            new RingBufferEventDispatcher(
+                RingBufferEventDispatcher.DEFAULT_CAPACITY,
+                RingBufferEventDispatcher.DEFAULT_BATCH_SIZE,
+                new CommandThreadFactory(BuckEventBus.class.getSimpleName()),
+                clock::nanoTime)) :
+        Optional.empty();
     this.eventBus = new EventBus("buck-build-events");
     this.threadIdSupplier = DEFAULT_THREAD_ID_SUPPLIER;
     this.buildId = buildId;
@@ -73,8 +93,11 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
   }
 
   private void dispatch(final BuckEvent event) {
-    executorService.submit(
-        () -> eventBus.post(event));
+    if (dispatcher.isPresent()) {
+      dispatcher.get().publish(event);
+    } else {
+      eventBus.post(event);
+    }
   }
 
   @Override
@@ -109,13 +132,46 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
 
   @Override
   public void register(Object object) {
-    eventBus.register(object);
+    register(object, OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Registers a listener that is allowed to miss events when it falls behind. Use
+   * {@link OverflowPolicy#DROP} for listeners that are not essential to the build, so that they
+   * never slow it down.
+   */
+  public void register(Object object, OverflowPolicy overflowPolicy) {
+    if (dispatcher.isPresent()) {
+      dispatcher.get().register(object, overflowPolicy);
+    } else {
+      eventBus.register(object);
+    }
   }
 
+  /**
+   * Posts an event that was already timestamped, eg, by {@link #timestamp(BuckEvent)} or by
+   * another bus.
+   * <p>
+   * Like {@link #post(BuckEvent)}, this only hands the event to the listeners of an asynchronous
+   * bus, in order with every other posted event: the listeners may not have seen it yet when this
+   * returns. Only a synchronous bus has delivered it by then. Callers that need their event
+   * handled before going on must wait for it some other way, eg, by closing the bus.
+   */
   @VisibleForTesting
   public void postWithoutConfiguring(BuckEvent event) {
     Preconditions.checkState(event.isConfigured());
-    eventBus.post(event);
+    dispatch(event);
+  }
+
+  /**
+   * @return how far behind each listener was since the last call. Always empty for a synchronous
+   *     bus.
+   */
+  public ImmutableList<ListenerDispatchStats> getAndResetDispatchStats() {
+    if (dispatcher.isPresent()) {
+      return dispatcher.get().getAndResetDispatchStats();
+    }
+    return ImmutableList.of();
   }
 
   @VisibleForTesting
@@ -136,22 +192,23 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
   }
 
   /**
-   * {@link ExecutorService#awaitTermination(long, java.util.concurrent.TimeUnit)} is called
-   * to wait for events which have been posted, but which have been queued by the
-   * {@link EventBus}, to be delivered. This allows listeners to record or report as much
-   * information as possible. This aids debugging when close is called during exception processing.
+   * {@link RingBufferEventDispatcher#close(long)} is called to wait for events which have been
+   * posted, but which have not been handled by every listener yet, to be delivered. This allows
+   * listeners to record or report as much information as possible. This aids debugging when close
+   * is called during exception processing.
    */
   @Override
   public void close() throws IOException {
-    executorService.shutdown();
+    if (!dispatcher.isPresent()) {
+      return;
+    }
     try {
-      if (!executorService.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+      if (!dispatcher.get().close(shutdownTimeoutMillis)) {
         LOG.warn(Joiner.on(System.lineSeparator()).join(
           "The BuckEventBus failed to shut down within the standard timeout.",
           "Your build might have succeeded, but some messages were probably lost.",
           "Here's some debugging information:",
-          executorService.toString()));
-        executorService.shutdownNow();
+          dispatcher.get().toString()));
       }
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
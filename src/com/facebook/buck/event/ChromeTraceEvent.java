@@ -49,7 +49,7 @@ public class ChromeTraceEvent {
     }
 
     @JsonValue
-    String getPhase() {
+    public String getPhase() {
       return phase;
     }
   }
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.EventBus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Delivers the events of an asynchronous {@link BuckEventBus} to its listeners.
+ * <p>
+ * Posted events are written to a fixed size ring buffer. Publishers claim a slot with a CAS on the
+ * claim sequence and never take a lock. Every listener has its own consumer thread and its own
+ * cursor into the ring, and picks up all the events that are waiting for it in one batch, so a
+ * slow listener only delays itself.
+ * <p>
+ * A slot is only reused once every {@link BuckEventBus.OverflowPolicy#BLOCK} listener has consumed
+ * it, so publishers wait for those listeners when the ring is full.
+ * {@link BuckEventBus.OverflowPolicy#DROP} listeners do not hold up publishers. When they fall more
+ * than a ring behind they skip ahead, and record how many events they missed.
+ */
+final class RingBufferEventDispatcher {
+
+  private static final Logger LOG = Logger.get(RingBufferEventDispatcher.class);
+
+  static final int DEFAULT_CAPACITY = 1 << 16;
+  static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private static final long PUBLISHER_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final long SUBSCRIBER_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final int capacity;
+  private final int mask;
+  private final int batchSize;
+  private final ThreadFactory threadFactory;
+  private final LongSupplier nanoClock;
+
+  private final AtomicReferenceArray<Entry> slots;
+  private final AtomicLong claimSequence;
+  // A lower bound of the cursors of the BLOCK subscribers, so that publishers do not have to look
+  // at every subscriber for every event.
+  private volatile long cachedGatingSequence;
+
+  private final Object subscribersLock;
+  private volatile ImmutableList<Subscriber> subscribers;
+
+  // Listeners may post events while they handle others. Their threads must never wait for space in
+  // the ring, since they might be the ones holding it up, so those events are queued here when the
+  // ring is full and published by the forwarder thread in order.
+  @GuardedBy("deferredEvents")
+  private final Deque<BuckEvent> deferredEvents;
+  @GuardedBy("deferredEvents")
+  @Nullable
+  private Thread forwarder;
+  private final ThreadLocal<Boolean> isDispatchThread;
+
+  private volatile boolean closed;
+  private volatile boolean stopped;
+  private volatile long finalSequence;
+
+  RingBufferEventDispatcher(
+      int capacity,
+      int batchSize,
+      ThreadFactory threadFactory,
+      LongSupplier nanoClock) {
+    Preconditions.checkArgument(
+        capacity > 0 && Integer.bitCount(capacity) == 1,
+        "Capacity must be a power of two: %s",
+        capacity);
+    Preconditions.checkArgument(batchSize > 0);
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.batchSize = batchSize;
+    this.threadFactory = threadFactory;
+    this.nanoClock = nanoClock;
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.claimSequence = new AtomicLong(0);
+    this.cachedGatingSequence = 0;
+    this.subscribersLock = new Object();
+    this.subscribers = ImmutableList.of();
+    this.deferredEvents = new ArrayDeque<>();
+    this.forwarder = null;
+    this.isDispatchThread = ThreadLocal.withInitial(() -> false);
+    this.closed = false;
+    this.stopped = false;
+    this.finalSequence = Long.MAX_VALUE;
+  }
+
+  /**
+   * Starts delivering events to the {@code @Subscribe} methods of the listener. The listener sees
+   * every event that some other listener has not consumed yet, and every event posted after this
+   * call.
+   */
+  void register(Object listener, BuckEventBus.OverflowPolicy overflowPolicy) {
+    synchronized (subscribersLock) {
+      if (closed) {
+        LOG.debug("Not registering %s, the event bus is closed.", listener);
+        return;
+      }
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.listener == listener) {
+          return;
+        }
+      }
+
+      long start = Long.MAX_VALUE;
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.overflowPolicy == BuckEventBus.OverflowPolicy.BLOCK) {
+          start = Math.min(start, subscriber.cursor.get());
+        }
+      }
+      if (start == Long.MAX_VALUE) {
+        start = claimSequence.get();
+      }
+
+      Subscriber subscriber = new Subscriber(listener, overflowPolicy, start);
+      subscribers = ImmutableList.<Subscriber>builder()
+          .addAll(subscribers)
+          .add(subscriber)
+          .build();
+      subscriber.thread.start();
+    }
+  }
+
+  /**
+   * Makes the event available to every listener. Waits for room in the ring if a
+   * {@link BuckEventBus.OverflowPolicy#BLOCK} listener has fallen behind, unless it is called from
+   * a listener. Events published after {@link #close} are dropped.
+   */
+  void publish(BuckEvent event) {
+    if (closed) {
+      LOG.debug("Dropping %s, the event bus is closed.", event);
+      return;
+    }
+    if (isDispatchThread.get()) {
+      publishFromDispatchThread(event);
+    } else {
+      publishAndWait(event);
+    }
+  }
+
+  private void publishFromDispatchThread(BuckEvent event) {
+    synchronized (deferredEvents) {
+      if (deferredEvents.isEmpty() && tryPublish(event)) {
+        return;
+      }
+      deferredEvents.addLast(event);
+      if (forwarder == null) {
+        forwarder = newThread(this::forwardDeferredEvents, "forwarder");
+        forwarder.start();
+      }
+      deferredEvents.notifyAll();
+    }
+  }
+
+  private void forwardDeferredEvents() {
+    while (true) {
+      BuckEvent event;
+      synchronized (deferredEvents) {
+        while (deferredEvents.isEmpty()) {
+          if (closed) {
+            return;
+          }
+          try {
+            deferredEvents.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        // Leave the event in the queue until it is in the ring, so that events posted by
+        // listeners in the meantime line up behind it.
+        event = deferredEvents.peekFirst();
+      }
+      boolean published = publishAndWait(event);
+      synchronized (deferredEvents) {
+        if (!published) {
+          deferredEvents.clear();
+          return;
+        }
+        deferredEvents.removeFirst();
+      }
+    }
+  }
+
+  /**
+   * @return false if the event could not be published because the dispatcher was stopped.
+   */
+  private boolean publishAndWait(BuckEvent event) {
+    while (!tryPublish(event)) {
+      if (stopped) {
+        return false;
+      }
+      LockSupport.parkNanos(this, PUBLISHER_WAIT_NANOS);
+    }
+    return true;
+  }
+
+  private boolean tryPublish(BuckEvent event) {
+    while (true) {
+      long sequence = claimSequence.get();
+      if (!hasRoomFor(sequence)) {
+        return false;
+      }
+      if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+        write(new Entry(sequence, event));
+        wakeUpWaitingSubscribers();
+        return true;
+      }
+    }
+  }
+
+  private boolean hasRoomFor(long sequence) {
+    long wrapPoint = sequence - capacity;
+    if (wrapPoint < cachedGatingSequence) {
+      return true;
+    }
+    long minimum = Long.MAX_VALUE;
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.overflowPolicy == BuckEventBus.OverflowPolicy.BLOCK) {
+        minimum = Math.min(minimum, subscriber.cursor.get());
+      }
+    }
+    if (minimum == Long.MAX_VALUE) {
+      return true;
+    }
+    cachedGatingSequence = minimum;
+    return wrapPoint < minimum;
+  }
+
+  private void write(Entry entry) {
+    int index = indexOf(entry.sequence);
+    // Without BLOCK subscribers a publisher that is slow to write can be lapped by another one.
+    // Never let the older event overwrite the newer one.
+    while (true) {
+      Entry previous = slots.get(index);
+      if (previous != null && previous.sequence > entry.sequence) {
+        return;
+      }
+      if (slots.compareAndSet(index, previous, entry)) {
+        return;
+      }
+    }
+  }
+
+  private void wakeUpWaitingSubscribers() {
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.waiting) {
+        LockSupport.unpark(subscriber.thread);
+      }
+    }
+  }
+
+  private int indexOf(long sequence) {
+    return (int) (sequence & mask);
+  }
+
+  /**
+   * Stops accepting events, and waits for the listeners to handle the ones that were already
+   * published. Listeners that do not finish in time are interrupted.
+   *
+   * @return whether every listener caught up before the timeout.
+   */
+  boolean close(long timeoutMillis) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    ImmutableList<Subscriber> subscribersToStop;
+    synchronized (subscribersLock) {
+      closed = true;
+      subscribersToStop = subscribers;
+    }
+    Thread forwarderToStop;
+    synchronized (deferredEvents) {
+      deferredEvents.notifyAll();
+      forwarderToStop = forwarder;
+    }
+
+    boolean drained = false;
+    try {
+      boolean caughtUp = forwarderToStop == null || join(forwarderToStop, deadline);
+      finalSequence = claimSequence.get();
+      for (Subscriber subscriber : subscribersToStop) {
+        LockSupport.unpark(subscriber.thread);
+      }
+      for (Subscriber subscriber : subscribersToStop) {
+        caughtUp &= join(subscriber.thread, deadline);
+      }
+      drained = caughtUp;
+    } finally {
+      stopped = true;
+      if (!drained) {
+        if (forwarderToStop != null) {
+          forwarderToStop.interrupt();
+        }
+        for (Subscriber subscriber : subscribersToStop) {
+          subscriber.thread.interrupt();
+        }
+      }
+    }
+    return drained;
+  }
+
+  private static boolean join(Thread thread, long deadline) throws InterruptedException {
+    long remaining = deadline - System.nanoTime();
+    if (remaining > 0) {
+      TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+    }
+    return !thread.isAlive();
+  }
+
+  /**
+   * @return the dispatch statistics of every listener, which are reset to zero.
+   */
+  ImmutableList<ListenerDispatchStats> getAndResetDispatchStats() {
+    ImmutableList.Builder<ListenerDispatchStats> stats = ImmutableList.builder();
+    for (Subscriber subscriber : subscribers) {
+      stats.add(subscriber.getAndResetStats());
+    }
+    return stats.build();
+  }
+
+  private Thread newThread(Runnable runnable, String suffix) {
+    Thread thread = threadFactory.newThread(runnable);
+    thread.setName(thread.getName() + "-" + suffix);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder()
+        .append("RingBufferEventDispatcher{claimed=")
+        .append(claimSequence.get());
+    for (Subscriber subscriber : subscribers) {
+      builder
+          .append(", ")
+          .append(subscriber.listener.getClass().getName())
+          .append('=')
+          .append(subscriber.cursor.get());
+    }
+    return builder.append('}').toString();
+  }
+
+  private static final class Entry {
+    private final long sequence;
+    private final BuckEvent event;
+
+    private Entry(long sequence, BuckEvent event) {
+      this.sequence = sequence;
+      this.event = event;
+    }
+  }
+
+  private final class Subscriber implements Runnable {
+    private final Object listener;
+    private final BuckEventBus.OverflowPolicy overflowPolicy;
+    private final EventBus eventBus;
+    private final Thread thread;
+    // The next sequence this subscriber will hand to its listener.
+    private final AtomicLong cursor;
+    private volatile boolean waiting;
+
+    private final AtomicLong dispatchedEvents;
+    private final AtomicLong maxBacklog;
+    private final AtomicLong maxLagNanos;
+    private final AtomicLong droppedEvents;
+
+    private Subscriber(Object listener, BuckEventBus.OverflowPolicy overflowPolicy, long start) {
+      this.listener = listener;
+      this.overflowPolicy = overflowPolicy;
+      this.eventBus = new EventBus("buck-build-events");
+      this.eventBus.register(listener);
+      this.thread = newThread(this, listener.getClass().getSimpleName());
+      this.cursor = new AtomicLong(start);
+      this.waiting = false;
+      this.dispatchedEvents = new AtomicLong(0);
+      this.maxBacklog = new AtomicLong(0);
+      this.maxLagNanos = new AtomicLong(0);
+      this.droppedEvents = new AtomicLong(0);
+    }
+
+    @Override
+    public void run() {
+      isDispatchThread.set(true);
+      try {
+        consume();
+      } catch (RuntimeException | Error e) {
+        // Listener exceptions are handled by the guava event bus, so this is a bug in here. Make
+        // sure that publishers do not wait for this subscriber forever.
+        LOG.error(e, "Stopped dispatching events to %s.", listener);
+        cursor.set(Long.MAX_VALUE);
+      }
+    }
+
+    private void consume() {
+      BuckEvent[] batch = new BuckEvent[batchSize];
+      long next = cursor.get();
+      while (!stopped) {
+        int count = 0;
+        boolean lapped = false;
+        while (count < batchSize) {
+          Entry entry = slots.get(indexOf(next + count));
+          if (entry == null || entry.sequence < next + count) {
+            break;
+          }
+          if (entry.sequence > next + count) {
+            lapped = true;
+            break;
+          }
+          batch[count++] = entry.event;
+        }
+
+        if (count > 0) {
+          dispatch(batch, count, next);
+          next += count;
+          cursor.set(next);
+          continue;
+        }
+
+        if (lapped) {
+          long oldest = Math.max(next + 1, claimSequence.get() - capacity);
+          droppedEvents.addAndGet(oldest - next);
+          next = oldest;
+          cursor.set(next);
+          continue;
+        }
+
+        if (next >= finalSequence) {
+          return;
+        }
+
+        waiting = true;
+        Entry entry = slots.get(indexOf(next));
+        if ((entry == null || entry.sequence < next) && next < finalSequence) {
+          LockSupport.parkNanos(this, SUBSCRIBER_WAIT_NANOS);
+        }
+        waiting = false;
+      }
+    }
+
+    private void dispatch(BuckEvent[] batch, int count, long first) {
+      long backlog = claimSequence.get() - first;
+      maxBacklog.accumulateAndGet(backlog, Math::max);
+      // The first event of the batch is the one that waited the longest.
+      if (batch[0].isConfigured()) {
+        long lag = nanoClock.getAsLong() - batch[0].getNanoTime();
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+      }
+
+      for (int i = 0; i < count; i++) {
+        eventBus.post(batch[i]);
+        batch[i] = null;
+      }
+      dispatchedEvents.addAndGet(count);
+    }
+
+    private ListenerDispatchStats getAndResetStats() {
+      return ListenerDispatchStats.builder()
+          .setListener(listener.getClass().getName())
+          .setOverflowPolicy(overflowPolicy)
+          .setDispatchedEvents(dispatchedEvents.getAndSet(0))
+          .setMaxBacklog(maxBacklog.getAndSet(0))
+          .setMaxLagNanos(maxLagNanos.getAndSet(0))
+          .setDroppedEvents(droppedEvents.getAndSet(0))
+          .build();
+    }
+  }
+}
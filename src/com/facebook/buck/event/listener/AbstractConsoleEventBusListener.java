@@ -614,7 +614,7 @@ public abstract class AbstractConsoleEventBusListener implements BuckEventListen
   @Subscribe
   public void buildRuleStarted(BuildRuleEvent.Started started) {
     if (progressEstimator.isPresent()) {
-      progressEstimator.get().didStartRule();
+      progressEstimator.get().didStartRule(started.getBuildRule());
     }
     accumulatedTimeTracker.didStartBuildRule(started);
   }
@@ -639,7 +639,7 @@ public abstract class AbstractConsoleEventBusListener implements BuckEventListen
   public void buildRuleFinished(BuildRuleEvent.Finished finished) {
     if (finished.getStatus() != BuildRuleStatus.CANCELED) {
       if (progressEstimator.isPresent()) {
-        progressEstimator.get().didFinishRule();
+        progressEstimator.get().didFinishRule(finished.getBuildRule());
       }
       numRulesCompleted.getAndIncrement();
     }
@@ -53,12 +53,14 @@ import com.facebook.buck.util.ProcessResourceConsumption;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.perf.PerfStatsTracking;
 import com.facebook.buck.util.perf.ProcessTracker;
+import com.facebook.buck.util.trace.BinaryChromeTraceWriter;
 import com.facebook.buck.util.unit.SizeUnit;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -80,6 +82,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
 /**
  * Logs events to a json file formatted to be viewed in Chrome Trace View (chrome://tracing).
  */
@@ -108,11 +112,16 @@ public class ChromeTraceBuildListener implements BuckEventListener {
   private final Clock clock;
   private final int tracesToKeep;
   private final boolean compressTraces;
+  private final boolean binaryTraces;
   private final ObjectMapper mapper;
   private final ThreadLocal<SimpleDateFormat> dateFormat;
   private final Path tracePath;
   private final OutputStream traceStream;
+  // Exactly one of these is set, depending on the format of the trace.
+  @Nullable
   private final JsonGenerator jsonGenerator;
+  @Nullable
+  private final BinaryChromeTraceWriter binaryTraceWriter;
   private final InvocationInfo invocationInfo;
 
   private final ExecutorService outputExecutor;
@@ -123,7 +132,8 @@ public class ChromeTraceBuildListener implements BuckEventListener {
       Clock clock,
       ObjectMapper objectMapper,
       int tracesToKeep,
-      boolean compressTraces) throws IOException {
+      boolean compressTraces,
+      boolean binaryTraces) throws IOException {
     this(
         projectFilesystem,
         invocationInfo,
@@ -132,7 +142,8 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         Locale.US,
         TimeZone.getDefault(),
         tracesToKeep,
-        compressTraces);
+        compressTraces,
+        binaryTraces);
   }
 
   @VisibleForTesting
@@ -144,7 +155,8 @@ public class ChromeTraceBuildListener implements BuckEventListener {
       final Locale locale,
       final TimeZone timeZone,
       int tracesToKeep,
-      boolean compressTraces) throws IOException {
+      boolean compressTraces,
+      boolean binaryTraces) throws IOException {
     this.invocationInfo = invocationInfo;
     this.projectFilesystem = projectFilesystem;
     this.clock = clock;
@@ -159,14 +171,25 @@ public class ChromeTraceBuildListener implements BuckEventListener {
     };
     this.tracesToKeep = tracesToKeep;
     this.compressTraces = compressTraces;
+    this.binaryTraces = binaryTraces;
     this.outputExecutor = MostExecutors.newSingleThreadExecutor(
         new CommandThreadFactory(getClass().getName()));
     TracePathAndStream tracePathAndStream = createPathAndStream(invocationInfo);
     this.tracePath = tracePathAndStream.getPath();
     this.traceStream = tracePathAndStream.getStream();
-    this.jsonGenerator = objectMapper.getFactory().createGenerator(this.traceStream);
+    if (binaryTraces) {
+      // The binary writer has its own output thread, so events are encoded right away instead of
+      // going through the output executor.
+      this.jsonGenerator = null;
+      this.binaryTraceWriter = new BinaryChromeTraceWriter(
+          this.traceStream,
+          new CommandThreadFactory(getClass().getName()));
+    } else {
+      this.jsonGenerator = objectMapper.getFactory().createGenerator(this.traceStream);
+      this.binaryTraceWriter = null;
+      this.jsonGenerator.writeStartArray();
+    }
 
-    this.jsonGenerator.writeStartArray();
     addProcessMetadataEvent();
   }
 
@@ -195,7 +218,7 @@ public class ChromeTraceBuildListener implements BuckEventListener {
     try {
       for (Path path : PathListing.listMatchingPathsWithFilters(
                traceDirectory,
-               "build.*.trace",
+               "build.*.{trace,btrace}",
                PathListing.GET_PATH_MODIFIED_TIME,
                PathListing.FilterMode.EXCLUDE,
                Optional.of(tracesToKeep),
@@ -209,8 +232,10 @@ public class ChromeTraceBuildListener implements BuckEventListener {
 
   private TracePathAndStream createPathAndStream(InvocationInfo invocationInfo) {
     String filenameTime = dateFormat.get().format(new Date(clock.currentTimeMillis()));
-    String traceName =
-        String.format("build.%s.%s.trace", filenameTime, invocationInfo.getBuildId());
+    String traceName = String.format(
+        binaryTraces ? "build.%s.%s.btrace" : "build.%s.%s.trace",
+        filenameTime,
+        invocationInfo.getBuildId());
     if (compressTraces) {
       traceName = traceName + ".gz";
     }
@@ -240,10 +265,17 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         Thread.currentThread().interrupt();
       }
 
-      jsonGenerator.writeEndArray();
-      jsonGenerator.close();
-      traceStream.close();
-      String symlinkName = compressTraces ? "build.trace.gz" : "build.trace";
+      if (binaryTraceWriter != null) {
+        binaryTraceWriter.close();
+      } else {
+        Preconditions.checkNotNull(jsonGenerator).writeEndArray();
+        jsonGenerator.close();
+        traceStream.close();
+      }
+      String symlinkName = binaryTraces ? "build.btrace" : "build.trace";
+      if (compressTraces) {
+        symlinkName = symlinkName + ".gz";
+      }
       Path symlinkPath = projectFilesystem.getBuckPaths().getLogDir().resolve(symlinkName);
       projectFilesystem.createSymLink(
           projectFilesystem.resolve(symlinkPath),
@@ -789,11 +821,28 @@ public class ChromeTraceBuildListener implements BuckEventListener {
 
   @SuppressWarnings("PMD.EmptyCatchBlock")
   private void submitTraceEvent(final ChromeTraceEvent chromeTraceEvent) {
+    if (binaryTraceWriter != null) {
+      try {
+        binaryTraceWriter.writeEvent(
+            chromeTraceEvent.getCategory(),
+            chromeTraceEvent.getName(),
+            chromeTraceEvent.getPhase().getPhase(),
+            chromeTraceEvent.getProcessId(),
+            chromeTraceEvent.getThreadId(),
+            chromeTraceEvent.getMicroTime(),
+            chromeTraceEvent.getMicroThreadUserTime(),
+            chromeTraceEvent.getArgs());
+      } catch (IOException e) {
+        // Swallow any failures to write.
+      }
+      return;
+    }
+    final JsonGenerator generator = Preconditions.checkNotNull(jsonGenerator);
     outputExecutor.submit(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
         try {
-          mapper.writeValue(jsonGenerator, chromeTraceEvent);
+          mapper.writeValue(generator, chromeTraceEvent);
         } catch (IOException e) {
           // Swallow any failures to write.
         }
@@ -19,6 +19,8 @@ package com.facebook.buck.event.listener;
 import com.facebook.buck.event.ProgressEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.durations.RuleDurationStore;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
@@ -31,6 +33,8 @@ import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -70,6 +74,17 @@ public class ProgressEstimator {
   private final AtomicInteger numberOfStartedRules = new AtomicInteger(0);
   private final AtomicInteger numberOfFinishedRules = new AtomicInteger(0);
 
+  // Expected duration of every rule that has started, and running totals of those weights. Without
+  // a duration store every rule weighs the same, which makes the progress the ratio of finished
+  // rules.
+  private Optional<RuleDurationStore> ruleDurationStore = Optional.empty();
+  private final ConcurrentMap<String, Double> ruleWeights = new ConcurrentHashMap<>();
+  private final AtomicDouble startedRulesWeight = new AtomicDouble(0.0);
+  private final AtomicDouble finishedRulesWeight = new AtomicDouble(0.0);
+  private final AtomicInteger numberOfWeightedRules = new AtomicInteger(0);
+  private final AtomicInteger numberOfRulesWithHistory = new AtomicInteger(0);
+  private final AtomicDouble historicalRulesWeight = new AtomicDouble(0.0);
+
   private final AtomicDouble processingFilesProgress = new AtomicDouble(-1.0);
   private final AtomicDouble projectGenerationProgress = new AtomicDouble(-1.0);
   private final AtomicDouble buildProgress = new AtomicDouble(-1.0);
@@ -85,6 +100,14 @@ public class ProgressEstimator {
     this.expectationsStorage = null;
   }
 
+  /**
+   * Weighs the build progress of every rule by how long it took to build in the past, so that a
+   * long rule that is still running holds the progress back more than a trivial one.
+   */
+  public void setRuleDurationStore(RuleDurationStore store) {
+    ruleDurationStore = Optional.of(store);
+  }
+
   public void setCurrentCommand(String commandName, ImmutableList<String> commandArgs) {
     command = commandName + " " + Joiner.on(" ").join(commandArgs);
     fillEstimationsForCommand(command);
@@ -131,6 +154,19 @@ public class ProgressEstimator {
     calculateBuildProgress();
   }
 
+  public void didStartRule(BuildRule rule) {
+    numberOfStartedRules.incrementAndGet();
+    String target = rule.getFullyQualifiedName();
+    if (!ruleWeights.containsKey(target)) {
+      double weight = getRuleWeight(rule);
+      if (ruleWeights.putIfAbsent(target, weight) == null) {
+        startedRulesWeight.addAndGet(weight);
+        numberOfWeightedRules.incrementAndGet();
+      }
+    }
+    calculateBuildProgress();
+  }
+
   public void didResumeRule() {
     calculateBuildProgress();
   }
@@ -144,9 +180,24 @@ public class ProgressEstimator {
     calculateBuildProgress();
   }
 
+  public void didFinishRule(BuildRule rule) {
+    numberOfFinishedRules.incrementAndGet();
+    Double weight = ruleWeights.get(rule.getFullyQualifiedName());
+    if (weight != null) {
+      finishedRulesWeight.addAndGet(weight);
+    }
+    calculateBuildProgress();
+  }
+
   public void didStartBuild() {
     numberOfStartedRules.set(0);
     numberOfFinishedRules.set(0);
+    ruleWeights.clear();
+    startedRulesWeight.set(0.0);
+    finishedRulesWeight.set(0.0);
+    numberOfWeightedRules.set(0);
+    numberOfRulesWithHistory.set(0);
+    historicalRulesWeight.set(0.0);
   }
 
   public void didFinishBuild() {
@@ -154,6 +205,7 @@ public class ProgressEstimator {
     if (rulesCount > 0) {
       numberOfStartedRules.set(rulesCount);
       numberOfFinishedRules.set(rulesCount);
+      numberOfWeightedRules.set(0);
       calculateBuildProgress();
     }
   }
@@ -321,6 +373,24 @@ public class ProgressEstimator {
     return wrapValueIntoOptional(buildProgress.get());
   }
 
+  /**
+   * @return the expected duration of the rule, or the average expected duration of the rules seen
+   *     so far if it has never been built.
+   */
+  private double getRuleWeight(BuildRule rule) {
+    Optional<Long> expectedMillis = ruleDurationStore.isPresent() ?
+        ruleDurationStore.get().getExpectedRuleMillis(rule) :
+        Optional.empty();
+    if (expectedMillis.isPresent()) {
+      double weight = Math.max(expectedMillis.get(), 1);
+      historicalRulesWeight.addAndGet(weight);
+      numberOfRulesWithHistory.incrementAndGet();
+      return weight;
+    }
+    int rulesWithHistory = numberOfRulesWithHistory.get();
+    return rulesWithHistory == 0 ? 1.0 : historicalRulesWeight.get() / rulesWithHistory;
+  }
+
   private void calculateBuildProgress() {
     double ruleCount = numberOfRules.doubleValue();
 
@@ -328,7 +398,19 @@ public class ProgressEstimator {
     if (ruleCount == 0.0) {
       newValue = -1.0;
     } else {
-      double buildProgress = numberOfFinishedRules.get() / ruleCount;
+      double buildProgress;
+      int weightedRules = numberOfWeightedRules.get();
+      if (weightedRules == 0) {
+        buildProgress = numberOfFinishedRules.get() / ruleCount;
+      } else {
+        // Rules that have not started yet are assumed to weigh as much as the average started one.
+        double startedWeight = startedRulesWeight.get();
+        double remainingWeight =
+            Math.max(ruleCount - weightedRules, 0) * (startedWeight / weightedRules);
+        buildProgress = Math.min(
+            finishedRulesWeight.get() / (startedWeight + remainingWeight),
+            1.0);
+      }
       newValue = Math.floor(buildProgress * 100.0) / 100.0;
     }
 
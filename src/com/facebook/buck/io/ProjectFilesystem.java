@@ -57,11 +57,14 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
@@ -775,6 +778,34 @@ public class ProjectFilesystem {
             attrs));
   }
 
+  /**
+   * @return a stream that writes to the end of the file, creating it if it does not exist yet.
+   */
+  public OutputStream newFileAppendingOutputStream(Path pathRelativeToProjectRoot)
+      throws IOException {
+    return new BufferedOutputStream(
+        Files.newOutputStream(
+            getPathForRelativePath(pathRelativeToProjectRoot),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND));
+  }
+
+  /**
+   * Maps the contents of the file into memory. On Windows, where a mapped file cannot be deleted
+   * until the mapping is garbage collected, and on in-memory filesystems, which can't be mapped,
+   * the contents are read into the heap instead.
+   */
+  public ByteBuffer mapFileForReading(Path pathRelativeToProjectRoot) throws IOException {
+    Path path = getPathForRelativePath(pathRelativeToProjectRoot);
+    if (Platform.detect() == Platform.WINDOWS ||
+        !path.getFileSystem().equals(FileSystems.getDefault())) {
+      return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
   public <A extends BasicFileAttributes> A readAttributes(
       Path pathRelativeToProjectRoot,
       Class<A> type,
@@ -72,6 +72,7 @@ public abstract class JsFile extends AbstractBuildRule {
         tool.getEnvironment(),
         String.format(jobArgsFormat, extraArgs.orElse("")),
         worker.getMaxWorkers(),
+        worker.getMaxJobsPerWorker(),
         worker.isPersistent()
             ? Optional.of(buildTarget.getCellPath().toString() + buildTarget.toString())
             : Optional.empty(),
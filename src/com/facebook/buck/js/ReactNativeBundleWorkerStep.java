@@ -63,6 +63,7 @@ public class ReactNativeBundleWorkerStep extends WorkerShellStep {
                     resourcePath.toString(),
                     sourceMapFile.toString()),
                 1,
+                1,
                 Optional.empty(),
                 Optional.empty())),
         Optional.empty(),
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * The entries of a jar, grouped by the package they are in, along with where each entry's data
+ * starts in the file. Built from the central directory alone, so reading a single class later on
+ * is one positional read rather than re-opening and re-scanning the whole jar.
+ */
+public class JarIndex {
+
+  private static final int MAX_COMMENT_LENGTH = 0xffff;
+  private static final int ZIP64_MAGIC_COUNT = 0xffff;
+  private static final long ZIP64_MAGIC_SIZE = 0xffffffffL;
+  private static final int FLAG_ENCRYPTED = 1;
+
+  private final Path path;
+  private final long size;
+  private final long lastModifiedMillis;
+  private final Object fileKey;
+  private final ImmutableListMultimap<String, Entry> entriesByPackage;
+
+  private JarIndex(
+      Path path,
+      BasicFileAttributes attributes,
+      ImmutableListMultimap<String, Entry> entriesByPackage) {
+    this.path = path;
+    this.size = attributes.size();
+    this.lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+    this.fileKey = attributes.fileKey();
+    this.entriesByPackage = entriesByPackage;
+  }
+
+  /**
+   * Reads the central directory of the jar at {@code path}.
+   *
+   * @param attributes the attributes of the jar when it was read, used to tell whether the index
+   *     is still up to date later on.
+   * @throws IOException if the file is not a zip, or uses zip features that are not supported
+   *     here (zip64 and encryption). Callers are expected to fall back to reading the jar the
+   *     usual way.
+   */
+  public static JarIndex read(Path path, BasicFileAttributes attributes) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      int tailSize = (int) Math.min(fileSize, ZipEntry.ENDHDR + MAX_COMMENT_LENGTH);
+      ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+
+      int end = -1;
+      for (int i = tailSize - ZipEntry.ENDHDR; i >= 0; i--) {
+        if (tail.getInt(i) == ZipEntry.ENDSIG) {
+          end = i;
+          break;
+        }
+      }
+      if (end == -1) {
+        throw new IOException(String.format("%s is not a zip file", path));
+      }
+
+      int entryCount = tail.getShort(end + ZipEntry.ENDTOT) & 0xffff;
+      long directorySize = tail.getInt(end + ZipEntry.ENDSIZ) & 0xffffffffL;
+      long directoryOffset = tail.getInt(end + ZipEntry.ENDOFF) & 0xffffffffL;
+      if (entryCount == ZIP64_MAGIC_COUNT ||
+          directorySize == ZIP64_MAGIC_SIZE ||
+          directoryOffset == ZIP64_MAGIC_SIZE) {
+        throw new IOException(String.format("%s is a zip64 file", path));
+      }
+
+      ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+      ImmutableListMultimap.Builder<String, Entry> entries = ImmutableListMultimap.builder();
+      int position = 0;
+      for (int i = 0; i < entryCount; i++) {
+        if (directory.getInt(position) != ZipEntry.CENSIG) {
+          throw new IOException(String.format("Malformed central directory in %s", path));
+        }
+        int flags = directory.getShort(position + ZipEntry.CENFLG) & 0xffff;
+        int method = directory.getShort(position + ZipEntry.CENHOW) & 0xffff;
+        long compressedSize = directory.getInt(position + ZipEntry.CENSIZ) & 0xffffffffL;
+        long uncompressedSize = directory.getInt(position + ZipEntry.CENLEN) & 0xffffffffL;
+        int nameLength = directory.getShort(position + ZipEntry.CENNAM) & 0xffff;
+        int extraLength = directory.getShort(position + ZipEntry.CENEXT) & 0xffff;
+        int commentLength = directory.getShort(position + ZipEntry.CENCOM) & 0xffff;
+        long localHeaderOffset = directory.getInt(position + ZipEntry.CENOFF) & 0xffffffffL;
+        if ((flags & FLAG_ENCRYPTED) != 0 ||
+            compressedSize == ZIP64_MAGIC_SIZE ||
+            uncompressedSize == ZIP64_MAGIC_SIZE ||
+            localHeaderOffset == ZIP64_MAGIC_SIZE) {
+          throw new IOException(String.format("%s has entries that cannot be indexed", path));
+        }
+
+        byte[] nameBytes = new byte[nameLength];
+        directory.position(position + ZipEntry.CENHDR);
+        directory.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+        if (!name.endsWith("/")) {
+          entries.put(
+              getPackageName(name),
+              new Entry(name, method, compressedSize, uncompressedSize, localHeaderOffset));
+        }
+
+        position += ZipEntry.CENHDR + nameLength + extraLength + commentLength;
+      }
+
+      return new JarIndex(path, attributes, entries.build());
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException(String.format("Malformed central directory in %s", path), e);
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getLastModifiedMillis() {
+    return lastModifiedMillis;
+  }
+
+  /**
+   * @return whether the jar still looks the way it did when it was indexed.
+   */
+  public boolean isUpToDate(BasicFileAttributes attributes) {
+    return size == attributes.size() &&
+        lastModifiedMillis == attributes.lastModifiedTime().toMillis() &&
+        Objects.equals(fileKey, attributes.fileKey());
+  }
+
+  public ImmutableSet<String> getPackageNames() {
+    return entriesByPackage.keySet();
+  }
+
+  /**
+   * @param packageName a package name in the dotted form, or the empty string for the default
+   *     package.
+   * @return the entries directly within the package, excluding those in sub-packages.
+   */
+  public ImmutableList<Entry> getEntries(String packageName) {
+    return entriesByPackage.get(packageName);
+  }
+
+  public int getEntryCount() {
+    return entriesByPackage.size();
+  }
+
+  /**
+   * Reads and, if needed, inflates the data of an entry of this jar. Opens the jar for just this
+   * read; use {@link #newEntryReader()} to read many entries.
+   */
+  public byte[] readEntry(Entry entry) throws IOException {
+    try (EntryReader reader = newEntryReader()) {
+      return reader.readEntry(entry);
+    }
+  }
+
+  /**
+   * @return a reader that opens the jar on its first read and keeps it open until closed. Safe to
+   *     use from several threads at once.
+   */
+  public EntryReader newEntryReader() {
+    return new EntryReader();
+  }
+
+  private byte[] readEntry(FileChannel channel, Entry entry) throws IOException {
+    ByteBuffer localHeader = read(channel, entry.localHeaderOffset, ZipEntry.LOCHDR);
+    if (localHeader.getInt(0) != ZipEntry.LOCSIG ||
+        (localHeader.getShort(ZipEntry.LOCNAM) & 0xffff) !=
+            entry.name.getBytes(StandardCharsets.UTF_8).length) {
+      throw new IOException(
+          String.format("%s changed since it was indexed, cannot read %s", path, entry.name));
+    }
+    long dataOffset = entry.localHeaderOffset +
+        ZipEntry.LOCHDR +
+        (localHeader.getShort(ZipEntry.LOCNAM) & 0xffff) +
+        (localHeader.getShort(ZipEntry.LOCEXT) & 0xffff);
+    ByteBuffer data = read(channel, dataOffset, (int) entry.compressedSize);
+
+    switch (entry.method) {
+      case ZipEntry.STORED:
+        return data.array();
+      case ZipEntry.DEFLATED:
+        return inflate(data.array(), (int) entry.size, entry.name);
+      default:
+        throw new IOException(
+            String.format(
+                "%s in %s uses unsupported compression method %d",
+                entry.name,
+                path,
+                entry.method));
+    }
+  }
+
+  private byte[] inflate(byte[] compressed, int size, String name) throws IOException {
+    Inflater inflater = new Inflater(/* nowrap */ true);
+    try {
+      inflater.setInput(compressed);
+      byte[] result = new byte[size];
+      int inflated = 0;
+      while (inflated < size) {
+        int count = inflater.inflate(result, inflated, size - inflated);
+        if (count == 0) {
+          if (inflater.finished() || inflater.needsInput()) {
+            break;
+          }
+          // Needs a preset dictionary, which jars do not use, or is otherwise stuck.
+          throw new IOException(String.format("Corrupt entry %s in %s", name, path));
+        }
+        inflated += count;
+      }
+      if (inflated != size) {
+        throw new IOException(String.format("Truncated entry %s in %s", name, path));
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new IOException(String.format("Corrupt entry %s in %s", name, path), e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+    Preconditions.checkArgument(offset >= 0);
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String getPackageName(String entryName) {
+    int lastSlash = entryName.lastIndexOf('/');
+    return lastSlash == -1 ? "" : entryName.substring(0, lastSlash).replace('/', '.');
+  }
+
+  /**
+   * Reads entries of the jar through a single channel, opened on the first read.
+   */
+  public class EntryReader implements Closeable {
+    @GuardedBy("this")
+    @Nullable
+    private FileChannel channel;
+    @GuardedBy("this")
+    private boolean closed;
+
+    private EntryReader() {}
+
+    public byte[] readEntry(Entry entry) throws IOException {
+      // Positional reads do not move the channel, so they can run in parallel.
+      return JarIndex.this.readEntry(getChannel(), entry);
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+      if (closed) {
+        throw new IOException(String.format("Reader of %s is closed", path));
+      }
+      // A reader interrupted mid-read closes the channel for everybody, so open it again.
+      if (channel == null || !channel.isOpen()) {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+      }
+      return channel;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      closed = true;
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+    }
+  }
+
+  /**
+   * A file in an indexed jar.
+   */
+  public static class Entry {
+    private final String name;
+    private final int method;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    private Entry(
+        String name,
+        int method,
+        long compressedSize,
+        long size,
+        long localHeaderOffset) {
+      this.name = name;
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    /**
+     * @return the path of the entry within the jar, such as {@code com/example/Foo.class}.
+     */
+    public String getName() {
+      return name;
+    }
+
+    public long getSize() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Keeps the {@link JarIndex} of every jar that was compiled against, so that the hundreds of
+ * compilations in a build (and, in the daemon, across builds) do not each re-read the central
+ * directories of the same classpath jars. Thread safe.
+ * <p>
+ * Indexes are re-validated against the jar's size, modification time and file key on every
+ * lookup, which is a single stat.
+ */
+public class JarIndexCache {
+
+  /**
+   * An entry costs roughly a hundred bytes, so this bounds the cache to around 100MB.
+   */
+  public static final long DEFAULT_MAX_INDEXED_ENTRIES = 1_000_000;
+
+  private final Cache<Path, JarIndex> indexes;
+
+  public JarIndexCache() {
+    this(DEFAULT_MAX_INDEXED_ENTRIES);
+  }
+
+  public JarIndexCache(long maxIndexedEntries) {
+    this.indexes = CacheBuilder.newBuilder()
+        .maximumWeight(maxIndexedEntries)
+        .<Path, JarIndex>weigher((path, index) -> Math.max(1, index.getEntryCount()))
+        .build();
+  }
+
+  /**
+   * @param jar an absolute path to a jar.
+   * @return an up to date index of the jar, reading it if it was not indexed before or changed
+   *     since.
+   */
+  public JarIndex getIndex(Path jar) throws IOException {
+    Preconditions.checkArgument(jar.isAbsolute(), "%s is not absolute", jar);
+    BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+    JarIndex index = indexes.getIfPresent(jar);
+    if (index != null && index.isUpToDate(attributes)) {
+      return index;
+    }
+
+    // Two threads may end up indexing the same jar at the same time, which is harmless.
+    index = JarIndex.read(jar, attributes);
+    indexes.put(jar, index);
+    return index;
+  }
+
+  public long size() {
+    return indexes.size();
+  }
+}
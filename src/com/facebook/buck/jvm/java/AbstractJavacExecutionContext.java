@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.rules.CellPathResolver;
 import com.facebook.buck.util.ClassLoaderCache;
@@ -54,4 +55,20 @@ abstract class AbstractJavacExecutionContext {
    */
   public abstract Optional<DirectToJarOutputSettings> getDirectToJarOutputSettings();
 
+  /**
+   * Setting this to non-absent value stops compilation once annotation processing is over and
+   * writes a stub jar with the ABI of the sources to the given path instead of generating code.
+   */
+  public abstract Optional<Path> getAbiJarOutputPath();
+
+  /**
+   * Workers to compile in when the compiler runs out of process.
+   */
+  public abstract Optional<OutOfProcessJavacWorkerPool> getOutOfProcessJavacWorkerPool();
+
+  /**
+   * Setting this to non-absent value makes in memory javac look up classpath jars in the cache.
+   */
+  public abstract Optional<JarIndexCache> getJarIndexCache();
+
 }
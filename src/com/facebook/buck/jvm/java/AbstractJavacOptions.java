@@ -169,6 +169,20 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
         (javacSource == JavacSource.JAR || javacSource == JavacSource.JDK);
   }
 
+  /**
+   * Whether java libraries should generate their ABI jars from source, so that their dependents can
+   * start compiling against them before they are built. See {@link CalculateSourceAbi}.
+   */
+  @Value.Default
+  boolean getAbiPipeliningRequested() {
+    return false;
+  }
+
+  public boolean isAbiPipeliningEnabled() {
+    // The stub jar is written by an annotation processor that only in memory javac can run.
+    return getAbiPipeliningRequested() && getJavacSource() != JavacSource.EXTERNAL;
+  }
+
   public JavacSource getJavacSource() {
     if (getJavacPath().isPresent()) {
       return JavacSource.EXTERNAL;
@@ -184,6 +198,32 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     return JavacLocation.IN_PROCESS;
   }
 
+  /**
+   * When compiling out of process, the maximum heap size of every worker.
+   */
+  @Value.Default
+  public int getOutOfProcessMaxHeapMegabytes() {
+    return OutOfProcessJavacWorkerPool.DEFAULT_MAX_HEAP_MEGABYTES;
+  }
+
+  /**
+   * When compiling out of process, workers that retained more heap than this after a job are
+   * replaced by fresh ones.
+   */
+  @Value.Default
+  public int getOutOfProcessMaxRetainedHeapMegabytes() {
+    return OutOfProcessJavacWorkerPool.DEFAULT_MAX_RETAINED_HEAP_MEGABYTES;
+  }
+
+  /**
+   * Whether in memory javac reads the classpath through the shared index of jars rather than
+   * opening every jar on the classpath for every compilation.
+   */
+  @Value.Default
+  public boolean isJarIndexCacheEnabled() {
+    return true;
+  }
+
   @Value.Default
   public AbiGenerationMode getAbiGenerationMode() {
     return AbiGenerationMode.CLASS;
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Generates the ABI jar of a java library from its sources. Only the frontend of javac runs: the
+ * stub jar is written from the types it has entered once annotation processing is over, and no
+ * class files are generated. Unlike {@link CalculateAbi}, this only needs the ABI jars of the
+ * library's deps rather than the library itself, so the library and its dependents can all be
+ * compiled in parallel.
+ */
+public class CalculateSourceAbi extends AbstractBuildRule implements SupportsInputBasedRuleKey {
+
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> srcs;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> compileTimeClasspath;
+  @AddToRuleKey
+  private final JavacOptions javacOptions;
+  private final SourcePathRuleFinder ruleFinder;
+  private final Path outputPath;
+
+  /**
+   * @param compileTimeClasspath the classpath to compile against, usually the ABI jars of the
+   *     library's deps. See {@link JavaLibraryRules#getCompileTimeClasspathEntry}.
+   */
+  public CalculateSourceAbi(
+      BuildRuleParams params,
+      SourcePathRuleFinder ruleFinder,
+      ImmutableSortedSet<SourcePath> srcs,
+      ImmutableSortedSet<SourcePath> compileTimeClasspath,
+      JavacOptions javacOptions) {
+    super(params);
+    this.ruleFinder = ruleFinder;
+    this.srcs = srcs;
+    this.compileTimeClasspath = compileTimeClasspath;
+    this.javacOptions = javacOptions;
+    this.outputPath = BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "%s")
+        .resolve(String.format("%s-abi.jar", getBuildTarget().getShortName()));
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    SourcePathResolver resolver = context.getSourcePathResolver();
+    BuildTarget target = getBuildTarget();
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+
+    steps.add(new MkdirStep(getProjectFilesystem(), outputPath.getParent()));
+    steps.add(new RmStep(getProjectFilesystem(), outputPath));
+
+    // javac insists on an output directory even though nothing gets written to it.
+    Path classesDir =
+        BuildTargets.getScratchPath(getProjectFilesystem(), target, "lib__%s__classes");
+    steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), classesDir));
+
+    if (srcs.isEmpty()) {
+      // There is nothing to run javac on, so the ABI is empty.
+      steps.add(
+          new JarDirectoryStep(
+              getProjectFilesystem(),
+              outputPath,
+              ImmutableSortedSet.of(classesDir),
+              /* mainClass */ null,
+              /* manifestFile */ null));
+      buildableContext.recordArtifact(outputPath);
+      return steps.build();
+    }
+
+    // Javac requires that the root directory for generated sources already exist.
+    Optional<Path> annotationGenFolder = javacOptions.getGeneratedSourceFolderName();
+    if (annotationGenFolder.isPresent()) {
+      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), annotationGenFolder.get()));
+    }
+
+    Path pathToSrcsList =
+        BuildTargets.getGenPath(getProjectFilesystem(), target, "__%s__srcs");
+    steps.add(new MkdirStep(getProjectFilesystem(), pathToSrcsList.getParent()));
+
+    Path scratchDir =
+        BuildTargets.getGenPath(getProjectFilesystem(), target, "lib__%s____working_directory");
+    steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), scratchDir));
+
+    steps.add(
+        new JavacStep(
+            classesDir,
+            NoOpClassUsageFileWriter.instance(),
+            Optional.of(scratchDir),
+            srcs.stream()
+                .map(resolver::getRelativePath)
+                .collect(MoreCollectors.toImmutableSortedSet()),
+            pathToSrcsList,
+            compileTimeClasspath.stream()
+                .map(resolver::getAbsolutePath)
+                .collect(MoreCollectors.toImmutableSortedSet()),
+            javacOptions.getJavac(),
+            javacOptions,
+            target,
+            /* suggestBuildRules */ Optional.empty(),
+            resolver,
+            ruleFinder,
+            getProjectFilesystem(),
+            new ClasspathChecker(),
+            /* directToJarOutputSettings */ Optional.empty(),
+            Optional.of(outputPath)));
+
+    buildableContext.recordArtifact(outputPath);
+    return steps.build();
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return outputPath;
+  }
+
+  /* package */ ImmutableSet<SourcePath> getCompileTimeClasspath() {
+    return compileTimeClasspath;
+  }
+}
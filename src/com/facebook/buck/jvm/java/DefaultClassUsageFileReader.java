@@ -24,6 +24,7 @@ import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.ObjectMappers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -54,6 +55,9 @@ class DefaultClassUsageFileReader {
       ImmutableSortedSet<BuildRule> deps) {
     ImmutableMap.Builder<Path, SourcePath> jarAbsolutePathToAbiJarSourcePathBuilder =
         ImmutableMap.builder();
+    ImmutableSet<BuildTarget> depTargets = deps.stream()
+        .map(BuildRule::getBuildTarget)
+        .collect(MoreCollectors.toImmutableSet());
 
     for (BuildRule dep : deps) {
       if (!(dep instanceof HasJavaAbi)) {
@@ -68,9 +72,15 @@ class DefaultClassUsageFileReader {
 
       Path jarAbsolutePath = pathResolver.getAbsolutePath(dep.getSourcePathToOutput());
 
-      jarAbsolutePathToAbiJarSourcePathBuilder.put(
-          jarAbsolutePath,
-          new BuildTargetSourcePath(depAbiJar.get()));
+      SourcePath abiJarSourcePath = new BuildTargetSourcePath(depAbiJar.get());
+      jarAbsolutePathToAbiJarSourcePathBuilder.put(jarAbsolutePath, abiJarSourcePath);
+
+      // Pipelined deps are compiled against through their ABI jars directly.
+      if (depTargets.contains(depAbiJar.get())) {
+        jarAbsolutePathToAbiJarSourcePathBuilder.put(
+            pathResolver.getAbsolutePath(abiJarSourcePath),
+            abiJarSourcePath);
+      }
     }
 
     return jarAbsolutePathToAbiJarSourcePathBuilder.build();
@@ -38,6 +38,7 @@ import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.BuildableProperties;
 import com.facebook.buck.rules.ExportDependencies;
+import com.facebook.buck.rules.HasPipelinedDeps;
 import com.facebook.buck.rules.InitializableFromDisk;
 import com.facebook.buck.rules.OnDiskBuildInfo;
 import com.facebook.buck.rules.SourcePath;
@@ -97,7 +98,8 @@ import javax.annotation.Nullable;
 public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     implements JavaLibrary, HasClasspathEntries, ExportDependencies,
     InitializableFromDisk<JavaLibrary.Data>, AndroidPackageable,
-    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, JavaLibraryWithTests {
+    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, JavaLibraryWithTests,
+    HasPipelinedDeps {
 
   private static final BuildableProperties OUTPUT_TYPE = new BuildableProperties(LIBRARY);
   private static final Path METADATA_DIR = Paths.get("META-INF");
@@ -132,6 +134,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
   @SuppressWarnings("PMD.UnusedPrivateField")
   private final JarArchiveDependencySupplier abiClasspath;
   private final ImmutableSortedSet<BuildRule> deps;
+  private final ImmutableSortedSet<BuildRule> pipelinedDeps;
   @Nullable private Path depFileOutputPath;
 
   private final BuildOutputInitializer<Data> buildOutputInitializer;
@@ -194,6 +197,54 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
       Optional<String> mavenCoords,
       ImmutableSortedSet<BuildTarget> tests,
       ImmutableSet<Pattern> classesToRemoveFromJar) {
+    this(
+        params,
+        resolver,
+        ruleFinder,
+        srcs,
+        resources,
+        generatedSourceFolder,
+        proguardConfig,
+        postprocessClassesCommands,
+        exportedDeps,
+        providedDeps,
+        abiInputs,
+        trackClassUsage,
+        additionalClasspathEntries,
+        compileStepFactory,
+        resourcesRoot,
+        manifestFile,
+        mavenCoords,
+        tests,
+        classesToRemoveFromJar,
+        /* pipelinedDeps */ ImmutableSortedSet.of());
+  }
+
+  /**
+   * @param pipelinedDeps deps that are compiled against through their ABI jars, so that this
+   *     rule can be built in parallel with them. See {@link JavaLibraryRules#getPipelinedDeps}.
+   */
+  public DefaultJavaLibrary(
+      final BuildRuleParams params,
+      SourcePathResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      Set<? extends SourcePath> srcs,
+      Set<? extends SourcePath> resources,
+      Optional<Path> generatedSourceFolder,
+      Optional<SourcePath> proguardConfig,
+      ImmutableList<String> postprocessClassesCommands,
+      ImmutableSortedSet<BuildRule> exportedDeps,
+      ImmutableSortedSet<BuildRule> providedDeps,
+      ImmutableSortedSet<SourcePath> abiInputs,
+      boolean trackClassUsage,
+      ImmutableSet<Either<SourcePath, Path>> additionalClasspathEntries,
+      CompileToJarStepFactory compileStepFactory,
+      Optional<Path> resourcesRoot,
+      Optional<SourcePath> manifestFile,
+      Optional<String> mavenCoords,
+      ImmutableSortedSet<BuildTarget> tests,
+      ImmutableSet<Pattern> classesToRemoveFromJar,
+      ImmutableSortedSet<BuildRule> pipelinedDeps) {
     this(
         params,
         resolver,
@@ -215,7 +266,8 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
         manifestFile,
         mavenCoords,
         tests,
-        classesToRemoveFromJar);
+        classesToRemoveFromJar,
+        pipelinedDeps);
   }
 
   protected DefaultJavaLibrary(
@@ -237,7 +289,8 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
       Optional<SourcePath> manifestFile,
       Optional<String> mavenCoords,
       ImmutableSortedSet<BuildTarget> tests,
-      ImmutableSet<Pattern> classesToRemoveFromJar) {
+      ImmutableSet<Pattern> classesToRemoveFromJar,
+      ImmutableSortedSet<BuildRule> pipelinedDeps) {
     super(
         params.appendExtraDeps(() -> ruleFinder.filterBuildRuleInputs(abiClasspath.get())),
         resolver);
@@ -270,6 +323,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     this.trackClassUsage = trackClassUsage;
     this.abiClasspath = abiClasspath;
     this.deps = params.getDeps();
+    this.pipelinedDeps = pipelinedDeps;
     if (!srcs.isEmpty() || !resources.isEmpty() || manifestFile.isPresent()) {
       this.outputJar = Optional.of(getOutputJarPath(getBuildTarget(), getProjectFilesystem()));
     } else {
@@ -397,6 +451,11 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     return exportedDeps;
   }
 
+  @Override
+  public ImmutableSortedSet<BuildRule> getPipelinedDeps() {
+    return pipelinedDeps;
+  }
+
   /**
    * Building a java_library() rule entails compiling the .java files specified in the srcs
    * attribute. They are compiled into a directory under {@link BuckPaths#getScratchDir()}.
@@ -430,14 +489,23 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
 
     // We don't want to add these to the declared or transitive deps, since they're only used at
     // compile time.
+    // Pipelined deps may still be building, so compile against their ABI jars instead.
     Collection<Path> provided = JavaLibraryClasspathProvider.getJavaLibraryDeps(providedDeps)
         .transformAndConcat(JavaLibrary::getOutputClasspaths)
         .filter(Objects::nonNull)
+        .transform(entry -> JavaLibraryRules.getCompileTimeClasspathEntry(
+            ruleFinder,
+            pipelinedDeps,
+            entry))
         .transform(context.getSourcePathResolver()::getAbsolutePath)
         .toSet();
 
     Iterable<Path> declaredClasspaths = declaredClasspathDeps
         .transformAndConcat(JavaLibrary::getOutputClasspaths)
+        .transform(entry -> JavaLibraryRules.getCompileTimeClasspathEntry(
+            ruleFinder,
+            pipelinedDeps,
+            entry))
         .transform(context.getSourcePathResolver()::getAbsolutePath);
     // Only override the bootclasspath if this rule is supposed to compile Android code.
     ImmutableSortedSet<Path> declared = ImmutableSortedSet.<Path>naturalOrder()
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.jvm.core.JarIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.JavaFileObject;
+
+/**
+ * A read-only {@link JavaFileObject} for an entry of a jar on the classpath, read through a
+ * {@link JarIndex}. Its URI uses the {@code jar:} scheme, like the ones javac creates, so that
+ * {@link ClassUsageTracker} can tell which jar it came from.
+ */
+class JarEntryJavaFileObject implements JavaFileObject {
+
+  private final JarIndex index;
+  private final JarIndex.EntryReader reader;
+  private final JarIndex.Entry entry;
+  private final Kind kind;
+  private final URI uri;
+
+  /**
+   * @param reader the reader of {@code index} to read the entry with.
+   */
+  public JarEntryJavaFileObject(
+      JarIndex index,
+      JarIndex.EntryReader reader,
+      JarIndex.Entry entry) {
+    this.index = index;
+    this.reader = reader;
+    this.entry = entry;
+    this.kind = getKind(entry.getName());
+    this.uri = createJarUri(index, entry);
+  }
+
+  public static Kind getKind(String entryName) {
+    for (Kind kind : new Kind[] {Kind.CLASS, Kind.SOURCE, Kind.HTML}) {
+      if (entryName.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return Kind.OTHER;
+  }
+
+  private static URI createJarUri(JarIndex index, JarIndex.Entry entry) {
+    try {
+      return URI.create(
+          "jar:" + index.getPath().toUri() + "!/" +
+              new URI(null, entry.getName(), null).getRawSchemeSpecificPart());
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  /**
+   * @return the binary name of the class in this entry, as javac expects from
+   *     {@link javax.tools.JavaFileManager#inferBinaryName}.
+   */
+  public String getBinaryName() {
+    String name = entry.getName();
+    int extensionStart = name.lastIndexOf('.');
+    if (extensionStart > name.lastIndexOf('/')) {
+      name = name.substring(0, extensionStart);
+    }
+    return name.replace('/', '.');
+  }
+
+  @Override
+  public Kind getKind() {
+    return kind;
+  }
+
+  @Override
+  public boolean isNameCompatible(String simpleName, Kind kind) {
+    String baseName = simpleName + kind.extension;
+    return kind == this.kind &&
+        (entry.getName().equals(baseName) || entry.getName().endsWith("/" + baseName));
+  }
+
+  @Override
+  @Nullable
+  public NestingKind getNestingKind() {
+    return null;
+  }
+
+  @Override
+  @Nullable
+  public Modifier getAccessLevel() {
+    return null;
+  }
+
+  @Override
+  public URI toUri() {
+    return uri;
+  }
+
+  @Override
+  public String getName() {
+    // Same as the names javac gives to entries of jars it opened itself.
+    return index.getPath() + "(" + entry.getName() + ")";
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    return new ByteArrayInputStream(reader.readEntry(entry));
+  }
+
+  @Override
+  public OutputStream openOutputStream() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+    return new InputStreamReader(openInputStream(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+    return new String(reader.readEntry(entry), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Writer openWriter() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getLastModified() {
+    return index.getLastModifiedMillis();
+  }
+
+  @Override
+  public boolean delete() {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return uri.toString();
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.jvm.core.JarIndex;
+import com.facebook.buck.jvm.core.JarIndexCache;
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A {@link StandardJavaFileManager} that lists the contents of the classpath from the indexes in
+ * a shared {@link JarIndexCache} instead of opening every jar on the classpath for every
+ * compilation.
+ * <p>
+ * Only used when every entry of the classpath is a jar that can be indexed. Otherwise, and for
+ * every location other than the classpath, the delegate file manager is used as usual.
+ * <p>
+ * Entries are read through one open channel per jar, which is kept until the file manager is
+ * closed.
+ */
+public class JarIndexFileManager extends ForwardingStandardJavaFileManager {
+  private static final Logger LOG = Logger.get(JarIndexFileManager.class);
+
+  private final JarIndexCache jarIndexCache;
+
+  private boolean isClassPathIndexed;
+  private Optional<ImmutableList<JarIndex>> classPathIndexes;
+  // Keyed by index rather than path, so that a jar that changed is read through a new reader.
+  private final Map<JarIndex, JarIndex.EntryReader> entryReaders;
+
+  public JarIndexFileManager(StandardJavaFileManager fileManager, JarIndexCache jarIndexCache) {
+    super(fileManager);
+    this.jarIndexCache = jarIndexCache;
+    this.isClassPathIndexed = false;
+    this.classPathIndexes = Optional.empty();
+    this.entryReaders = new HashMap<>();
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse) throws IOException {
+    if (location == StandardLocation.CLASS_PATH) {
+      Optional<ImmutableList<JarIndex>> indexes = getClassPathIndexes();
+      if (indexes.isPresent()) {
+        return list(indexes.get(), packageName, kinds, recurse);
+      }
+    }
+    return super.list(location, packageName, kinds, recurse);
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof JarEntryJavaFileObject) {
+      return ((JarEntryJavaFileObject) file).getBinaryName();
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    boolean aIndexed = a instanceof JarEntryJavaFileObject;
+    boolean bIndexed = b instanceof JarEntryJavaFileObject;
+    if (aIndexed || bIndexed) {
+      return aIndexed && bIndexed && a.toUri().equals(b.toUri());
+    }
+    return super.isSameFile(a, b);
+  }
+
+  @Override
+  public void close() throws IOException {
+    List<JarIndex.EntryReader> readers;
+    synchronized (this) {
+      readers = new ArrayList<>(entryReaders.values());
+      entryReaders.clear();
+    }
+    try {
+      for (JarIndex.EntryReader reader : readers) {
+        reader.close();
+      }
+    } finally {
+      super.close();
+    }
+  }
+
+  @Override
+  public boolean handleOption(String current, Iterator<String> remaining) {
+    boolean handled = super.handleOption(current, remaining);
+    if (handled) {
+      resetClassPathIndexes();
+    }
+    return handled;
+  }
+
+  @Override
+  public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+    super.setLocation(location, path);
+    resetClassPathIndexes();
+  }
+
+  private synchronized void resetClassPathIndexes() {
+    isClassPathIndexed = false;
+    classPathIndexes = Optional.empty();
+  }
+
+  private synchronized Optional<ImmutableList<JarIndex>> getClassPathIndexes() {
+    if (!isClassPathIndexed) {
+      classPathIndexes = indexClassPath();
+      isClassPathIndexed = true;
+    }
+    return classPathIndexes;
+  }
+
+  private Optional<ImmutableList<JarIndex>> indexClassPath() {
+    Iterable<? extends File> classPath = fileManager.getLocation(StandardLocation.CLASS_PATH);
+    if (classPath == null) {
+      return Optional.empty();
+    }
+
+    ImmutableList.Builder<JarIndex> indexes = ImmutableList.builder();
+    for (File entry : classPath) {
+      Path path = entry.toPath().toAbsolutePath();
+      if (!Files.exists(path)) {
+        // javac ignores classpath entries that do not exist.
+        continue;
+      }
+      if (!Files.isRegularFile(path)) {
+        LOG.verbose("%s is not a jar, not using indexes for this compilation.", path);
+        return Optional.empty();
+      }
+      try {
+        indexes.add(jarIndexCache.getIndex(path));
+      } catch (IOException e) {
+        LOG.debug(e, "Cannot index %s, not using indexes for this compilation.", path);
+        return Optional.empty();
+      }
+    }
+    return Optional.of(indexes.build());
+  }
+
+  private synchronized JarIndex.EntryReader getEntryReader(JarIndex index) {
+    return entryReaders.computeIfAbsent(index, JarIndex::newEntryReader);
+  }
+
+  private Iterable<JavaFileObject> list(
+      ImmutableList<JarIndex> indexes,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse) {
+    List<JavaFileObject> result = new ArrayList<>();
+    for (JarIndex index : indexes) {
+      addEntries(index, packageName, kinds, result);
+      if (recurse) {
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        for (String subPackageName : index.getPackageNames()) {
+          if (!subPackageName.equals(packageName) && subPackageName.startsWith(prefix)) {
+            addEntries(index, subPackageName, kinds, result);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private void addEntries(
+      JarIndex index,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds,
+      List<JavaFileObject> result) {
+    for (JarIndex.Entry entry : index.getEntries(packageName)) {
+      if (kinds.contains(JarEntryJavaFileObject.getKind(entry.getName()))) {
+        result.add(new JarEntryJavaFileObject(index, getEntryReader(index), entry));
+      }
+    }
+  }
+}
@@ -92,6 +92,26 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
       builder.setJavacLocation(location.get());
     }
 
+    Optional<Integer> outOfProcessMaxHeap = delegate.getInteger(
+        SECTION,
+        "out_of_process_max_heap_mb");
+    if (outOfProcessMaxHeap.isPresent()) {
+      builder.setOutOfProcessMaxHeapMegabytes(outOfProcessMaxHeap.get());
+    }
+
+    Optional<Integer> outOfProcessMaxRetainedHeap = delegate.getInteger(
+        SECTION,
+        "out_of_process_max_retained_heap_mb");
+    if (outOfProcessMaxRetainedHeap.isPresent()) {
+      builder.setOutOfProcessMaxRetainedHeapMegabytes(outOfProcessMaxRetainedHeap.get());
+    }
+
+    builder.setJarIndexCacheEnabled(
+        delegate.getBooleanValue(SECTION, "jar_index_cache", true));
+
+    builder.setAbiPipeliningRequested(
+        delegate.getBooleanValue(SECTION, "abi_pipelining", false));
+
     ImmutableList<String> extraArguments = delegate.getListWithoutComments(
         SECTION,
         "extra_arguments");
@@ -36,6 +36,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.OptionalCompat;
 import com.facebook.buck.versions.VersionPropagator;
 import com.facebook.infer.annotation.SuppressFieldNotInitialized;
 import com.google.common.annotations.VisibleForTesting;
@@ -45,9 +46,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Objects;
 import java.util.Optional;
 
 public class JavaLibraryDescription implements
@@ -133,6 +137,16 @@ public class JavaLibraryDescription implements
     }
 
     if (CalculateAbi.isAbiTarget(target)) {
+      JavacOptions javacOptions = JavacOptionsFactory.create(
+          defaultOptions,
+          params,
+          resolver,
+          ruleFinder,
+          args);
+      if (javacOptions.isAbiPipeliningEnabled()) {
+        return createSourceAbi(params, resolver, ruleFinder, javacOptions, args);
+      }
+
       BuildTarget libraryTarget = CalculateAbi.getLibraryTarget(target);
       resolver.requireRule(libraryTarget);
       return CalculateAbi.of(
@@ -182,15 +196,9 @@ public class JavaLibraryDescription implements
 
     ImmutableSortedSet<BuildRule> exportedDeps = resolver.getAllRules(args.exportedDeps);
     BuildRuleParams javaLibraryParams =
-        params.appendExtraDeps(
-            Iterables.concat(
-                BuildRules.getExportedRules(
-                    Iterables.concat(
-                        params.getDeclaredDeps().get(),
-                        exportedDeps,
-                        resolver.getAllRules(args.providedDeps))),
-                ruleFinder.filterBuildRuleInputs(
-                    javacOptions.getInputs(ruleFinder))));
+        getJavaLibraryParams(params, resolver, ruleFinder, javacOptions, args);
+    ImmutableSortedSet<SourcePath> abiInputs =
+        JavaLibraryRules.getAbiInputs(resolver, javaLibraryParams.getDeps());
     DefaultJavaLibrary defaultJavaLibrary =
         new DefaultJavaLibrary(
             javaLibraryParams,
@@ -206,7 +214,7 @@ public class JavaLibraryDescription implements
             args.postprocessClassesCommands,
             exportedDeps,
             resolver.getAllRules(args.providedDeps),
-            JavaLibraryRules.getAbiInputs(resolver, javaLibraryParams.getDeps()),
+            abiInputs,
             javacOptions.trackClassUsage(),
             /* additionalClasspathEntries */ ImmutableSet.of(),
             new JavacToJarStepFactory(javacOptions, JavacOptionsAmender.IDENTITY),
@@ -214,7 +222,10 @@ public class JavaLibraryDescription implements
             args.manifestFile,
             args.mavenCoords,
             args.tests,
-            javacOptions.getClassesToRemoveFromJar());
+            javacOptions.getClassesToRemoveFromJar(),
+            javacOptions.isAbiPipeliningEnabled() ?
+                getPipelinedDeps(ruleFinder, javaLibraryParams, abiInputs, javacOptions, args) :
+                ImmutableSortedSet.of());
 
   if (!flavors.contains(JavaLibrary.MAVEN_JAR)) {
       return defaultJavaLibrary;
@@ -228,6 +239,86 @@ public class JavaLibraryDescription implements
     }
   }
 
+  private static BuildRuleParams getJavaLibraryParams(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      JavacOptions javacOptions,
+      Arg args) {
+    return params.appendExtraDeps(
+        Iterables.concat(
+            BuildRules.getExportedRules(
+                Iterables.concat(
+                    params.getDeclaredDeps().get(),
+                    resolver.getAllRules(args.exportedDeps),
+                    resolver.getAllRules(args.providedDeps))),
+            ruleFinder.filterBuildRuleInputs(
+                javacOptions.getInputs(ruleFinder))));
+  }
+
+  private static ImmutableSortedSet<BuildRule> getPipelinedDeps(
+      SourcePathRuleFinder ruleFinder,
+      BuildRuleParams javaLibraryParams,
+      ImmutableSortedSet<SourcePath> abiInputs,
+      JavacOptions javacOptions,
+      Arg args) {
+    return JavaLibraryRules.getPipelinedDeps(
+        Iterables.concat(
+            javaLibraryParams.getDeps(),
+            ruleFinder.filterBuildRuleInputs(abiInputs)),
+        Iterables.concat(
+            ruleFinder.filterBuildRuleInputs(javacOptions.getInputs(ruleFinder)),
+            ruleFinder.filterBuildRuleInputs(args.srcs),
+            ruleFinder.filterBuildRuleInputs(args.resources),
+            ruleFinder.filterBuildRuleInputs(OptionalCompat.asSet(args.manifestFile))));
+  }
+
+  /**
+   * Creates the ABI rule of a library that is pipelined on ABIs, which generates the ABI jar from
+   * the sources of the library instead of waiting for it to be built.
+   */
+  private static CalculateSourceAbi createSourceAbi(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      JavacOptions javacOptions,
+      Arg args) throws NoSuchBuildTargetException {
+    BuildRuleParams javaLibraryParams =
+        getJavaLibraryParams(params, resolver, ruleFinder, javacOptions, args);
+    ImmutableSortedSet<SourcePath> abiInputs =
+        JavaLibraryRules.getAbiInputs(resolver, javaLibraryParams.getDeps());
+    ImmutableSortedSet<BuildRule> pipelinedDeps =
+        getPipelinedDeps(ruleFinder, javaLibraryParams, abiInputs, javacOptions, args);
+
+    // This mirrors the classpath DefaultJavaLibrary compiles against.
+    ImmutableSortedSet<SourcePath> compileTimeClasspath =
+        JavaLibraryClasspathProvider.getJavaLibraryDeps(
+            Iterables.concat(
+                params.getDeclaredDeps().get(),
+                resolver.getAllRules(args.exportedDeps),
+                resolver.getAllRules(args.providedDeps)))
+            .transformAndConcat(JavaLibrary::getOutputClasspaths)
+            .filter(Objects::nonNull)
+            .transform(entry -> JavaLibraryRules.getCompileTimeClasspathEntry(
+                ruleFinder,
+                pipelinedDeps,
+                entry))
+            .toSortedSet(Ordering.natural());
+
+    ImmutableSortedSet<BuildRule> deps = ImmutableSortedSet.<BuildRule>naturalOrder()
+        .addAll(Sets.difference(javaLibraryParams.getDeps(), pipelinedDeps))
+        .addAll(ruleFinder.filterBuildRuleInputs(abiInputs))
+        .build();
+    return new CalculateSourceAbi(
+        params.copyWithDeps(
+            Suppliers.ofInstance(deps),
+            Suppliers.ofInstance(ImmutableSortedSet.of())),
+        ruleFinder,
+        args.srcs,
+        compileTimeClasspath,
+        javacOptions);
+  }
+
   @SuppressFieldNotInitialized
   public static class Arg extends JvmLibraryArg implements HasTests {
     public ImmutableSortedSet<SourcePath> srcs = ImmutableSortedSet.of();
@@ -30,8 +30,10 @@ import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.OnDiskBuildInfo;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.util.MoreCollectors;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -132,4 +134,47 @@ public class JavaLibraryRules {
     return abiRules.build();
   }
 
+  /**
+   * Picks the deps of a java library that it can be compiled against through their ABI jars alone,
+   * so that the build engine does not have to wait for them to finish before starting it. See
+   * {@link com.facebook.buck.rules.HasPipelinedDeps}.
+   *
+   * @param deps all the deps of the library, including the ones added for its ABI classpath.
+   * @param otherInputs rules whose outputs are read for reasons other than being on the classpath,
+   *     such as annotation processors or generated sources. These are never pipelined.
+   */
+  public static ImmutableSortedSet<BuildRule> getPipelinedDeps(
+      Iterable<BuildRule> deps,
+      Iterable<BuildRule> otherInputs) {
+    ImmutableSet<BuildRule> depsSet = ImmutableSet.copyOf(deps);
+    ImmutableSet<BuildRule> otherInputsSet = ImmutableSet.copyOf(otherInputs);
+    ImmutableSet<BuildTarget> depTargets = depsSet.stream()
+        .map(BuildRule::getBuildTarget)
+        .collect(MoreCollectors.toImmutableSet());
+    return depsSet.stream()
+        .filter(HasJavaAbi.class::isInstance)
+        .filter(dep -> !otherInputsSet.contains(dep))
+        .filter(dep -> {
+          // The ABI rule has to be a dep as well, or nothing would wait for the ABI jar.
+          Optional<BuildTarget> abiJar = ((HasJavaAbi) dep).getAbiJar();
+          return abiJar.isPresent() && depTargets.contains(abiJar.get());
+        })
+        .collect(MoreCollectors.toImmutableSortedSet());
+  }
+
+  /**
+   * @return the ABI jar of the rule that produces {@code entry} if that rule is one of
+   *     {@code pipelinedDeps}, or {@code entry} itself otherwise.
+   */
+  public static SourcePath getCompileTimeClasspathEntry(
+      SourcePathRuleFinder ruleFinder,
+      ImmutableSet<BuildRule> pipelinedDeps,
+      SourcePath entry) {
+    Optional<BuildRule> rule = ruleFinder.getRule(entry);
+    if (!rule.isPresent() || !pipelinedDeps.contains(rule.get())) {
+      return entry;
+    }
+    return new BuildTargetSourcePath(((HasJavaAbi) rule.get()).getAbiJar().get());
+  }
+
 }
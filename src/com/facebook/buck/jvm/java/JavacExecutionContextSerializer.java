@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.rules.CellPathResolver;
 import com.facebook.buck.rules.CellPathResolverSerializer;
@@ -51,6 +52,8 @@ public class JavacExecutionContextSerializer {
   private static final String PROCESS_EXECUTOR = "process_executor";
   private static final String ABSOLUTE_PATHS_FOR_INPUTS = "absolute_paths_for_inputs";
   private static final String DIRECT_TO_JAR_SETTINGS = "direct_to_jar_settings";
+  private static final String ABI_JAR_OUTPUT_PATH = "abi_jar_output_path";
+  private static final String USE_JAR_INDEX_CACHE = "use_jar_index_cache";
 
   public static ImmutableMap<String, Object> serialize(JavacExecutionContext context) {
     ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
@@ -80,6 +83,10 @@ public class JavacExecutionContextSerializer {
           DirectToJarOutputSettingsSerializer.serialize(
               context.getDirectToJarOutputSettings().get()));
     }
+    if (context.getAbiJarOutputPath().isPresent()) {
+      builder.put(ABI_JAR_OUTPUT_PATH, context.getAbiJarOutputPath().get().toString());
+    }
+    builder.put(USE_JAR_INDEX_CACHE, context.getJarIndexCache().isPresent());
 
     return builder.build();
   }
@@ -91,7 +98,8 @@ public class JavacExecutionContextSerializer {
       PrintStream stdErr,
       ClassLoaderCache classLoaderCache,
       ObjectMapper objectMapper,
-      Console console) {
+      Console console,
+      JarIndexCache jarIndexCache) {
 
     Preconditions.checkArgument(data.containsKey(VERBOSITY));
     Verbosity verbosity = Verbosity.valueOf((String) data.get(VERBOSITY));
@@ -132,6 +140,16 @@ public class JavacExecutionContextSerializer {
               (Map<String, Object>) data.get(DIRECT_TO_JAR_SETTINGS)));
     }
 
+    Optional<Path> abiJarOutputPath = Optional.empty();
+    if (data.containsKey(ABI_JAR_OUTPUT_PATH)) {
+      abiJarOutputPath = Optional.of(Paths.get((String) data.get(ABI_JAR_OUTPUT_PATH)));
+    }
+
+    Optional<JarIndexCache> usedJarIndexCache = Optional.empty();
+    if (Boolean.TRUE.equals(data.get(USE_JAR_INDEX_CACHE))) {
+      usedJarIndexCache = Optional.of(jarIndexCache);
+    }
+
     return JavacExecutionContext.of(
         eventSink,
         stdErr,
@@ -145,6 +163,9 @@ public class JavacExecutionContextSerializer {
         (Map<String, String>) data.get(ENVIRONMENT),
         processExecutor,
         absolutePathsForInputs,
-        directToJarOutputSettings);
+        directToJarOutputSettings,
+        abiJarOutputPath,
+        Optional.empty(),
+        usedJarIndexCache);
   }
 }
@@ -59,6 +59,7 @@ public final class JavacOptionsFactory {
       // This parameter can only be used to turn off ABI generation from source where it would
       // otherwise be employed.
       builder.setAbiGenerationMode(AbstractJavacOptions.AbiGenerationMode.CLASS);
+      builder.setAbiPipeliningRequested(false);
     }
 
     builder.addAllExtraArguments(jvmLibraryArg.extraArguments);
@@ -83,6 +83,8 @@ public class JavacStep implements Step {
 
   private final Optional<DirectToJarOutputSettings> directToJarOutputSettings;
 
+  private final Optional<Path> abiJarOutputPath;
+
   private static final Pattern IS_WARNING =
       Pattern.compile(":\\s*warning:", Pattern.CASE_INSENSITIVE);
 
@@ -128,6 +130,46 @@ public class JavacStep implements Step {
       ProjectFilesystem filesystem,
       ClasspathChecker classpathChecker,
       Optional<DirectToJarOutputSettings> directToJarOutputSettings) {
+    this(
+        outputDirectory,
+        usedClassesFileWriter,
+        workingDirectory,
+        javaSourceFilePaths,
+        pathToSrcsList,
+        declaredClasspathEntries,
+        javac,
+        javacOptions,
+        invokingRule,
+        suggestBuildRules,
+        resolver,
+        ruleFinder,
+        filesystem,
+        classpathChecker,
+        directToJarOutputSettings,
+        /* abiJarOutputPath */ Optional.empty());
+  }
+
+  /**
+   * @param abiJarOutputPath if present, only runs the frontend of the compiler and writes a stub
+   *     jar with the ABI of the sources to this path instead of writing any class files.
+   */
+  public JavacStep(
+      Path outputDirectory,
+      ClassUsageFileWriter usedClassesFileWriter,
+      Optional<Path> workingDirectory,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      ImmutableSortedSet<Path> declaredClasspathEntries,
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      Optional<SuggestBuildRules> suggestBuildRules,
+      SourcePathResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      ProjectFilesystem filesystem,
+      ClasspathChecker classpathChecker,
+      Optional<DirectToJarOutputSettings> directToJarOutputSettings,
+      Optional<Path> abiJarOutputPath) {
     this.outputDirectory = outputDirectory;
     this.usedClassesFileWriter = usedClassesFileWriter;
     this.workingDirectory = workingDirectory;
@@ -143,6 +185,7 @@ public class JavacStep implements Step {
     this.filesystem = filesystem;
     this.classpathChecker = classpathChecker;
     this.directToJarOutputSettings = directToJarOutputSettings;
+    this.abiJarOutputPath = abiJarOutputPath;
   }
 
   @Override
@@ -186,11 +229,34 @@ public class JavacStep implements Step {
           firstOrderContext.getEnvironment(),
           firstOrderContext.getProcessExecutor(),
           getAbsolutePathsForJavacInputs(javac),
-          directToJarOutputSettings);
+          directToJarOutputSettings,
+          abiJarOutputPath,
+          getOutOfProcessJavacWorkerPool(context, javac),
+          javacOptions.isJarIndexCacheEnabled() ?
+              Optional.of(firstOrderContext.getJarIndexCache()) :
+              Optional.empty());
       return performBuild(context, stdout, stderr, javac, javacExecutionContext);
     }
   }
 
+  private Optional<OutOfProcessJavacWorkerPool> getOutOfProcessJavacWorkerPool(
+      ExecutionContext context,
+      Javac javac) {
+    if (!(javac instanceof OutOfProcessJsr199Javac)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new OutOfProcessJavacWorkerPool(
+            context.getPersistentWorkerPools().orElse(context.getWorkerProcessPools()),
+            context.getProcessExecutor(),
+            filesystem,
+            context.getEnvironment(),
+            context.getConcurrencyLimit().threadLimit,
+            javacOptions.getOutOfProcessMaxHeapMegabytes(),
+            javacOptions.getOutOfProcessMaxRetainedHeapMegabytes(),
+            context.getObjectMapper()));
+  }
+
   private StepExecutionResult performBuild(
       ExecutionContext context,
       CapturingPrintStream stdout,
@@ -29,7 +29,7 @@ import javax.tools.ToolProvider;
 
 public class JdkProvidedInMemoryJavac extends Jsr199Javac {
 
-  JdkProvidedInMemoryJavac() {
+  public JdkProvidedInMemoryJavac() {
     // only here to limit this to package-level visibility
   }
 
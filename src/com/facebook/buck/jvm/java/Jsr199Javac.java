@@ -55,6 +55,8 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import javax.annotation.Nullable;
+import javax.annotation.processing.Processor;
+import javax.lang.model.SourceVersion;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
@@ -122,6 +124,9 @@ public abstract class Jsr199Javac implements Javac {
     JavaInMemoryFileManager inMemoryFileManager = null;
     try {
       fileManager = compiler.getStandardFileManager(null, null, null);
+      if (context.getJarIndexCache().isPresent()) {
+        fileManager = new JarIndexFileManager(fileManager, context.getJarIndexCache().get());
+      }
       Supplier<ImmutableSet<String>> alreadyAddedFilesAvailableAfterCompilation =
           Suppliers.ofInstance(ImmutableSet.of());
       if (context.getDirectToJarOutputSettings().isPresent()) {
@@ -187,6 +192,26 @@ public abstract class Jsr199Javac implements Javac {
     return 1;
   }
 
+  /**
+   * @return the class file version the sources are compiled to, as far as stub jars support it.
+   */
+  private static SourceVersion getStubClassFileVersion(List<String> options) {
+    int targetIndex = options.indexOf("-target");
+    if (targetIndex >= 0 && targetIndex + 1 < options.size()) {
+      String target = options.get(targetIndex + 1);
+      target = target.startsWith("1.") ? target.substring(2) : target;
+      try {
+        SourceVersion version = SourceVersion.valueOf("RELEASE_" + target);
+        if (version.compareTo(SourceVersion.RELEASE_8) <= 0) {
+          return version;
+        }
+      } catch (IllegalArgumentException e) {
+        LOG.debug("Unknown target version %s, stubbing as Java 8.", target);
+      }
+    }
+    return SourceVersion.RELEASE_8;
+  }
+
   private void closeResources(
       @Nullable StandardJavaFileManager fileManager,
       @Nullable JavaInMemoryFileManager inMemoryFileManager,
@@ -238,6 +263,12 @@ public abstract class Jsr199Javac implements Javac {
       return 1;
     }
 
+    ImmutableList<String> compilerOptions = options;
+    if (context.getAbiJarOutputPath().isPresent() && !options.contains("-proc:only")) {
+      // Stop after annotation processing; the ABI jar is written once it is over.
+      compilerOptions = ImmutableList.<String>builder().addAll(options).add("-proc:only").build();
+    }
+
     DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
     List<String> classNamesForAnnotationProcessing = ImmutableList.of();
     Writer compilerOutputWriter = new PrintWriter(context.getStdErr());
@@ -245,7 +276,7 @@ public abstract class Jsr199Javac implements Javac {
         compilerOutputWriter,
         context.getUsedClassesFileWriter().wrapFileManager(fileManager),
         diagnostics,
-        options,
+        compilerOptions,
         classNamesForAnnotationProcessing,
         compilationUnits);
 
@@ -283,7 +314,18 @@ public abstract class Jsr199Javac implements Javac {
               compiler.getClass().getClassLoader(),
               context.getClassLoaderCache(),
               invokingRule)) {
-        compilationTask.setProcessors(processorFactory.createProcessors(annotationProcessors));
+        List<Processor> processors = processorFactory.createProcessors(annotationProcessors);
+        if (context.getAbiJarOutputPath().isPresent()) {
+          processors = ImmutableList.<Processor>builder()
+              .addAll(processors)
+              .add(
+                  SourceBasedAbiStubber.newStubJarGeneratingProcessor(
+                      context.getProjectFilesystem(),
+                      context.getAbiJarOutputPath().get(),
+                      getStubClassFileVersion(options)))
+              .build();
+        }
+        compilationTask.setProcessors(processors);
 
         // Invoke the compilation and inspect the result.
         isSuccess = compilationTask.call();
@@ -16,24 +16,17 @@
 
 package com.facebook.buck.jvm.java;
 
-import com.facebook.buck.log.Logger;
-import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
-import java.nio.file.Path;
-import java.util.Map;
 import java.util.Optional;
 
 public class OutOfProcessJarBackedJavac extends OutOfProcessJsr199Javac {
 
-  private static final Logger LOG = Logger.get(OutOfProcessJarBackedJavac.class);
-
   private final String compilerClassName;
   private final ImmutableSortedSet<SourcePath> classpath;
 
@@ -45,32 +38,11 @@ public class OutOfProcessJarBackedJavac extends OutOfProcessJsr199Javac {
   }
 
   @Override
-  public int buildWithClasspath(
-      JavacExecutionContext context,
-      BuildTarget invokingRule,
-      ImmutableList<String> options,
-      ImmutableList<ResolvedJavacPluginProperties> annotationProcessors,
-      ImmutableSortedSet<Path> javaSourceFilePaths,
-      Path pathToSrcsList,
-      Optional<Path> workingDirectory,
-      JavacOptions.AbiGenerationMode abiGenerationMode) throws InterruptedException {
-
-    Map<String, Object> serializedContext = JavacExecutionContextSerializer.serialize(context);
-    if (LOG.isVerboseEnabled()) {
-      LOG.verbose("Serialized JavacExecutionContext: %s", serializedContext);
-    }
-
-    return getConnection().getRemoteObjectProxy().buildWithClasspath(
-        compilerClassName,
-        serializedContext,
-        invokingRule.getFullyQualifiedName(),
-        options,
-        ImmutableList.copyOf(javaSourceFilePaths.stream().map(Path::toString).iterator()),
-        pathToSrcsList.toString(),
-        workingDirectory.isPresent() ? workingDirectory.get().toString() : null,
-        abiGenerationMode);
+  protected Optional<String> getCompilerClassName() {
+    return Optional.of(compilerClassName);
   }
 
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return ruleFinder.filterBuildRuleInputs(getInputs());
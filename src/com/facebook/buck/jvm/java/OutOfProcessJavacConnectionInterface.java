@@ -28,7 +28,9 @@ public interface OutOfProcessJavacConnectionInterface {
    * @param serializedJavacExecutionContext JavacExecutionContext converted to String
    * @param invokingRuleBuildTargetAsString BuildTarget converted to String
    * @param options Immutable list of string options
-   * @param setOfSafeAnnotationProcessorsAsList ImmutableSet represented as a List
+   * @param serializedAnnotationProcessors ResolvedJavacPluginProperties of the annotation
+   *                                       processors to run, converted with
+   *                                       ResolvedJavacPluginPropertiesSerializer.
    * @param sortedSetOfJavaSourceFilePathsAsStringsAsList ImmutableSortedSet<Path> represented as
    *                                                      List of String objects.
    * @param pathToSrcsListAsString Path represented as String.
@@ -40,8 +42,15 @@ public interface OutOfProcessJavacConnectionInterface {
       Map<String, Object> serializedJavacExecutionContext,
       String invokingRuleBuildTargetAsString,
       List<String> options,
+      List<Map<String, Object>> serializedAnnotationProcessors,
       List<String> sortedSetOfJavaSourceFilePathsAsStringsAsList,
       String pathToSrcsListAsString,
       String workingDirectory,
       JavacOptions.AbiGenerationMode abiGenerationMode);
+
+  /**
+   * @return how many megabytes of heap the compiler process retained after its most recent
+   *     garbage collection.
+   */
+  int getRetainedHeapMegabytes();
 }
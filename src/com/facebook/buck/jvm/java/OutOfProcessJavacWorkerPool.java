@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.message_ipc.Connection;
+import com.facebook.buck.message_ipc.MessageSerializer;
+import com.facebook.buck.message_ipc.MessageTransport;
+import com.facebook.buck.shell.WorkerProcess;
+import com.facebook.buck.shell.WorkerProcessPool;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Hands out out of process javac workers, keeping them warm across rules and, when running in
+ * the daemon, across builds.
+ *
+ * Workers are grouped by the compiler they load and the annotation processors they run. Every
+ * worker of a group therefore keeps seeing the same processors, and the class loaders it caches
+ * for them stay hot. Each group has up to one worker per build thread. A worker that retained
+ * more than the configured amount of heap after a job is retired and replaced by a fresh one,
+ * which keeps the memory that javac and annotation processors accumulate out of the daemon
+ * without letting the workers grow forever. Since retiring happens only after a job, every worker
+ * also runs with a bounded heap, so that a group running one job per build thread cannot take all
+ * of the host's memory.
+ */
+public class OutOfProcessJavacWorkerPool {
+  private static final Logger LOG = Logger.get(OutOfProcessJavacWorkerPool.class);
+
+  public static final int DEFAULT_MAX_HEAP_MEGABYTES = 1024;
+  public static final int DEFAULT_MAX_RETAINED_HEAP_MEGABYTES = 512;
+
+  private static final String WORKER_MAIN_CLASS = "com.facebook.buck.oop_javac.Main";
+  private static final String BOOTSTRAPPER_CLASS =
+      "com.facebook.buck.cli.bootstrapper.ClassLoaderBootstrapper";
+  private static final String BUCK_CLASSPATH = "BUCK_CLASSPATH";
+  private static final String POOL_KEY_PREFIX = "oop_javac:";
+
+  private final ConcurrentMap<String, WorkerProcessPool> workerProcessPools;
+  private final ProcessExecutor processExecutor;
+  private final ProjectFilesystem filesystem;
+  private final ImmutableMap<String, String> environment;
+  private final ImmutableList<String> workerCommand;
+  private final int maxWorkersPerGroup;
+  private final int maxRetainedHeapMegabytes;
+  private final MessageSerializer messageSerializer;
+
+  /**
+   * @param workerProcessPools where to keep the worker groups. Passing a map that outlives the
+   *                           build keeps the workers warm for the next one.
+   * @param maxWorkersPerGroup how many workers may run for the same compiler and processors.
+   * @param maxHeapMegabytes the maximum heap size of every worker JVM.
+   * @param maxRetainedHeapMegabytes workers that retained more heap than this after a job are
+   *                                 replaced.
+   */
+  public OutOfProcessJavacWorkerPool(
+      ConcurrentMap<String, WorkerProcessPool> workerProcessPools,
+      ProcessExecutor processExecutor,
+      ProjectFilesystem filesystem,
+      ImmutableMap<String, String> environment,
+      int maxWorkersPerGroup,
+      int maxHeapMegabytes,
+      int maxRetainedHeapMegabytes,
+      ObjectMapper objectMapper) {
+    this(
+        workerProcessPools,
+        processExecutor,
+        filesystem,
+        environment,
+        getWorkerCommand(maxHeapMegabytes),
+        maxWorkersPerGroup,
+        maxRetainedHeapMegabytes,
+        objectMapper);
+  }
+
+  @VisibleForTesting
+  OutOfProcessJavacWorkerPool(
+      ConcurrentMap<String, WorkerProcessPool> workerProcessPools,
+      ProcessExecutor processExecutor,
+      ProjectFilesystem filesystem,
+      ImmutableMap<String, String> environment,
+      ImmutableList<String> workerCommand,
+      int maxWorkersPerGroup,
+      int maxRetainedHeapMegabytes,
+      ObjectMapper objectMapper) {
+    Preconditions.checkArgument(maxWorkersPerGroup > 0);
+    this.workerProcessPools = workerProcessPools;
+    this.processExecutor = processExecutor;
+    this.filesystem = filesystem;
+    this.environment = environment;
+    this.workerCommand = workerCommand;
+    this.maxWorkersPerGroup = maxWorkersPerGroup;
+    this.maxRetainedHeapMegabytes = maxRetainedHeapMegabytes;
+    this.messageSerializer = new MessageSerializer(objectMapper);
+  }
+
+  /**
+   * Runs {@code job} on a worker of the group for the given compiler and annotation processors,
+   * starting the worker if needed. Whatever the worker writes to its standard error while running
+   * the job is copied to {@code stdErr}.
+   *
+   * @param compilerKey identifies the compiler the worker loads, e.g. its class name and classpath.
+   * @param serializedAnnotationProcessors the processors the job runs, as sent to the worker.
+   */
+  public int runOnWorker(
+      String compilerKey,
+      List<Map<String, Object>> serializedAnnotationProcessors,
+      PrintStream stdErr,
+      Function<OutOfProcessJavacConnectionInterface, Integer> job)
+      throws InterruptedException {
+    WorkerProcessPool pool = getWorkerProcessPool(
+        Joiner.on('\n').join(
+            filesystem.getRootPath(),
+            compilerKey,
+            serializedAnnotationProcessors));
+    WorkerProcess workerProcess;
+    try {
+      workerProcess = pool.borrowWorkerProcess();
+    } catch (IOException e) {
+      throw new HumanReadableException(e, "Unable to start out of process javac: %s", e);
+    }
+
+    boolean retire = true;
+    try {
+      // The connection is never closed, as that would close the worker too.
+      OutOfProcessJavacConnectionInterface remote = getRemoteObjectProxy(
+          new Connection<>(
+              new MessageTransport(workerProcess, messageSerializer, Optional.of(stdErr))));
+      int result = job.apply(remote);
+
+      int retainedHeapMegabytes = remote.getRetainedHeapMegabytes();
+      retire = retainedHeapMegabytes > maxRetainedHeapMegabytes;
+      if (retire) {
+        LOG.debug(
+            "Replacing javac worker %d, which retained %d MB of heap.",
+            workerProcess.hashCode(),
+            retainedHeapMegabytes);
+      }
+      return result;
+    } catch (UndeclaredThrowableException e) {
+      throw new HumanReadableException(
+          e.getCause(),
+          "Out of process javac failed: %s",
+          e.getCause());
+    } finally {
+      // Workers that failed in the middle of a job may be in any state, so they are replaced too.
+      if (retire) {
+        pool.retireWorkerProcess(workerProcess);
+      } else {
+        pool.returnWorkerProcess(workerProcess);
+      }
+    }
+  }
+
+  private static OutOfProcessJavacConnectionInterface getRemoteObjectProxy(
+      Connection<OutOfProcessJavacConnectionInterface> connection) {
+    connection.setRemoteInterface(
+        OutOfProcessJavacConnectionInterface.class,
+        OutOfProcessJavacConnectionInterface.class.getClassLoader());
+    return connection.getRemoteObjectProxy();
+  }
+
+  private WorkerProcessPool getWorkerProcessPool(String groupKey) {
+    HashCode groupHash = Hashing.sha1().newHasher()
+        .putString(groupKey, StandardCharsets.UTF_8)
+        .putString(Joiner.on(' ').join(workerCommand), StandardCharsets.UTF_8)
+        .hash();
+    String poolKey = POOL_KEY_PREFIX + groupHash;
+    WorkerProcessPool pool = workerProcessPools.get(poolKey);
+    if (pool != null) {
+      return pool;
+    }
+
+    Path tmpDir = filesystem.getBuckPaths().getScratchDir()
+        .resolve("__oop_javac__")
+        .resolve(groupHash.toString());
+    ProcessExecutorParams processParams = ProcessExecutorParams.builder()
+        .setCommand(workerCommand)
+        .setEnvironment(getWorkerEnvironment())
+        .setDirectory(filesystem.getRootPath())
+        .build();
+    AtomicInteger workerNumber = new AtomicInteger(0);
+    WorkerProcessPool newPool = new WorkerProcessPool(maxWorkersPerGroup, groupHash) {
+      @Override
+      protected WorkerProcess startWorkerProcess() throws IOException {
+        Path workerTmpDir = tmpDir.resolve(Integer.toString(workerNumber.getAndIncrement()));
+        filesystem.mkdirs(workerTmpDir);
+        WorkerProcess process =
+            new WorkerProcess(processExecutor, processParams, filesystem, workerTmpDir);
+        process.ensureLaunchAndHandshake();
+        return process;
+      }
+    };
+    WorkerProcessPool previousPool = workerProcessPools.putIfAbsent(poolKey, newPool);
+    return previousPool == null ? newPool : previousPool;
+  }
+
+  private ImmutableMap<String, String> getWorkerEnvironment() {
+    String buckClasspath = System.getenv(BUCK_CLASSPATH);
+    if (buckClasspath == null) {
+      return environment;
+    }
+    Map<String, String> workerEnvironment = new HashMap<>(environment);
+    workerEnvironment.put(BUCK_CLASSPATH, buckClasspath);
+    return ImmutableMap.copyOf(workerEnvironment);
+  }
+
+  /**
+   * Workers run on the same JVM and classpath as Buck itself. When Buck was started through the
+   * class loader bootstrapper, so are the workers, which keeps Buck's dependencies off the
+   * classpath of the annotation processors they run.
+   */
+  @VisibleForTesting
+  static ImmutableList<String> getWorkerCommand(int maxHeapMegabytes) {
+    Preconditions.checkArgument(maxHeapMegabytes > 0);
+    ImmutableList.Builder<String> command = ImmutableList.<String>builder()
+        .add(Paths.get(System.getProperty("java.home"), "bin", "java").toString())
+        .add("-Xmx" + maxHeapMegabytes + "m")
+        .add("-cp")
+        .add(System.getProperty("java.class.path"));
+    if (System.getenv(BUCK_CLASSPATH) != null) {
+      command.add(BOOTSTRAPPER_CLASS);
+    }
+    return command.add(WORKER_MAIN_CLASS).build();
+  }
+}
@@ -16,20 +16,24 @@
 
 package com.facebook.buck.jvm.java;
 
-import com.facebook.buck.message_ipc.Connection;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 public abstract class OutOfProcessJsr199Javac implements Javac {
+  private static final Logger LOG = Logger.get(OutOfProcessJsr199Javac.class);
   private static final JavacVersion VERSION = JavacVersion.of("oop in memory");
 
-  private Connection<OutOfProcessJavacConnectionInterface> connection;
-
   @Override
   public JavacVersion getVersion() {
     return VERSION;
@@ -62,11 +66,53 @@ public abstract class OutOfProcessJsr199Javac implements Javac {
     throw new UnsupportedOperationException("In memory javac(oop) may not be used externally");
   }
 
-  public void setConnection(Connection<OutOfProcessJavacConnectionInterface> connection) {
-    this.connection = connection;
-  }
+  @Override
+  public int buildWithClasspath(
+      JavacExecutionContext context,
+      BuildTarget invokingRule,
+      ImmutableList<String> options,
+      ImmutableList<ResolvedJavacPluginProperties> annotationProcessors,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      Optional<Path> workingDirectory,
+      JavacOptions.AbiGenerationMode abiGenerationMode) throws InterruptedException {
+    Preconditions.checkState(
+        context.getOutOfProcessJavacWorkerPool().isPresent(),
+        "%s needs workers to compile %s with.",
+        getShortName(),
+        invokingRule);
+
+    Map<String, Object> serializedContext = JavacExecutionContextSerializer.serialize(context);
+    if (LOG.isVerboseEnabled()) {
+      LOG.verbose("Serialized JavacExecutionContext: %s", serializedContext);
+    }
+    List<Map<String, Object>> serializedAnnotationProcessors = ImmutableList.copyOf(
+        annotationProcessors.stream()
+            .map(ResolvedJavacPluginPropertiesSerializer::serialize)
+            .iterator());
+    Optional<String> compilerClassName = getCompilerClassName();
 
-  public Connection<OutOfProcessJavacConnectionInterface> getConnection() {
-    return connection;
+    return context.getOutOfProcessJavacWorkerPool().get().runOnWorker(
+        Joiner.on(' ').join(
+            compilerClassName.orElse("jdk"),
+            context.getAbsolutePathsForInputs()),
+        serializedAnnotationProcessors,
+        context.getStdErr(),
+        remote -> remote.buildWithClasspath(
+            compilerClassName.orElse(null),
+            serializedContext,
+            invokingRule.getFullyQualifiedName(),
+            options,
+            serializedAnnotationProcessors,
+            ImmutableList.copyOf(javaSourceFilePaths.stream().map(Path::toString).iterator()),
+            pathToSrcsList.toString(),
+            workingDirectory.isPresent() ? workingDirectory.get().toString() : null,
+            abiGenerationMode));
   }
+
+  /**
+   * @return the compiler to load from the classpath of the javac inputs, or absent to use the one
+   *     that comes with the JDK.
+   */
+  protected abstract Optional<String> getCompilerClassName();
 }
@@ -56,6 +56,15 @@ public class ResolvedJavacPluginProperties implements RuleKeyAppendable {
         .toArray(size -> new URL[size]));
   }
 
+  /**
+   * Creates properties whose classpath has already been resolved, e.g. by the process that asked
+   * an out of process compiler to run them.
+   */
+  public ResolvedJavacPluginProperties(AbstractJavacPluginProperties inner, URL[] classpath) {
+    this.inner = inner;
+    this.classpathSupplier = Suppliers.ofInstance(classpath.clone());
+  }
+
   public boolean getCanReuseClassLoader() {
     return inner.getCanReuseClassLoader();
   }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+public class ResolvedJavacPluginPropertiesSerializer {
+  private ResolvedJavacPluginPropertiesSerializer() {}
+
+  private static final String CAN_REUSE_CLASS_LOADER = "can_reuse_class_loader";
+  private static final String PROCESSOR_NAMES = "processor_names";
+  private static final String CLASSPATH = "classpath";
+
+  public static ImmutableMap<String, Object> serialize(ResolvedJavacPluginProperties properties) {
+    ImmutableList.Builder<String> classpath = ImmutableList.builder();
+    for (URL url : properties.getClasspath()) {
+      classpath.add(url.toString());
+    }
+    return ImmutableMap.of(
+        CAN_REUSE_CLASS_LOADER, properties.getCanReuseClassLoader(),
+        PROCESSOR_NAMES, ImmutableList.copyOf(properties.getProcessorNames()),
+        CLASSPATH, classpath.build());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static ResolvedJavacPluginProperties deserialize(Map<String, Object> data) {
+    Preconditions.checkArgument(data.containsKey(CAN_REUSE_CLASS_LOADER));
+    Preconditions.checkArgument(data.containsKey(PROCESSOR_NAMES));
+    Preconditions.checkArgument(data.containsKey(CLASSPATH));
+
+    List<String> serializedClasspath = (List<String>) data.get(CLASSPATH);
+    URL[] classpath = new URL[serializedClasspath.size()];
+    for (int i = 0; i < classpath.length; i++) {
+      try {
+        classpath[i] = new URL(serializedClasspath.get(i));
+      } catch (MalformedURLException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    // The inputs only matter for rule keys, which are never computed on this side.
+    JavacPluginProperties inner = JavacPluginProperties.builder()
+        .setCanReuseClassLoader((Boolean) data.get(CAN_REUSE_CLASS_LOADER))
+        .addAllProcessorNames((List<String>) data.get(PROCESSOR_NAMES))
+        .build();
+    return new ResolvedJavacPluginProperties(inner, classpath);
+  }
+}
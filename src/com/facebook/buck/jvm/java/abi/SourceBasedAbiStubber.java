@@ -16,13 +16,17 @@
 
 package com.facebook.buck.jvm.java.abi;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.java.abi.source.api.BootClasspathOracle;
 import com.facebook.buck.jvm.java.plugin.PluginLoader;
 import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.HumanReadableException;
 
 import java.lang.reflect.Constructor;
+import java.nio.file.Path;
 
+import javax.annotation.processing.Processor;
+import javax.lang.model.SourceVersion;
 import javax.tools.Diagnostic;
 import javax.tools.JavaCompiler;
 
@@ -54,6 +58,17 @@ public final class SourceBasedAbiStubber {
     }
   }
 
+  /**
+   * @return an annotation processor that writes a stub jar of every type in the compilation to
+   *     {@code stubJarPath} once annotation processing is over, before any code is generated.
+   */
+  public static Processor newStubJarGeneratingProcessor(
+      ProjectFilesystem filesystem,
+      Path stubJarPath,
+      SourceVersion classFileVersion) {
+    return new StubJarGeneratingProcessor(filesystem, stubJarPath, classFileVersion);
+  }
+
   private SourceBasedAbiStubber() {
 
   }
@@ -20,6 +20,7 @@ import com.google.common.base.Preconditions;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
+import java.util.Collections;
 
 import javax.annotation.Nullable;
 
@@ -64,7 +65,8 @@ public class Connection<REMOTE> implements AutoCloseable {
     InvocationHandler invocationHandler = (proxy, method, args) -> {
       InvocationMessage invocation = new InvocationMessage(
           method.getName(),
-          Arrays.asList(args));
+          // Methods without parameters are invoked with null arguments.
+          args == null ? Collections.emptyList() : Arrays.asList(args));
       ReturnResultMessage response = messageTransport.sendMessageAndWaitForResponse(invocation);
       return response.getValue();
     };
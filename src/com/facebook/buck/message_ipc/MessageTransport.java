@@ -20,14 +20,30 @@ import com.facebook.buck.shell.WorkerJobResult;
 import com.facebook.buck.shell.WorkerProcess;
 import com.google.common.base.Preconditions;
 
+import java.io.PrintStream;
+import java.util.Optional;
+
 public class MessageTransport implements AutoCloseable {
   private final WorkerProcess workerProcess;
   private final MessageSerializer serializer;
+  private final Optional<PrintStream> remoteStdErr;
   private boolean isClosed = false;
 
   public MessageTransport(WorkerProcess workerProcess, MessageSerializer serializer) {
+    this(workerProcess, serializer, Optional.empty());
+  }
+
+  /**
+   * @param remoteStdErr if present, receives whatever the remote side wrote to the standard error
+   *                     while handling each message.
+   */
+  public MessageTransport(
+      WorkerProcess workerProcess,
+      MessageSerializer serializer,
+      Optional<PrintStream> remoteStdErr) {
     this.workerProcess = workerProcess;
     this.serializer = serializer;
+    this.remoteStdErr = remoteStdErr;
   }
 
   public ReturnResultMessage sendMessageAndWaitForResponse(
@@ -36,6 +52,9 @@ public class MessageTransport implements AutoCloseable {
     checkNotClose();
     String serializedMessage = serializer.serializeInvocation(message);
     WorkerJobResult result = workerProcess.submitAndWaitForJob(serializedMessage);
+    if (remoteStdErr.isPresent() && result.getStderr().isPresent()) {
+      remoteStdErr.get().print(result.getStderr().get());
+    }
     ReturnResultMessage resultMessage = serializer.deserializeResult(result.getStdout().orElse(""));
     return resultMessage;
   }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.oop_javac;
+
+import com.facebook.buck.jvm.core.JarIndexCache;
+import com.facebook.buck.jvm.java.OutOfProcessJavacConnectionInterface;
+import com.facebook.buck.message_ipc.InvocationMessage;
+import com.facebook.buck.message_ipc.MessageSerializer;
+import com.facebook.buck.message_ipc.ReturnResultMessage;
+import com.facebook.buck.util.ClassLoaderCache;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Entry point of an out of process javac worker. Speaks the worker process protocol (version
+ * "0") on stdin and stdout: every command's args file holds an {@link InvocationMessage} for
+ * {@link OutOfProcessJavacConnectionInterface}, and the {@link ReturnResultMessage} is written to
+ * the command's stdout file. What the compiler prints goes to the command's stderr file.
+ */
+public class Main {
+  private static final String PROTOCOL_VERSION = "0";
+  private static final String TYPE_HANDSHAKE = "handshake";
+  private static final String TYPE_RESULT = "result";
+  private static final String TYPE_ERROR = "error";
+
+  private final JsonReader reader;
+  private final JsonWriter writer;
+  private final ClassLoaderCache classLoaderCache;
+  private final JarIndexCache jarIndexCache;
+  private final ObjectMapper objectMapper;
+  private final MessageSerializer messageSerializer;
+
+  Main(
+      Reader input,
+      Writer output,
+      ClassLoaderCache classLoaderCache,
+      ObjectMapper objectMapper) {
+    this.reader = new JsonReader(input);
+    this.writer = new JsonWriter(output);
+    this.classLoaderCache = classLoaderCache;
+    this.jarIndexCache = new JarIndexCache();
+    this.objectMapper = objectMapper;
+    this.messageSerializer = new MessageSerializer(objectMapper);
+  }
+
+  public static void main(String[] args) throws Exception {
+    // Only the protocol may be written to stdout. Anything else ends up in the worker's log.
+    PrintStream protocolOutput = System.out;
+    System.setOut(System.err);
+
+    try (ClassLoaderCache classLoaderCache = new ClassLoaderCache()) {
+      new Main(
+          new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+          new BufferedWriter(new OutputStreamWriter(protocolOutput, StandardCharsets.UTF_8)),
+          classLoaderCache,
+          ObjectMappers.newDefaultInstance())
+          .run();
+    }
+    // Annotation processors may have left non-daemon threads behind.
+    System.exit(0);
+  }
+
+  /**
+   * Handles commands until Buck closes the stream.
+   */
+  void run() throws IOException {
+    reader.beginArray();
+    int handshakeId = receiveHandshake();
+    writer.beginArray();
+    writer.beginObject();
+    writer.name("id").value(handshakeId);
+    writer.name("type").value(TYPE_HANDSHAKE);
+    writer.name("protocol_version").value(PROTOCOL_VERSION);
+    writer.name("capabilities").beginArray().endArray();
+    writer.endObject();
+    writer.flush();
+
+    while (reader.hasNext()) {
+      int id = -1;
+      String argsPath = null;
+      String stdoutPath = null;
+      String stderrPath = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String property = reader.nextName();
+        if (property.equals("id")) {
+          id = reader.nextInt();
+        } else if (property.equals("args_path")) {
+          argsPath = reader.nextString();
+        } else if (property.equals("stdout_path")) {
+          stdoutPath = reader.nextString();
+        } else if (property.equals("stderr_path")) {
+          stderrPath = reader.nextString();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      String type = TYPE_RESULT;
+      int exitCode;
+      if (argsPath == null || stdoutPath == null || stderrPath == null) {
+        type = TYPE_ERROR;
+        exitCode = 2;
+      } else {
+        exitCode = runCommand(Paths.get(argsPath), Paths.get(stdoutPath), Paths.get(stderrPath));
+      }
+      writer.beginObject();
+      writer.name("id").value(id);
+      writer.name("type").value(type);
+      writer.name("exit_code").value(exitCode);
+      writer.endObject();
+      writer.flush();
+    }
+
+    reader.endArray();
+    writer.endArray();
+    writer.close();
+  }
+
+  private int receiveHandshake() throws IOException {
+    int id = -1;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String property = reader.nextName();
+      if (property.equals("id")) {
+        id = reader.nextInt();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return id;
+  }
+
+  private int runCommand(Path argsPath, Path stdoutPath, Path stderrPath) throws IOException {
+    try (PrintStream stdErr =
+             new PrintStream(Files.newOutputStream(stderrPath), true, StandardCharsets.UTF_8.name())) {
+      try {
+        InvocationMessage invocation = messageSerializer.deserializeInvocation(
+            new String(Files.readAllBytes(argsPath), StandardCharsets.UTF_8));
+        Object result = invoke(
+            new OutOfProcessInvocationReceiver(
+                classLoaderCache,
+                jarIndexCache,
+                objectMapper,
+                stdErr),
+            invocation);
+        Files.write(
+            stdoutPath,
+            messageSerializer.serializeResult(new ReturnResultMessage(result))
+                .getBytes(StandardCharsets.UTF_8));
+        return 0;
+      } catch (Exception e) {
+        e.printStackTrace(stdErr);
+        return 1;
+      }
+    }
+  }
+
+  private Object invoke(
+      OutOfProcessJavacConnectionInterface receiver,
+      InvocationMessage invocation) throws Exception {
+    List<Object> arguments = invocation.getArguments();
+    for (Method method : OutOfProcessJavacConnectionInterface.class.getMethods()) {
+      if (!method.getName().equals(invocation.getMethodName()) ||
+          method.getParameterCount() != arguments.size()) {
+        continue;
+      }
+      // JSON only knows maps, lists, strings and numbers, so convert back to the declared types.
+      Object[] convertedArguments = new Object[arguments.size()];
+      for (int i = 0; i < convertedArguments.length; i++) {
+        convertedArguments[i] = objectMapper.convertValue(
+            arguments.get(i),
+            objectMapper.constructType(method.getGenericParameterTypes()[i]));
+      }
+      try {
+        return method.invoke(receiver, convertedArguments);
+      } catch (InvocationTargetException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+        throw e;
+      }
+    }
+    throw new IllegalArgumentException(
+        String.format("Unknown method %s", invocation.getMethodName()));
+  }
+}
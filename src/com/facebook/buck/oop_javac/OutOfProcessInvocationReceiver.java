@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.oop_javac;
+
+import com.facebook.buck.jvm.core.JarIndexCache;
+import com.facebook.buck.jvm.java.JarBackedJavac;
+import com.facebook.buck.jvm.java.Javac;
+import com.facebook.buck.jvm.java.JavacEventSink;
+import com.facebook.buck.jvm.java.JavacExecutionContext;
+import com.facebook.buck.jvm.java.JavacExecutionContextSerializer;
+import com.facebook.buck.jvm.java.JavacOptions;
+import com.facebook.buck.jvm.java.JdkProvidedInMemoryJavac;
+import com.facebook.buck.jvm.java.OutOfProcessJavacConnectionInterface;
+import com.facebook.buck.jvm.java.ResolvedJavacPluginPropertiesSerializer;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.parser.BuildTargetParser;
+import com.facebook.buck.parser.BuildTargetPatternParser;
+import com.facebook.buck.util.Ansi;
+import com.facebook.buck.util.ClassLoaderCache;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.Verbosity;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+
+import javax.annotation.Nullable;
+
+/**
+ * Runs the compilations Buck sends to an out of process javac worker. The class loader cache is
+ * shared by every compilation the worker runs, so compilers and annotation processors are only
+ * loaded (and JIT compiled) once per worker. So is the jar index cache, so classpath jars are
+ * only indexed once per worker.
+ */
+public class OutOfProcessInvocationReceiver implements OutOfProcessJavacConnectionInterface {
+  private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+  private final ClassLoaderCache classLoaderCache;
+  private final JarIndexCache jarIndexCache;
+  private final ObjectMapper objectMapper;
+  private final PrintStream stdErr;
+
+  /**
+   * @param stdErr receives the output of the compiler, which is passed on to Buck.
+   */
+  public OutOfProcessInvocationReceiver(
+      ClassLoaderCache classLoaderCache,
+      JarIndexCache jarIndexCache,
+      ObjectMapper objectMapper,
+      PrintStream stdErr) {
+    this.classLoaderCache = classLoaderCache;
+    this.jarIndexCache = jarIndexCache;
+    this.objectMapper = objectMapper;
+    this.stdErr = stdErr;
+  }
+
+  @Override
+  public int buildWithClasspath(
+      @Nullable String compilerClassNameForJarBackedJavacMode,
+      Map<String, Object> serializedJavacExecutionContext,
+      String invokingRuleBuildTargetAsString,
+      List<String> options,
+      List<Map<String, Object>> serializedAnnotationProcessors,
+      List<String> sortedSetOfJavaSourceFilePathsAsStringsAsList,
+      String pathToSrcsListAsString,
+      @Nullable String workingDirectory,
+      JavacOptions.AbiGenerationMode abiGenerationMode) {
+    Console console =
+        new Console(Verbosity.STANDARD_INFORMATION, stdErr, stdErr, Ansi.withoutTty());
+    JavacExecutionContext context = JavacExecutionContextSerializer.deserialize(
+        serializedJavacExecutionContext,
+        new StdErrJavacEventSink(stdErr),
+        stdErr,
+        classLoaderCache,
+        objectMapper,
+        console,
+        jarIndexCache);
+    BuildTarget invokingRule = BuildTargetParser.INSTANCE.parse(
+        invokingRuleBuildTargetAsString,
+        BuildTargetPatternParser.fullyQualified(),
+        context.getCellPathResolver());
+    Javac javac = compilerClassNameForJarBackedJavacMode == null ?
+        new JdkProvidedInMemoryJavac() :
+        // The compiler's classpath is taken from the context's inputs.
+        new JarBackedJavac(compilerClassNameForJarBackedJavacMode, ImmutableSet.of());
+
+    try {
+      return javac.buildWithClasspath(
+          context,
+          invokingRule,
+          ImmutableList.copyOf(options),
+          ImmutableList.copyOf(
+              serializedAnnotationProcessors.stream()
+                  .map(ResolvedJavacPluginPropertiesSerializer::deserialize)
+                  .iterator()),
+          ImmutableSortedSet.copyOf(
+              sortedSetOfJavaSourceFilePathsAsStringsAsList.stream()
+                  .map(Paths::get)
+                  .iterator()),
+          Paths.get(pathToSrcsListAsString),
+          Optional.ofNullable(workingDirectory).map(Paths::get),
+          abiGenerationMode);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 1;
+    }
+  }
+
+  @Override
+  public int getRetainedHeapMegabytes() {
+    // What was left after the last collection of each pool is what the worker holds on to; the
+    // rest is garbage that has not been collected yet.
+    long retainedBytes = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryUsage usage = pool.getCollectionUsage();
+      if (pool.getType() == MemoryType.HEAP && usage != null) {
+        retainedBytes += usage.getUsed();
+      }
+    }
+    return (int) (retainedBytes / BYTES_PER_MEGABYTE);
+  }
+
+  /**
+   * There is no event bus in the worker, so only the events that would end up in front of the
+   * user are kept, by writing them to the compiler's output.
+   */
+  private static class StdErrJavacEventSink implements JavacEventSink {
+    private final PrintStream stdErr;
+
+    private StdErrJavacEventSink(PrintStream stdErr) {
+      this.stdErr = stdErr;
+    }
+
+    @Override
+    public void reportThrowable(Throwable throwable, String message, Object... args) {
+      stdErr.println(String.format(message, args));
+      throwable.printStackTrace(stdErr);
+    }
+
+    @Override
+    public void reportMissingJavaSymbol(BuildTarget target, String symbol) {
+    }
+
+    @Override
+    public void reportEvent(Level level, String message, Object... args) {
+      if (level.intValue() >= Level.WARNING.intValue()) {
+        stdErr.println(String.format(message, args));
+      }
+    }
+
+    @Override
+    public void reportCompilerPluginStarted(
+        BuildTarget buildTarget,
+        String pluginName,
+        String durationName,
+        ImmutableMap<String, String> args) {
+    }
+
+    @Override
+    public void reportCompilerPluginFinished(
+        BuildTarget buildTarget,
+        ImmutableMap<String, String> args) {
+    }
+
+    @Override
+    public void reportJavacPhaseStarted(
+        BuildTarget buildTarget,
+        String phase,
+        ImmutableMap<String, String> args) {
+    }
+
+    @Override
+    public void reportJavacPhaseFinished(
+        BuildTarget buildTarget,
+        String phase,
+        ImmutableMap<String, String> args) {
+    }
+
+    @Override
+    public void reportAnnotationProcessingEventStarted(
+        BuildTarget buildTarget,
+        String annotationProcessorName,
+        String operation,
+        int round,
+        boolean isLastRound) {
+    }
+
+    @Override
+    public void reportAnnotationProcessingEventFinished(
+        BuildTarget buildTarget,
+        String annotationProcessorName,
+        String operation,
+        int round,
+        boolean isLastRound) {
+    }
+  }
+}
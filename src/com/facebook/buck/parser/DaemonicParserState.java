@@ -19,6 +19,7 @@ package com.facebook.buck.parser;
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.counters.Counter;
 import com.facebook.buck.counters.IntegerCounter;
+import com.facebook.buck.counters.LatencyHistogram;
 import com.facebook.buck.counters.TagSetCounter;
 import com.facebook.buck.event.ParsingEvent;
 import com.facebook.buck.event.listener.BroadcastEventListener;
@@ -97,6 +98,7 @@ class DaemonicParserState {
       "rules_invalidated_by_watch_events";
   private static final String PATHS_ADDED_OR_REMOVED_INVALIDATING_BUILD_FILES =
       "paths_added_or_removed_invalidating_build_files";
+  private static final String PARSE_REQUEST_LATENCY_COUNTER_NAME = "parse_request_latency";
 
   /**
    * Taken from {@link ConcurrentMap}.
@@ -271,6 +273,7 @@ class DaemonicParserState {
   private final IntegerCounter filesChangedCounter;
   private final IntegerCounter rulesInvalidatedByWatchEventsCounter;
   private final TagSetCounter pathsAddedOrRemovedInvalidatingBuildFiles;
+  private final LatencyHistogram parseRequestLatency;
 
   /**
    * The set of {@link Cell} instances that have been seen by this state. This information is used
@@ -334,6 +337,10 @@ class DaemonicParserState {
             COUNTER_CATEGORY,
             PATHS_ADDED_OR_REMOVED_INVALIDATING_BUILD_FILES,
             ImmutableMap.of());
+    this.parseRequestLatency = new LatencyHistogram(
+        COUNTER_CATEGORY,
+        PARSE_REQUEST_LATENCY_COUNTER_NAME,
+        ImmutableMap.of());
     this.buildFileTrees = CacheBuilder.newBuilder().build(
         new CacheLoader<Cell, BuildFileTree>() {
           @Override
@@ -355,6 +362,14 @@ class DaemonicParserState {
     this.broadcastEventListener = broadcastEventListener;
   }
 
+  /**
+   * @return histogram of how long build file parse requests take, including the time they spend
+   *     waiting for a parser.
+   */
+  LatencyHistogram getParseRequestLatency() {
+    return parseRequestLatency;
+  }
+
   TypeCoercerFactory getTypeCoercerFactory() {
     return typeCoercerFactory;
   }
@@ -642,7 +657,8 @@ class DaemonicParserState {
         buildFilesInvalidatedByFileAddOrRemoveCounter,
         filesChangedCounter,
         rulesInvalidatedByWatchEventsCounter,
-        pathsAddedOrRemovedInvalidatingBuildFiles);
+        pathsAddedOrRemovedInvalidatingBuildFiles,
+        parseRequestLatency);
   }
 
   @Override
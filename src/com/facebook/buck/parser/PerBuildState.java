@@ -119,7 +119,8 @@ public class PerBuildState implements AutoCloseable {
     int numParsingThreads = parserConfig.getNumParsingThreads();
     this.projectBuildFileParserPool = new ProjectBuildFileParserPool(
         numParsingThreads, // Max parsers to create per cell.
-        input -> createBuildFileParser(input, PerBuildState.this.ignoreBuckAutodepsFiles));
+        input -> createBuildFileParser(input, PerBuildState.this.ignoreBuckAutodepsFiles),
+        parser.getPermState().getParseRequestLatency());
 
     this.rawNodeParsePipeline = new RawNodeParsePipeline(
         parser.getPermState().getRawNodeCache(),
@@ -16,14 +16,17 @@
 
 package com.facebook.buck.parser;
 
+import com.facebook.buck.counters.LatencyHistogram;
 import com.facebook.buck.json.ProjectBuildFileParser;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.util.concurrent.ResourcePool;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.nio.file.Path;
 import java.util.HashMap;
@@ -45,6 +48,7 @@ class ProjectBuildFileParserPool implements AutoCloseable {
   private final Map<Cell, ResourcePool<ProjectBuildFileParser>> parserResourcePools;
   private final Function<Cell, ProjectBuildFileParser> parserFactory;
   private final AtomicBoolean closing;
+  private final LatencyHistogram requestLatency;
 
   /**
    * @param maxParsersPerCell maximum number of parsers to create for a single cell.
@@ -53,12 +57,28 @@ class ProjectBuildFileParserPool implements AutoCloseable {
   public ProjectBuildFileParserPool(
       int maxParsersPerCell,
       Function<Cell, ProjectBuildFileParser> parserFactory) {
+    this(
+        maxParsersPerCell,
+        parserFactory,
+        new LatencyHistogram("buck_parser", "parse_request_latency", ImmutableMap.of()));
+  }
+
+  /**
+   * @param maxParsersPerCell maximum number of parsers to create for a single cell.
+   * @param parserFactory function used to create a new parser.
+   * @param requestLatency records how long each request takes, from scheduling to completion.
+   */
+  public ProjectBuildFileParserPool(
+      int maxParsersPerCell,
+      Function<Cell, ProjectBuildFileParser> parserFactory,
+      LatencyHistogram requestLatency) {
     Preconditions.checkArgument(maxParsersPerCell > 0);
 
     this.maxParsersPerCell = maxParsersPerCell;
     this.parserResourcePools = new HashMap<>();
     this.parserFactory = parserFactory;
     this.closing = new AtomicBoolean(false);
+    this.requestLatency = requestLatency;
   }
 
   /**
@@ -74,9 +94,15 @@ class ProjectBuildFileParserPool implements AutoCloseable {
       final ListeningExecutorService executorService) {
     Preconditions.checkState(!closing.get());
 
-    return getResourcePoolForCell(cell).scheduleOperationWithResource(
-        parser -> ImmutableSet.copyOf(parser.getAllRulesAndMetaRules(buildFile)),
-        executorService);
+    long startNanos = System.nanoTime();
+    ListenableFuture<ImmutableSet<Map<String, Object>>> result =
+        getResourcePoolForCell(cell).scheduleOperationWithResource(
+            parser -> ImmutableSet.copyOf(parser.getAllRulesAndMetaRules(buildFile)),
+            executorService);
+    result.addListener(
+        () -> requestLatency.recordSince(startNanos),
+        MoreExecutors.directExecutor());
+    return result;
   }
 
   private synchronized ResourcePool<ProjectBuildFileParser> getResourcePoolForCell(Cell cell) {
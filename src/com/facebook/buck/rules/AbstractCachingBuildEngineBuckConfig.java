@@ -17,6 +17,7 @@ package com.facebook.buck.rules;
 
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.config.ConfigView;
+import com.facebook.buck.rules.durations.RuleResourceProfileStore;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
 
 import org.immutables.value.Value;
@@ -68,10 +69,32 @@ abstract class AbstractCachingBuildEngineBuckConfig implements ConfigView<BuckCo
         .orElse(Long.MAX_VALUE);
   }
 
+  /**
+   * @return whether rules that are ready to build locally should be run in order of their
+   *     remaining critical path. Off unless asked for.
+   */
+  public boolean isCriticalPathSchedulingEnabled() {
+    return getDelegate().getBooleanValue("build", "critical_path_scheduling", false);
+  }
+
   public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo() {
     return ResourceAwareSchedulingInfo.of(
         getDelegate().isResourceAwareSchedulingEnabled(),
         getDelegate().getDefaultResourceAmounts(),
-        getDelegate().getResourceAmountsPerRuleType());
+        getDelegate().getResourceAmountsPerRuleType(),
+        Optional.empty());
+  }
+
+  /**
+   * @return the same as {@link #getResourceAwareSchedulingInfo()}, but sizing rules by their
+   *     recorded resource usage when adaptive scheduling is enabled.
+   */
+  public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo(
+      Optional<RuleResourceProfileStore> resourceProfileStore) {
+    ResourceAwareSchedulingInfo info = getResourceAwareSchedulingInfo();
+    if (!getDelegate().isAdaptiveSchedulingEnabled()) {
+      return info;
+    }
+    return info.withResourceProfileStore(resourceProfileStore);
   }
 }
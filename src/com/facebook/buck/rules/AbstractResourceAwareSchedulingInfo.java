@@ -15,6 +15,7 @@
  */
 package com.facebook.buck.rules;
 
+import com.facebook.buck.rules.durations.RuleResourceProfileStore;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
@@ -23,6 +24,8 @@ import com.google.common.collect.ImmutableMap;
 
 import org.immutables.value.Value;
 
+import java.util.Optional;
+
 @Value.Immutable
 @BuckStyleTuple
 abstract class AbstractResourceAwareSchedulingInfo {
@@ -31,7 +34,8 @@ abstract class AbstractResourceAwareSchedulingInfo {
       ResourceAwareSchedulingInfo.of(
           false,
           ResourceAmountsEstimator.DEFAULT_AMOUNTS,
-          ImmutableMap.of());
+          ImmutableMap.of(),
+          Optional.empty());
 
   public abstract boolean isResourceAwareSchedulingEnabled();
 
@@ -42,6 +46,12 @@ abstract class AbstractResourceAwareSchedulingInfo {
    */
   public abstract ImmutableMap<String, ResourceAmounts> getAmountsPerRuleType();
 
+  /**
+   * If present, rule types without an entry in {@link #getAmountsPerRuleType()} are sized by what
+   * their processes used in earlier builds.
+   */
+  public abstract Optional<RuleResourceProfileStore> getResourceProfileStore();
+
   public ResourceAmounts getResourceAmountsForRule(BuildRule rule) {
     if (isRuleResourceFree(rule)) {
       return ResourceAmounts.ZERO;
@@ -58,8 +68,14 @@ abstract class AbstractResourceAwareSchedulingInfo {
     Preconditions.checkArgument(isResourceAwareSchedulingEnabled());
     if (getAmountsPerRuleType().containsKey(rule.getType())) {
       return getAmountsPerRuleType().get(rule.getType());
-    } else {
-      return getDefaultResourceAmounts();
     }
+    if (getResourceProfileStore().isPresent()) {
+      Optional<ResourceAmounts> learnedAmounts = getResourceProfileStore().get()
+          .getResourceAmounts(rule.getType(), getDefaultResourceAmounts());
+      if (learnedAmounts.isPresent()) {
+        return learnedAmounts.get();
+      }
+    }
+    return getDefaultResourceAmounts();
   }
 }
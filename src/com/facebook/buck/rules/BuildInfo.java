@@ -67,7 +67,7 @@ public class BuildInfo {
     /**
      * Key for {@link OnDiskBuildInfo} to identify the dependency-file for a build rule.
      */
-    static final String DEP_FILE = "DEP_FILE";
+    public static final String DEP_FILE = "DEP_FILE";
 
     /**
      * Key for {@link OnDiskBuildInfo} to store the build target of the owning build rule.
@@ -51,6 +51,7 @@ import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.OptionalCompat;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
 import com.facebook.buck.util.concurrent.MoreFutures;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
@@ -100,6 +101,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -121,7 +123,7 @@ public class CachingBuildEngine implements BuildEngine {
       0, 0, 1, 0);
   public static final ResourceAmounts SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS = ResourceAmounts.ZERO;
 
-  private static final String BUILD_RULE_TYPE_CONTEXT_KEY = "build_rule_type";
+  public static final String BUILD_RULE_TYPE_CONTEXT_KEY = "build_rule_type";
   private static final String STEP_TYPE_CONTEXT_KEY = "step_type";
 
   private static enum StepType {
@@ -162,6 +164,7 @@ public class CachingBuildEngine implements BuildEngine {
 
   private final RuleDepsCache ruleDeps;
   private final Optional<UnskippedRulesTracker> unskippedRulesTracker;
+  private final Optional<CriticalPathEstimator> criticalPathEstimator;
 
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
@@ -176,6 +179,40 @@ public class CachingBuildEngine implements BuildEngine {
       final BuildRuleResolver resolver,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
       RuleKeyFactoryManager ruleKeyFactoryManager) {
+    this(
+        cachingBuildEngineDelegate,
+        service,
+        artifactFetchService,
+        stepRunner,
+        buildMode,
+        depFiles,
+        maxDepFileCacheEntries,
+        artifactCacheSizeLimit,
+        objectMapper,
+        resolver,
+        resourceAwareSchedulingInfo,
+        ruleKeyFactoryManager,
+        Optional.empty());
+  }
+
+  /**
+   * @param criticalPathEstimator if present, rules that are ready to build locally are run in
+   *     order of decreasing remaining critical path when they have to wait for resources.
+   */
+  public CachingBuildEngine(
+      CachingBuildEngineDelegate cachingBuildEngineDelegate,
+      WeightedListeningExecutorService service,
+      WeightedListeningExecutorService artifactFetchService,
+      StepRunner stepRunner,
+      BuildMode buildMode,
+      DepFiles depFiles,
+      long maxDepFileCacheEntries,
+      Optional<Long> artifactCacheSizeLimit,
+      ObjectMapper objectMapper,
+      final BuildRuleResolver resolver,
+      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      RuleKeyFactoryManager ruleKeyFactoryManager,
+      Optional<CriticalPathEstimator> criticalPathEstimator) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
 
     this.service = service;
@@ -197,6 +234,7 @@ public class CachingBuildEngine implements BuildEngine {
     this.ruleDeps = new RuleDepsCache(service, resolver);
     this.unskippedRulesTracker =
         createUnskippedRulesTracker(buildMode, ruleDeps, resolver, service);
+    this.criticalPathEstimator = criticalPathEstimator;
   }
 
   /**
@@ -215,7 +253,8 @@ public class CachingBuildEngine implements BuildEngine {
       SourcePathRuleFinder ruleFinder,
       SourcePathResolver pathResolver,
       final Function<? super ProjectFilesystem, RuleKeyFactories> ruleKeyFactoriesFunction,
-      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo) {
+      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      Optional<CriticalPathEstimator> criticalPathEstimator) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
 
     this.service = service;
@@ -237,6 +276,7 @@ public class CachingBuildEngine implements BuildEngine {
     this.ruleDeps = new RuleDepsCache(service, resolver);
     this.unskippedRulesTracker =
         createUnskippedRulesTracker(buildMode, ruleDeps, resolver, service);
+    this.criticalPathEstimator = criticalPathEstimator;
   }
 
   /**
@@ -292,9 +332,13 @@ public class CachingBuildEngine implements BuildEngine {
       BuildEngineBuildContext buildContext,
       ExecutionContext executionContext,
       ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks) {
+    // Pipelined deps are built alongside the rule instead, see getBuildRuleResultWithRuntimeDeps.
+    Set<BuildRule> deps = rule instanceof HasPipelinedDeps ?
+        Sets.difference(rule.getDeps(), ((HasPipelinedDeps) rule).getPipelinedDeps()) :
+        rule.getDeps();
     List<ListenableFuture<BuildResult>> depResults =
-        Lists.newArrayListWithExpectedSize(rule.getDeps().size());
-    for (BuildRule dep : shuffled(rule.getDeps())) {
+        Lists.newArrayListWithExpectedSize(deps.size());
+    for (BuildRule dep : shuffled(deps)) {
       depResults.add(
           getBuildRuleResultWithRuntimeDeps(dep, buildContext, executionContext, asyncCallbacks));
     }
@@ -323,7 +367,8 @@ public class CachingBuildEngine implements BuildEngine {
       }
 
       // Otherwise, build the rule.  We re-submit via the service so that we schedule
-      // it with the custom weight assigned to this rule's steps.
+      // it with the custom weight assigned to this rule's steps, and ahead of rules with a shorter
+      // critical path.
       return service.submit(
           () -> {
             if (!buildContext.isKeepGoing() && firstFailure != null) {
@@ -344,10 +389,36 @@ public class CachingBuildEngine implements BuildEngine {
                   cacheResult);
             }
           },
-          getRuleResourceAmounts(rule));
+          getRuleResourceAmounts(rule),
+          getRulePriority(rule));
     };
   }
 
+  /**
+   * @return every rule that must be built before the given rule is done, including the runtime and
+   *     pipelined deps that are built alongside it.
+   */
+  private Iterable<BuildRule> getCriticalPathDeps(BuildRule rule) {
+    ImmutableSet.Builder<BuildRule> deps = ImmutableSet.<BuildRule>builder().addAll(rule.getDeps());
+    if (rule instanceof HasRuntimeDeps) {
+      deps.addAll(
+          resolver.getAllRules(
+              ((HasRuntimeDeps) rule).getRuntimeDeps()
+                  .collect(MoreCollectors.toImmutableSet())));
+    }
+    if (rule instanceof HasPipelinedDeps) {
+      deps.addAll(((HasPipelinedDeps) rule).getPipelinedDeps());
+    }
+    return deps.build();
+  }
+
+  private long getRulePriority(BuildRule rule) {
+    if (criticalPathEstimator.isPresent()) {
+      return criticalPathEstimator.get().getRemainingMillis(rule);
+    }
+    return ListeningMultiSemaphore.DEFAULT_PRIORITY;
+  }
+
   private AsyncFunction<List<BuildResult>, Optional<BuildResult>> checkCaches(
       final BuildRule rule,
       final BuildEngineBuildContext context,
@@ -1095,16 +1166,24 @@ public class CachingBuildEngine implements BuildEngine {
             ruleKey,
             input -> processBuildRule(rule, buildContext, executionContext, asyncCallbacks),
             serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS));
-    if (!(rule instanceof HasRuntimeDeps)) {
+    if (!(rule instanceof HasRuntimeDeps) && !(rule instanceof HasPipelinedDeps)) {
       results.put(rule.getBuildTarget(), result);
       return result;
     }
 
-    // Collect any runtime deps we have into a list of futures.
-    Stream<BuildTarget> runtimeDepPaths = ((HasRuntimeDeps) rule).getRuntimeDeps();
+    // Collect any runtime deps we have into a list of futures. Pipelined deps are treated the same
+    // way, so that the rule is only reported as done once they are built as well.
+    ImmutableSet.Builder<BuildRule> runtimeDepsBuilder = ImmutableSet.builder();
+    if (rule instanceof HasRuntimeDeps) {
+      Stream<BuildTarget> runtimeDepPaths = ((HasRuntimeDeps) rule).getRuntimeDeps();
+      runtimeDepsBuilder.addAll(
+          resolver.getAllRules(runtimeDepPaths.collect(MoreCollectors.toImmutableSet())));
+    }
+    if (rule instanceof HasPipelinedDeps) {
+      runtimeDepsBuilder.addAll(((HasPipelinedDeps) rule).getPipelinedDeps());
+    }
     List<ListenableFuture<BuildResult>> runtimeDepResults = Lists.newArrayList();
-    ImmutableSet<BuildRule> runtimeDeps = resolver.getAllRules(
-        runtimeDepPaths.collect(MoreCollectors.toImmutableSet()));
+    ImmutableSet<BuildRule> runtimeDeps = runtimeDepsBuilder.build();
     for (BuildRule dep : runtimeDeps) {
       runtimeDepResults.add(
           getBuildRuleResultWithRuntimeDepsUnlocked(
@@ -1172,6 +1251,9 @@ public class CachingBuildEngine implements BuildEngine {
 
   @Override
   public int getNumRulesToBuild(Iterable<BuildRule> rules) {
+    if (criticalPathEstimator.isPresent()) {
+      criticalPathEstimator.get().addTopLevelRules(rules, this::getCriticalPathDeps);
+    }
     Set<BuildRule> seen = Sets.newConcurrentHashSet();
     ImmutableList.Builder<ListenableFuture<?>> results = ImmutableList.builder();
     for (final BuildRule rule : rules) {
@@ -1239,6 +1321,12 @@ public class CachingBuildEngine implements BuildEngine {
     // to make sure we wait for these before calling yielding the final build result.
     final ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks =
         new ConcurrentLinkedQueue<>();
+    if (criticalPathEstimator.isPresent()) {
+      // Usually a no-op, as the build counts the rules to build before building them.
+      criticalPathEstimator.get().addTopLevelRules(
+          ImmutableList.of(rule),
+          this::getCriticalPathDeps);
+    }
     ListenableFuture<BuildResult> resultFuture = MoreFutures.chainExceptions(
         registerTopLevelRule(rule, buildContext.getEventBus()),
         getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext, asyncCallbacks),
@@ -1582,10 +1670,7 @@ public class CachingBuildEngine implements BuildEngine {
 
     // If we already have a manifest downloaded, use that.
     if (rule.getProjectFilesystem().exists(manifestPath)) {
-      try (InputStream inputStream =
-               rule.getProjectFilesystem().newFileInputStream(manifestPath)) {
-        manifest = new Manifest(inputStream);
-      }
+      manifest = Manifest.fromFile(rule.getProjectFilesystem(), manifestPath);
     } else {
       // Ensure the path to manifest exist
       rule.getProjectFilesystem().createParentDirs(manifestPath);
@@ -1606,10 +1691,17 @@ public class CachingBuildEngine implements BuildEngine {
         manifestKey.getInputs(),
         inputs);
 
-    // Serialize the manifest to disk.
-    try (OutputStream outputStream =
-             rule.getProjectFilesystem().newFileOutputStream(manifestPath)) {
-      manifest.serialize(outputStream);
+    // Write the manifest to disk, only appending the new entry if we can.
+    if (manifest.canSerializeNewRecords()) {
+      try (OutputStream outputStream =
+               rule.getProjectFilesystem().newFileAppendingOutputStream(manifestPath)) {
+        manifest.serializeNewRecords(outputStream);
+      }
+    } else {
+      try (OutputStream outputStream =
+               rule.getProjectFilesystem().newFileOutputStream(manifestPath)) {
+        manifest.serialize(outputStream);
+      }
     }
 
     final Path tempFile = Files.createTempFile("buck.", ".manifest");
@@ -1694,18 +1786,19 @@ public class CachingBuildEngine implements BuildEngine {
     Files.delete(tempFile.get());
 
     // Deserialize the manifest.
-    Manifest manifest;
-    try (InputStream input =
-             rule.getProjectFilesystem().newFileInputStream(manifestPath)) {
-      manifest = new Manifest(input);
-    }
+    Manifest manifest = Manifest.fromFile(rule.getProjectFilesystem(), manifestPath);
 
-    // Lookup the rule for the current state of our inputs.
+    // Lookup the rule for the current state of our inputs, leaving out the ones the rule can tell
+    // it won't use so that entries depending on them are skipped without being hashed.
+    Predicate<SourcePath> possibleInputs =
+        ((SupportsDependencyFileRuleKey) rule).getPossibleInputsPredicate();
     Optional<RuleKey> ruleKey =
         manifest.lookup(
             fileHashCaches.getUnchecked(rule.getProjectFilesystem()),
             pathResolver,
-            manifestKey.getInputs());
+            manifestKey.getInputs().stream()
+                .filter(possibleInputs)
+                .collect(MoreCollectors.toImmutableSet()));
     if (!ruleKey.isPresent()) {
       return Optional.empty();
     }
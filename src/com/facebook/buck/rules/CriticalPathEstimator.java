@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.durations.RuleDurationStore;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Estimates how much of the build is left once a rule is ready to run, ie, the expected duration
+ * of the longest chain of rules from the rule up to the top-level rules being built. Rules with
+ * the longest remaining chain are on the critical path, and running them first shortens the
+ * build when there are more ready rules than resources.
+ *
+ * The estimates are computed in a single pass over the graph below the top-level rules, in
+ * topological order, as soon as the top-level rules are known. Rules are costed with their
+ * historical duration when known, or else with a static estimate scaled by their
+ * {@link RuleScheduleInfo}.
+ */
+public class CriticalPathEstimator {
+
+  @VisibleForTesting
+  static final long DEFAULT_RULE_COST_MILLIS = 100;
+
+  private final Optional<RuleDurationStore> ruleDurationStore;
+
+  @GuardedBy("this")
+  private final Map<BuildTarget, Long> costs = new HashMap<>();
+  @GuardedBy("this")
+  private final Map<BuildTarget, Long> remainingMillis = new HashMap<>();
+
+  public CriticalPathEstimator(Optional<RuleDurationStore> ruleDurationStore) {
+    this.ruleDurationStore = ruleDurationStore;
+  }
+
+  /**
+   * Estimates every rule below the given top-level rules. Rules that are already known, either as
+   * top-level rules or as deps of one, are skipped: their estimate already covers the chain they
+   * would start.
+   *
+   * @param getDeps every rule that must finish before the given rule is done.
+   */
+  public synchronized void addTopLevelRules(
+      Iterable<BuildRule> rules,
+      Function<BuildRule, Iterable<BuildRule>> getDeps) {
+    List<BuildRule> newRules = new ArrayList<>();
+    for (BuildRule rule : rules) {
+      if (!remainingMillis.containsKey(rule.getBuildTarget())) {
+        remainingMillis.put(rule.getBuildTarget(), getCost(rule));
+        newRules.add(rule);
+      }
+    }
+    if (newRules.isEmpty()) {
+      return;
+    }
+
+    Map<BuildTarget, ImmutableList<BuildRule>> deps = new HashMap<>();
+    List<BuildRule> postOrder = new ArrayList<>();
+    visitInPostOrder(newRules, getDeps, deps, postOrder);
+
+    // Every dependent of a rule comes before it in reverse post order, so each estimate is final
+    // by the time it is pushed down to the rule's deps.
+    for (int i = postOrder.size() - 1; i >= 0; --i) {
+      BuildRule rule = postOrder.get(i);
+      long ruleRemaining = remainingMillis.get(rule.getBuildTarget());
+      for (BuildRule dep : deps.get(rule.getBuildTarget())) {
+        long depRemaining = ruleRemaining + getCost(dep);
+        Long previous = remainingMillis.get(dep.getBuildTarget());
+        if (previous == null || previous < depRemaining) {
+          remainingMillis.put(dep.getBuildTarget(), depRemaining);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the expected time in milliseconds from the start of the rule to the end of the build.
+   */
+  public synchronized long getRemainingMillis(BuildRule rule) {
+    Long remaining = remainingMillis.get(rule.getBuildTarget());
+    return remaining != null ? remaining : getCost(rule);
+  }
+
+  /**
+   * Walks iteratively, since action graphs can be deeper than the stack.
+   */
+  private static void visitInPostOrder(
+      Iterable<BuildRule> roots,
+      Function<BuildRule, Iterable<BuildRule>> getDeps,
+      Map<BuildTarget, ImmutableList<BuildRule>> deps,
+      List<BuildRule> postOrder) {
+    Deque<BuildRule> stack = new ArrayDeque<>();
+    Deque<Iterator<BuildRule>> remainingDeps = new ArrayDeque<>();
+    for (BuildRule root : roots) {
+      if (deps.containsKey(root.getBuildTarget())) {
+        continue;
+      }
+      ImmutableList<BuildRule> rootDeps = ImmutableList.copyOf(getDeps.apply(root));
+      deps.put(root.getBuildTarget(), rootDeps);
+      stack.push(root);
+      remainingDeps.push(rootDeps.iterator());
+      while (!stack.isEmpty()) {
+        Iterator<BuildRule> iterator = remainingDeps.peek();
+        if (iterator.hasNext()) {
+          BuildRule dep = iterator.next();
+          if (!deps.containsKey(dep.getBuildTarget())) {
+            ImmutableList<BuildRule> depDeps = ImmutableList.copyOf(getDeps.apply(dep));
+            deps.put(dep.getBuildTarget(), depDeps);
+            stack.push(dep);
+            remainingDeps.push(depDeps.iterator());
+          }
+        } else {
+          postOrder.add(stack.pop());
+          remainingDeps.pop();
+        }
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private long getCost(BuildRule rule) {
+    Long cost = costs.get(rule.getBuildTarget());
+    if (cost == null) {
+      cost = computeCost(rule);
+      costs.put(rule.getBuildTarget(), cost);
+    }
+    return cost;
+  }
+
+  private long computeCost(BuildRule rule) {
+    if (ruleDurationStore.isPresent()) {
+      Optional<Long> expectedMillis = ruleDurationStore.get().getExpectedRuleMillis(rule);
+      if (expectedMillis.isPresent()) {
+        return Math.max(expectedMillis.get(), 1);
+      }
+    }
+    RuleScheduleInfo scheduleInfo = rule instanceof OverrideScheduleRule ?
+        ((OverrideScheduleRule) rule).getRuleScheduleInfo() :
+        RuleScheduleInfo.DEFAULT;
+    return DEFAULT_RULE_COST_MILLIS * Math.max(scheduleInfo.getJobsMultiplier(), 1);
+  }
+}
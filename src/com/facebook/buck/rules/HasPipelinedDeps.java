@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * A rule whose steps only read the outputs of some of its deps.
+ * <p>
+ * Consider a {@link com.facebook.buck.jvm.java.DefaultJavaLibrary} that compiles against the ABI
+ * jars of its deps. It lists the libraries it depends on as deps, since they make up its
+ * transitive classpath, but its steps only ever read their ABI jars. The build engine starts such
+ * a rule as soon as every dep not returned by {@link #getPipelinedDeps()} has been built. The
+ * pipelined deps are built in parallel with the rule, and the rule only counts as finished once
+ * they are done as well, so dependents that read the whole transitive classpath are unaffected.
+ */
+public interface HasPipelinedDeps extends BuildRule {
+
+  /**
+   * @return the subset of {@link #getDeps()} whose outputs are not read by the steps of this rule.
+   */
+  ImmutableSortedSet<BuildRule> getPipelinedDeps();
+}
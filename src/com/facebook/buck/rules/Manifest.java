@@ -16,43 +16,85 @@
 
 package com.facebook.buck.rules;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.util.cache.FileHashCache;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+/**
+ * Maps the hashes of the headers a dep-file rule used to the dep-file rule key it was built with.
+ *
+ * The serialized form starts with a version and is followed by a sequence of records, each of which
+ * adds a header, a header hash or an entry. A manifest that is written from scratch lists its
+ * headers in sorted order, and new entries are appended to the end of an existing file along with
+ * any headers and hashes they need, so updating a large manifest does not rewrite it. Entries are
+ * stored with a hash of the names and contents of the headers they depend on, which lets
+ * {@link #lookup} hash every distinct set of headers once instead of checking every entry.
+ */
 public class Manifest {
 
-  private static final int VERSION = 0;
+  // Version 0 manifests are still read, but are rewritten in the current format when updated.
+  private static final int LEGACY_VERSION = 0;
+  private static final int VERSION = 1;
+
+  private static final byte HEADER_RECORD = 1;
+  private static final byte HASH_RECORD = 2;
+  private static final byte ENTRY_RECORD = 3;
 
   private final List<String> headers;
   private final Map<String, Integer> headerIndices;
 
   private final List<Pair<Integer, HashCode>> hashes;
-  private final Map<HashCode, Integer> hashIndices;
+  private final Map<Pair<Integer, HashCode>, Integer> hashIndices;
 
   private final List<Pair<RuleKey, int[]>> entries;
+  private final List<Long> entryKeys;
+
+  // Entries by the key computed from the headers they were built with, and the distinct sets of
+  // headers (ordered by name) that entries depend on.
+  private final ListMultimap<Long, Integer> entriesByKey;
+  private final Set<ImmutableList<Integer>> headerSets;
+
+  // Records before these indices are already part of the serialized manifest.
+  private int persistedHeaders;
+  private int persistedHashes;
+  private int persistedEntries;
+  private boolean appendable;
 
   /**
    * Create an empty manifest.
@@ -63,19 +105,51 @@ public class Manifest {
     hashes = new ArrayList<>();
     hashIndices = new HashMap<>();
     entries = new ArrayList<>();
+    entryKeys = new ArrayList<>();
+    entriesByKey = ArrayListMultimap.create();
+    headerSets = new LinkedHashSet<>();
+    appendable = false;
   }
 
   /**
    * Deserialize an existing manifest from the given {@link InputStream}.
    */
   public Manifest(InputStream rawInput) throws IOException {
-    DataInputStream input = new DataInputStream(rawInput);
+    this(ByteBuffer.wrap(ByteStreams.toByteArray(rawInput)));
+  }
+
+  private Manifest(ByteBuffer input) throws IOException {
+    this();
+    try {
+      int version = input.getInt();
+      if (version == LEGACY_VERSION) {
+        readLegacyManifest(input);
+      } else {
+        Preconditions.checkState(version == VERSION);
+        readRecords(input);
+        persistedHeaders = headers.size();
+        persistedHashes = hashes.size();
+        persistedEntries = entries.size();
+        appendable = true;
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Manifest is truncated.", e);
+    }
+  }
 
-    Preconditions.checkState(input.readInt() == VERSION);
+  /**
+   * Deserialize an existing manifest from a file, which is mapped into memory rather than read.
+   */
+  public static Manifest fromFile(ProjectFilesystem filesystem, Path path) throws IOException {
+    return new Manifest(filesystem.mapFileForReading(path));
+  }
+
+  private void readLegacyManifest(ByteBuffer buffer) throws IOException {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
 
     int numberOfHeaders = input.readInt();
-    headers = new ArrayList<>(numberOfHeaders);
-    headerIndices = new HashMap<>(numberOfHeaders);
     for (int index = 0; index < numberOfHeaders; index++) {
       String header = input.readUTF();
       headers.add(header);
@@ -83,17 +157,15 @@ public class Manifest {
     }
 
     int numberOfHashes = input.readInt();
-    hashes = new ArrayList<>(numberOfHashes);
-    hashIndices = new HashMap<>(numberOfHashes);
     for (int index = 0; index < numberOfHashes; index++) {
       int headerIndex = input.readInt();
       HashCode headerHash = HashCode.fromString(input.readUTF());
-      hashes.add(new Pair<>(headerIndex, headerHash));
-      hashIndices.put(headerHash, index);
+      Pair<Integer, HashCode> hash = new Pair<>(headerIndex, headerHash);
+      hashes.add(hash);
+      hashIndices.put(hash, index);
     }
 
     int numberOfEntries = input.readInt();
-    entries = new ArrayList<>(numberOfEntries);
     for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
       int numberOfEntryHashes = input.readInt();
       int[] entryHashes = new int[numberOfEntryHashes];
@@ -101,28 +173,113 @@ public class Manifest {
         entryHashes[hashIndex] = input.readInt();
       }
       RuleKey key = new RuleKey(input.readUTF());
-      entries.add(new Pair<>(key, entryHashes));
+      addIndexedEntry(key, entryHashes, computeEntryKey(entryHashes));
     }
   }
 
-  private Integer addHash(String header, HashCode hash) {
+  private void readRecords(ByteBuffer input) throws IOException {
+    while (input.hasRemaining()) {
+      byte recordType = input.get();
+      switch (recordType) {
+        case HEADER_RECORD:
+          byte[] header = new byte[input.getInt()];
+          input.get(header);
+          addHeader(new String(header, Charsets.UTF_8));
+          break;
+        case HASH_RECORD:
+          int headerIndex = input.getInt();
+          Preconditions.checkState(headerIndex < headers.size());
+          addHeaderHash(headerIndex, HashCode.fromBytes(readShortBytes(input)));
+          break;
+        case ENTRY_RECORD:
+          long key = input.getLong();
+          int[] entryHashes = new int[input.getInt()];
+          for (int index = 0; index < entryHashes.length; index++) {
+            entryHashes[index] = input.getInt();
+            Preconditions.checkState(entryHashes[index] < hashes.size());
+          }
+          RuleKey ruleKey = new RuleKey(HashCode.fromBytes(readShortBytes(input)));
+          addIndexedEntry(ruleKey, entryHashes, key);
+          break;
+        default:
+          throw new IOException(String.format("Unknown manifest record type %d.", recordType));
+      }
+    }
+  }
+
+  private static byte[] readShortBytes(ByteBuffer input) {
+    byte[] bytes = new byte[input.get() & 0xff];
+    input.get(bytes);
+    return bytes;
+  }
+
+  private int addHeader(String header) {
     Integer headerIndex = headerIndices.get(header);
     if (headerIndex == null) {
       headers.add(header);
       headerIndex = headers.size() - 1;
       headerIndices.put(header, headerIndex);
     }
+    return headerIndex;
+  }
 
-    Integer hashIndex = hashIndices.get(hash);
+  private int addHeaderHash(int headerIndex, HashCode hash) {
+    Pair<Integer, HashCode> headerHash = new Pair<>(headerIndex, hash);
+    Integer hashIndex = hashIndices.get(headerHash);
     if (hashIndex == null) {
-      hashes.add(new Pair<>(headerIndex, hash));
+      hashes.add(headerHash);
       hashIndex = hashes.size() - 1;
-      hashIndices.put(hash, hashIndex);
+      hashIndices.put(headerHash, hashIndex);
     }
-
     return hashIndex;
   }
 
+  private Integer addHash(String header, HashCode hash) {
+    return addHeaderHash(addHeader(header), hash);
+  }
+
+  private void addIndexedEntry(RuleKey ruleKey, int[] entryHashes, long key) {
+    entriesByKey.put(key, entries.size());
+    entries.add(new Pair<>(ruleKey, entryHashes));
+    entryKeys.add(key);
+    headerSets.add(getHeaderSet(entryHashes));
+  }
+
+  private ImmutableList<Integer> getHeaderSet(int[] entryHashes) {
+    ImmutableSortedSet.Builder<Integer> headerSet =
+        ImmutableSortedSet.orderedBy(Comparator.comparing(headers::get));
+    for (int hashIndex : entryHashes) {
+      headerSet.add(hashes.get(hashIndex).getFirst());
+    }
+    return headerSet.build().asList();
+  }
+
+  private long computeEntryKey(int[] entryHashes) {
+    Map<Integer, HashCode> headerHashes = new HashMap<>();
+    for (int hashIndex : entryHashes) {
+      Pair<Integer, HashCode> hash = hashes.get(hashIndex);
+      headerHashes.put(hash.getFirst(), hash.getSecond());
+    }
+    return computeKey(getHeaderSet(entryHashes), headerHashes);
+  }
+
+  /**
+   * @return a key for the given contents of the given headers. It only depends on the names and
+   *     contents of the headers, so it stays the same if the header indices change.
+   */
+  private long computeKey(ImmutableList<Integer> headerSet, Map<Integer, HashCode> headerHashes) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (int headerIndex : headerSet) {
+      String header = headers.get(headerIndex);
+      hasher.putInt(header.length());
+      hasher.putUnencodedChars(header);
+      byte[] hash = headerHashes.get(headerIndex).asBytes();
+      hasher.putInt(hash.length);
+      hasher.putBytes(hash);
+    }
+    return hasher.hash().asLong();
+  }
+
   @VisibleForTesting
   protected static HashCode hashSourcePathGroup(
       FileHashCache fileHashCache,
@@ -150,27 +307,38 @@ public class Manifest {
     }
   }
 
-  private boolean hashesMatch(
+  /**
+   * @return the on disk hash of the header, or an absent value if it is no longer an input.
+   */
+  private Optional<HashCode> getOnDiskHeaderHash(
       FileHashCache fileHashCache,
       SourcePathResolver resolver,
       ImmutableListMultimap<String, SourcePath> universe,
-      int[] hashIndices)
+      Map<Integer, Optional<HashCode>> onDiskHeaderHashes,
+      int headerIndex)
       throws IOException {
-    for (int hashIndex : hashIndices) {
-      Pair<Integer, HashCode> hashEntry = hashes.get(hashIndex);
-      String header = headers.get(hashEntry.getFirst());
-      ImmutableList<SourcePath> candidates = universe.get(header);
+    Optional<HashCode> onDiskHeaderHash = onDiskHeaderHashes.get(headerIndex);
+    if (onDiskHeaderHash == null) {
+      ImmutableList<SourcePath> candidates = universe.get(headers.get(headerIndex));
       if (candidates.isEmpty()) {
-        return false;
-      }
-      HashCode onDiskHeaderHash;
-      try {
-        onDiskHeaderHash = hashSourcePathGroup(fileHashCache, resolver, candidates);
-      } catch (NoSuchFileException e) {
-        return false;
+        onDiskHeaderHash = Optional.empty();
+      } else {
+        try {
+          onDiskHeaderHash =
+              Optional.of(hashSourcePathGroup(fileHashCache, resolver, candidates));
+        } catch (NoSuchFileException e) {
+          onDiskHeaderHash = Optional.empty();
+        }
       }
-      HashCode headerHash = hashEntry.getSecond();
-      if (!headerHash.equals(onDiskHeaderHash)) {
+      onDiskHeaderHashes.put(headerIndex, onDiskHeaderHash);
+    }
+    return onDiskHeaderHash;
+  }
+
+  private boolean hashesMatch(Map<Integer, HashCode> onDiskHeaderHashes, int[] hashIndices) {
+    for (int hashIndex : hashIndices) {
+      Pair<Integer, HashCode> hashEntry = hashes.get(hashIndex);
+      if (!hashEntry.getSecond().equals(onDiskHeaderHashes.get(hashEntry.getFirst()))) {
         return false;
       }
     }
@@ -188,12 +356,41 @@ public class Manifest {
       throws IOException {
     ImmutableListMultimap<String, SourcePath> mappedUniverse =
         Multimaps.index(universe, sourcePathToManifestHeaderFunction(resolver));
-    for (Pair<RuleKey, int[]> entry : entries) {
-      if (hashesMatch(fileHashCache, resolver, mappedUniverse, entry.getSecond())) {
-        return Optional.of(entry.getFirst());
+    Map<Integer, Optional<HashCode>> onDiskHeaderHashes = new HashMap<>();
+    int matchingEntry = -1;
+    for (ImmutableList<Integer> headerSet : headerSets) {
+      Map<Integer, HashCode> headerSetHashes = new HashMap<>();
+      for (int headerIndex : headerSet) {
+        Optional<HashCode> onDiskHeaderHash =
+            getOnDiskHeaderHash(
+                fileHashCache,
+                resolver,
+                mappedUniverse,
+                onDiskHeaderHashes,
+                headerIndex);
+        if (!onDiskHeaderHash.isPresent()) {
+          break;
+        }
+        headerSetHashes.put(headerIndex, onDiskHeaderHash.get());
+      }
+      if (headerSetHashes.size() != headerSet.size()) {
+        continue;
       }
+      // Several header sets can match, so keep looking for an earlier entry.
+      for (int entryIndex : entriesByKey.get(computeKey(headerSet, headerSetHashes))) {
+        if (matchingEntry != -1 && entryIndex > matchingEntry) {
+          break;
+        }
+        if (hashesMatch(headerSetHashes, entries.get(entryIndex).getSecond())) {
+          matchingEntry = entryIndex;
+          break;
+        }
+      }
+    }
+    if (matchingEntry == -1) {
+      return Optional.empty();
     }
-    return Optional.empty();
+    return Optional.of(entries.get(matchingEntry).getFirst());
   }
 
   private static Function<SourcePath, String> sourcePathToManifestHeaderFunction(
@@ -236,35 +433,103 @@ public class Manifest {
               relativePath,
               hashSourcePathGroup(fileHashCache, resolver, paths));
     }
-    entries.add(new Pair<>(key, hashIndices));
+    addIndexedEntry(key, hashIndices, computeEntryKey(hashIndices));
   }
 
   /**
-   * Serializes the manifest to the given {@link OutputStream}.
+   * Serializes the whole manifest to the given {@link OutputStream}.
    */
   public void serialize(OutputStream rawOutput) throws IOException {
-    DataOutputStream output = new DataOutputStream(rawOutput);
+    sortHeaders();
 
+    DataOutputStream output = new DataOutputStream(rawOutput);
     output.writeInt(VERSION);
+    persistedHeaders = 0;
+    persistedHashes = 0;
+    persistedEntries = 0;
+    writeNewRecords(output);
+    appendable = true;
+  }
 
-    output.writeInt(headers.size());
-    for (String header : headers) {
-      output.writeUTF(header);
+  /**
+   * @return whether {@link #serializeNewRecords(OutputStream)} can be used, which is the case if
+   *     this manifest was read from or written in the current format.
+   */
+  public boolean canSerializeNewRecords() {
+    return appendable;
+  }
+
+  /**
+   * Serializes what was added since the manifest was read or last serialized. Appending the output
+   * to the file the manifest was read from gives the same manifest as {@link #serialize}.
+   */
+  public void serializeNewRecords(OutputStream rawOutput) throws IOException {
+    Preconditions.checkState(appendable, "Cannot append to a manifest in an older format.");
+    writeNewRecords(new DataOutputStream(rawOutput));
+  }
+
+  private void writeNewRecords(DataOutputStream output) throws IOException {
+    for (String header : headers.subList(persistedHeaders, headers.size())) {
+      byte[] bytes = header.getBytes(Charsets.UTF_8);
+      output.writeByte(HEADER_RECORD);
+      output.writeInt(bytes.length);
+      output.write(bytes);
     }
 
-    output.writeInt(hashes.size());
-    for (Pair<Integer, HashCode> hash : hashes) {
+    for (Pair<Integer, HashCode> hash : hashes.subList(persistedHashes, hashes.size())) {
+      output.writeByte(HASH_RECORD);
       output.writeInt(hash.getFirst());
-      output.writeUTF(hash.getSecond().toString());
+      writeShortBytes(output, hash.getSecond().asBytes());
     }
 
-    output.writeInt(entries.size());
-    for (Pair<RuleKey, int[]> entry : entries) {
+    for (int entryIndex = persistedEntries; entryIndex < entries.size(); entryIndex++) {
+      Pair<RuleKey, int[]> entry = entries.get(entryIndex);
+      output.writeByte(ENTRY_RECORD);
+      output.writeLong(entryKeys.get(entryIndex));
       output.writeInt(entry.getSecond().length);
       for (int hashIndex : entry.getSecond()) {
         output.writeInt(hashIndex);
       }
-      output.writeUTF(entry.getFirst().toString());
+      writeShortBytes(output, entry.getFirst().getHashCode().asBytes());
+    }
+    output.flush();
+
+    persistedHeaders = headers.size();
+    persistedHashes = hashes.size();
+    persistedEntries = entries.size();
+  }
+
+  private static void writeShortBytes(DataOutputStream output, byte[] bytes) throws IOException {
+    Preconditions.checkState(bytes.length <= 0xff);
+    output.writeByte(bytes.length);
+    output.write(bytes);
+  }
+
+  /**
+   * Renumbers the headers in sorted order.
+   */
+  private void sortHeaders() {
+    List<String> sortedHeaders = new ArrayList<>(headers);
+    Collections.sort(sortedHeaders);
+    if (sortedHeaders.equals(headers)) {
+      return;
+    }
+
+    List<String> oldHeaders = new ArrayList<>(headers);
+    headers.clear();
+    headerIndices.clear();
+    sortedHeaders.forEach(this::addHeader);
+
+    // The hashes keep their order, so the hash indices of the entries stay valid.
+    List<Pair<Integer, HashCode>> oldHashes = new ArrayList<>(hashes);
+    hashes.clear();
+    hashIndices.clear();
+    for (Pair<Integer, HashCode> hash : oldHashes) {
+      addHeaderHash(headerIndices.get(oldHeaders.get(hash.getFirst())), hash.getSecond());
+    }
+    headerSets.clear();
+    for (Pair<RuleKey, int[]> entry : entries) {
+      headerSets.add(getHeaderSet(entry.getSecond()));
     }
   }
 
@@ -298,7 +563,10 @@ public class Manifest {
         entryHashIndices[entryHashIndex++] =
             manifest.addHash(innerEntry.getKey(), innerEntry.getValue());
       }
-      manifest.entries.add(new Pair<>(entry.getKey(), entryHashIndices));
+      manifest.addIndexedEntry(
+          entry.getKey(),
+          entryHashIndices,
+          manifest.computeEntryKey(entryHashIndices));
     }
     return manifest;
   }
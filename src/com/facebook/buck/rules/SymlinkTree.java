@@ -24,8 +24,7 @@ import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
-import com.facebook.buck.step.fs.SymlinkTreeStep;
+import com.facebook.buck.step.fs.SyncSymlinkTreeStep;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultiset;
@@ -139,8 +138,7 @@ public class SymlinkTree
       BuildableContext buildableContext) {
     return ImmutableList.of(
         getVerifyStep(),
-        new MakeCleanDirectoryStep(getProjectFilesystem(), root),
-        new SymlinkTreeStep(
+        new SyncSymlinkTreeStep(
             getProjectFilesystem(),
             root,
             context.getSourcePathResolver().getMappedPaths(links)));
@@ -120,6 +120,10 @@ public class WorkerMacroArg extends MacroArg {
     return workerTool.getMaxWorkers();
   }
 
+  public int getMaxJobsPerWorker() {
+    return workerTool.getMaxJobsPerWorker();
+  }
+
   public String getJobArgs() {
     return jobArgs;
   }
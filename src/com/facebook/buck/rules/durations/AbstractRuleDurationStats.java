@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import com.facebook.buck.util.immutables.BuckStyleImmutable;
+
+import org.immutables.value.Value;
+
+/**
+ * Rolling statistics about how long a rule took to build locally in previous builds.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+abstract class AbstractRuleDurationStats {
+
+  /**
+   * @return number of builds these statistics are computed from.
+   */
+  @Value.Parameter
+  public abstract int getSampleCount();
+
+  /**
+   * @return median of the time the rule spent running, excluding time it was suspended.
+   */
+  @Value.Parameter
+  public abstract long getMedianRuleMillis();
+
+  @Value.Parameter
+  public abstract long getP90RuleMillis();
+
+  /**
+   * @return median of the time the rule spent executing its steps.
+   */
+  @Value.Parameter
+  public abstract long getMedianStepMillis();
+
+  @Value.Parameter
+  public abstract long getP90StepMillis();
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import com.facebook.buck.event.BuckEventListener;
+import com.facebook.buck.event.EventKey;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleEvent;
+import com.facebook.buck.rules.BuildRuleSuccessType;
+import com.facebook.buck.step.StepEvent;
+import com.google.common.eventbus.Subscribe;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Feeds the durations of rules built locally into a {@link RuleDurationStore}. The time of a rule
+ * is the sum of the intervals during which it was running, ie, from every
+ * {@link BuildRuleEvent.Started} or {@link BuildRuleEvent.Resumed} to the next
+ * {@link BuildRuleEvent.Suspended} or {@link BuildRuleEvent.Finished}. Steps are attributed to the
+ * rule that was running on the thread that started them.
+ */
+public class RuleDurationListener implements BuckEventListener {
+
+  private final RuleDurationStore store;
+  private final ConcurrentMap<String, RuleTiming> timings;
+  private final ConcurrentMap<Long, RuleTiming> runningRuleByThread;
+  private final ConcurrentMap<EventKey, RunningStep> runningSteps;
+
+  public RuleDurationListener(RuleDurationStore store) {
+    this.store = store;
+    this.timings = new ConcurrentHashMap<>();
+    this.runningRuleByThread = new ConcurrentHashMap<>();
+    this.runningSteps = new ConcurrentHashMap<>();
+  }
+
+  @Subscribe
+  public void ruleStarted(BuildRuleEvent.Started started) {
+    startSegment(started);
+  }
+
+  @Subscribe
+  public void ruleResumed(BuildRuleEvent.Resumed resumed) {
+    startSegment(resumed);
+  }
+
+  @Subscribe
+  public void ruleSuspended(BuildRuleEvent.Suspended suspended) {
+    endSegment(suspended);
+  }
+
+  @Subscribe
+  public void ruleFinished(BuildRuleEvent.Finished finished) {
+    Optional<RuleTiming> timing = endSegment(finished);
+    timings.remove(finished.getBuildRule().getFullyQualifiedName());
+    Optional<BuildRuleSuccessType> successType = finished.getSuccessType();
+    if (!timing.isPresent() ||
+        !successType.isPresent() ||
+        successType.get() != BuildRuleSuccessType.BUILT_LOCALLY) {
+      return;
+    }
+    BuildRule rule = finished.getBuildRule();
+    store.record(
+        rule.getType(),
+        rule.getFullyQualifiedName(),
+        timing.get().getRuleMillis(),
+        timing.get().getStepMillis());
+  }
+
+  @Subscribe
+  public void stepStarted(StepEvent.Started started) {
+    RuleTiming timing = runningRuleByThread.get(started.getThreadId());
+    if (timing != null) {
+      runningSteps.put(started.getEventKey(), new RunningStep(timing, started.getTimestamp()));
+    }
+  }
+
+  @Subscribe
+  public void stepFinished(StepEvent.Finished finished) {
+    RunningStep step = runningSteps.remove(finished.getEventKey());
+    if (step != null) {
+      step.timing.addStepMillis(finished.getTimestamp() - step.startMillis);
+    }
+  }
+
+  private void startSegment(BuildRuleEvent event) {
+    RuleTiming timing = timings.computeIfAbsent(
+        event.getBuildRule().getFullyQualifiedName(),
+        key -> new RuleTiming());
+    timing.startSegment(event.getTimestamp());
+    runningRuleByThread.put(event.getThreadId(), timing);
+  }
+
+  private Optional<RuleTiming> endSegment(BuildRuleEvent event) {
+    RuleTiming timing = timings.get(event.getBuildRule().getFullyQualifiedName());
+    if (timing == null) {
+      return Optional.empty();
+    }
+    timing.endSegment(event.getTimestamp());
+    runningRuleByThread.remove(event.getThreadId(), timing);
+    return Optional.of(timing);
+  }
+
+  @Override
+  public void outputTrace(BuildId buildId) {
+    store.save();
+  }
+
+  private static class RuleTiming {
+    private long ruleMillis = 0;
+    private long stepMillis = 0;
+    private long segmentStartMillis = -1;
+
+    public synchronized void startSegment(long timestamp) {
+      segmentStartMillis = timestamp;
+    }
+
+    public synchronized void endSegment(long timestamp) {
+      if (segmentStartMillis >= 0) {
+        ruleMillis += Math.max(timestamp - segmentStartMillis, 0);
+        segmentStartMillis = -1;
+      }
+    }
+
+    public synchronized void addStepMillis(long millis) {
+      stepMillis += Math.max(millis, 0);
+    }
+
+    public synchronized long getRuleMillis() {
+      return ruleMillis;
+    }
+
+    public synchronized long getStepMillis() {
+      return stepMillis;
+    }
+  }
+
+  private static class RunningStep {
+    private final RuleTiming timing;
+    private final long startMillis;
+
+    public RunningStep(RuleTiming timing, long startMillis) {
+      this.timing = timing;
+      this.startMillis = startMillis;
+    }
+  }
+}
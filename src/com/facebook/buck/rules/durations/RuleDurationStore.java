@@ -0,0 +1,366 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.timing.Clock;
+import com.facebook.buck.timing.DefaultClock;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Remembers how long rules took to build locally across builds, keyed by rule type and build
+ * target, so that scheduling and progress estimation can favour what actually takes time. Only the
+ * most recent samples of every rule are kept, so the statistics follow the rule as it changes, and
+ * rules that have not been built for a while are forgotten, so deleted targets do not accumulate.
+ *
+ * The history is persisted as JSON and loaded lazily on first use. Thread safe.
+ */
+public class RuleDurationStore {
+  private static final Logger LOG = Logger.get(RuleDurationStore.class);
+
+  public static final String RULE_DURATIONS_JSON = ".ruledurations.json";
+  public static final int DEFAULT_MAX_SAMPLES_PER_RULE = 20;
+  public static final long DEFAULT_MAX_SAMPLE_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  private final Optional<Path> storageFile;
+  private final ObjectMapper objectMapper;
+  private final Clock clock;
+  private final int maxSamplesPerRule;
+  private final long maxSampleAgeMillis;
+
+  // Rule type -> fully qualified build target -> samples.
+  @GuardedBy("this")
+  private Map<String, Map<String, Samples>> samples;
+  // Rule type -> stats over its targets, invalidated whenever a target of that type changes.
+  @GuardedBy("this")
+  private final Map<String, Optional<RuleDurationStats>> statsByRuleType;
+  @GuardedBy("this")
+  private boolean dirty;
+
+  public RuleDurationStore(Path storageFile, ObjectMapper objectMapper) {
+    this(
+        Optional.of(storageFile),
+        objectMapper,
+        new DefaultClock(),
+        DEFAULT_MAX_SAMPLES_PER_RULE,
+        DEFAULT_MAX_SAMPLE_AGE_MILLIS);
+  }
+
+  @VisibleForTesting
+  RuleDurationStore(Optional<Path> storageFile, ObjectMapper objectMapper, int maxSamplesPerRule) {
+    this(
+        storageFile,
+        objectMapper,
+        new DefaultClock(),
+        maxSamplesPerRule,
+        DEFAULT_MAX_SAMPLE_AGE_MILLIS);
+  }
+
+  @VisibleForTesting
+  RuleDurationStore(
+      Optional<Path> storageFile,
+      ObjectMapper objectMapper,
+      Clock clock,
+      int maxSamplesPerRule,
+      long maxSampleAgeMillis) {
+    Preconditions.checkArgument(maxSamplesPerRule > 0);
+    Preconditions.checkArgument(maxSampleAgeMillis > 0);
+    this.storageFile = storageFile;
+    this.objectMapper = objectMapper;
+    this.clock = clock;
+    this.maxSamplesPerRule = maxSamplesPerRule;
+    this.maxSampleAgeMillis = maxSampleAgeMillis;
+    this.statsByRuleType = new HashMap<>();
+    this.dirty = false;
+  }
+
+  /**
+   * @return a store that is never persisted.
+   */
+  public static RuleDurationStore createInMemory(ObjectMapper objectMapper) {
+    return new RuleDurationStore(Optional.empty(), objectMapper, DEFAULT_MAX_SAMPLES_PER_RULE);
+  }
+
+  public synchronized void record(
+      String ruleType,
+      String buildTarget,
+      long ruleMillis,
+      long stepMillis) {
+    Map<String, Samples> samplesByTarget =
+        getSamples().computeIfAbsent(ruleType, key -> new HashMap<>());
+    samplesByTarget
+        .computeIfAbsent(buildTarget, key -> new Samples())
+        .add(ruleMillis, stepMillis, clock.currentTimeMillis(), maxSamplesPerRule);
+    statsByRuleType.remove(ruleType);
+    dirty = true;
+  }
+
+  public Optional<RuleDurationStats> getStats(BuildRule rule) {
+    return getStats(rule.getType(), rule.getFullyQualifiedName());
+  }
+
+  public synchronized Optional<RuleDurationStats> getStats(String ruleType, String buildTarget) {
+    Map<String, Samples> samplesByTarget = getSamples().get(ruleType);
+    if (samplesByTarget == null) {
+      return Optional.empty();
+    }
+    Samples targetSamples = samplesByTarget.get(buildTarget);
+    if (targetSamples == null) {
+      return Optional.empty();
+    }
+    return Optional.of(computeStats(targetSamples.ruleMillis, targetSamples.stepMillis));
+  }
+
+  /**
+   * @return statistics over the typical build of every target of the given type, ie, computed
+   *     from the median of each target. Useful for rules that have never been built before.
+   */
+  public synchronized Optional<RuleDurationStats> getStatsForRuleType(String ruleType) {
+    Optional<RuleDurationStats> stats = statsByRuleType.get(ruleType);
+    if (stats == null) {
+      stats = computeStatsForRuleType(getSamples().get(ruleType));
+      statsByRuleType.put(ruleType, stats);
+    }
+    return stats;
+  }
+
+  private static Optional<RuleDurationStats> computeStatsForRuleType(
+      @Nullable Map<String, Samples> samplesByTarget) {
+    if (samplesByTarget == null || samplesByTarget.isEmpty()) {
+      return Optional.empty();
+    }
+    List<Long> ruleMedians = Lists.newArrayList();
+    List<Long> stepMedians = Lists.newArrayList();
+    for (Samples targetSamples : samplesByTarget.values()) {
+      ruleMedians.add(percentile(targetSamples.ruleMillis, 0.5));
+      stepMedians.add(percentile(targetSamples.stepMillis, 0.5));
+    }
+    return Optional.of(computeStats(ruleMedians, stepMedians));
+  }
+
+  /**
+   * @return the expected duration of the rule, falling back to the typical duration of rules of the
+   *     same type when this target has no history.
+   */
+  public Optional<Long> getExpectedRuleMillis(BuildRule rule) {
+    Optional<RuleDurationStats> stats = getStats(rule);
+    if (!stats.isPresent()) {
+      stats = getStatsForRuleType(rule.getType());
+    }
+    return stats.map(RuleDurationStats::getMedianRuleMillis);
+  }
+
+  /**
+   * Writes the history back to disk if anything was recorded since it was loaded, dropping rules
+   * that have not been built for longer than the maximum sample age.
+   */
+  public synchronized void save() {
+    if (!dirty || !storageFile.isPresent() || samples == null) {
+      return;
+    }
+    prune(samples);
+
+    Map<String, Map<String, SerializedSamples>> serialized = new HashMap<>();
+    for (Map.Entry<String, Map<String, Samples>> typeEntry : samples.entrySet()) {
+      Map<String, SerializedSamples> serializedTargets = new HashMap<>();
+      for (Map.Entry<String, Samples> targetEntry : typeEntry.getValue().entrySet()) {
+        Samples targetSamples = targetEntry.getValue();
+        serializedTargets.put(
+            targetEntry.getKey(),
+            new SerializedSamples(
+                ImmutableList.copyOf(targetSamples.ruleMillis),
+                ImmutableList.copyOf(targetSamples.stepMillis),
+                targetSamples.lastRecordedMillis));
+      }
+      serialized.put(typeEntry.getKey(), serializedTargets);
+    }
+
+    Path path = storageFile.get();
+    try {
+      Files.createDirectories(path.getParent());
+      objectMapper.writeValue(path.toFile(), serialized);
+      dirty = false;
+    } catch (IOException e) {
+      LOG.warn("Unable to save rule durations to %s: %s", path, e.getLocalizedMessage());
+    }
+  }
+
+  @GuardedBy("this")
+  private Map<String, Map<String, Samples>> getSamples() {
+    if (samples == null) {
+      samples = load();
+      prune(samples);
+    }
+    return samples;
+  }
+
+  @GuardedBy("this")
+  private void prune(Map<String, Map<String, Samples>> samplesByType) {
+    long oldestAllowedMillis = clock.currentTimeMillis() - maxSampleAgeMillis;
+    Iterator<Map<String, Samples>> types = samplesByType.values().iterator();
+    while (types.hasNext()) {
+      Map<String, Samples> samplesByTarget = types.next();
+      if (samplesByTarget.values().removeIf(
+          targetSamples -> targetSamples.lastRecordedMillis < oldestAllowedMillis)) {
+        statsByRuleType.clear();
+        dirty = true;
+      }
+      if (samplesByTarget.isEmpty()) {
+        types.remove();
+      }
+    }
+  }
+
+  private Map<String, Map<String, Samples>> load() {
+    Map<String, Map<String, Samples>> loaded = new HashMap<>();
+    if (!storageFile.isPresent() || !Files.exists(storageFile.get())) {
+      return loaded;
+    }
+
+    try {
+      Map<String, Map<String, SerializedSamples>> serialized = objectMapper.readValue(
+          storageFile.get().toFile(),
+          new TypeReference<HashMap<String, Map<String, SerializedSamples>>>() {});
+      for (Map.Entry<String, Map<String, SerializedSamples>> typeEntry : serialized.entrySet()) {
+        Map<String, Samples> samplesByTarget = new HashMap<>();
+        for (Map.Entry<String, SerializedSamples> targetEntry : typeEntry.getValue().entrySet()) {
+          List<Long> ruleMillis = targetEntry.getValue().ruleMillis;
+          List<Long> stepMillis = targetEntry.getValue().stepMillis;
+          if (ruleMillis == null || stepMillis == null ||
+              ruleMillis.size() != stepMillis.size() || ruleMillis.isEmpty()) {
+            continue;
+          }
+          // Histories written before samples were timestamped start aging from now.
+          Long lastRecordedMillis = targetEntry.getValue().lastRecordedMillis;
+          long recordedMillis =
+              lastRecordedMillis == null ? clock.currentTimeMillis() : lastRecordedMillis;
+          Samples targetSamples = new Samples();
+          for (int i = 0; i < ruleMillis.size(); ++i) {
+            targetSamples.add(
+                ruleMillis.get(i),
+                stepMillis.get(i),
+                recordedMillis,
+                maxSamplesPerRule);
+          }
+          samplesByTarget.put(targetEntry.getKey(), targetSamples);
+        }
+        loaded.put(typeEntry.getKey(), samplesByTarget);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to load rule durations, starting afresh: %s", e.getMessage());
+      return new HashMap<>();
+    }
+    return loaded;
+  }
+
+  private static RuleDurationStats computeStats(
+      Iterable<Long> ruleMillis,
+      Iterable<Long> stepMillis) {
+    List<Long> sortedRuleMillis = Lists.newArrayList(ruleMillis);
+    List<Long> sortedStepMillis = Lists.newArrayList(stepMillis);
+    Collections.sort(sortedRuleMillis);
+    Collections.sort(sortedStepMillis);
+    return RuleDurationStats.of(
+        sortedRuleMillis.size(),
+        percentileOfSorted(sortedRuleMillis, 0.5),
+        percentileOfSorted(sortedRuleMillis, 0.9),
+        percentileOfSorted(sortedStepMillis, 0.5),
+        percentileOfSorted(sortedStepMillis, 0.9));
+  }
+
+  private static long percentile(Iterable<Long> values, double percentile) {
+    List<Long> sorted = Lists.newArrayList(values);
+    Collections.sort(sorted);
+    return percentileOfSorted(sorted, percentile);
+  }
+
+  /**
+   * Nearest-rank percentile.
+   */
+  private static long percentileOfSorted(List<Long> sorted, double percentile) {
+    Preconditions.checkArgument(!sorted.isEmpty());
+    int rank = (int) Math.ceil(percentile * sorted.size());
+    return sorted.get(Math.max(rank - 1, 0));
+  }
+
+  /**
+   * The persisted form of the samples of one target.
+   */
+  static class SerializedSamples {
+    @JsonProperty("rule")
+    @Nullable
+    final List<Long> ruleMillis;
+
+    @JsonProperty("steps")
+    @Nullable
+    final List<Long> stepMillis;
+
+    @JsonProperty("recorded")
+    @Nullable
+    final Long lastRecordedMillis;
+
+    @JsonCreator
+    SerializedSamples(
+        @JsonProperty("rule") @Nullable List<Long> ruleMillis,
+        @JsonProperty("steps") @Nullable List<Long> stepMillis,
+        @JsonProperty("recorded") @Nullable Long lastRecordedMillis) {
+      this.ruleMillis = ruleMillis;
+      this.stepMillis = stepMillis;
+      this.lastRecordedMillis = lastRecordedMillis;
+    }
+  }
+
+  private static class Samples {
+    private final Deque<Long> ruleMillis = new ArrayDeque<>();
+    private final Deque<Long> stepMillis = new ArrayDeque<>();
+    private long lastRecordedMillis;
+
+    public void add(long rule, long steps, long recordedMillis, int maxSamples) {
+      ruleMillis.addLast(rule);
+      stepMillis.addLast(steps);
+      lastRecordedMillis = recordedMillis;
+      while (ruleMillis.size() > maxSamples) {
+        ruleMillis.removeFirst();
+        stepMillis.removeFirst();
+      }
+    }
+  }
+}
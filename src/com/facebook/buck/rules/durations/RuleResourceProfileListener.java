@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import com.facebook.buck.event.BuckEventListener;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.CachingBuildEngine;
+import com.facebook.buck.util.ProcessResourceConsumption;
+import com.facebook.buck.util.perf.ProcessTracker;
+import com.google.common.eventbus.Subscribe;
+
+import java.util.Optional;
+
+/**
+ * Feeds the resource consumption of the processes that build rules run, as sampled by
+ * {@link ProcessTracker}, into a {@link RuleResourceProfileStore}. Processes are attributed to a
+ * rule type through the context {@link CachingBuildEngine} launches them with; anything else, such
+ * as Buck itself, is ignored.
+ */
+public class RuleResourceProfileListener implements BuckEventListener {
+
+  private final RuleResourceProfileStore store;
+
+  public RuleResourceProfileListener(RuleResourceProfileStore store) {
+    this.store = store;
+  }
+
+  @Subscribe
+  public void processResourceConsumption(ProcessTracker.ProcessResourceConsumptionEvent event) {
+    Optional<String> ruleType = event.getContext()
+        .map(context -> context.get(CachingBuildEngine.BUILD_RULE_TYPE_CONTEXT_KEY));
+    Optional<ProcessResourceConsumption> consumption = event.getResourceConsumption();
+    if (!ruleType.isPresent() || !consumption.isPresent()) {
+      return;
+    }
+    store.record(
+        ruleType.get(),
+        consumption.get().getMemResident(),
+        consumption.get().getCpuTotal(),
+        consumption.get().getCpuReal());
+  }
+
+  @Override
+  public void outputTrace(BuildId buildId) {
+    store.save();
+  }
+}
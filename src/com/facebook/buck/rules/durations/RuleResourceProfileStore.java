@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Remembers how much CPU and memory the processes run by every rule type used across builds, so
+ * that resource aware scheduling can size the jobs by what they actually need rather than by fixed
+ * amounts. Memory is sized by the highest peak resident set size of the recent samples, so that
+ * rules that occasionally need a lot are not run side by side; CPU by the average number of cores
+ * the processes kept busy.
+ *
+ * The history is persisted as JSON and loaded lazily on first use. Thread safe.
+ */
+public class RuleResourceProfileStore {
+  private static final Logger LOG = Logger.get(RuleResourceProfileStore.class);
+
+  public static final String RULE_RESOURCES_JSON = ".ruleresources.json";
+  public static final int DEFAULT_MAX_SAMPLES_PER_RULE_TYPE = 20;
+
+  private static final String PEAK_MEMORY_BYTES = "peak_memory_bytes";
+  private static final String CPU_MILLIS = "cpu_millis";
+  private static final String REAL_MILLIS = "real_millis";
+
+  private final Optional<Path> storageFile;
+  private final ObjectMapper objectMapper;
+  private final int maxSamplesPerRuleType;
+
+  // Rule type -> samples, oldest first.
+  @GuardedBy("this")
+  private Map<String, Deque<Sample>> samples;
+  @GuardedBy("this")
+  private boolean dirty;
+
+  public RuleResourceProfileStore(Path storageFile, ObjectMapper objectMapper) {
+    this(Optional.of(storageFile), objectMapper, DEFAULT_MAX_SAMPLES_PER_RULE_TYPE);
+  }
+
+  @VisibleForTesting
+  RuleResourceProfileStore(
+      Optional<Path> storageFile,
+      ObjectMapper objectMapper,
+      int maxSamplesPerRuleType) {
+    Preconditions.checkArgument(maxSamplesPerRuleType > 0);
+    this.storageFile = storageFile;
+    this.objectMapper = objectMapper;
+    this.maxSamplesPerRuleType = maxSamplesPerRuleType;
+    this.dirty = false;
+  }
+
+  /**
+   * @return a store that is never persisted.
+   */
+  public static RuleResourceProfileStore createInMemory(ObjectMapper objectMapper) {
+    return new RuleResourceProfileStore(
+        Optional.empty(),
+        objectMapper,
+        DEFAULT_MAX_SAMPLES_PER_RULE_TYPE);
+  }
+
+  /**
+   * Records the resource consumption of a single process run by a rule of the given type.
+   *
+   * @param peakMemoryBytes peak resident set size of the process.
+   * @param cpuMillis user and system CPU time the process used.
+   * @param realMillis wall time the process ran for.
+   */
+  public synchronized void record(
+      String ruleType,
+      long peakMemoryBytes,
+      long cpuMillis,
+      long realMillis) {
+    Deque<Sample> ruleTypeSamples =
+        getSamples().computeIfAbsent(ruleType, key -> new ArrayDeque<>());
+    ruleTypeSamples.addLast(new Sample(peakMemoryBytes, cpuMillis, realMillis));
+    while (ruleTypeSamples.size() > maxSamplesPerRuleType) {
+      ruleTypeSamples.removeFirst();
+    }
+    dirty = true;
+  }
+
+  /**
+   * @return the given amounts with the CPU and memory replaced by what rules of this type used in
+   *     the past, or absent if they were never seen.
+   */
+  public synchronized Optional<ResourceAmounts> getResourceAmounts(
+      String ruleType,
+      ResourceAmounts defaultAmounts) {
+    Deque<Sample> ruleTypeSamples = getSamples().get(ruleType);
+    if (ruleTypeSamples == null || ruleTypeSamples.isEmpty()) {
+      return Optional.empty();
+    }
+
+    long peakMemoryBytes = 0;
+    long cpuMillis = 0;
+    long realMillis = 0;
+    for (Sample sample : ruleTypeSamples) {
+      peakMemoryBytes = Math.max(peakMemoryBytes, sample.peakMemoryBytes);
+      cpuMillis += sample.cpuMillis;
+      realMillis += sample.realMillis;
+    }
+
+    int memory = (int) Math.max(
+        1,
+        Math.min(
+            Integer.MAX_VALUE,
+            divideRoundingUp(peakMemoryBytes, ResourceAmountsEstimator.MEMORY_UNIT_BYTES)));
+    // Processes that finished before they could be timed tell us nothing about their parallelism.
+    int cpu = realMillis == 0 ?
+        defaultAmounts.getCpu() :
+        (int) Math.max(1, Math.min(Integer.MAX_VALUE, divideRoundingUp(cpuMillis, realMillis)));
+    return Optional.of(
+        ResourceAmounts.of(
+            cpu,
+            memory,
+            defaultAmounts.getDiskIO(),
+            defaultAmounts.getNetworkIO()));
+  }
+
+  /**
+   * Writes the history back to disk if anything was recorded since it was loaded.
+   */
+  public synchronized void save() {
+    if (!dirty || !storageFile.isPresent() || samples == null) {
+      return;
+    }
+
+    Map<String, List<Map<String, Long>>> serialized = new HashMap<>();
+    for (Map.Entry<String, Deque<Sample>> entry : samples.entrySet()) {
+      List<Map<String, Long>> serializedSamples = new ArrayList<>();
+      for (Sample sample : entry.getValue()) {
+        serializedSamples.add(
+            ImmutableMap.of(
+                PEAK_MEMORY_BYTES, sample.peakMemoryBytes,
+                CPU_MILLIS, sample.cpuMillis,
+                REAL_MILLIS, sample.realMillis));
+      }
+      serialized.put(entry.getKey(), serializedSamples);
+    }
+
+    Path path = storageFile.get();
+    try {
+      Files.createDirectories(path.getParent());
+      objectMapper.writeValue(path.toFile(), serialized);
+      dirty = false;
+    } catch (IOException e) {
+      LOG.warn("Unable to save rule resource profiles to %s: %s", path, e.getLocalizedMessage());
+    }
+  }
+
+  @GuardedBy("this")
+  private Map<String, Deque<Sample>> getSamples() {
+    if (samples == null) {
+      samples = load();
+    }
+    return samples;
+  }
+
+  private Map<String, Deque<Sample>> load() {
+    Map<String, Deque<Sample>> loaded = new HashMap<>();
+    if (!storageFile.isPresent() || !Files.exists(storageFile.get())) {
+      return loaded;
+    }
+
+    try {
+      Map<String, List<Map<String, Long>>> serialized = objectMapper.readValue(
+          storageFile.get().toFile(),
+          new TypeReference<HashMap<String, List<Map<String, Long>>>>() {});
+      for (Map.Entry<String, List<Map<String, Long>>> entry : serialized.entrySet()) {
+        Deque<Sample> ruleTypeSamples = new ArrayDeque<>();
+        for (Map<String, Long> serializedSample : entry.getValue()) {
+          Long peakMemoryBytes = serializedSample.get(PEAK_MEMORY_BYTES);
+          Long cpuMillis = serializedSample.get(CPU_MILLIS);
+          Long realMillis = serializedSample.get(REAL_MILLIS);
+          if (peakMemoryBytes == null || cpuMillis == null || realMillis == null) {
+            continue;
+          }
+          ruleTypeSamples.addLast(new Sample(peakMemoryBytes, cpuMillis, realMillis));
+        }
+        while (ruleTypeSamples.size() > maxSamplesPerRuleType) {
+          ruleTypeSamples.removeFirst();
+        }
+        if (!ruleTypeSamples.isEmpty()) {
+          loaded.put(entry.getKey(), ruleTypeSamples);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to load rule resource profiles, starting afresh: %s", e.getMessage());
+      return new HashMap<>();
+    }
+    return loaded;
+  }
+
+  private static long divideRoundingUp(long dividend, long divisor) {
+    return (dividend + divisor - 1) / divisor;
+  }
+
+  private static class Sample {
+    private final long peakMemoryBytes;
+    private final long cpuMillis;
+    private final long realMillis;
+
+    public Sample(long peakMemoryBytes, long cpuMillis, long realMillis) {
+      this.peakMemoryBytes = peakMemoryBytes;
+      this.cpuMillis = cpuMillis;
+      this.realMillis = realMillis;
+    }
+  }
+}
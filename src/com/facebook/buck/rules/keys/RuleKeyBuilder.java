@@ -21,6 +21,8 @@ import static com.facebook.buck.rules.keys.RuleKeyHasher.Wrapper;
 import static com.facebook.buck.rules.keys.RuleKeyScopedHasher.ContainerScope;
 import static com.facebook.buck.rules.keys.RuleKeyScopedHasher.Scope;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.LatencyHistogram;
 import com.facebook.buck.hashing.FileHashLoader;
 import com.facebook.buck.io.ArchiveMemberPath;
 import com.facebook.buck.log.Logger;
@@ -45,6 +47,7 @@ import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
@@ -87,11 +90,17 @@ public abstract class RuleKeyBuilder<RULE_KEY> implements RuleKeyObjectSink {
 
   private static final Logger logger = Logger.get(RuleKeyBuilder.class);
 
+  // Time from creating a builder to producing its key. Keys of nested appendables are built with
+  // builders of their own, so they are also counted by themselves.
+  private static final LatencyHistogram BUILD_LATENCY =
+      new LatencyHistogram("buck_rule_keys", "build_latency", ImmutableMap.of());
+
   private final SourcePathRuleFinder ruleFinder;
   private final SourcePathResolver resolver;
   private final FileHashLoader hashLoader;
   private final CountingRuleKeyHasher<HashCode> hasher;
   private final RuleKeyScopedHasher<HashCode> scopedHasher;
+  private final long creationNanos;
 
   @VisibleForTesting
   protected RuleKeyBuilder(
@@ -104,6 +113,11 @@ public abstract class RuleKeyBuilder<RULE_KEY> implements RuleKeyObjectSink {
     this.hashLoader = hashLoader;
     this.hasher = new CountingRuleKeyHasher<>(hasher);
     this.scopedHasher = new RuleKeyScopedHasher<>(this.hasher);
+    this.creationNanos = System.nanoTime();
+  }
+
+  public static ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(BUILD_LATENCY);
   }
 
   @VisibleForTesting
@@ -400,7 +414,9 @@ public abstract class RuleKeyBuilder<RULE_KEY> implements RuleKeyObjectSink {
 
   /** A convenience method for implementations that build {@link RuleKey}. */
   protected final RuleKey buildRuleKey() {
-    return new RuleKey(hasher.hash());
+    RuleKey ruleKey = new RuleKey(hasher.hash());
+    BUILD_LATENCY.recordSince(creationNanos);
+    return ruleKey;
   }
 
   public abstract RULE_KEY build();
@@ -68,4 +68,16 @@ public interface SupportsDependencyFileRuleKey extends BuildRule {
    */
   ImmutableList<SourcePath> getInputsAfterBuildingLocally(BuildContext context) throws IOException;
 
+  /**
+   * Returns a predicate that rules out source paths the rule can't use, worked out up front
+   * without building it, and so without a dep-file. It must accept every path that
+   * {@link #getInputsAfterBuildingLocally(BuildContext)} may return.
+   *
+   * This lets manifest based cache lookups skip the entries which can't apply to the current
+   * state of the rule without hashing their inputs. By default, nothing is ruled out.
+   */
+  default Predicate<SourcePath> getPossibleInputsPredicate() throws IOException {
+    return (SourcePath path) -> true;
+  }
+
 }
@@ -64,6 +64,12 @@ interface AbstractWorkerJobParams {
    */
   int getMaxWorkers();
 
+  /**
+   * Maximum number of jobs that may be sent to a single tool at the same time. Tools that accept
+   * more than one job at a time must speak version "1" of the worker protocol.
+   */
+  int getMaxJobsPerWorker();
+
   /**
    * If this value is set and if the current invocation allows to have persisted worker pools
    * (buck is running as daemon), it will be used to obtain the instance of the persisted worker
@@ -56,6 +56,7 @@ public class DefaultWorkerTool extends NoopBuildRule implements
 
   private final BinaryBuildRule exe;
   private final int maxWorkers;
+  private final int maxJobsPerWorker;
   private final boolean isPersistent;
   private final BuildOutputInitializer<Data> buildOutputInitializer;
 
@@ -66,12 +67,14 @@ public class DefaultWorkerTool extends NoopBuildRule implements
       ImmutableList<Arg> args,
       ImmutableMap<String, String> env,
       int maxWorkers,
+      int maxJobsPerWorker,
       boolean isPersistent) {
     super(ruleParams, resolver);
     this.exe = exe;
     this.args = args;
     this.env = env;
     this.maxWorkers = maxWorkers;
+    this.maxJobsPerWorker = maxJobsPerWorker;
     this.isPersistent = isPersistent;
     this.buildOutputInitializer = new BuildOutputInitializer<>(getBuildTarget(), this);
   }
@@ -110,6 +113,11 @@ public class DefaultWorkerTool extends NoopBuildRule implements
     return maxWorkers;
   }
 
+  @Override
+  public int getMaxJobsPerWorker() {
+    return maxJobsPerWorker;
+  }
+
   @Override
   public boolean isPersistent() {
     return isPersistent;
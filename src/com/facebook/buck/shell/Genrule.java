@@ -307,6 +307,7 @@ public class Genrule extends AbstractBuildRuleWithResolver
           workerMacroArg.getEnvironment(),
           workerMacroArg.getJobArgs(),
           workerMacroArg.getMaxWorkers(),
+          workerMacroArg.getMaxJobsPerWorker(),
           workerMacroArg.getPersistentWorkerKey(),
           Optional.of(workerMacroArg.getWorkerHash()));
     });
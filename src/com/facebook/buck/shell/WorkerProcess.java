@@ -25,6 +25,8 @@ import com.facebook.buck.util.ProcessExecutorParams;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
@@ -36,10 +38,14 @@ import java.io.OutputStreamWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 public class WorkerProcess {
 
@@ -51,9 +57,18 @@ public class WorkerProcess {
   private final Path tmpPath;
   private final Path stdErr;
   private final AtomicInteger currentMessageID = new AtomicInteger();
+  private final int maxJobsInFlight;
   private boolean handshakePerformed = false;
   @Nullable
-  private WorkerProcessProtocol protocol;
+  private volatile WorkerProcessProtocol protocol;
+
+  // Only used when several jobs may be in flight. One of the threads waiting for a response reads
+  // responses off the stream and hands them out to the other waiting threads.
+  private final Object responseLock = new Object();
+  @GuardedBy("responseLock")
+  private final Map<Integer, SettableFuture<Integer>> pendingResponses = new HashMap<>();
+  @GuardedBy("responseLock")
+  private boolean readingResponses = false;
   @Nullable
   private ProcessExecutor.LaunchedProcess launchedProcess;
 
@@ -74,7 +89,23 @@ public class WorkerProcess {
       ProcessExecutorParams processParams,
       ProjectFilesystem filesystem,
       Path tmpPath) throws IOException {
+    this(executor, processParams, filesystem, tmpPath, 1);
+  }
+
+  /**
+   * Same as above, but allows up to {@code maxJobsInFlight} jobs to be submitted to the process at
+   * the same time. If more than one job is allowed, the process is expected to speak version "1"
+   * of the protocol (see {@link WorkerProcessProtocolOne}).
+   */
+  public WorkerProcess(
+      ProcessExecutor executor,
+      ProcessExecutorParams processParams,
+      ProjectFilesystem filesystem,
+      Path tmpPath,
+      int maxJobsInFlight) throws IOException {
+    Preconditions.checkArgument(maxJobsInFlight > 0);
     this.executor = executor;
+    this.maxJobsInFlight = maxJobsInFlight;
     this.stdErr = Files.createTempFile("buck-worker-", "-stderr.log");
     this.processParams = processParams.withRedirectError(
         ProcessBuilder.Redirect.to(stdErr.toFile()));
@@ -94,12 +125,20 @@ public class WorkerProcess {
         new BufferedWriter(new OutputStreamWriter(launchedProcess.getOutputStream())));
     JsonReader processStdoutReader = new JsonReader(
         new BufferedReader(new InputStreamReader(launchedProcess.getInputStream())));
-    protocol = new WorkerProcessProtocolZero(
-        executor,
-        launchedProcess,
-        processStdinWriter,
-        processStdoutReader,
-        stdErr);
+    WorkerProcessProtocol protocol = isMultiplexed() ?
+        new WorkerProcessProtocolOne(
+            executor,
+            launchedProcess,
+            processStdinWriter,
+            processStdoutReader,
+            stdErr) :
+        new WorkerProcessProtocolZero(
+            executor,
+            launchedProcess,
+            processStdinWriter,
+            processStdoutReader,
+            stdErr);
+    this.protocol = protocol;
 
     int messageID = currentMessageID.getAndAdd(1);
     LOG.debug("Sending handshake to process %d", this.hashCode());
@@ -109,7 +148,28 @@ public class WorkerProcess {
     handshakePerformed = true;
   }
 
-  public synchronized WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
+  /**
+   * @return how many jobs may be submitted to this process at the same time.
+   */
+  public int getMaxJobsInFlight() {
+    return maxJobsInFlight;
+  }
+
+  private boolean isMultiplexed() {
+    return maxJobsInFlight > 1;
+  }
+
+  public WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
+    if (isMultiplexed()) {
+      return runJob(jobArgs);
+    }
+    synchronized (this) {
+      return runJob(jobArgs);
+    }
+  }
+
+  private WorkerJobResult runJob(String jobArgs) throws IOException {
+    WorkerProcessProtocol protocol = this.protocol;
     Preconditions.checkState(
         protocol != null,
         "Tried to submit a job to the worker process before the handshake was performed.");
@@ -133,11 +193,17 @@ public class WorkerProcess {
         messageID,
         this.hashCode(),
         jobArgs);
-    protocol.sendCommand(messageID, WorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
-    LOG.debug("Receiving response for job %d from process %d",
-        messageID,
-        this.hashCode());
-    int exitCode = protocol.receiveCommandResponse(messageID);
+    WorkerProcessCommand command = WorkerProcessCommand.of(argsPath, stdoutPath, stderrPath);
+    int exitCode;
+    if (isMultiplexed()) {
+      exitCode = sendCommandAndWaitForResponse(protocol, messageID, command);
+    } else {
+      protocol.sendCommand(messageID, command);
+      LOG.debug("Receiving response for job %d from process %d",
+          messageID,
+          this.hashCode());
+      exitCode = protocol.receiveCommandResponse(messageID);
+    }
     Optional<String> stdout = filesystem.readFileIfItExists(stdoutPath);
     Optional<String> stderr = filesystem.readFileIfItExists(stderrPath);
     LOG.debug(
@@ -154,6 +220,95 @@ public class WorkerProcess {
     return WorkerJobResult.of(exitCode, stdout, stderr);
   }
 
+  private int sendCommandAndWaitForResponse(
+      WorkerProcessProtocol protocol,
+      int messageID,
+      WorkerProcessCommand command) throws IOException {
+    SettableFuture<Integer> response = SettableFuture.create();
+    synchronized (responseLock) {
+      pendingResponses.put(messageID, response);
+    }
+    try {
+      synchronized (protocol) {
+        protocol.sendCommand(messageID, command);
+      }
+    } catch (IOException | RuntimeException e) {
+      synchronized (responseLock) {
+        pendingResponses.remove(messageID);
+      }
+      throw e;
+    }
+
+    boolean interrupted = false;
+    try {
+      while (true) {
+        synchronized (responseLock) {
+          while (!response.isDone() && readingResponses) {
+            try {
+              responseLock.wait();
+            } catch (InterruptedException e) {
+              // Like the blocking read in the single job case, waiting for the response cannot
+              // be interrupted, otherwise the response would be left on the stream.
+              interrupted = true;
+            }
+          }
+          if (response.isDone()) {
+            return getResponse(response);
+          }
+          readingResponses = true;
+        }
+        readNextResponse(protocol);
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void readNextResponse(WorkerProcessProtocol protocol) throws IOException {
+    try {
+      LOG.debug("Receiving next response from process %d", this.hashCode());
+      WorkerProcessCommandResponse response = protocol.receiveNextCommandResponse();
+      synchronized (responseLock) {
+        SettableFuture<Integer> future = pendingResponses.remove(response.getMessageID());
+        if (future == null) {
+          throw new HumanReadableException(String.format(
+              "Received response for unknown job \"%d\" from the external process.",
+              response.getMessageID()));
+        }
+        future.set(response.getExitCode());
+      }
+    } catch (IOException | RuntimeException e) {
+      // The stream is in an unknown state now, so none of the pending jobs can get its response.
+      synchronized (responseLock) {
+        for (SettableFuture<Integer> future : pendingResponses.values()) {
+          future.setException(e);
+        }
+        pendingResponses.clear();
+      }
+      throw e;
+    } finally {
+      synchronized (responseLock) {
+        readingResponses = false;
+        responseLock.notifyAll();
+      }
+    }
+  }
+
+  private static int getResponse(SettableFuture<Integer> response) throws IOException {
+    try {
+      return response.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      // The future is already done.
+      throw new IllegalStateException(e);
+    }
+  }
+
   public void close() {
     LOG.debug("Closing process %d", this.hashCode());
     try {
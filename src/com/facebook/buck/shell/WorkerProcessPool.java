@@ -16,33 +16,62 @@
 
 package com.facebook.buck.shell;
 
+import com.facebook.buck.log.Logger;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 public abstract class WorkerProcessPool {
+  private static final Logger LOG = Logger.get(WorkerProcessPool.class);
 
   private final int capacity;
-  private final BlockingQueue<WorkerProcess> availableWorkers;
-  @GuardedBy("createdWorkers")
-  private final List<WorkerProcess> createdWorkers;
+  private final int maxJobsPerWorker;
   private final HashCode poolHash;
 
+  // Number of borrowers currently holding each created worker.
+  @GuardedBy("this")
+  private final Map<WorkerProcess, Integer> createdWorkers;
+  // Workers that are no longer handed out, with the number of borrowers still holding them.
+  @GuardedBy("this")
+  private final Map<WorkerProcess, Integer> retiringWorkers;
+  @GuardedBy("this")
+  private int workersBeingStarted;
+  @GuardedBy("this")
+  private final Queue<SettableFuture<WorkerProcess>> waitingBorrowers;
+
   public WorkerProcessPool(int maxWorkers, HashCode poolHash) {
+    this(maxWorkers, 1, poolHash);
+  }
+
+  /**
+   * @param maxWorkers maximum number of worker processes to start.
+   * @param maxJobsPerWorker how many borrowers may hold the same worker process at the same time.
+   *     Values greater than one only make sense for workers that run jobs concurrently.
+   */
+  public WorkerProcessPool(int maxWorkers, int maxJobsPerWorker, HashCode poolHash) {
+    Preconditions.checkArgument(maxJobsPerWorker > 0);
     this.capacity = maxWorkers;
-    this.availableWorkers = new LinkedBlockingQueue<>();
-    this.createdWorkers = new ArrayList<>();
+    this.maxJobsPerWorker = maxJobsPerWorker;
     this.poolHash = poolHash;
+    this.createdWorkers = new LinkedHashMap<>();
+    this.retiringWorkers = new HashMap<>();
+    this.workersBeingStarted = 0;
+    this.waitingBorrowers = new ArrayDeque<>();
   }
 
   /**
@@ -52,43 +81,194 @@ public abstract class WorkerProcessPool {
    */
   public WorkerProcess borrowWorkerProcess()
       throws IOException, InterruptedException {
-    WorkerProcess workerProcess = availableWorkers.poll(0, TimeUnit.SECONDS);
-    if (workerProcess == null) {
-      workerProcess = createNewWorkerIfPossible();
+    ListenableFuture<WorkerProcess> future = borrowWorkerProcessAsync();
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      if (!future.cancel(false)) {
+        // The worker was handed to us after all, give it back to the next borrower.
+        returnWorkerProcess(Futures.getUnchecked(future));
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Same as {@link #borrowWorkerProcess()}, but instead of blocking while all workers are busy
+   * returns a future that is completed once one of them is returned to the pool. A worker may be
+   * handed out to up to {@code maxJobsPerWorker} borrowers at the same time; the least busy worker
+   * is picked, and new workers are only started while every existing one is fully used.
+   *
+   * Cancelling the future before it completes gives up the place in the queue. Once the future
+   * has completed, the worker must be returned with {@link #returnWorkerProcess(WorkerProcess)}.
+   */
+  public ListenableFuture<WorkerProcess> borrowWorkerProcessAsync() {
+    synchronized (this) {
+      WorkerProcess workerProcess = findAvailableWorker();
+      if (workerProcess != null) {
+        createdWorkers.put(workerProcess, createdWorkers.get(workerProcess) + 1);
+        return Futures.immediateFuture(workerProcess);
+      }
+      if (createdWorkers.size() + workersBeingStarted >= capacity) {
+        SettableFuture<WorkerProcess> future = SettableFuture.create();
+        waitingBorrowers.add(future);
+        return future;
+      }
+      workersBeingStarted++;
+    }
+
+    WorkerProcess workerProcess;
+    try {
+      workerProcess = startWorkerProcessAndHandOut(1);
+    } catch (IOException | RuntimeException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+    return Futures.immediateFuture(workerProcess);
+  }
+
+  /**
+   * Starts a new worker, which the caller must have accounted for in {@code workersBeingStarted},
+   * and hands it to the caller's {@code ownBorrowers} borrowers and as many waiting borrowers as
+   * it can take on. If the worker fails to start, its slot is given back, so that the pool can
+   * start another one later.
+   */
+  private WorkerProcess startWorkerProcessAndHandOut(int ownBorrowers) throws IOException {
+    WorkerProcess workerProcess;
+    try {
+      workerProcess = Preconditions.checkNotNull(startWorkerProcess());
+    } catch (IOException | RuntimeException e) {
+      synchronized (this) {
+        workersBeingStarted--;
+        if (createdWorkers.isEmpty() && workersBeingStarted == 0) {
+          // Nothing will ever be returned to the pool, so nobody waiting would get a worker.
+          for (SettableFuture<WorkerProcess> waitingBorrower : waitingBorrowers) {
+            waitingBorrower.setException(e);
+          }
+          waitingBorrowers.clear();
+        }
+      }
+      throw e;
     }
-    if (workerProcess != null) {
-      return workerProcess;
+
+    synchronized (this) {
+      workersBeingStarted--;
+      createdWorkers.put(workerProcess, ownBorrowers);
+      // The new worker may take on more jobs than ours.
+      for (int i = ownBorrowers; i < maxJobsPerWorker && handToWaitingBorrower(workerProcess); i++) {
+        createdWorkers.put(workerProcess, createdWorkers.get(workerProcess) + 1);
+      }
     }
-    return availableWorkers.take();
+    return workerProcess;
   }
 
-  private @Nullable WorkerProcess createNewWorkerIfPossible() throws IOException {
-    synchronized (createdWorkers) {
-      if (createdWorkers.size() == capacity) {
-        return null;
+  @GuardedBy("this")
+  private @Nullable WorkerProcess findAvailableWorker() {
+    WorkerProcess leastBusy = null;
+    int leastBusyJobs = maxJobsPerWorker;
+    for (Map.Entry<WorkerProcess, Integer> entry : createdWorkers.entrySet()) {
+      if (entry.getValue() < leastBusyJobs) {
+        leastBusy = entry.getKey();
+        leastBusyJobs = entry.getValue();
       }
-      WorkerProcess process = Preconditions.checkNotNull(startWorkerProcess());
-      createdWorkers.add(process);
-      return process;
     }
+    return leastBusy;
+  }
+
+  @GuardedBy("this")
+  private boolean handToWaitingBorrower(WorkerProcess workerProcess) {
+    SettableFuture<WorkerProcess> waitingBorrower;
+    while ((waitingBorrower = waitingBorrowers.poll()) != null) {
+      // Fails if the borrower has given up waiting.
+      if (waitingBorrower.set(workerProcess)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   public void returnWorkerProcess(WorkerProcess workerProcess)
       throws InterruptedException {
-    synchronized (createdWorkers) {
+    synchronized (this) {
+      Integer retiringBorrowers = retiringWorkers.get(workerProcess);
+      if (retiringBorrowers == null) {
+        Integer borrowers = createdWorkers.get(workerProcess);
+        Preconditions.checkArgument(
+            borrowers != null,
+            "Trying to return a foreign WorkerProcess to the pool");
+        Preconditions.checkState(borrowers > 0, "Trying to return a WorkerProcess twice");
+        if (!handToWaitingBorrower(workerProcess)) {
+          createdWorkers.put(workerProcess, borrowers - 1);
+        }
+        return;
+      }
+      if (retiringBorrowers > 1) {
+        retiringWorkers.put(workerProcess, retiringBorrowers - 1);
+        return;
+      }
+      retiringWorkers.remove(workerProcess);
+    }
+    workerProcess.close();
+  }
+
+  /**
+   * Returns a worker that should not be used for any more jobs, e.g. because it has grown too big
+   * or is in a bad state. It is closed once every borrower has returned it, and in the meantime
+   * a replacement is started for anybody that is waiting for a worker.
+   */
+  public void retireWorkerProcess(WorkerProcess workerProcess) {
+    boolean closeWorker;
+    boolean startReplacement;
+    synchronized (this) {
+      Integer borrowers = retiringWorkers.remove(workerProcess);
+      if (borrowers == null) {
+        borrowers = createdWorkers.remove(workerProcess);
+      }
       Preconditions.checkArgument(
-          createdWorkers.contains(workerProcess),
-          "Trying to return a foreign WorkerProcess to the pool");
+          borrowers != null,
+          "Trying to retire a foreign WorkerProcess");
+      Preconditions.checkState(borrowers > 0, "Trying to retire a WorkerProcess nobody holds");
+      closeWorker = borrowers == 1;
+      if (!closeWorker) {
+        retiringWorkers.put(workerProcess, borrowers - 1);
+      }
+      startReplacement = !waitingBorrowers.isEmpty() &&
+          createdWorkers.size() + workersBeingStarted < capacity;
+      if (startReplacement) {
+        workersBeingStarted++;
+      }
+    }
+
+    if (closeWorker) {
+      workerProcess.close();
+    }
+    if (startReplacement) {
+      try {
+        startWorkerProcessAndHandOut(0);
+      } catch (IOException | RuntimeException e) {
+        // The slot of the replacement is free again, and waiting borrowers have already been
+        // failed if nobody else is left to serve them.
+        LOG.error(
+            e,
+            "Failed to start a replacement for a retired worker process (pool %s, %d of %d " +
+                "workers running).",
+            poolHash,
+            getWorkerCount(),
+            capacity);
+      }
     }
-    availableWorkers.put(workerProcess);
   }
 
   public void close() {
     ImmutableSet<WorkerProcess> processesToClose;
-    synchronized (createdWorkers) {
-      processesToClose = ImmutableSet.copyOf(createdWorkers);
+    synchronized (this) {
+      processesToClose = ImmutableSet.copyOf(createdWorkers.keySet());
       Preconditions.checkState(
-          availableWorkers.size() == createdWorkers.size(),
+          createdWorkers.values().stream().allMatch(borrowers -> borrowers == 0) &&
+              retiringWorkers.isEmpty(),
           "WorkerProcessPool was still running when shutdown was called.");
     }
 
@@ -101,6 +281,18 @@ public abstract class WorkerProcessPool {
     return capacity;
   }
 
+  /**
+   * @return the number of workers that are running or being started and count towards the
+   *     capacity. Retired workers that are still held by borrowers do not count.
+   */
+  public synchronized int getWorkerCount() {
+    return createdWorkers.size() + workersBeingStarted;
+  }
+
+  public int getMaxJobsPerWorker() {
+    return maxJobsPerWorker;
+  }
+
   protected abstract WorkerProcess startWorkerProcess() throws IOException;
 
   public HashCode getPoolHash() {
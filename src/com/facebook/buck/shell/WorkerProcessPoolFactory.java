@@ -97,6 +97,15 @@ public class WorkerProcessPoolFactory {
           poolCapacity,
           paramsToUse.getMaxWorkers()));
     }
+    if (pool.getMaxJobsPerWorker() != paramsToUse.getMaxJobsPerWorker()) {
+      context.postEvent(ConsoleEvent.warning(
+          "There are two 'worker_tool' targets declared with the same command (%s), but " +
+              "different 'max_jobs_per_worker' settings (%d and %d). Only the first setting is " +
+              "applied. Consolidate these workers to avoid this warning.",
+          key,
+          pool.getMaxJobsPerWorker(),
+          paramsToUse.getMaxJobsPerWorker()));
+    }
 
     return pool;
   }
@@ -116,12 +125,17 @@ public class WorkerProcessPoolFactory {
     final Path workerTmpDir = paramsToUse.getTempDir();
     final AtomicInteger workerNumber = new AtomicInteger(0);
 
-    WorkerProcessPool newPool = new WorkerProcessPool(paramsToUse.getMaxWorkers(), workerHash) {
+    final int maxJobsPerWorker = paramsToUse.getMaxJobsPerWorker();
+    WorkerProcessPool newPool = new WorkerProcessPool(
+        paramsToUse.getMaxWorkers(),
+        maxJobsPerWorker,
+        workerHash) {
       @Override
       protected WorkerProcess startWorkerProcess() throws IOException {
         Path tmpDir = workerTmpDir.resolve(Integer.toString(workerNumber.getAndIncrement()));
         filesystem.mkdirs(tmpDir);
-        WorkerProcess process = createWorkerProcess(processParams, context, tmpDir);
+        WorkerProcess process =
+            createWorkerProcess(processParams, context, tmpDir, maxJobsPerWorker);
         process.ensureLaunchAndHandshake();
         return process;
       }
@@ -163,12 +177,14 @@ public class WorkerProcessPoolFactory {
   WorkerProcess createWorkerProcess(
       ProcessExecutorParams processParams,
       ExecutionContext context,
-      Path tmpDir) throws IOException {
+      Path tmpDir,
+      int maxJobsPerWorker) throws IOException {
     return new WorkerProcess(
         context.getProcessExecutor(),
         processParams,
         filesystem,
-        tmpDir);
+        tmpDir,
+        maxJobsPerWorker);
   }
 
 }
@@ -49,6 +49,12 @@ public interface WorkerProcessProtocol {
    */
   int receiveCommandResponse(int messageID) throws IOException;
 
+  /**
+   * This method expects to receive a response for any of the commands that were sent and have not
+   * been answered yet. Used by protocols that allow several commands to be in flight at once.
+   */
+  WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException;
+
   /**
    * Close connection and properly end the stream.
    */
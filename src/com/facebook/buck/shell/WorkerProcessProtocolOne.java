@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.shell;
+
+import com.facebook.buck.util.ProcessExecutor;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.nio.file.Path;
+
+/**
+ * Version "1" of the worker protocol. The messages are the same as in
+ * {@link WorkerProcessProtocolZero}, but Buck may send further commands before the earlier ones
+ * have been answered. The worker is free to run the commands concurrently and to send the responses
+ * in any order; each response is matched to its command by the "id" field.
+ *
+ * Buck only uses this version for workers that declare a {@code max_jobs_per_worker} greater than
+ * one, so workers that only understand version "0" keep working unchanged.
+ */
+public class WorkerProcessProtocolOne extends WorkerProcessProtocolZero {
+
+  private static final String PROTOCOL_VERSION = "1";
+
+  public WorkerProcessProtocolOne(
+      ProcessExecutor executor,
+      ProcessExecutor.LaunchedProcess launchedProcess,
+      JsonWriter processStdinWriter,
+      JsonReader processStdoutReader,
+      Path stdErr) {
+    super(executor, launchedProcess, processStdinWriter, processStdoutReader, stdErr);
+  }
+
+  @Override
+  protected String getProtocolVersion() {
+    return PROTOCOL_VERSION;
+  }
+}
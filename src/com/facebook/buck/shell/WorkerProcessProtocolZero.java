@@ -71,7 +71,7 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
     processStdinWriter.beginObject();
     processStdinWriter.name("id").value(handshakeID);
     processStdinWriter.name("type").value(TYPE_HANDSHAKE);
-    processStdinWriter.name("protocol_version").value(PROTOCOL_VERSION);
+    processStdinWriter.name("protocol_version").value(getProtocolVersion());
     processStdinWriter.name("capabilities").beginArray().endArray();
     processStdinWriter.endObject();
     processStdinWriter.flush();
@@ -133,10 +133,10 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
       throw new HumanReadableException(String.format("Expected handshake response's \"type\" " +
           "to be \"%s\", got \"%s\" instead.", TYPE_HANDSHAKE, type));
     }
-    if (!protocolVersion.equals(PROTOCOL_VERSION)) {
+    if (!protocolVersion.equals(getProtocolVersion())) {
       throw new HumanReadableException(String.format("Expected handshake response's " +
           "\"protocol_version\" to be \"%s\", got \"%s\" instead.",
-          PROTOCOL_VERSION, protocolVersion));
+          getProtocolVersion(), protocolVersion));
     }
   }
 
@@ -301,6 +301,16 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
   */
   @Override
   public int receiveCommandResponse(int messageID) throws IOException {
+    WorkerProcessCommandResponse response = receiveNextCommandResponse();
+    if (response.getMessageID() != messageID) {
+      throw new HumanReadableException(String.format("Expected response's \"id\" value to be " +
+          "\"%d\", got \"%d\" instead.", messageID, response.getMessageID()));
+    }
+    return response.getExitCode();
+  }
+
+  @Override
+  public WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException {
     int id = -1;
     int exitCode = -1;
     String type = "";
@@ -327,15 +337,15 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
           getStdErrorOutput());
     }
 
-    if (id != messageID) {
+    if (id < 0) {
       throw new HumanReadableException(String.format("Expected response's \"id\" value to be " +
-          "\"%d\", got \"%d\" instead.", messageID, id));
+          "a non-negative number, got \"%d\" instead.", id));
     }
     if (!type.equals(TYPE_RESULT) && !type.equals(TYPE_ERROR)) {
       throw new HumanReadableException(String.format("Expected response's \"type\" " +
           "to be one of [\"%s\",\"%s\"], got \"%s\" instead.", TYPE_RESULT, TYPE_ERROR, type));
     }
-    return exitCode;
+    return WorkerProcessCommandResponse.of(id, exitCode);
   }
 
   /*
@@ -354,6 +364,13 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
     }
   }
 
+  /**
+   * @return the version sent in the handshake and expected back from the other end.
+   */
+  protected String getProtocolVersion() {
+    return PROTOCOL_VERSION;
+  }
+
   private String getStdErrorOutput() throws IOException {
     StringBuilder sb = new StringBuilder();
     try (InputStream inputStream = Files.newInputStream(stdErr)) {
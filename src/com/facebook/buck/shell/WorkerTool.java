@@ -26,6 +26,7 @@ public interface WorkerTool {
   String getArgs();
   Path getTempDir();
   int getMaxWorkers();
+  int getMaxJobsPerWorker();
   boolean isPersistent();
   HashCode getInstanceKey();
 }
@@ -127,6 +127,14 @@ public class WorkerToolDescription implements Description<WorkerToolDescription.
       maxWorkers = 1;
     }
 
+    int maxJobsPerWorker = args.maxJobsPerWorker.orElse(1);
+    if (maxJobsPerWorker < 1) {
+      throw new HumanReadableException(
+          "%s: max_jobs_per_worker must be at least 1, got %d.",
+          params.getBuildTarget(),
+          maxJobsPerWorker);
+    }
+
     return new DefaultWorkerTool(
         params,
         new SourcePathResolver(new SourcePathRuleFinder(resolver)),
@@ -134,6 +142,7 @@ public class WorkerToolDescription implements Description<WorkerToolDescription.
         workerToolArgs,
         expandedEnv,
         maxWorkers,
+        maxJobsPerWorker,
         args.persistent.orElse(
             buckConfig.getBooleanValue(CONFIG_SECTION, CONFIG_PERSISTENT_KEY, false)));
   }
@@ -168,6 +177,7 @@ public class WorkerToolDescription implements Description<WorkerToolDescription.
     public Either<String, ImmutableList<String>> args = Either.ofRight(ImmutableList.of());
     public BuildTarget exe;
     public Optional<Integer> maxWorkers;
+    public Optional<Integer> maxJobsPerWorker;
     public Optional<Boolean> persistent;
 
     public ImmutableList<String> getStartupArgs() {
@@ -21,6 +21,7 @@ import com.facebook.buck.android.NoAndroidSdkException;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ThrowableConsoleEvent;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.rules.CellPathResolver;
@@ -155,6 +156,15 @@ abstract class AbstractExecutionContext implements Closeable {
     return new ClassLoaderCache();
   }
 
+  /**
+   * Indexes of the jars compiled against. Inside buck daemon this is shared across buck
+   * invocations.
+   */
+  @Value.Default
+  public JarIndexCache getJarIndexCache() {
+    return new JarIndexCache();
+  }
+
   @Value.Default
   public ProcessExecutor getProcessExecutor() {
     return new DefaultProcessExecutor(getConsole());
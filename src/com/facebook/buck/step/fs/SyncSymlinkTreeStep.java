@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Makes the directory at {@code root} contain exactly the given symlinks.
+ *
+ * Unlike a {@link MakeCleanDirectoryStep} followed by a {@link SymlinkTreeStep}, this reads the
+ * tree that is already there and only creates, deletes or retargets the entries that differ, so
+ * changing one link in a large tree is cheap. Large batches of filesystem operations are run in
+ * parallel.
+ */
+public class SyncSymlinkTreeStep implements Step {
+
+  private static final Logger LOG = Logger.get(SyncSymlinkTreeStep.class);
+
+  @VisibleForTesting
+  static final int PARALLEL_OPERATIONS_THRESHOLD = 256;
+
+  private final ProjectFilesystem filesystem;
+  private final Path root;
+  private final ImmutableMap<Path, Path> links;
+
+  public SyncSymlinkTreeStep(
+      ProjectFilesystem filesystem,
+      Path root,
+      ImmutableMap<Path, Path> links) {
+    this.filesystem = filesystem;
+    this.root = root;
+    this.links = links;
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "sync link tree @ " + root.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "sync_link_tree";
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) {
+    try {
+      // Windows has no real symlinks (we create hard links or copies instead) so there is nothing
+      // to compare the existing tree against.
+      if (Platform.detect() == Platform.WINDOWS) {
+        filesystem.deleteRecursivelyIfExists(root);
+        filesystem.mkdirs(root);
+        createLinks(links.keySet());
+      } else {
+        sync();
+      }
+    } catch (IOException e) {
+      String msg = String.format("failed syncing link tree @ \"%s\"", root);
+      context.logError(e, msg);
+      e.printStackTrace(context.getStdErr());
+      return StepExecutionResult.ERROR;
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  private void sync() throws IOException {
+    final Path absoluteRoot = filesystem.resolve(root);
+    final Map<Path, Path> targets = new HashMap<>();
+    final Set<Path> neededDirectories = new HashSet<>();
+    for (Map.Entry<Path, Path> link : links.entrySet()) {
+      targets.put(link.getKey(), filesystem.resolve(link.getValue()));
+      for (Path parent = link.getKey().getParent(); parent != null; parent = parent.getParent()) {
+        neededDirectories.add(parent);
+      }
+    }
+
+    final List<Path> stale = new ArrayList<>();
+    final Set<Path> upToDate = new HashSet<>();
+    if (Files.isDirectory(absoluteRoot, LinkOption.NOFOLLOW_LINKS)) {
+      Files.walkFileTree(
+          absoluteRoot,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+              if (dir.equals(absoluteRoot)) {
+                return FileVisitResult.CONTINUE;
+              }
+              Path relativeDir = absoluteRoot.relativize(dir);
+              if (neededDirectories.contains(relativeDir)) {
+                return FileVisitResult.CONTINUE;
+              }
+              stale.add(relativeDir);
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+              Path relativeFile = absoluteRoot.relativize(file);
+              if (attrs.isSymbolicLink() &&
+                  Files.readSymbolicLink(file).equals(targets.get(relativeFile))) {
+                upToDate.add(relativeFile);
+              } else {
+                stale.add(relativeFile);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } else {
+      filesystem.deleteRecursivelyIfExists(root);
+      filesystem.mkdirs(root);
+    }
+
+    List<Path> missing = new ArrayList<>();
+    for (Path link : links.keySet()) {
+      if (!upToDate.contains(link)) {
+        missing.add(link);
+      }
+    }
+    LOG.debug(
+        "Syncing link tree %s: %d links up to date, %d entries to delete, %d links to create.",
+        root,
+        upToDate.size(),
+        stale.size(),
+        missing.size());
+
+    forEach(stale, path -> filesystem.deleteRecursivelyIfExists(root.resolve(path)));
+    createLinks(missing);
+  }
+
+  private void createLinks(Collection<Path> linksToCreate) throws IOException {
+    // Create the parent directories first, shallowest first, so that the links can be created in
+    // any order.
+    ImmutableSortedSet.Builder<Path> parents = ImmutableSortedSet.naturalOrder();
+    for (Path link : linksToCreate) {
+      Path parent = link.getParent();
+      if (parent != null) {
+        parents.add(parent);
+      }
+    }
+    for (Path parent : parents.build()) {
+      filesystem.mkdirs(root.resolve(parent));
+    }
+
+    forEach(
+        linksToCreate,
+        link -> filesystem.createSymLink(
+            filesystem.resolve(root.resolve(link)),
+            filesystem.resolve(links.get(link)),
+            /* force */ false));
+  }
+
+  private interface PathOperation {
+    void apply(Path path) throws IOException;
+  }
+
+  private static void forEach(Collection<Path> paths, PathOperation operation)
+      throws IOException {
+    Stream<Path> stream =
+        paths.size() >= PARALLEL_OPERATIONS_THRESHOLD ? paths.parallelStream() : paths.stream();
+    try {
+      stream.forEach(
+          path -> {
+            try {
+              operation.apply(path);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SyncSymlinkTreeStep)) {
+      return false;
+    }
+    SyncSymlinkTreeStep that = (SyncSymlinkTreeStep) obj;
+    return Objects.equal(this.root, that.root) && Objects.equal(this.links, that.links);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(root, links);
+  }
+}
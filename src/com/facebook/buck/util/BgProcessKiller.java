@@ -83,7 +83,11 @@ public class BgProcessKiller {
 
   private BgProcessKiller() {}
 
-  private static void checkArmedStatus() {
+  /**
+   * Throws if processes may no longer be created. Use this when a process is launched without
+   * going through {@link #startProcess}.
+   */
+  public static synchronized void checkArmedStatus() {
     if (armed) {
       throw new BuckIsDyingException("process creation blocked due to pending nailgun exit");
     }
@@ -166,11 +166,19 @@ public class DefaultProcessExecutor implements ProcessExecutor {
     if (params.getRedirectErrorStream().isPresent()) {
       pb.redirectErrorStream(params.getRedirectErrorStream().get());
     }
-    Process process = BgProcessKiller.startProcess(pb);
+    Process process = startProcess(pb);
     processRegistry.registerProcess(process, params, context);
     return new LaunchedProcessImpl(process);
   }
 
+  /**
+   * Starts the process described by {@code pb}. Subclasses may launch it some other way, as long
+   * as the returned {@link Process} behaves like one returned by {@link ProcessBuilder#start()}.
+   */
+  protected Process startProcess(ProcessBuilder pb) throws IOException {
+    return BgProcessKiller.startProcess(pb);
+  }
+
   @Override
   public void destroyLaunchedProcess(LaunchedProcess launchedProcess) {
     Preconditions.checkState(launchedProcess instanceof LaunchedProcessImpl);
@@ -59,6 +59,14 @@ public class ProcessHelper {
     return INSTANCE;
   }
 
+  /**
+   * A {@link Process} that was not started by the JVM itself, and which knows the native process
+   * identifier of what it runs.
+   */
+  public interface ProcessWithPid {
+    long getPid();
+  }
+
   private static final int PROCESS_TREE_REFRESH_PERIOD_MS = 1000;
   private final Object processTreeLock = new Object();
   private long processTreeTimestamp = 0;
@@ -158,6 +166,8 @@ public class ProcessHelper {
   public Long getPid(Object process) {
     if (process instanceof NuProcess) {
       return (long) ((NuProcess) process).getPID();
+    } else if (process instanceof ProcessWithPid) {
+      return ((ProcessWithPid) process).getPid();
     } else if (process instanceof Process) {
       // Until we switch to JDK9, we will have to go with this per-platform workaround.
       // In JDK9, `Process` has `getPid()` method that does exactly what we need here.
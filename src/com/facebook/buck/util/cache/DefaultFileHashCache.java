@@ -16,6 +16,9 @@
 
 package com.facebook.buck.util.cache;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.LatencyHistogram;
+import com.facebook.buck.counters.StripedCounter;
 import com.facebook.buck.hashing.PathHashing;
 import com.facebook.buck.io.ArchiveMemberPath;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -26,6 +29,8 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
@@ -48,6 +53,13 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   private static final boolean SHOULD_CHECK_IGNORED_PATHS =
       Boolean.getBoolean("buck.DefaultFileHashCache.check_ignored_paths");
 
+  private static final String COUNTER_CATEGORY = "buck_file_hash_cache";
+  // Shared by all the caches, since a build creates one per cell and a couple more for buck-out.
+  private static final LatencyHistogram GET_LATENCY =
+      new LatencyHistogram(COUNTER_CATEGORY, "get_latency", ImmutableMap.of());
+  private static final StripedCounter HASHED_FILES =
+      new StripedCounter(COUNTER_CATEGORY, "hashed_files", ImmutableMap.of());
+
   private final ProjectFilesystem projectFilesystem;
   private final Optional<Path> buckOutPath;
 
@@ -93,7 +105,16 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     return new DefaultFileHashCache(projectFilesystem, Optional.empty());
   }
 
+  /**
+   * @return counters reporting how long lookups take and how many files had to be hashed, summed
+   *     over every instance.
+   */
+  public static ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(GET_LATENCY, HASHED_FILES);
+  }
+
   private HashCodeAndFileType getHashCodeAndFileType(Path path) throws IOException {
+    HASHED_FILES.inc();
     if (projectFilesystem.isDirectory(path)) {
       return getDirHashCode(path);
     } else if (path.toString().endsWith(".jar")) {
@@ -189,6 +210,7 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
    */
   @Override
   public HashCode get(Path rawPath) throws IOException {
+    long startNanos = System.nanoTime();
     Path path = resolvePath(rawPath);
     HashCode sha1;
     try {
@@ -196,6 +218,8 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     } catch (ExecutionException e) {
       Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
       throw new RuntimeException(e.getCause());
+    } finally {
+      GET_LATENCY.recordSince(startNanos);
     }
     return Preconditions.checkNotNull(sha1, "Failed to find a HashCode for %s.", path);
   }
@@ -213,6 +237,7 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   @Override
   public HashCode get(ArchiveMemberPath archiveMemberPath) throws IOException {
+    long startNanos = System.nanoTime();
     Preconditions.checkState(archiveMemberPath.isAbsolute());
 
     Path absoluteFilePath = archiveMemberPath.getArchivePath();
@@ -232,6 +257,8 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     } catch (ExecutionException e) {
       Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
       throw new RuntimeException(e.getCause());
+    } finally {
+      GET_LATENCY.recordSince(startNanos);
     }
   }
 
@@ -25,4 +25,7 @@ import org.immutables.value.Value;
 abstract class AbstractListeningSemaphoreArrayPendingItem {
   public abstract SettableFuture<Void> getFuture();
   public abstract ResourceAmounts getResources();
+  public abstract long getPriority();
+  /** Order of arrival, used to keep items of the same priority first-come first-served. */
+  public abstract long getSequenceNumber();
 }
@@ -43,6 +43,10 @@ public class ConcurrencyLimit {
    * Maximum resource amounts that are available on the system for all jobs to share.
    */
   public final ResourceAmounts maximumAmounts;
+  /**
+   * Whether to also limit the jobs to the CPU and memory that is actually free on the host.
+   */
+  public final boolean adaptiveScheduling;
 
   public ConcurrencyLimit(
       int threadLimit,
@@ -51,12 +55,31 @@ public class ConcurrencyLimit {
       int managedThreadCount,
       ResourceAmounts defaultAmounts,
       ResourceAmounts maximumAmounts) {
+    this(
+        threadLimit,
+        loadLimit,
+        resourceAllocationFairness,
+        managedThreadCount,
+        defaultAmounts,
+        maximumAmounts,
+        false);
+  }
+
+  public ConcurrencyLimit(
+      int threadLimit,
+      double loadLimit,
+      ResourceAllocationFairness resourceAllocationFairness,
+      int managedThreadCount,
+      ResourceAmounts defaultAmounts,
+      ResourceAmounts maximumAmounts,
+      boolean adaptiveScheduling) {
     this.threadLimit = threadLimit;
     this.loadLimit = loadLimit;
     this.resourceAllocationFairness = resourceAllocationFairness;
     this.managedThreadCount = managedThreadCount;
     this.defaultAmounts = defaultAmounts;
     this.maximumAmounts = maximumAmounts;
+    this.adaptiveScheduling = adaptiveScheduling;
 
     Preconditions.checkArgument(
         threadLimit <= managedThreadCount,
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.concurrent;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.management.OperatingSystemMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Reports the CPU and memory of the host and how much of it is in use right now, by anyone, in the
+ * units used by {@link ResourceAmounts}: cores, with the number of cores busy since the previous
+ * sample as the usage, and physical memory in {@link ResourceAmountsEstimator#MEMORY_UNIT_BYTES}
+ * units. Disk and network IO are not measured; their capacity is reported as unlimited and their
+ * usage as zero.
+ *
+ * CPU usage is measured from the deltas of the kernel's CPU time counters, so unlike the load
+ * average it does not lag behind, and time spent waiting on IO does not count as busy.
+ *
+ * Readings are cached for a short while, as the semaphore asks for them on every acquisition.
+ * Once started, the monitor also samples on its own every interval and tells its listeners, so
+ * that work held back while the host was busy is let through once it is not.
+ */
+public class HostResourceMonitor implements AutoCloseable {
+  private static final Logger LOG = Logger.get(HostResourceMonitor.class);
+
+  private static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 1000;
+  private static final Path PROC_MEMINFO = Paths.get("/proc/meminfo");
+  private static final Path PROC_STAT = Paths.get("/proc/stat");
+  private static final String MEM_AVAILABLE = "MemAvailable:";
+  private static final String CPU_TOTALS = "cpu ";
+  // Fields of the cpu line in /proc/stat that count idle time. Only the first fields, up to steal,
+  // are summed up, as the guest fields that follow are already counted as user time.
+  private static final int IDLE_FIELD = 3;
+  private static final int IOWAIT_FIELD = 4;
+  private static final int CPU_TIME_FIELDS = 8;
+
+  private final ResourceAmounts capacity;
+  private final long totalMemoryBytes;
+  private final DoubleSupplier cpuUtilization;
+  private final LongSupplier availableMemoryBytes;
+  private final LongSupplier clockMillis;
+  private final long sampleIntervalMillis;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+  @GuardedBy("this")
+  @Nullable
+  private ResourceAmounts lastUsage;
+  @GuardedBy("this")
+  private long lastSampleMillis;
+  @GuardedBy("this")
+  @Nullable
+  private ScheduledExecutorService sampler;
+
+  /**
+   * @param cpuUtilization the fraction of the host's CPU time that was busy recently, between 0 and
+   *     1, or a negative value if it is not known.
+   */
+  @VisibleForTesting
+  HostResourceMonitor(
+      int availableProcessors,
+      long totalMemoryBytes,
+      DoubleSupplier cpuUtilization,
+      LongSupplier availableMemoryBytes,
+      LongSupplier clockMillis,
+      long sampleIntervalMillis) {
+    this.capacity = ResourceAmounts.of(
+        availableProcessors,
+        toMemoryUnits(totalMemoryBytes),
+        Integer.MAX_VALUE,
+        Integer.MAX_VALUE);
+    this.totalMemoryBytes = totalMemoryBytes;
+    this.cpuUtilization = cpuUtilization;
+    this.availableMemoryBytes = availableMemoryBytes;
+    this.clockMillis = clockMillis;
+    this.sampleIntervalMillis = sampleIntervalMillis;
+  }
+
+  public static HostResourceMonitor create() {
+    OperatingSystemMXBean mbean =
+        (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    return new HostResourceMonitor(
+        Runtime.getRuntime().availableProcessors(),
+        mbean.getTotalPhysicalMemorySize(),
+        new CpuUtilization(mbean),
+        () -> getAvailableMemoryBytes(mbean),
+        () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()),
+        DEFAULT_SAMPLE_INTERVAL_MILLIS);
+  }
+
+  public ResourceAmounts getCapacity() {
+    return capacity;
+  }
+
+  public synchronized ResourceAmounts getUsage() {
+    long now = clockMillis.getAsLong();
+    if (lastUsage == null || now - lastSampleMillis >= sampleIntervalMillis) {
+      lastUsage = sampleUsage();
+      lastSampleMillis = now;
+    }
+    return lastUsage;
+  }
+
+  /**
+   * Registers a callback run after every periodic sample, once {@link #startSampling()} was called.
+   */
+  public void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Starts sampling the host every interval on a background thread, until closed.
+   */
+  public synchronized void startSampling() {
+    if (sampler != null) {
+      return;
+    }
+    sampler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setNameFormat("host-resource-monitor")
+            .setDaemon(true)
+            .build());
+    sampler.scheduleWithFixedDelay(
+        this::sampleAndNotifyListeners,
+        sampleIntervalMillis,
+        sampleIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @VisibleForTesting
+  void sampleAndNotifyListeners() {
+    synchronized (this) {
+      lastUsage = sampleUsage();
+      lastSampleMillis = clockMillis.getAsLong();
+    }
+    for (Runnable listener : listeners) {
+      // An exception would cancel all further samples.
+      try {
+        listener.run();
+      } catch (RuntimeException e) {
+        LOG.warn(e, "Host resource monitor listener failed.");
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (sampler != null) {
+      sampler.shutdownNow();
+      sampler = null;
+    }
+  }
+
+  private ResourceAmounts sampleUsage() {
+    // A negative utilization means it is not available on this platform.
+    double utilization = Math.min(1, Math.max(0, cpuUtilization.getAsDouble()));
+    long usedMemoryBytes = Math.max(0, totalMemoryBytes - availableMemoryBytes.getAsLong());
+    return ResourceAmounts.of(
+        (int) Math.round(utilization * capacity.getCpu()),
+        toMemoryUnits(usedMemoryBytes),
+        0,
+        0);
+  }
+
+  private static int toMemoryUnits(long bytes) {
+    return (int) Math.min(Integer.MAX_VALUE, bytes / ResourceAmountsEstimator.MEMORY_UNIT_BYTES);
+  }
+
+  private static long getAvailableMemoryBytes(OperatingSystemMXBean mbean) {
+    // The free memory reported by the JVM does not count the page cache, which the kernel gives up
+    // as soon as someone needs the memory. Prefer the kernel's own estimate where there is one.
+    if (Files.isReadable(PROC_MEMINFO)) {
+      try {
+        for (String line : Files.readAllLines(PROC_MEMINFO, StandardCharsets.US_ASCII)) {
+          if (line.startsWith(MEM_AVAILABLE)) {
+            String kilobytes = line.substring(MEM_AVAILABLE.length()).replace("kB", "").trim();
+            return Long.parseLong(kilobytes) * 1024;
+          }
+        }
+      } catch (IOException | NumberFormatException e) {
+        // Fall back to what the JVM reports.
+      }
+    }
+    return mbean.getFreePhysicalMemorySize();
+  }
+
+  /**
+   * Busy fraction of the host's CPU time between two calls, from the aggregate cpu line of
+   * /proc/stat, falling back to what the JVM reports where that is not available.
+   */
+  @VisibleForTesting
+  static class CpuUtilization implements DoubleSupplier {
+    private final OperatingSystemMXBean mbean;
+    private long lastBusyTicks = -1;
+    private long lastTotalTicks = -1;
+
+    CpuUtilization(OperatingSystemMXBean mbean) {
+      this.mbean = mbean;
+    }
+
+    @Override
+    public synchronized double getAsDouble() {
+      if (Files.isReadable(PROC_STAT)) {
+        try {
+          for (String line : Files.readAllLines(PROC_STAT, StandardCharsets.US_ASCII)) {
+            if (line.startsWith(CPU_TOTALS)) {
+              double utilization = update(line);
+              if (utilization >= 0) {
+                return utilization;
+              }
+              break;
+            }
+          }
+        } catch (IOException | NumberFormatException e) {
+          // Fall back to what the JVM reports.
+        }
+      }
+      return mbean.getSystemCpuLoad();
+    }
+
+    /**
+     * @return the busy fraction since the previous line, or -1 for the first one.
+     */
+    @VisibleForTesting
+    double update(String cpuLine) {
+      long busyTicks = 0;
+      long totalTicks = 0;
+      int field = 0;
+      for (String value :
+          Splitter.on(' ').omitEmptyStrings().split(cpuLine.substring(CPU_TOTALS.length()))) {
+        if (field == CPU_TIME_FIELDS) {
+          break;
+        }
+        long ticks = Long.parseLong(value);
+        totalTicks += ticks;
+        if (field != IDLE_FIELD && field != IOWAIT_FIELD) {
+          busyTicks += ticks;
+        }
+        ++field;
+      }
+
+      long busyDelta = busyTicks - lastBusyTicks;
+      long totalDelta = totalTicks - lastTotalTicks;
+      boolean first = lastTotalTicks < 0;
+      lastBusyTicks = busyTicks;
+      lastTotalTicks = totalTicks;
+      if (first || totalDelta <= 0) {
+        return -1;
+      }
+      return (double) busyDelta / totalDelta;
+    }
+  }
+}
@@ -21,27 +21,62 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
 
 /**
  * A semaphore using {@link ListenableFuture}s for acquisition of different resource types
  * rather than blocking.
+ *
+ * Pending acquisitions are served in order of decreasing priority, and first-come first-served
+ * among those of the same priority.
+ *
+ * When given a {@link HostResourceMonitor}, the semaphore is adaptive: on top of the fixed maximum
+ * amounts, CPU and memory are only handed out while the host actually has them. What this
+ * semaphore has handed out is counted in full, whether or not it shows up in the readings yet,
+ * plus whatever the host reports as used beyond that, which catches other processes on the machine
+ * and jobs that use more than they asked for. Pending acquisitions are checked again on every
+ * sample of the monitor, as well as whenever resources are released.
  */
 public class ListeningMultiSemaphore {
 
+  /**
+   * Priority of acquisitions that don't specify one. It is the lowest priority callers are
+   * expected to pass, so unprioritized acquisitions never jump ahead of prioritized ones and are
+   * served first-come first-served among themselves.
+   */
+  public static final long DEFAULT_PRIORITY = 0;
+
+  private static final Comparator<ListeningSemaphoreArrayPendingItem> PENDING_ORDER =
+      Comparator.comparingLong(ListeningSemaphoreArrayPendingItem::getPriority).reversed()
+          .thenComparingLong(ListeningSemaphoreArrayPendingItem::getSequenceNumber);
+
   private ResourceAmounts usedValues;
   private final ResourceAmounts maximumValues;
-  private final List<ListeningSemaphoreArrayPendingItem> pending = new LinkedList<>();
+  private final NavigableSet<ListeningSemaphoreArrayPendingItem> pending =
+      new TreeSet<>(PENDING_ORDER);
   private final ResourceAllocationFairness fairness;
+  private final Optional<HostResourceMonitor> hostResourceMonitor;
+  private long nextSequenceNumber = 0;
 
   public ListeningMultiSemaphore(
       ResourceAmounts availableResources,
       ResourceAllocationFairness fairness) {
+    this(availableResources, fairness, Optional.empty());
+  }
+
+  public ListeningMultiSemaphore(
+      ResourceAmounts availableResources,
+      ResourceAllocationFairness fairness,
+      Optional<HostResourceMonitor> hostResourceMonitor) {
     this.usedValues = ResourceAmounts.ZERO;
     this.maximumValues = availableResources;
     this.fairness = fairness;
+    this.hostResourceMonitor = hostResourceMonitor;
+    hostResourceMonitor.ifPresent(monitor -> monitor.addListener(this::processPendingItems));
   }
 
   /**
@@ -56,7 +91,15 @@ public class ListeningMultiSemaphore {
    *
    * @return Future that will be completed once resource will be acquired.
    */
-  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources) {
+  public ListenableFuture<Void> acquire(ResourceAmounts resources) {
+    return acquire(resources, DEFAULT_PRIORITY);
+  }
+
+  /**
+   * Same as {@link #acquire(ResourceAmounts)}, but if the resources are not available right away
+   * the acquisition is served ahead of pending ones of lower priority.
+   */
+  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources, long priority) {
     if (resources.equals(ResourceAmounts.ZERO)) {
       return Futures.immediateFuture(null);
     }
@@ -64,7 +107,12 @@ public class ListeningMultiSemaphore {
     resources = capResourceAmounts(resources);
     if (!checkIfResourcesAvailable(resources)) {
       SettableFuture<Void> pendingFuture = SettableFuture.create();
-      pending.add(ListeningSemaphoreArrayPendingItem.of(pendingFuture, resources));
+      pending.add(
+          ListeningSemaphoreArrayPendingItem.of(
+              pendingFuture,
+              resources,
+              priority,
+              nextSequenceNumber++));
       return pendingFuture;
     }
     increaseUsedResources(resources);
@@ -84,6 +132,10 @@ public class ListeningMultiSemaphore {
 
     resources = capResourceAmounts(resources);
     decreaseUsedResources(resources);
+    processPendingItems();
+  }
+
+  private void processPendingItems() {
     processPendingFutures(getPendingItemsThatCanBeProcessed());
   }
 
@@ -135,7 +187,29 @@ public class ListeningMultiSemaphore {
         resources.allValuesLessThanOrEqual(maximumValues),
         "Resource amounts (%s) must be capped to the maximum amounts (%s)",
         resources, maximumValues);
-    return usedValues.append(resources).allValuesLessThanOrEqual(maximumValues);
+    return usedValues.append(resources).allValuesLessThanOrEqual(maximumValues) &&
+        checkIfHostHasRoomFor(resources);
+  }
+
+  /**
+   * Regardless of the host load, work is always let through while no CPU or memory is handed out,
+   * so that the build keeps making progress no matter how busy the rest of the host is.
+   */
+  private synchronized boolean checkIfHostHasRoomFor(ResourceAmounts resources) {
+    if (!hostResourceMonitor.isPresent() ||
+        (usedValues.getCpu() == 0 && usedValues.getMemory() == 0)) {
+      return true;
+    }
+    ResourceAmounts capacity = hostResourceMonitor.get().getCapacity();
+    ResourceAmounts hostUsage = hostResourceMonitor.get().getUsage();
+    // The host readings include the jobs this semaphore is running, which are already accounted
+    // for by what they reserved.
+    int otherCpu = Math.max(0, hostUsage.getCpu() - usedValues.getCpu());
+    int otherMemory = Math.max(0, hostUsage.getMemory() - usedValues.getMemory());
+    int freeCpu = capacity.getCpu() - usedValues.getCpu() - otherCpu;
+    int freeMemory = capacity.getMemory() - usedValues.getMemory() - otherMemory;
+    return (resources.getCpu() == 0 || resources.getCpu() <= freeCpu) &&
+        (resources.getMemory() == 0 || resources.getMemory() <= freeMemory);
   }
 
   private synchronized void increaseUsedResources(ResourceAmounts resources) {
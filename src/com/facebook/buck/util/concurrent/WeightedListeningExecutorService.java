@@ -72,10 +72,11 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
 
   private <T> ListenableFuture<T> submitWithSemaphore(
       final Callable<T> callable,
-      final ResourceAmounts amounts) {
+      final ResourceAmounts amounts,
+      long priority) {
     ListenableFuture<T> future =
         Futures.transformAsync(
-            semaphore.acquire(amounts),
+            semaphore.acquire(amounts, priority),
             input -> {
               try {
                 return Futures.immediateFuture(callable.call());
@@ -109,7 +110,8 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
           task.run();
           return result;
         },
-        amounts);
+        amounts,
+        ListeningMultiSemaphore.DEFAULT_PRIORITY);
   }
 
   @Nonnull
@@ -119,7 +121,19 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
   }
 
   public <T> ListenableFuture<T> submit(Callable<T> task, ResourceAmounts amounts) {
-    return submitWithSemaphore(task, amounts);
+    return submitWithSemaphore(task, amounts, ListeningMultiSemaphore.DEFAULT_PRIORITY);
+  }
+
+  /**
+   * Submits a task that, while waiting for resources, is run ahead of tasks of lower priority.
+   *
+   * @see ListeningMultiSemaphore#acquire(ResourceAmounts, long)
+   */
+  public <T> ListenableFuture<T> submit(
+      Callable<T> task,
+      ResourceAmounts amounts,
+      long priority) {
+    return submitWithSemaphore(task, amounts, priority);
   }
 
   @Nonnull
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.spawn;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.BgProcessKiller;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Launches processes through a small helper process instead of forking the JVM. Forking a daemon
+ * with a large heap is expensive even with posix_spawn, and a C++ build launches tens of thousands
+ * of compiler processes. The helper is started on first use, and talks to us over a unix domain
+ * socket. If it cannot be started, or dies, it is disabled and callers fall back to launching
+ * processes themselves.
+ */
+public class SpawnHelper implements Closeable {
+
+  private static final Logger LOG = Logger.get(SpawnHelper.class);
+
+  /**
+   * Path to the spawn_helper.py script. We can't use PackagedResource here because the helper is
+   * shared by every cell of the daemon.
+   */
+  private static final String PATH_TO_SPAWN_HELPER_PY = System.getProperty(
+      "buck.path_to_spawn_helper_py",
+      // Fall back on this value when running Buck from an IDE.
+      new File("src/com/facebook/buck/util/spawn/spawn_helper.py").getAbsolutePath());
+
+  private static final String READY = "ready";
+
+  private final ImmutableList<String> helperCommand;
+  private final ExecutorService outputReaders;
+  private final Queue<SpawnHelperConnection> idleConnections = new ConcurrentLinkedQueue<>();
+
+  @GuardedBy("this")
+  @Nullable
+  private Process helperProcess;
+  @GuardedBy("this")
+  @Nullable
+  private Path socketDirectory;
+  private volatile boolean disabled = false;
+  private volatile boolean closed = false;
+
+  public SpawnHelper(String pythonInterpreter) {
+    this(ImmutableList.of(pythonInterpreter, PATH_TO_SPAWN_HELPER_PY));
+  }
+
+  @VisibleForTesting
+  SpawnHelper(ImmutableList<String> helperCommand) {
+    this.helperCommand = helperCommand;
+    this.outputReaders = Executors.newCachedThreadPool(
+        new MostExecutors.NamedThreadFactory("SpawnHelper output reader"));
+  }
+
+  /**
+   * Launches a process through the helper.
+   *
+   * @return the launched process, or {@link Optional#empty()} if the helper is not available, in
+   *     which case the caller should launch the process itself.
+   * @throws IOException if the helper could not launch the command, for example because it does
+   *     not exist.
+   */
+  public Optional<Process> spawn(
+      ImmutableList<String> command,
+      Optional<Path> directory,
+      ImmutableMap<String, String> environment) throws IOException {
+    Optional<SpawnHelperConnection> connection = getConnection();
+    if (!connection.isPresent()) {
+      return Optional.empty();
+    }
+
+    SpawnHelperConnection.Frame response;
+    try {
+      connection.get().writeFrame(
+          SpawnHelperConnection.REQUEST,
+          encodeRequest(command, directory, environment));
+      response = connection.get().readFrame();
+      if (response.type != SpawnHelperConnection.STARTED &&
+          response.type != SpawnHelperConnection.FAILED) {
+        throw new IOException(
+            String.format("Unexpected frame of type %c from spawn helper.", (char) response.type));
+      }
+    } catch (IOException e) {
+      disable(e);
+      release(connection.get(), /* reusable */ false);
+      return Optional.empty();
+    }
+
+    if (response.type == SpawnHelperConnection.FAILED) {
+      release(connection.get(), /* reusable */ true);
+      throw new IOException(
+          String.format(
+              "Cannot run program \"%s\": %s",
+              command.get(0),
+              new String(response.payload, StandardCharsets.UTF_8)));
+    }
+
+    SpawnedProcess process =
+        new SpawnedProcess(this, connection.get(), response.getPayloadAsInt());
+    outputReaders.execute(process::readUntilExit);
+    return Optional.of(process);
+  }
+
+  private static byte[] encodeRequest(
+      ImmutableList<String> command,
+      Optional<Path> directory,
+      ImmutableMap<String, String> environment) throws IOException {
+    Map<String, Object> request = new HashMap<>();
+    request.put("command", command);
+    request.put("directory", directory.map(Path::toString).orElse(null));
+    request.put("environment", environment);
+    return ObjectMappers.newDefaultInstance().writeValueAsBytes(request);
+  }
+
+  private Optional<SpawnHelperConnection> getConnection() {
+    SpawnHelperConnection connection = idleConnections.poll();
+    if (connection != null) {
+      return Optional.of(connection);
+    }
+    Optional<Path> socketPath = ensureStarted();
+    if (!socketPath.isPresent()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(SpawnHelperConnection.connect(socketPath.get()));
+    } catch (IOException e) {
+      disable(e);
+      return Optional.empty();
+    }
+  }
+
+  private synchronized Optional<Path> ensureStarted() {
+    if (disabled || closed) {
+      return Optional.empty();
+    }
+    if (helperProcess != null) {
+      return Optional.of(getSocketPath());
+    }
+
+    try {
+      socketDirectory = Files.createTempDirectory("buck-spawn");
+      ProcessBuilder builder = new ProcessBuilder(
+          ImmutableList.<String>builder()
+              .addAll(helperCommand)
+              .add(getSocketPath().toString())
+              .build());
+      builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+      helperProcess = BgProcessKiller.startProcess(builder);
+      // The helper exits once we close its stdin, so it is kept open until we are closed.
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(helperProcess.getInputStream(), StandardCharsets.UTF_8));
+      String line = reader.readLine();
+      if (!READY.equals(line)) {
+        throw new IOException(
+            String.format("Spawn helper did not start, its first line of output was: %s", line));
+      }
+      LOG.info("Started spawn helper listening on %s.", getSocketPath());
+      return Optional.of(getSocketPath());
+    } catch (IOException e) {
+      disable(e);
+      return Optional.empty();
+    }
+  }
+
+  @GuardedBy("this")
+  private Path getSocketPath() {
+    return Preconditions.checkNotNull(socketDirectory).resolve("sock");
+  }
+
+  /**
+   * Hands a connection back once the process it ran has exited.
+   */
+  void release(SpawnHelperConnection connection, boolean reusable) {
+    if (reusable && !disabled && !closed) {
+      idleConnections.add(connection);
+      return;
+    }
+    closeQuietly(connection);
+  }
+
+  /**
+   * Stops using the helper for the rest of the life of this object.
+   */
+  void disable(Exception reason) {
+    if (disabled) {
+      return;
+    }
+    disabled = true;
+    LOG.warn(reason, "Spawn helper failed, falling back to launching processes from the JVM.");
+    closeIdleConnections();
+  }
+
+  @VisibleForTesting
+  boolean isDisabled() {
+    return disabled;
+  }
+
+  private void closeIdleConnections() {
+    SpawnHelperConnection connection;
+    while ((connection = idleConnections.poll()) != null) {
+      closeQuietly(connection);
+    }
+  }
+
+  private static void closeQuietly(SpawnHelperConnection connection) {
+    try {
+      connection.close();
+    } catch (IOException e) {
+      LOG.debug(e, "Cannot close connection to the spawn helper.");
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    closeIdleConnections();
+    try {
+      if (helperProcess != null) {
+        helperProcess.getOutputStream().close();
+        helperProcess.destroy();
+        helperProcess.waitFor();
+        helperProcess = null;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      outputReaders.shutdown();
+      if (socketDirectory != null) {
+        Files.deleteIfExists(getSocketPath());
+        Files.deleteIfExists(socketDirectory);
+        socketDirectory = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.spawn;
+
+import com.facebook.buck.io.unixsocket.UnixDomainSocket;
+import com.google.common.primitives.Ints;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A connection to the spawn helper. Each connection runs a single process at a time, and is
+ * handed back to the {@link SpawnHelper} once that process exits. Messages in either direction
+ * are framed as a one byte type, a four byte big-endian length and the payload.
+ */
+final class SpawnHelperConnection implements Closeable {
+
+  // Sent to the helper.
+  static final byte REQUEST = 'R';
+  static final byte STDIN = 'I';
+  static final byte CLOSE_STDIN = 'C';
+  static final byte KILL = 'K';
+
+  // Received from the helper.
+  static final byte STARTED = 'S';
+  static final byte FAILED = 'F';
+  static final byte STDOUT = 'O';
+  static final byte STDERR = 'E';
+  static final byte EXITED = 'X';
+
+  private static final int HEADER_SIZE = 5;
+
+  private final UnixDomainSocket socket;
+  private final DataInputStream input;
+  private final OutputStream output;
+
+  private SpawnHelperConnection(UnixDomainSocket socket) {
+    this.socket = socket;
+    this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.output = socket.getOutputStream();
+  }
+
+  static SpawnHelperConnection connect(Path socketPath) throws IOException {
+    return new SpawnHelperConnection(UnixDomainSocket.createSocketWithPath(socketPath));
+  }
+
+  synchronized void writeFrame(byte type, byte[] payload, int offset, int length)
+      throws IOException {
+    // Write the whole frame at once so it goes out in a single write call.
+    ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+    frame.put(type);
+    frame.putInt(length);
+    frame.put(payload, offset, length);
+    output.write(frame.array());
+  }
+
+  void writeFrame(byte type, byte[] payload) throws IOException {
+    writeFrame(type, payload, 0, payload.length);
+  }
+
+  /**
+   * Blocks until the next frame arrives.
+   *
+   * @throws java.io.EOFException if the helper closed the connection.
+   */
+  Frame readFrame() throws IOException {
+    byte type = input.readByte();
+    byte[] payload = new byte[input.readInt()];
+    input.readFully(payload);
+    return new Frame(type, payload);
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  static final class Frame {
+    final byte type;
+    final byte[] payload;
+
+    Frame(byte type, byte[] payload) {
+      this.type = type;
+      this.payload = payload;
+    }
+
+    int getPayloadAsInt() throws IOException {
+      if (payload.length != Integer.BYTES) {
+        throw new IOException(
+            String.format(
+                "Expected an int in a frame of type %c, got %d bytes.",
+                (char) type,
+                payload.length));
+      }
+      return Ints.fromByteArray(payload);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.spawn;
+
+import com.facebook.buck.util.Ansi;
+import com.facebook.buck.util.BgProcessKiller;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessHelper;
+import com.facebook.buck.util.ProcessRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.Optional;
+
+/**
+ * A {@link DefaultProcessExecutor} which launches processes through a {@link SpawnHelper}.
+ * Processes whose streams are redirected are still launched from the JVM.
+ */
+public class SpawnHelperProcessExecutor extends DefaultProcessExecutor {
+
+  private final Ansi ansi;
+  private final ProcessHelper processHelper;
+  private final ProcessRegistry processRegistry;
+  private final SpawnHelper spawnHelper;
+
+  public SpawnHelperProcessExecutor(Console console, SpawnHelper spawnHelper) {
+    this(
+        console.getStdOut(),
+        console.getStdErr(),
+        console.getAnsi(),
+        ProcessHelper.getInstance(),
+        ProcessRegistry.getInstance(),
+        spawnHelper);
+  }
+
+  protected SpawnHelperProcessExecutor(
+      PrintStream stdOutStream,
+      PrintStream stdErrStream,
+      Ansi ansi,
+      ProcessHelper processHelper,
+      ProcessRegistry processRegistry,
+      SpawnHelper spawnHelper) {
+    super(stdOutStream, stdErrStream, ansi, processHelper, processRegistry);
+    this.ansi = ansi;
+    this.processHelper = processHelper;
+    this.processRegistry = processRegistry;
+    this.spawnHelper = spawnHelper;
+  }
+
+  @Override
+  public ProcessExecutor cloneWithOutputStreams(
+      PrintStream newStdOutStream,
+      PrintStream newStdErrStream) {
+    return new SpawnHelperProcessExecutor(
+        newStdOutStream,
+        newStdErrStream,
+        ansi,
+        processHelper,
+        processRegistry,
+        spawnHelper);
+  }
+
+  @Override
+  protected Process startProcess(ProcessBuilder pb) throws IOException {
+    if (!canSpawnThroughHelper(pb)) {
+      return super.startProcess(pb);
+    }
+    BgProcessKiller.checkArmedStatus();
+    Optional<Process> process = spawnHelper.spawn(
+        ImmutableList.copyOf(pb.command()),
+        Optional.ofNullable(pb.directory()).map(File::toPath),
+        ImmutableMap.copyOf(pb.environment()));
+    if (process.isPresent()) {
+      return process.get();
+    }
+    return super.startProcess(pb);
+  }
+
+  private static boolean canSpawnThroughHelper(ProcessBuilder pb) {
+    return !pb.redirectErrorStream() &&
+        pb.redirectInput().type() == Redirect.Type.PIPE &&
+        pb.redirectOutput().type() == Redirect.Type.PIPE &&
+        pb.redirectError().type() == Redirect.Type.PIPE;
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.spawn;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.ProcessHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A process launched by the spawn helper. Its output is streamed back over the connection it was
+ * launched on, and is read on a separate thread so that callers can treat it like any other
+ * {@link Process}.
+ */
+final class SpawnedProcess extends Process implements ProcessHelper.ProcessWithPid {
+
+  private static final Logger LOG = Logger.get(SpawnedProcess.class);
+
+  private final SpawnHelper helper;
+  private final SpawnHelperConnection connection;
+  private final int pid;
+  private final FrameInputStream stdout = new FrameInputStream();
+  private final FrameInputStream stderr = new FrameInputStream();
+  private final OutputStream stdin = new StdinOutputStream();
+  private final CountDownLatch exited = new CountDownLatch(1);
+  private volatile int exitCode;
+
+  // Nothing may be written to the connection once the process exited, as it may already be
+  // running the next process by then.
+  @GuardedBy("this")
+  private boolean finished = false;
+
+  SpawnedProcess(SpawnHelper helper, SpawnHelperConnection connection, int pid) {
+    this.helper = helper;
+    this.connection = connection;
+    this.pid = pid;
+  }
+
+  /**
+   * Forwards the output of the process until it exits.
+   */
+  void readUntilExit() {
+    boolean connectionIsReusable = false;
+    try {
+      while (true) {
+        SpawnHelperConnection.Frame frame = connection.readFrame();
+        if (frame.type == SpawnHelperConnection.STDOUT) {
+          stdout.add(frame.payload);
+        } else if (frame.type == SpawnHelperConnection.STDERR) {
+          stderr.add(frame.payload);
+        } else if (frame.type == SpawnHelperConnection.EXITED) {
+          exitCode = frame.getPayloadAsInt();
+          connectionIsReusable = true;
+          break;
+        } else {
+          throw new IOException(
+              String.format("Unexpected frame of type %c from spawn helper.", (char) frame.type));
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Lost the connection to the spawn helper while process %d was running.", pid);
+      helper.disable(e);
+      exitCode = 1;
+    } finally {
+      synchronized (this) {
+        finished = true;
+      }
+      stdout.finish();
+      stderr.finish();
+      exited.countDown();
+      helper.release(connection, connectionIsReusable);
+    }
+  }
+
+  /**
+   * @return the pid the spawn helper reported for the process, so that it is tracked like any
+   *     process the JVM started itself.
+   */
+  @Override
+  public long getPid() {
+    return pid;
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return stdin;
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return stdout;
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    return stderr;
+  }
+
+  @Override
+  public int waitFor() throws InterruptedException {
+    exited.await();
+    return exitCode;
+  }
+
+  @Override
+  public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+    return exited.await(timeout, unit);
+  }
+
+  @Override
+  public int exitValue() {
+    if (exited.getCount() > 0) {
+      throw new IllegalThreadStateException("process hasn't exited");
+    }
+    return exitCode;
+  }
+
+  @Override
+  public boolean isAlive() {
+    return exited.getCount() > 0;
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (finished) {
+      return;
+    }
+    try {
+      connection.writeFrame(SpawnHelperConnection.KILL, new byte[0]);
+    } catch (IOException e) {
+      LOG.warn(e, "Cannot ask the spawn helper to kill process %d.", pid);
+    }
+  }
+
+  private class StdinOutputStream extends OutputStream {
+    @GuardedBy("SpawnedProcess.this")
+    private boolean closed = false;
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      synchronized (SpawnedProcess.this) {
+        if (closed || finished) {
+          throw new IOException("Stream closed");
+        }
+        if (len > 0) {
+          connection.writeFrame(SpawnHelperConnection.STDIN, b, off, len);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      synchronized (SpawnedProcess.this) {
+        if (closed || finished) {
+          closed = true;
+          return;
+        }
+        closed = true;
+        connection.writeFrame(SpawnHelperConnection.CLOSE_STDIN, new byte[0]);
+      }
+    }
+  }
+
+  /**
+   * Hands out the chunks of output received from the helper, in order.
+   */
+  private static class FrameInputStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+    @Nullable
+    private byte[] current;
+    private int position;
+    private boolean ended = false;
+
+    void add(byte[] chunk) {
+      if (chunk.length > 0) {
+        chunks.add(chunk);
+      }
+    }
+
+    void finish() {
+      chunks.add(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      byte[] chunk = current;
+      int count = Math.min(len, chunk.length - position);
+      System.arraycopy(chunk, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public synchronized int available() {
+      return current == null ? 0 : current.length - position;
+    }
+
+    private boolean fill() throws IOException {
+      while (current == null || position == current.length) {
+        if (ended) {
+          return false;
+        }
+        byte[] next;
+        try {
+          next = chunks.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        if (next == END) {
+          ended = true;
+          current = null;
+          return false;
+        }
+        current = next;
+        position = 0;
+      }
+      return true;
+    }
+  }
+}
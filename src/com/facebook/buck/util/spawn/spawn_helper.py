@@ -0,0 +1,254 @@
+#!/usr/bin/env python
+"""Launches subprocesses on behalf of the buck daemon.
+
+Forking a large JVM is expensive, even with posix_spawn, so the daemon starts
+this small helper once and asks it to launch processes instead. The helper
+listens on the unix domain socket given on the command line and prints "ready"
+once it accepts connections. It exits when its stdin is closed, which happens
+when the daemon goes away.
+
+Every connection runs one process at a time. All messages are frames made of
+a one byte type, a four byte big-endian length and the payload.
+
+Daemon to helper:
+  R  JSON request: {"command": [...], "directory": ..., "environment": {...}}
+  I  bytes to write to the stdin of the process
+  C  close the stdin of the process
+  K  terminate the process
+
+Helper to daemon:
+  S  the process was started, payload is its pid as a four byte int
+  F  the process could not be started, payload is the error message
+  O  bytes the process wrote to stdout
+  E  bytes the process wrote to stderr
+  X  the process exited, payload is its exit code as a four byte int
+"""
+
+from __future__ import print_function
+
+import json
+import os
+import signal
+import socket
+import struct
+import subprocess
+import sys
+import threading
+
+try:
+    import queue
+except ImportError:
+    import Queue as queue
+
+HEADER = struct.Struct('>cI')
+INT = struct.Struct('>i')
+READ_SIZE = 64 * 1024
+
+
+def read_exactly(conn, size):
+    chunks = []
+    while size > 0:
+        chunk = conn.recv(size)
+        if not chunk:
+            return None
+        chunks.append(chunk)
+        size -= len(chunk)
+    return b''.join(chunks)
+
+
+def read_frame(conn):
+    header = read_exactly(conn, HEADER.size)
+    if header is None:
+        return None, None
+    frame_type, length = HEADER.unpack(header)
+    payload = read_exactly(conn, length) if length else b''
+    if payload is None:
+        return None, None
+    return frame_type, payload
+
+
+class Connection(object):
+    def __init__(self, conn):
+        self.conn = conn
+        self.write_lock = threading.Lock()
+
+    def write_frame(self, frame_type, payload):
+        with self.write_lock:
+            self.conn.sendall(HEADER.pack(frame_type, len(payload)) + payload)
+
+
+class RunningProcess(object):
+    def __init__(self, connection, request):
+        self.connection = connection
+        environment = request.get('environment')
+        if environment is not None:
+            environment = dict(
+                (str(key), str(value)) for key, value in environment.items())
+        self.process = subprocess.Popen(
+            [str(arg) for arg in request['command']],
+            cwd=request.get('directory'),
+            env=environment,
+            stdin=subprocess.PIPE,
+            stdout=subprocess.PIPE,
+            stderr=subprocess.PIPE,
+            close_fds=True)
+        self.stdin_lock = threading.Lock()
+        self.stdin_closed = False
+        # Writes and the final close are applied by a single thread, strictly
+        # in the order their frames arrived. None stands for the close.
+        self.stdin_queue = queue.Queue()
+
+    def start(self):
+        self.connection.write_frame(b'S', INT.pack(self.process.pid))
+        start_thread(self.feed_stdin)
+        pumps = [
+            start_thread(self.pump, self.process.stdout, b'O'),
+            start_thread(self.pump, self.process.stderr, b'E'),
+        ]
+        start_thread(self.wait, pumps)
+
+    def pump(self, stream, frame_type):
+        fd = stream.fileno()
+        try:
+            while True:
+                data = os.read(fd, READ_SIZE)
+                if not data:
+                    break
+                self.connection.write_frame(frame_type, data)
+        except (IOError, OSError, socket.error):
+            pass
+        finally:
+            stream.close()
+
+    def wait(self, pumps):
+        for pump in pumps:
+            pump.join()
+        returncode = self.process.wait()
+        # Report deaths by signal the way the JVM does.
+        if returncode < 0:
+            returncode = 128 - returncode
+        self.close_stdin()
+        # Stops the stdin feeder in case the daemon never closes stdin.
+        self.stdin_queue.put(None)
+        try:
+            self.connection.write_frame(b'X', INT.pack(returncode))
+        except socket.error:
+            pass
+
+    def queue_stdin(self, data):
+        self.stdin_queue.put(data)
+
+    def queue_close_stdin(self):
+        self.stdin_queue.put(None)
+
+    def feed_stdin(self):
+        while True:
+            data = self.stdin_queue.get()
+            if data is None:
+                self.close_stdin()
+                return
+            self.write_stdin(data)
+
+    def write_stdin(self, data):
+        with self.stdin_lock:
+            if self.stdin_closed:
+                return
+            try:
+                self.process.stdin.write(data)
+                self.process.stdin.flush()
+            except (IOError, OSError):
+                pass
+
+    def close_stdin(self):
+        with self.stdin_lock:
+            if self.stdin_closed:
+                return
+            self.stdin_closed = True
+            try:
+                self.process.stdin.close()
+            except (IOError, OSError):
+                pass
+
+    def terminate(self):
+        try:
+            self.process.terminate()
+        except OSError:
+            pass
+
+
+def start_thread(target, *args):
+    thread = threading.Thread(target=target, args=args)
+    thread.daemon = True
+    thread.start()
+    return thread
+
+
+def serve(conn):
+    connection = Connection(conn)
+    process = None
+    try:
+        while True:
+            frame_type, payload = read_frame(conn)
+            if frame_type is None:
+                break
+            if frame_type == b'R':
+                try:
+                    process = RunningProcess(
+                        connection, json.loads(payload.decode('utf-8')))
+                except (IOError, OSError, ValueError, KeyError) as e:
+                    process = None
+                    connection.write_frame(b'F', str(e).encode('utf-8'))
+                    continue
+                process.start()
+            elif process is None:
+                continue
+            elif frame_type == b'I':
+                # Writes to stdin can block, so do not hold up the connection.
+                process.queue_stdin(payload)
+            elif frame_type == b'C':
+                process.queue_close_stdin()
+            elif frame_type == b'K':
+                process.terminate()
+    except socket.error:
+        pass
+    finally:
+        if process is not None and process.process.poll() is None:
+            process.terminate()
+        conn.close()
+
+
+def main():
+    socket_path = sys.argv[1]
+
+    # The daemon kills the processes it spawned by sending SIGHUP to its
+    # process group. The helper is part of that group and has to survive it,
+    # but the processes it launches should still die. A Python level handler
+    # is reset to the default one in children, unlike SIG_IGN.
+    signal.signal(signal.SIGHUP, lambda signum, frame: None)
+
+    server = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+    server.bind(socket_path)
+    server.listen(64)
+
+    def watch_parent():
+        # Exit as soon as the daemon closes our stdin, whatever the reason.
+        while sys.stdin.read(READ_SIZE):
+            pass
+        try:
+            os.unlink(socket_path)
+        except OSError:
+            pass
+        os._exit(0)
+
+    start_thread(watch_parent)
+
+    sys.stdout.write('ready\n')
+    sys.stdout.flush()
+
+    while True:
+        conn, _ = server.accept()
+        start_thread(serve, conn)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.trace;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads traces written by {@link BinaryChromeTraceWriter} one event at a time, as the JSON
+ * objects chrome://tracing expects.
+ */
+public class BinaryChromeTraceReader {
+
+  private static final Gson GSON = new Gson();
+
+  private final InputStream input;
+  private final List<String> stringTable;
+  private long previousMicroTime;
+
+  /**
+   * @param input must be positioned at the start of the trace.
+   */
+  public BinaryChromeTraceReader(InputStream input) throws IOException {
+    this.input = input instanceof BufferedInputStream ? input : new BufferedInputStream(input);
+    this.stringTable = new ArrayList<>();
+    this.previousMicroTime = 0;
+
+    if (!readMagic(this.input)) {
+      throw new IOException("Not a binary Chrome trace.");
+    }
+    int version = this.input.read();
+    if (version != BinaryChromeTraceWriter.VERSION) {
+      throw new IOException(String.format("Unsupported binary trace version %d.", version));
+    }
+  }
+
+  /**
+   * Checks whether the stream starts with a binary trace, without consuming any of it.
+   *
+   * @param input must support {@link InputStream#mark(int)}.
+   */
+  public static boolean isBinaryTrace(InputStream input) throws IOException {
+    input.mark(BinaryChromeTraceWriter.MAGIC.length);
+    try {
+      return readMagic(input);
+    } finally {
+      input.reset();
+    }
+  }
+
+  private static boolean readMagic(InputStream input) throws IOException {
+    for (byte expected : BinaryChromeTraceWriter.MAGIC) {
+      if (input.read() != expected) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the next event, or {@link Optional#empty()} at the end of the trace. A trace that was
+   *     cut short, for example because buck was killed, ends at its last complete event.
+   */
+  public Optional<JsonObject> next() throws IOException {
+    try {
+      while (true) {
+        int type = input.read();
+        if (type == -1) {
+          return Optional.empty();
+        }
+        switch (type) {
+          case BinaryChromeTraceWriter.STRING_RECORD:
+            stringTable.add(readString());
+            break;
+          case BinaryChromeTraceWriter.EVENT_RECORD:
+            return Optional.of(readEvent());
+          default:
+            throw new IOException(String.format("Unknown binary trace record type %d.", type));
+        }
+      }
+    } catch (EOFException e) {
+      return Optional.empty();
+    }
+  }
+
+  private JsonObject readEvent() throws IOException {
+    JsonObject event = new JsonObject();
+    event.addProperty("cat", readRef());
+    event.addProperty("name", readRef());
+    event.addProperty("ph", String.valueOf((char) readByte()));
+    event.addProperty("pid", readVarint());
+    event.addProperty("tid", readVarint());
+    long microTime = previousMicroTime + readSignedVarint();
+    previousMicroTime = microTime;
+    event.addProperty("ts", microTime);
+    event.addProperty("tts", readSignedVarint());
+    JsonObject args = new JsonObject();
+    long argCount = readVarint();
+    for (long i = 0; i < argCount; i++) {
+      String key = readRef();
+      args.addProperty(key, readRef());
+    }
+    event.add("args", args);
+    return event;
+  }
+
+  private String readRef() throws IOException {
+    long ref = readVarint();
+    if (ref == 0) {
+      return readString();
+    }
+    if (ref > stringTable.size()) {
+      throw new IOException(String.format("Undefined string %d in binary trace.", ref - 1));
+    }
+    return stringTable.get((int) (ref - 1));
+  }
+
+  private String readString() throws IOException {
+    long length = readVarint();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("String too long in binary trace.");
+    }
+    byte[] bytes = new byte[(int) length];
+    int offset = 0;
+    while (offset < bytes.length) {
+      int read = input.read(bytes, offset, bytes.length - offset);
+      if (read == -1) {
+        throw new EOFException();
+      }
+      offset += read;
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private int readByte() throws IOException {
+    int value = input.read();
+    if (value == -1) {
+      throw new EOFException();
+    }
+    return value;
+  }
+
+  private long readVarint() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in binary trace.");
+  }
+
+  private long readSignedVarint() throws IOException {
+    long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Converts a whole binary trace into the JSON array format, one event at a time.
+   */
+  public static void convertToJson(InputStream input, Writer output) throws IOException {
+    BinaryChromeTraceReader reader = new BinaryChromeTraceReader(input);
+    JsonWriter jsonWriter = new JsonWriter(output);
+    jsonWriter.beginArray();
+    for (Optional<JsonObject> event = reader.next(); event.isPresent(); event = reader.next()) {
+      GSON.toJson(event.get(), jsonWriter);
+    }
+    jsonWriter.endArray();
+    jsonWriter.flush();
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.trace;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Writes Chrome trace events in a compact binary format, which is much cheaper to produce than
+ * the JSON that chrome://tracing reads. {@link BinaryChromeTraceReader} turns it back into JSON.
+ * <p>
+ * Records are encoded into a fixed number of preallocated buffers, and a background thread writes
+ * the full ones to the output, so memory use is bounded no matter how long the build runs. The
+ * format is:
+ * <pre>
+ *   trace  := "BTRC" version:u8 record*
+ *   record := 0x01 length:varint utf8-bytes
+ *                 (adds a string to the string table, ids are assigned from 0)
+ *           | 0x02 category:ref name:ref phase:u8 pid:varint tid:varint
+ *                 ts-delta:svarint tts:svarint argc:varint (key:ref value:ref)*
+ *                 (a trace event, ts is relative to the ts of the previous event)
+ *   ref    := 0 length:varint utf8-bytes   (a string that is not in the table)
+ *           | id + 1:varint                (a string from the table)
+ * </pre>
+ * Varints are unsigned LEB128, svarints are zigzag encoded first.
+ */
+public class BinaryChromeTraceWriter implements Closeable {
+
+  private static final Logger LOG = Logger.get(BinaryChromeTraceWriter.class);
+
+  static final byte[] MAGIC = {'B', 'T', 'R', 'C'};
+  static final int VERSION = 1;
+  static final int STRING_RECORD = 1;
+  static final int EVENT_RECORD = 2;
+
+  public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+  public static final int DEFAULT_BUFFER_COUNT = 4;
+
+  // Strings that are too long or come after the table is full are written out every time, so
+  // that the table stays small.
+  private static final int MAX_TABLE_STRING_LENGTH = 512;
+  private static final int MAX_TABLE_SIZE = 1 << 16;
+
+  private final OutputStream output;
+  private final BlockingQueue<Buffer> freeBuffers;
+  private final BlockingQueue<Buffer> fullBuffers;
+  private final Thread writerThread;
+
+  @GuardedBy("this")
+  private Buffer current;
+  @GuardedBy("this")
+  private long handedOffBuffers;
+  @GuardedBy("this")
+  private final Buffer record;
+  @GuardedBy("this")
+  private final Map<String, Integer> stringTable;
+  // The strings the record being encoded adds to the table.
+  @GuardedBy("this")
+  private final List<String> newStrings;
+  @GuardedBy("this")
+  private long previousMicroTime;
+  @GuardedBy("this")
+  private boolean closed;
+  // Set when only part of a record could be handed to the writer thread, after which nothing
+  // else can be written.
+  @GuardedBy("this")
+  @Nullable
+  private IOException partialRecordFailure;
+
+  @Nullable
+  private volatile IOException failure;
+
+  public BinaryChromeTraceWriter(OutputStream output, ThreadFactory threadFactory)
+      throws IOException {
+    this(output, threadFactory, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+  }
+
+  public BinaryChromeTraceWriter(
+      OutputStream output,
+      ThreadFactory threadFactory,
+      int bufferSize,
+      int bufferCount) throws IOException {
+    Preconditions.checkArgument(bufferSize > 0);
+    Preconditions.checkArgument(bufferCount > 1);
+    this.output = output;
+    this.freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+    // One more slot for the buffer that tells the writer thread to stop.
+    this.fullBuffers = new ArrayBlockingQueue<>(bufferCount + 1);
+    for (int i = 1; i < bufferCount; i++) {
+      freeBuffers.add(new Buffer(bufferSize));
+    }
+    this.current = new Buffer(bufferSize);
+    this.handedOffBuffers = 0;
+    this.record = new Buffer(256);
+    this.stringTable = new HashMap<>();
+    this.newStrings = new ArrayList<>();
+    this.previousMicroTime = 0;
+    this.closed = false;
+    this.partialRecordFailure = null;
+    this.failure = null;
+
+    output.write(MAGIC);
+    output.write(VERSION);
+
+    this.writerThread = threadFactory.newThread(this::writeBuffers);
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  /**
+   * Adds an event to the trace. Only waits if the writer thread has fallen behind by every
+   * buffer.
+   */
+  public synchronized void writeEvent(
+      String category,
+      String name,
+      String phase,
+      long processId,
+      long threadId,
+      long microTime,
+      long microThreadUserTime,
+      Map<String, String> args) throws IOException {
+    Preconditions.checkState(!closed, "The trace was already closed.");
+    Preconditions.checkArgument(phase.length() == 1, "Unexpected phase: %s", phase);
+    throwIfFailed();
+
+    // String definitions go in front of the event that first uses them.
+    record.clear();
+    newStrings.clear();
+    int categoryRef = intern(category);
+    int nameRef = intern(name);
+    int[] argRefs = new int[args.size() * 2];
+    int i = 0;
+    for (Map.Entry<String, String> arg : args.entrySet()) {
+      argRefs[i++] = intern(arg.getKey());
+      argRefs[i++] = intern(arg.getValue());
+    }
+
+    record.putByte(EVENT_RECORD);
+    putRef(categoryRef, category);
+    putRef(nameRef, name);
+    record.putByte(phase.charAt(0));
+    record.putVarint(processId);
+    record.putVarint(threadId);
+    record.putSignedVarint(microTime - previousMicroTime);
+    record.putSignedVarint(microThreadUserTime);
+    record.putVarint(args.size());
+    i = 0;
+    for (Map.Entry<String, String> arg : args.entrySet()) {
+      putRef(argRefs[i++], arg.getKey());
+      putRef(argRefs[i++], arg.getValue());
+    }
+
+    long startHandedOffBuffers = handedOffBuffers;
+    int startPosition = current.position;
+    try {
+      append(record);
+    } catch (IOException e) {
+      // The reader never sees the string records of a failed event, so they must not stay in the
+      // table either.
+      for (String string : newStrings) {
+        stringTable.remove(string);
+      }
+      if (handedOffBuffers == startHandedOffBuffers) {
+        current.position = startPosition;
+      } else {
+        partialRecordFailure = e;
+      }
+      throw e;
+    }
+    previousMicroTime = microTime;
+  }
+
+  /**
+   * @return the reference to the string, or 0 if it is written out in full. Adds a string record
+   *     to {@link #record} the first time a string goes into the table.
+   */
+  @GuardedBy("this")
+  private int intern(String string) {
+    Integer id = stringTable.get(string);
+    if (id != null) {
+      return id + 1;
+    }
+    if (string.length() > MAX_TABLE_STRING_LENGTH || stringTable.size() >= MAX_TABLE_SIZE) {
+      return 0;
+    }
+    id = stringTable.size();
+    stringTable.put(string, id);
+    newStrings.add(string);
+    record.putByte(STRING_RECORD);
+    record.putString(string);
+    return id + 1;
+  }
+
+  @GuardedBy("this")
+  private void putRef(int ref, String string) {
+    record.putVarint(ref);
+    if (ref == 0) {
+      record.putString(string);
+    }
+  }
+
+  @GuardedBy("this")
+  private void append(Buffer source) throws IOException {
+    int offset = 0;
+    while (offset < source.position) {
+      if (current.remaining() == 0) {
+        handOff();
+      }
+      int length = Math.min(current.remaining(), source.position - offset);
+      System.arraycopy(source.bytes, offset, current.bytes, current.position, length);
+      current.position += length;
+      offset += length;
+    }
+  }
+
+  /**
+   * Hands the current buffer to the writer thread and replaces it with a free one. Nothing changes
+   * if this fails.
+   */
+  @GuardedBy("this")
+  private void handOff() throws IOException {
+    try {
+      Buffer next = freeBuffers.take();
+      try {
+        fullBuffers.put(current);
+      } catch (InterruptedException e) {
+        freeBuffers.add(next);
+        throw e;
+      }
+      current = next;
+      handedOffBuffers++;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing the trace.", e);
+    }
+  }
+
+  private void writeBuffers() {
+    while (true) {
+      Buffer buffer;
+      try {
+        buffer = fullBuffers.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (buffer.bytes.length == 0) {
+        return;
+      }
+      if (failure == null) {
+        try {
+          output.write(buffer.bytes, 0, buffer.position);
+        } catch (IOException e) {
+          // Keep taking buffers so that the event thread never blocks on a broken trace.
+          LOG.warn(e, "Failed to write the trace.");
+          failure = e;
+        }
+      }
+      buffer.clear();
+      freeBuffers.add(buffer);
+    }
+  }
+
+  @GuardedBy("this")
+  private void throwIfFailed() throws IOException {
+    if (partialRecordFailure != null) {
+      throw new IOException(
+          "An earlier event was only partly written to the trace.",
+          partialRecordFailure);
+    }
+    IOException e = failure;
+    if (e != null) {
+      throw new IOException("Failed to write the trace.", e);
+    }
+  }
+
+  /**
+   * Writes out the events that are still buffered and closes the output.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (current.position > 0) {
+        handOff();
+      }
+      fullBuffers.put(new Buffer(0));
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing the trace.", e);
+    } finally {
+      output.close();
+    }
+    throwIfFailed();
+  }
+
+  /**
+   * A byte array with a write position, which grows when it is used for a single record.
+   */
+  private static final class Buffer {
+    private byte[] bytes;
+    private int position;
+
+    private Buffer(int size) {
+      this.bytes = new byte[size];
+      this.position = 0;
+    }
+
+    private int remaining() {
+      return bytes.length - position;
+    }
+
+    private void clear() {
+      position = 0;
+    }
+
+    private void ensureRemaining(int length) {
+      if (remaining() < length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + length));
+      }
+    }
+
+    private void putByte(int value) {
+      ensureRemaining(1);
+      bytes[position++] = (byte) value;
+    }
+
+    private void putVarint(long value) {
+      ensureRemaining(10);
+      while ((value & ~0x7FL) != 0) {
+        bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[position++] = (byte) value;
+    }
+
+    private void putSignedVarint(long value) {
+      putVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void putString(String string) {
+      byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+      putVarint(utf8.length);
+      ensureRemaining(utf8.length);
+      System.arraycopy(utf8, 0, bytes, position, utf8.length);
+      position += utf8.length;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Converts a binary trace written by {@link BinaryChromeTraceWriter} into JSON that
+ * chrome://tracing can load.
+ */
+public final class BinaryTraceToJson {
+
+  private BinaryTraceToJson() {}
+
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: java -jar btrace2json.jar TRACE [OUTPUT]");
+      System.exit(1);
+    }
+    try (
+        InputStream input = open(args[0]);
+        Writer output = new BufferedWriter(
+            args.length == 2 ?
+                Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8) :
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+      BinaryChromeTraceReader.convertToJson(input, output);
+    } catch (IOException e) {
+      System.err.println(e.toString());
+      System.exit(1);
+    }
+  }
+
+  private static InputStream open(String path) throws IOException {
+    InputStream input = Files.newInputStream(Paths.get(path));
+    if (path.endsWith(".gz")) {
+      input = new GZIPInputStream(input);
+    }
+    return new BufferedInputStream(input);
+  }
+}
@@ -24,8 +24,14 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
@@ -60,7 +66,7 @@ public class BuildTraces {
 
   private static final Logger logger = Logger.get(BuildTraces.class);
 
-  private static final Pattern TRACES_FILE_PATTERN = Pattern.compile("build\\..*\\.trace$");
+  private static final Pattern TRACES_FILE_PATTERN = Pattern.compile("build\\..*\\.b?trace$");
 
   private final ProjectFilesystem projectFilesystem;
 
@@ -101,10 +107,23 @@ public class BuildTraces {
     }
   }
 
+  /**
+   * Binary traces are converted to the JSON array format, so every stream contains JSON.
+   */
   public Iterable<InputStream> getInputsForTraces(String id) throws IOException {
     ImmutableList.Builder<InputStream> tracesBuilder = ImmutableList.builder();
     for (Path p : getPathsToTraces(id)) {
-      tracesBuilder.add(projectFilesystem.getInputStreamForRelativePath(p));
+      InputStream input =
+          new BufferedInputStream(projectFilesystem.getInputStreamForRelativePath(p));
+      if (BinaryChromeTraceReader.isBinaryTrace(input)) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (InputStream binaryInput = input;
+             Writer writer = new OutputStreamWriter(json, StandardCharsets.UTF_8)) {
+          BinaryChromeTraceReader.convertToJson(binaryInput, writer);
+        }
+        input = new ByteArrayInputStream(json.toByteArray());
+      }
+      tracesBuilder.add(input);
     }
     return tracesBuilder.build();
   }
@@ -149,8 +168,10 @@ public class BuildTraces {
   private boolean isTraceForBuild(Path path, String id) {
     String testPrefix = "build.";
     String testSuffix = "." + id + ".trace";
+    String binaryTestSuffix = "." + id + ".btrace";
     String name = path.getFileName().toString();
-    return name.startsWith(testPrefix) && name.endsWith(testSuffix);
+    return name.startsWith(testPrefix) &&
+        (name.endsWith(testSuffix) || name.endsWith(binaryTestSuffix));
   }
 
   /**
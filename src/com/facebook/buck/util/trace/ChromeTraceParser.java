@@ -24,6 +24,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -84,7 +85,7 @@ public class ChromeTraceParser {
    * satisfied. This method parses only one Chrome trace event at a time, which avoids loading the
    * entire trace into memory.
    * @param pathToTrace is a relative path [to the ProjectFilesystem] to a Chrome trace in the
-   *     "JSON Array Format."
+   *     "JSON Array Format," or in the format of {@link BinaryChromeTraceWriter}.
    * @param chromeTraceEventMatchers set of matchers this invocation of {@code parse()} is trying to
    *     satisfy. Once a matcher finds a match, it will not consider any other events in the trace.
    * @return a {@code Map} where every matcher that found a match will have an entry whose key is
@@ -99,39 +100,29 @@ public class ChromeTraceParser {
     Preconditions.checkArgument(!unmatchedMatchers.isEmpty(), "Must specify at least one matcher");
     Map<ChromeTraceEventMatcher<?>, Object> results = new HashMap<>();
 
-    try (
-        InputStream input = projectFilesystem.newFileInputStream(pathToTrace);
-        JsonReader jsonReader = new JsonReader(new InputStreamReader(input))) {
-      jsonReader.beginArray();
-      Gson gson = new Gson();
-
-      featureSearch:
-      while (true) {
-        // If END_ARRAY is the next token, then there are no more elements in the array.
-        if (jsonReader.peek().equals(JsonToken.END_ARRAY)) {
-          break;
+    try (InputStream input =
+             new BufferedInputStream(projectFilesystem.newFileInputStream(pathToTrace))) {
+      if (BinaryChromeTraceReader.isBinaryTrace(input)) {
+        BinaryChromeTraceReader reader = new BinaryChromeTraceReader(input);
+        for (Optional<JsonObject> event = reader.next(); event.isPresent(); event = reader.next()) {
+          if (match(event.get(), unmatchedMatchers, results)) {
+            break;
+          }
         }
+      } else {
+        JsonReader jsonReader = new JsonReader(new InputStreamReader(input));
+        jsonReader.beginArray();
+        Gson gson = new Gson();
+
+        while (true) {
+          // If END_ARRAY is the next token, then there are no more elements in the array.
+          if (jsonReader.peek().equals(JsonToken.END_ARRAY)) {
+            break;
+          }
 
-        // Verify and extract the name property before invoking any of the matchers.
-        JsonObject event = gson.fromJson(jsonReader, JsonObject.class);
-        JsonElement nameEl = event.get("name");
-        if (nameEl == null || !nameEl.isJsonPrimitive()) {
-          continue;
-        }
-        String name = nameEl.getAsString();
-
-        // Prefer Iterator to Iterable+foreach so we can use remove().
-        for (Iterator<ChromeTraceEventMatcher<?>> iter = unmatchedMatchers.iterator();
-             iter.hasNext(); ) {
-          ChromeTraceEventMatcher<?> chromeTraceEventMatcher = iter.next();
-          Optional<?> result = chromeTraceEventMatcher.test(event, name);
-          if (result.isPresent()) {
-            iter.remove();
-            results.put(chromeTraceEventMatcher, result.get());
-
-            if (unmatchedMatchers.isEmpty()) {
-              break featureSearch;
-            }
+          JsonObject event = gson.fromJson(jsonReader, JsonObject.class);
+          if (match(event, unmatchedMatchers, results)) {
+            break;
           }
         }
       }
@@ -141,6 +132,35 @@ public class ChromeTraceParser {
     return results;
   }
 
+  /**
+   * Runs the matchers that have not found a match yet against the event.
+   *
+   * @return true once every matcher has found a match.
+   */
+  private static boolean match(
+      JsonObject event,
+      Set<ChromeTraceEventMatcher<?>> unmatchedMatchers,
+      Map<ChromeTraceEventMatcher<?>, Object> results) {
+    // Verify and extract the name property before invoking any of the matchers.
+    JsonElement nameEl = event.get("name");
+    if (nameEl == null || !nameEl.isJsonPrimitive()) {
+      return false;
+    }
+    String name = nameEl.getAsString();
+
+    // Prefer Iterator to Iterable+foreach so we can use remove().
+    for (Iterator<ChromeTraceEventMatcher<?>> iter = unmatchedMatchers.iterator();
+         iter.hasNext(); ) {
+      ChromeTraceEventMatcher<?> chromeTraceEventMatcher = iter.next();
+      Optional<?> result = chromeTraceEventMatcher.test(event, name);
+      if (result.isPresent()) {
+        iter.remove();
+        results.put(chromeTraceEventMatcher, result.get());
+      }
+    }
+    return unmatchedMatchers.isEmpty();
+  }
+
   /**
    * Designed for use with the result of {@link ChromeTraceParser#parse(Path, Set)}.
    * Helper function to avoid some distasteful casting logic.
@@ -147,6 +147,11 @@ public class ArtifactCachesTest {
       LoggingArtifactCacheDecorator cacheDecorator = (LoggingArtifactCacheDecorator) artifactCache;
       return stripDecorators(cacheDecorator.getDelegate());
     }
+    if (artifactCache instanceof FetchLatencyArtifactCacheDecorator) {
+      FetchLatencyArtifactCacheDecorator cacheDecorator =
+          (FetchLatencyArtifactCacheDecorator) artifactCache;
+      return stripDecorators(cacheDecorator.getDelegate());
+    }
     if (artifactCache instanceof TwoLevelArtifactCacheDecorator) {
       TwoLevelArtifactCacheDecorator cacheDecorator =
           (TwoLevelArtifactCacheDecorator) artifactCache;
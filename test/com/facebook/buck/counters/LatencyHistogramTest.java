@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class LatencyHistogramTest {
+
+  private static final String CATEGORY = "Counter_Category";
+  private static final String NAME = "Counter_Name";
+
+  @Test
+  public void testBucketsCoverEveryValueInOrder() {
+    int previousIndex = -1;
+    for (long value = 0; value < 1 << 16; value++) {
+      int index = LatencyHistogram.bucketIndex(value);
+      Assert.assertTrue(index == previousIndex || index == previousIndex + 1);
+      Assert.assertTrue(value <= LatencyHistogram.highestValueInBucket(index));
+      previousIndex = index;
+    }
+  }
+
+  @Test
+  public void testBucketsAreAccurateToSixPercent() {
+    for (long value = 1; value < LatencyHistogram.MAX_TRACKABLE_NANOS; value = value * 3 + 1) {
+      long reported = LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(value));
+      Assert.assertTrue(reported >= value);
+      Assert.assertTrue(reported - value <= value / 16);
+    }
+  }
+
+  @Test
+  public void testOutOfRangeValuesAreClamped() {
+    Assert.assertEquals(0, LatencyHistogram.bucketIndex(-5));
+    Assert.assertEquals(
+        LatencyHistogram.BUCKET_COUNT - 1,
+        LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    Assert.assertEquals(
+        LatencyHistogram.MAX_TRACKABLE_NANOS,
+        LatencyHistogram.highestValueInBucket(LatencyHistogram.BUCKET_COUNT - 1));
+  }
+
+  @Test
+  public void testSnapshotReportsPercentiles() {
+    LatencyHistogram histogram = createHistogram(4);
+    for (int i = 1; i <= 100; i++) {
+      histogram.recordNanos(i * 1000);
+    }
+    Optional<CounterSnapshot> snapshot = histogram.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(CATEGORY, snapshot.get().getCategory());
+    ImmutableMap<String, Long> values = snapshot.get().getValues();
+    Assert.assertEquals(100L, (long) values.get(NAME + "_count"));
+    assertWithinBucket(50_000, values.get(NAME + "_p50_ns"));
+    assertWithinBucket(90_000, values.get(NAME + "_p90_ns"));
+    assertWithinBucket(99_000, values.get(NAME + "_p99_ns"));
+    assertWithinBucket(100_000, values.get(NAME + "_max_ns"));
+  }
+
+  @Test
+  public void testFlushResets() {
+    LatencyHistogram histogram = createHistogram(1);
+    Assert.assertFalse(histogram.flush().isPresent());
+    histogram.recordNanos(42);
+    Assert.assertTrue(histogram.flush().isPresent());
+    Assert.assertFalse(histogram.flush().isPresent());
+  }
+
+  @Test
+  public void testConcurrentRecordingIsNotLost() throws InterruptedException {
+    LatencyHistogram histogram = createHistogram(2);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          histogram.recordNanos(j);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Optional<CounterSnapshot> snapshot = histogram.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(80000L, (long) snapshot.get().getValues().get(NAME + "_count"));
+  }
+
+  private static void assertWithinBucket(long expected, long actual) {
+    Assert.assertTrue(actual >= expected);
+    Assert.assertTrue(actual - expected <= expected / 16);
+  }
+
+  private static LatencyHistogram createHistogram(int concurrency) {
+    return new LatencyHistogram(CATEGORY, NAME, ImmutableMap.of(), concurrency);
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class StripedCounterTest {
+
+  private static final String CATEGORY = "Counter_Category";
+  private static final String NAME = "Counter_Name";
+
+  @Test
+  public void testIncrementAndFlush() {
+    StripedCounter counter = new StripedCounter(CATEGORY, NAME, ImmutableMap.of());
+    counter.inc();
+    counter.inc(41);
+    Assert.assertEquals(42, counter.get());
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(42L, (long) snapshot.get().getValues().get(NAME));
+    Assert.assertEquals(0, counter.get());
+    Assert.assertFalse(counter.flush().isPresent());
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class ArchiveWriterTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectWorkspace workspace;
+
+  @Before
+  public void setUp() throws IOException {
+    workspace = TestDataHelper.createProjectWorkspaceForScenario(this, "debug_sections", tmp);
+    workspace.setUp();
+  }
+
+  @Test
+  public void definedSymbolsAreReadFromElfObjects() throws IOException {
+    Optional<ImmutableList<String>> symbols =
+        ArchiveWriter.getDefinedSymbols(
+            ByteBuffer.wrap(Files.readAllBytes(workspace.resolve("elf.o"))));
+    assertEquals(Optional.of(ImmutableList.of("main")), symbols);
+  }
+
+  @Test
+  public void nonElfInputsCannotBeIndexed() throws IOException {
+    Path input = workspace.resolve("input.dat");
+    Files.write(input, "blah".getBytes(StandardCharsets.UTF_8));
+    assertFalse(
+        ArchiveWriter.index(
+            ArchiveWriter.Format.GNU,
+            /* thin */ false,
+            workspace.resolve("output.a"),
+            ImmutableList.of(workspace.resolve("elf.o"), input))
+            .isPresent());
+  }
+
+  @Test
+  @SuppressWarnings("PMD.AvoidUsingOctalValues")
+  public void gnuArchives() throws IOException {
+    Path first = workspace.resolve("elf.o");
+    Path second = workspace.resolve("elf-dwarf4-compressed.o");
+    List<ArArchiveEntry> entries = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    readArchive(write(ArchiveWriter.Format.GNU, false, first, second), entries, contents);
+
+    assertThat(entries, Matchers.hasSize(3));
+    assertEquals("", entries.get(0).getName());
+    assertEquals("elf.o", entries.get(1).getName());
+    assertEquals("elf-dwarf4-compressed.o", entries.get(2).getName());
+    for (ArArchiveEntry entry : entries) {
+      assertEquals(
+          ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP,
+          entry.getLastModified());
+      assertEquals(0, entry.getUserId());
+      assertEquals(0, entry.getGroupId());
+      assertEquals(0100644, entry.getMode());
+    }
+    assertThat(contents.get(1), Matchers.equalTo(Files.readAllBytes(first)));
+    assertThat(contents.get(2), Matchers.equalTo(Files.readAllBytes(second)));
+
+    // Two symbols, the offsets of the member headers, then their names.
+    ByteBuffer symbolTable = ByteBuffer.wrap(contents.get(0)).order(ByteOrder.BIG_ENDIAN);
+    assertEquals(2, symbolTable.getInt());
+    int firstOffset = symbolTable.getInt();
+    int secondOffset = symbolTable.getInt();
+    assertThat(firstOffset, Matchers.lessThan(secondOffset));
+    assertEquals("main\0main\0", readRemaining(symbolTable).substring(0, 10));
+  }
+
+  @Test
+  public void thinGnuArchivesReferToTheirMembers() throws IOException {
+    Path input = workspace.resolve("elf.o");
+    byte[] archive = write(ArchiveWriter.Format.GNU, true, input);
+    String contents = new String(archive, StandardCharsets.ISO_8859_1);
+    assertThat(contents, Matchers.startsWith("!<thin>\n"));
+    assertThat(contents, Matchers.containsString("elf.o/\n"));
+    assertThat(archive.length, Matchers.lessThan((int) Files.size(input)));
+  }
+
+  @Test
+  public void bsdArchives() throws IOException {
+    Path first = workspace.resolve("elf.o");
+    Path second = workspace.resolve("elf-dwarf4-compressed.o");
+    List<String> names = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    readBsdArchive(write(ArchiveWriter.Format.BSD, false, first, second), names, contents);
+
+    assertEquals(ImmutableList.of("__.SYMDEF SORTED", "elf.o", "elf-dwarf4-compressed.o"), names);
+    assertThat(contents.get(1), Matchers.equalTo(Files.readAllBytes(first)));
+    assertThat(contents.get(2), Matchers.equalTo(Files.readAllBytes(second)));
+
+    // The size of the ranlib structs, then the structs and the string table.
+    ByteBuffer symbolTable = ByteBuffer.wrap(contents.get(0)).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(16, symbolTable.getInt());
+    assertEquals(0, symbolTable.getInt());
+    int firstOffset = symbolTable.getInt();
+    assertEquals(5, symbolTable.getInt());
+    int secondOffset = symbolTable.getInt();
+    assertThat(firstOffset, Matchers.lessThan(secondOffset));
+    assertEquals(12, symbolTable.getInt());
+    assertEquals("main\0main\0\0\0", readRemaining(symbolTable));
+  }
+
+  @Test
+  public void archivesWithoutMembersOnlyHaveAGlobalHeader() throws IOException {
+    assertEquals(
+        "!<arch>\n",
+        new String(write(ArchiveWriter.Format.GNU, false), StandardCharsets.US_ASCII));
+  }
+
+  private byte[] write(ArchiveWriter.Format format, boolean thin, Path... inputs)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArchiveWriter.index(format, thin, workspace.resolve("output.a"), ImmutableList.copyOf(inputs))
+        .orElseThrow(AssertionError::new)
+        .write(out);
+    return out.toByteArray();
+  }
+
+  private static void readArchive(
+      byte[] archive,
+      List<ArArchiveEntry> entries,
+      List<byte[]> contents) throws IOException {
+    try (ArArchiveInputStream stream =
+             new ArArchiveInputStream(new ByteArrayInputStream(archive))) {
+      for (ArArchiveEntry entry = stream.getNextArEntry();
+           entry != null;
+           entry = stream.getNextArEntry()) {
+        entries.add(entry);
+        contents.add(ByteStreams.toByteArray(stream));
+      }
+    }
+  }
+
+  /**
+   * The version of commons-compress we use loses its place after a "#1/" member, so BSD archives
+   * are read by hand.
+   */
+  private static void readBsdArchive(byte[] archive, List<String> names, List<byte[]> contents) {
+    ByteBuffer buffer = ByteBuffer.wrap(archive);
+    assertEquals("!<arch>\n", readString(buffer, 8));
+    while (buffer.hasRemaining()) {
+      String name = readString(buffer, 16).trim();
+      readString(buffer, 32);
+      int size = Integer.parseInt(readString(buffer, 10).trim());
+      assertEquals("`\n", readString(buffer, 2));
+      int dataSize = size;
+      if (name.startsWith("#1/")) {
+        int nameSize = Integer.parseInt(name.substring(3));
+        name = readString(buffer, nameSize).replace("\0", "");
+        dataSize -= nameSize;
+      }
+      byte[] data = new byte[dataSize];
+      buffer.get(data);
+      if (size % 2 != 0) {
+        buffer.get();
+      }
+      names.add(name);
+      contents.add(data);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer, int size) {
+    byte[] bytes = new byte[size];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  private static String readRemaining(ByteBuffer buffer) {
+    return readString(buffer, buffer.remaining());
+  }
+
+}
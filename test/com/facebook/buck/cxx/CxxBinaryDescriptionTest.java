@@ -26,6 +26,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.FlavorDomain;
 import com.facebook.buck.model.ImmutableFlavor;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -34,6 +35,7 @@ import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.DependencyAggregationTestUtil;
 import com.facebook.buck.rules.FakeSourcePath;
+import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.rules.PathSourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
@@ -41,6 +43,7 @@ import com.facebook.buck.rules.SourceWithFlags;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.rules.coercer.FrameworkPath;
 import com.facebook.buck.rules.coercer.PatternMatchedCollection;
 import com.facebook.buck.rules.coercer.SourceList;
@@ -52,6 +55,7 @@ import com.facebook.buck.shell.Genrule;
 import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TargetGraphFactory;
+import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -291,6 +295,163 @@ public class CxxBinaryDescriptionTest {
         Matchers.hasItem(leafCxxBinary.getBuildTarget()));
   }
 
+  @Test
+  public void dwpPackagesTheDwoFilesOfEveryLinkedObject() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    CxxPlatform cxxPlatform = CxxPlatform.builder()
+        .from(CxxBinaryBuilder.createDefaultPlatform())
+        .setSplitDwarf(true)
+        .setDwp(new HashedFileTool(Paths.get("dwp")))
+        .build();
+    FlavorDomain<CxxPlatform> cxxPlatforms = FlavorDomain.of("C/C++ Platform", cxxPlatform);
+
+    BuildTarget libraryTarget = BuildTargetFactory.newInstance("//:lib");
+    CxxLibraryBuilder cxxLibraryBuilder =
+        new CxxLibraryBuilder(libraryTarget, cxxBuckConfig, cxxPlatforms)
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("lib.cpp"))));
+
+    BuildTarget binaryTarget = BuildTargetFactory.newInstance("//:bin");
+    CxxBinaryBuilder cxxBinaryBuilder =
+        new CxxBinaryBuilder(
+            binaryTarget.withFlavors(CxxDwp.RULE_FLAVOR),
+            cxxPlatform,
+            cxxPlatforms,
+            cxxBuckConfig)
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("bin.cpp"))))
+            .setDeps(ImmutableSortedSet.of(libraryTarget));
+
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraphFactory.newInstance(cxxLibraryBuilder.build(), cxxBinaryBuilder.build()),
+            new DefaultTargetNodeToBuildRuleTransformer());
+    cxxLibraryBuilder.build(resolver, filesystem);
+    BuildRule rule = resolver.requireRule(binaryTarget.withFlavors(CxxDwp.RULE_FLAVOR));
+
+    assertThat(rule, Matchers.instanceOf(CxxDwp.class));
+    ImmutableList<CxxPreprocessAndCompile> compileRules = rule.getDeps().stream()
+        .map(CxxPreprocessAndCompile.class::cast)
+        .collect(MoreCollectors.toImmutableList());
+    assertThat(
+        compileRules.stream()
+            .map(compileRule -> compileRule.getSplitDwarfOutput().get().getFileName().toString())
+            .collect(MoreCollectors.toImmutableSet()),
+        Matchers.containsInAnyOrder("bin.cpp.dwo", "lib.cpp.dwo"));
+  }
+
+  @Test
+  public void dwpLeavesOutTheDwoFilesOfSharedLibraries() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    CxxPlatform cxxPlatform = CxxPlatform.builder()
+        .from(CxxBinaryBuilder.createDefaultPlatform())
+        .setSplitDwarf(true)
+        .setDwp(new HashedFileTool(Paths.get("dwp")))
+        .build();
+    FlavorDomain<CxxPlatform> cxxPlatforms = FlavorDomain.of("C/C++ Platform", cxxPlatform);
+
+    BuildTarget sharedLibraryTarget = BuildTargetFactory.newInstance("//:shared");
+    CxxLibraryBuilder sharedLibraryBuilder =
+        new CxxLibraryBuilder(sharedLibraryTarget, cxxBuckConfig, cxxPlatforms)
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("shared.cpp"))))
+            .setPreferredLinkage(NativeLinkable.Linkage.SHARED);
+
+    BuildTarget binaryTarget = BuildTargetFactory.newInstance("//:bin");
+    CxxBinaryBuilder cxxBinaryBuilder =
+        new CxxBinaryBuilder(
+            binaryTarget.withFlavors(CxxDwp.RULE_FLAVOR),
+            cxxPlatform,
+            cxxPlatforms,
+            cxxBuckConfig)
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("bin.cpp"))))
+            .setDeps(ImmutableSortedSet.of(sharedLibraryTarget));
+
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraphFactory.newInstance(sharedLibraryBuilder.build(), cxxBinaryBuilder.build()),
+            new DefaultTargetNodeToBuildRuleTransformer());
+    sharedLibraryBuilder.build(resolver, filesystem);
+    BuildRule rule = resolver.requireRule(binaryTarget.withFlavors(CxxDwp.RULE_FLAVOR));
+
+    assertThat(
+        rule.getDeps().stream()
+            .map(CxxPreprocessAndCompile.class::cast)
+            .map(compileRule -> compileRule.getSplitDwarfOutput().get().getFileName().toString())
+            .collect(MoreCollectors.toImmutableSet()),
+        Matchers.contains("bin.cpp.dwo"));
+  }
+
+  @Test
+  public void thinLtoCompilesEveryModuleInItsOwnBackendRule() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    CxxPlatform cxxPlatform = CxxPlatform.builder()
+        .from(CxxBinaryBuilder.createDefaultPlatform())
+        .setThinLto(true)
+        .build();
+    FlavorDomain<CxxPlatform> cxxPlatforms = FlavorDomain.of("C/C++ Platform", cxxPlatform);
+
+    BuildTarget libraryTarget = BuildTargetFactory.newInstance("//:lib");
+    CxxLibraryBuilder cxxLibraryBuilder =
+        new CxxLibraryBuilder(libraryTarget, cxxBuckConfig, cxxPlatforms)
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("lib.cpp"))));
+
+    BuildTarget binaryTarget = BuildTargetFactory.newInstance("//:bin");
+    CxxBinaryBuilder cxxBinaryBuilder =
+        new CxxBinaryBuilder(binaryTarget, cxxPlatform, cxxPlatforms, cxxBuckConfig)
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("bin.cpp"))))
+            .setDeps(ImmutableSortedSet.of(libraryTarget));
+
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraphFactory.newInstance(cxxLibraryBuilder.build(), cxxBinaryBuilder.build()),
+            new DefaultTargetNodeToBuildRuleTransformer());
+    cxxLibraryBuilder.build(resolver, filesystem);
+    CxxBinary binary = (CxxBinary) resolver.requireRule(binaryTarget);
+    CxxLink link = (CxxLink) binary.getLinkRule();
+
+    // The link only sees the native code of the modules, and the library's objects are loaded
+    // lazily rather than through its archive.
+    ImmutableList<CxxThinLtoBackend> backends = link.getDeps().stream()
+        .filter(CxxThinLtoBackend.class::isInstance)
+        .map(CxxThinLtoBackend.class::cast)
+        .collect(MoreCollectors.toImmutableList());
+    assertThat(backends, Matchers.hasSize(2));
+    assertThat(
+        link.getDeps(),
+        Matchers.everyItem(
+            Matchers.not(
+                Matchers.anyOf(
+                    Matchers.instanceOf(CxxPreprocessAndCompile.class),
+                    Matchers.instanceOf(Archive.class)))));
+    assertThat(link.getArgs(), Matchers.hasItem(new StringArg("-Wl,--start-lib")));
+
+    for (CxxThinLtoBackend backend : backends) {
+      CxxThinLtoIndex index = backend.getDeps().stream()
+          .filter(CxxThinLtoIndex.class::isInstance)
+          .map(CxxThinLtoIndex.class::cast)
+          .findFirst()
+          .get();
+      assertThat(
+          index.getBuildTarget(),
+          equalTo(link.getBuildTarget().withAppendedFlavors(CxxThinLtoIndex.RULE_FLAVOR)));
+      assertThat(
+          backend.getDeps().stream()
+              .filter(CxxPreprocessAndCompile.class::isInstance)
+              .count(),
+          equalTo(2L));
+    }
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void dwpRequiresSplitDwarf() throws Exception {
+    BuildTarget target = BuildTargetFactory.newInstance("//:bin#dwp");
+    CxxBinaryBuilder cxxBinaryBuilder = new CxxBinaryBuilder(target, cxxBuckConfig)
+        .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("bin.cpp"))));
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraphFactory.newInstance(cxxBinaryBuilder.build()),
+            new DefaultTargetNodeToBuildRuleTransformer());
+    resolver.requireRule(target);
+  }
+
   @Test
   public void linkerFlagsLocationMacro() throws Exception {
     BuildTarget target = BuildTargetFactory.newInstance("//:rule");
@@ -22,6 +22,7 @@ import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeThat;
 
 import com.facebook.buck.cli.FakeBuckConfig;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -34,6 +35,7 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.TestConsole;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -90,6 +92,7 @@ public class CxxCompileStepIntegrationTest {
             filesystem,
             CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
             output,
+            Optional.empty(),
             depFile,
             relativeInput,
             CxxSource.Type.C,
@@ -173,6 +176,7 @@ public class CxxCompileStepIntegrationTest {
             filesystem,
             CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
             output,
+            Optional.empty(),
             depFile,
             relativeInput,
             CxxSource.Type.C,
@@ -213,4 +217,105 @@ public class CxxCompileStepIntegrationTest {
     Files.deleteIfExists(output);
   }
 
+  private CxxPreprocessAndCompileStep createSplitDwarfStep(
+      ProjectFilesystem filesystem,
+      DebugPathSanitizer sanitizer,
+      ImmutableList<String> compilerArguments,
+      Path output,
+      Path dwo) throws Exception {
+    CxxPlatform platform = CxxPlatformUtils.build(
+        new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    Compiler compiler = platform.getCc().resolve(resolver);
+    ImmutableList<String> compilerCommandPrefix = compiler.getCommandPrefix(pathResolver);
+    Path relativeInput = Paths.get("input.c");
+    filesystem.writeContentsToPath("int main() {}", relativeInput);
+    Path scratchDir = filesystem.getPath("scratchDir");
+    filesystem.mkdirs(scratchDir);
+
+    return new CxxPreprocessAndCompileStep(
+        filesystem,
+        CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
+        output,
+        Optional.of(dwo),
+        filesystem.resolve(Paths.get("output.dep")),
+        relativeInput,
+        CxxSource.Type.C,
+        Optional.of(
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix,
+                ImmutableList.of(),
+                ImmutableMap.of(),
+                Optional.empty())),
+        Optional.of(
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix,
+                compilerArguments,
+                ImmutableMap.of(),
+                Optional.empty())),
+        HeaderPathNormalizer.empty(pathResolver),
+        sanitizer,
+        CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
+        scratchDir,
+        true,
+        compiler);
+  }
+
+  @Test
+  public void updateCompilationDirOfSplitDwarf() throws Exception {
+    assumeThat(Platform.detect(), Matchers.is(Platform.LINUX));
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    DebugPathSanitizer sanitizer = new MungingDebugPathSanitizer(
+        200,
+        File.separatorChar,
+        Paths.get("."),
+        ImmutableBiMap.of());
+    Path output = filesystem.resolve(Paths.get("output.o"));
+    Path dwo = filesystem.resolve(Paths.get("output.dwo"));
+    CxxPreprocessAndCompileStep step = createSplitDwarfStep(
+        filesystem,
+        sanitizer,
+        ImmutableList.of(
+            "-g",
+            "-gdwarf-4",
+            CxxPreprocessAndCompile.SPLIT_DWARF_FLAG),
+        output,
+        dwo);
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    int exitCode = step.execute(executionContext).getExitCode();
+    assertEquals("compile step failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+
+    // The compilation directory is fixed up in the split out debug info too.
+    assertThat(
+        new String(Files.readAllBytes(dwo), StandardCharsets.ISO_8859_1),
+        Matchers.containsString(sanitizer.getCompilationDirectory()));
+  }
+
+  @Test
+  public void missingDwoIsReplacedWithAnEmptyFile() throws Exception {
+    assumeThat(Platform.detect(), Matchers.is(Platform.LINUX));
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path output = filesystem.resolve(Paths.get("output.o"));
+    Path dwo = filesystem.resolve(Paths.get("output.dwo"));
+    // Left over from a previous build, this must not be mistaken for the new debug info.
+    filesystem.writeContentsToPath("stale", dwo);
+    // Turning split DWARF back off stands in for a compiler which skips the .dwo file.
+    CxxPreprocessAndCompileStep step = createSplitDwarfStep(
+        filesystem,
+        CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+        ImmutableList.of(CxxPreprocessAndCompile.SPLIT_DWARF_FLAG, "-gno-split-dwarf"),
+        output,
+        dwo);
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    int exitCode = step.execute(executionContext).getExitCode();
+    assertEquals("compile step failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+    assertEquals(0, Files.size(dwo));
+  }
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+
+public class CxxIncludeScannerTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static ScannedFile parse(String... lines) {
+    String contents = Joiner.on('\n').join(lines);
+    return CxxIncludeScanner.parse(contents, FileTime.fromMillis(0), contents.length());
+  }
+
+  @Test
+  public void directivesOfEveryKindAndBranchAreFound() {
+    ScannedFile file = parse(
+        "#include \"a.h\"",
+        "  #  include <b/c.h>",
+        "#ifdef FOO",
+        "#import <d.h>",
+        "#else",
+        "#include_next \"e.h\"",
+        "#endif",
+        "#define INCLUDE_F <f.h>",
+        "int main() { return 0; }");
+    assertEquals(
+        ImmutableList.of(
+            IncludeDirective.of(true, "a.h"),
+            IncludeDirective.of(false, "b/c.h"),
+            IncludeDirective.of(false, "d.h"),
+            IncludeDirective.of(true, "e.h")),
+        file.getIncludes());
+    assertFalse(file.hasComputedInclude());
+  }
+
+  @Test
+  public void commentsLiteralsAndContinuationsAreHandledLikeThePreprocessor() {
+    ScannedFile file = parse(
+        "// #include \"commented.h\"",
+        "int x; /* #include \"also_commented.h\"",
+        "   */ #include \"not_a_directive.h\"",
+        "const char *s = \"/*\";",
+        "#include \\",
+        "    \"continued.h\"",
+        "#/* comment */include <commented_out_space.h> // trailing",
+        "#include <weird\"name.h>");
+    assertEquals(
+        ImmutableList.of(
+            IncludeDirective.of(true, "continued.h"),
+            IncludeDirective.of(false, "commented_out_space.h"),
+            IncludeDirective.of(false, "weird\"name.h")),
+        file.getIncludes());
+  }
+
+  @Test
+  public void includesNamedByMacrosAreFlagged() {
+    assertTrue(parse("#define H <a.h>", "#include H").hasComputedInclude());
+  }
+
+  @Test
+  public void scanFollowsIncludesThroughTheSearchPaths() throws IOException {
+    Path src = tmp.newFolder("src");
+    Path quoted = tmp.newFolder("quoted");
+    Path include = tmp.newFolder("include");
+    write(src.resolve("main.cpp"), "#include \"local.h\"", "#include <lib/lib.h>", "#include <vector>");
+    write(src.resolve("local.h"), "#include \"quoted.h\"", "#include \"main.cpp\"");
+    write(quoted.resolve("quoted.h"));
+    write(include.resolve("lib/lib.h"), "#include \"detail.h\"");
+    write(include.resolve("lib/detail.h"), "#include <lib/lib.h>");
+    write(include.resolve("unused.h"));
+
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(
+                src.resolve("local.h"),
+                include.resolve("lib/lib.h"),
+                quoted.resolve("quoted.h"),
+                include.resolve("lib/detail.h"))),
+        new CxxIncludeScanner().scan(
+            src.resolve("main.cpp"),
+            ImmutableList.of(quoted),
+            ImmutableList.of(include)));
+  }
+
+  @Test
+  public void scanPicksUpChangesToScannedFiles() throws IOException {
+    Path src = tmp.newFolder("src");
+    write(src.resolve("a.h"));
+    write(src.resolve("b.h"));
+    write(src.resolve("main.cpp"), "#include \"a.h\"");
+    CxxIncludeScanner scanner = new CxxIncludeScanner();
+    assertEquals(
+        Optional.of(ImmutableSet.of(src.resolve("a.h"))),
+        scanner.scan(src.resolve("main.cpp"), ImmutableList.of(), ImmutableList.of()));
+
+    write(src.resolve("main.cpp"), "#include \"a.h\"", "#include \"b.h\"");
+    assertEquals(
+        Optional.of(ImmutableSet.of(src.resolve("a.h"), src.resolve("b.h"))),
+        scanner.scan(src.resolve("main.cpp"), ImmutableList.of(), ImmutableList.of()));
+  }
+
+  @Test
+  public void scanGivesUpOnComputedIncludes() throws IOException {
+    Path src = tmp.newFolder("src");
+    write(src.resolve("a.h"), "#include HEADER");
+    write(src.resolve("main.cpp"), "#include \"a.h\"");
+    assertEquals(
+        Optional.empty(),
+        new CxxIncludeScanner().scan(
+            src.resolve("main.cpp"),
+            ImmutableList.of(),
+            ImmutableList.of()));
+  }
+
+  private static void write(Path path, String... lines) throws IOException {
+    Files.createDirectories(path.getParent());
+    Files.write(path, ImmutableList.copyOf(lines), StandardCharsets.UTF_8);
+  }
+}
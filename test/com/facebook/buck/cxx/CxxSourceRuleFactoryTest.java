@@ -31,6 +31,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BinaryBuildRuleToolProvider;
+import com.facebook.buck.rules.BuildInfo;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -46,14 +47,19 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.coercer.PatternMatchedCollection;
+import com.facebook.buck.rules.keys.DependencyFileEntry;
 import com.facebook.buck.shell.ShBinary;
 import com.facebook.buck.shell.ShBinaryBuilder;
 import com.facebook.buck.testutil.AllExistingProjectFilesystem;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 
 import org.hamcrest.Matchers;
 import org.junit.Assume;
@@ -483,6 +489,280 @@ public class CxxSourceRuleFactoryTest {
           hasItems(cxx, cxxpp));
     }
 
+    @Test
+    public void unityBuildBatchesSourcesOfTheSameTypeInPathOrder() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+      BuildRuleResolver resolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+
+      CxxSourceRuleFactory cxxSourceRuleFactory = CxxSourceRuleFactory.builder()
+          .setParams(params)
+          .setResolver(resolver)
+          .setPathResolver(pathResolver)
+          .setRuleFinder(ruleFinder)
+          .setCxxBuckConfig(CxxPlatformUtils.DEFAULT_CONFIG)
+          .setCxxPlatform(CXX_PLATFORM)
+          .setPicType(CxxSourceRuleFactory.PicType.PDC)
+          .setUnityBatchSize(2)
+          .build();
+
+      ImmutableMap<String, CxxSource> sources = ImmutableMap.of(
+          "c.cpp",
+          CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("c.cpp"), ImmutableList.of()),
+          "a.cpp",
+          CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("a.cpp"), ImmutableList.of()),
+          "d.c",
+          CxxSource.of(CxxSource.Type.C, new FakeSourcePath("d.c"), ImmutableList.of()),
+          "b.cpp",
+          CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("b.cpp"), ImmutableList.of()));
+
+      ImmutableMap<CxxPreprocessAndCompile, SourcePath> rules =
+          cxxSourceRuleFactory.requirePreprocessAndCompileRules(sources);
+
+      // `a.cpp` and `b.cpp` share a translation unit, the rest don't have anything to batch with.
+      assertEquals(3, rules.size());
+      CxxPreprocessAndCompile unityRule =
+          cxxSourceRuleFactory.requireUnityPreprocessAndCompileBuildRule(
+              Iterables.getOnlyElement(cxxSourceRuleFactory.getUnityBatches(sources)));
+      assertThat(rules.keySet(), hasItems(unityRule));
+      CxxUnitySource unitySource = (CxxUnitySource) resolver.getRule(
+          ((BuildTargetSourcePath) unityRule.getInput()).getTarget());
+      assertThat(
+          unitySource.getSources(),
+          contains(new FakeSourcePath("a.cpp"), new FakeSourcePath("b.cpp")));
+      assertThat(
+          rules.keySet().stream()
+              .map(CxxPreprocessAndCompile::getInput)
+              .collect(MoreCollectors.toImmutableList()),
+          hasItems(new FakeSourcePath("c.cpp"), new FakeSourcePath("d.c")));
+    }
+
+    @Test
+    public void unityBuildCompilesSourcesSeparatelyWhenPerFileFlagsConflict() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+      BuildRuleResolver resolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+
+      CxxSourceRuleFactory cxxSourceRuleFactory = CxxSourceRuleFactory.builder()
+          .setParams(params)
+          .setResolver(resolver)
+          .setPathResolver(pathResolver)
+          .setRuleFinder(ruleFinder)
+          .setCxxBuckConfig(CxxPlatformUtils.DEFAULT_CONFIG)
+          .setCxxPlatform(CXX_PLATFORM)
+          .setPicType(CxxSourceRuleFactory.PicType.PDC)
+          .setUnityBatchSize(4)
+          .build();
+
+      ImmutableMap<String, CxxSource> sources = ImmutableMap.of(
+          "a.cpp",
+          CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("a.cpp"), ImmutableList.of()),
+          "b.cpp",
+          CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("b.cpp"), ImmutableList.of("-O0")));
+
+      assertThat(cxxSourceRuleFactory.getUnityBatches(sources), Matchers.empty());
+      ImmutableMap<CxxPreprocessAndCompile, SourcePath> rules =
+          cxxSourceRuleFactory.requirePreprocessAndCompileRules(sources);
+      assertThat(
+          rules.keySet().stream()
+              .map(CxxPreprocessAndCompile::getInput)
+              .collect(MoreCollectors.toImmutableList()),
+          contains(new FakeSourcePath("a.cpp"), new FakeSourcePath("b.cpp")));
+    }
+
+    @Test
+    public void splitDwarfCompilesWriteDwoFilesNextToObjects() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+      BuildRuleResolver resolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+
+      CxxSourceRuleFactory cxxSourceRuleFactory = CxxSourceRuleFactory.builder()
+          .setParams(params)
+          .setResolver(resolver)
+          .setPathResolver(pathResolver)
+          .setRuleFinder(ruleFinder)
+          .setCxxBuckConfig(CxxPlatformUtils.DEFAULT_CONFIG)
+          .setCxxPlatform(CxxPlatform.builder().from(CXX_PLATFORM).setSplitDwarf(true).build())
+          .setPicType(CxxSourceRuleFactory.PicType.PDC)
+          .build();
+
+      CxxPreprocessAndCompile preprocessAndCompile =
+          cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+              "foo.cpp",
+              CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("foo.cpp"), ImmutableList.of()));
+      assertThat(
+          preprocessAndCompile.makeMainStep(pathResolver, Paths.get("scratch"), false).getCommand(),
+          Matchers.hasItem("-gsplit-dwarf"));
+      Path object = preprocessAndCompile.getPathToOutput();
+      assertEquals(
+          Optional.of(object.resolveSibling("foo.cpp.dwo")),
+          preprocessAndCompile.getSplitDwarfOutput());
+
+      CxxPreprocessAndCompile compile = cxxSourceRuleFactory.requireCompileBuildRule(
+          "bar.ii",
+          CxxSource.of(
+              CxxSource.Type.CXX_CPP_OUTPUT,
+              new FakeSourcePath("bar.ii"),
+              ImmutableList.of()));
+      assertEquals(
+          Optional.of(compile.getPathToOutput().resolveSibling("bar.ii.dwo")),
+          compile.getSplitDwarfOutput());
+
+      // Assembly has no debug info to split out.
+      CxxPreprocessAndCompile assemble = cxxSourceRuleFactory.requireCompileBuildRule(
+          "baz.s",
+          CxxSource.of(CxxSource.Type.ASSEMBLER, new FakeSourcePath("baz.s"), ImmutableList.of()));
+      assertFalse(assemble.getSplitDwarfOutput().isPresent());
+    }
+
+    @Test
+    public void splitDwarfIsOffByDefault() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+      BuildRuleResolver resolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+
+      CxxSourceRuleFactory cxxSourceRuleFactory = CxxSourceRuleFactory.builder()
+          .setParams(params)
+          .setResolver(resolver)
+          .setPathResolver(pathResolver)
+          .setRuleFinder(ruleFinder)
+          .setCxxBuckConfig(CxxPlatformUtils.DEFAULT_CONFIG)
+          .setCxxPlatform(CXX_PLATFORM)
+          .setPicType(CxxSourceRuleFactory.PicType.PDC)
+          .build();
+
+      CxxPreprocessAndCompile rule = cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+          "foo.cpp",
+          CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("foo.cpp"), ImmutableList.of()));
+      assertFalse(rule.getSplitDwarfOutput().isPresent());
+    }
+
+    @Test
+    public void thinLtoCompilesWriteBitcodeModules() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+      BuildRuleResolver resolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+
+      CxxSourceRuleFactory cxxSourceRuleFactory = CxxSourceRuleFactory.builder()
+          .setParams(params)
+          .setResolver(resolver)
+          .setPathResolver(pathResolver)
+          .setRuleFinder(ruleFinder)
+          .setCxxBuckConfig(CxxPlatformUtils.DEFAULT_CONFIG)
+          .setCxxPlatform(CxxPlatform.builder().from(CXX_PLATFORM).setThinLto(true).build())
+          .setPicType(CxxSourceRuleFactory.PicType.PDC)
+          .build();
+
+      CxxPreprocessAndCompile preprocessAndCompile =
+          cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+              "foo.cpp",
+              CxxSource.of(CxxSource.Type.CXX, new FakeSourcePath("foo.cpp"), ImmutableList.of()));
+      assertThat(
+          preprocessAndCompile.makeMainStep(pathResolver, Paths.get("scratch"), false).getCommand(),
+          Matchers.hasItem("-flto=thin"));
+      assertTrue(preprocessAndCompile.isThinLtoModule());
+
+      // Assembly is always native code.
+      CxxPreprocessAndCompile assemble = cxxSourceRuleFactory.requireCompileBuildRule(
+          "baz.s",
+          CxxSource.of(CxxSource.Type.ASSEMBLER, new FakeSourcePath("baz.s"), ImmutableList.of()));
+      assertFalse(assemble.isThinLtoModule());
+    }
+
+    @Test
+    public void inferredPrecompiledHeaderIsUsedBySourcesThatStartByIncludingItsHeaders()
+        throws Exception {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target)
+          .setProjectFilesystem(filesystem)
+          .build();
+      BuildRuleResolver resolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+      CxxBuckConfig cxxBuckConfig = new CxxBuckConfig(
+          FakeBuckConfig.builder()
+              .setSections(ImmutableMap.of("cxx", ImmutableMap.of("auto_pch_min_sources", "2")))
+              .build());
+
+      CxxSourceRuleFactory cxxSourceRuleFactory = CxxSourceRuleFactory.builder()
+          .setParams(params)
+          .setResolver(resolver)
+          .setPathResolver(pathResolver)
+          .setRuleFinder(ruleFinder)
+          .setCxxBuckConfig(cxxBuckConfig)
+          .setCxxPlatform(CXX_PLATFORM)
+          .setPicType(CxxSourceRuleFactory.PicType.PDC)
+          .setInferPrecompiledHeaders(true)
+          .build();
+
+      Path common = Paths.get("foo/common.h");
+      Path other = Paths.get("foo/other.h");
+      filesystem.writeContentsToPath("", common);
+      filesystem.writeContentsToPath("", other);
+      ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+      ImmutableMap<String, Path> includes =
+          ImmutableMap.of("a.cpp", common, "b.cpp", common, "c.cpp", other, "d.cpp", common);
+      ImmutableMap<String, String> contents = ImmutableMap.of(
+          "a.cpp", "#include \"common.h\"\n",
+          "b.cpp", "// b\n#include <foo/common.h>\nint b;\n",
+          "c.cpp", "#include \"other.h\"\n",
+          "d.cpp", "#define D 1\n#include \"common.h\"\n");
+      for (Map.Entry<String, Path> entry : includes.entrySet()) {
+        filesystem.writeContentsToPath(contents.get(entry.getKey()), Paths.get(entry.getKey()));
+        filesystem.writeContentsToPath(
+            objectMapper.writeValueAsString(
+                ImmutableList.of(
+                    objectMapper.writeValueAsString(
+                        DependencyFileEntry.of(entry.getValue(), Optional.empty())))),
+            BuildInfo.getPathToMetadataDirectory(
+                cxxSourceRuleFactory.createCompileBuildTarget(entry.getKey()),
+                filesystem)
+                .resolve(BuildInfo.MetadataKey.DEP_FILE));
+      }
+
+      ImmutableMap.Builder<String, CxxSource> sources = ImmutableMap.builder();
+      for (String name : includes.keySet()) {
+        sources.put(
+            name,
+            CxxSource.of(
+                CxxSource.Type.CXX,
+                new FakeSourcePath(filesystem, name),
+                ImmutableList.of()));
+      }
+      cxxSourceRuleFactory.requirePreprocessAndCompileRules(sources.build());
+
+      for (String name : includes.keySet()) {
+        CxxPreprocessAndCompile rule = resolver.getRuleWithType(
+            cxxSourceRuleFactory.createCompileBuildTarget(name),
+            CxxPreprocessAndCompile.class);
+        assertEquals(
+            name,
+            name.equals("a.cpp") || name.equals("b.cpp"),
+            rule.getDeps().stream().anyMatch(CxxPrecompiledHeader.class::isInstance));
+      }
+      CxxUnitySource header = (CxxUnitySource) resolver.getRule(
+          BuildTargetFactory.newInstance("//foo:bar#auto-pch-cxx-header")
+              .withAppendedFlavors(CXX_PLATFORM.getFlavor()));
+      assertThat(header.getSources(), contains(new PathSourcePath(filesystem, common)));
+    }
+
   }
 
   @RunWith(Parameterized.class)
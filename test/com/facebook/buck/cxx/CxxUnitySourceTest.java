@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
+import com.facebook.buck.rules.FakeSourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class CxxUnitySourceTest {
+
+  @Test
+  public void includesSourcesRelativeToTheUnitySource() {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar#unity-cxx");
+    SourcePathResolver pathResolver = new SourcePathResolver(
+        new SourcePathRuleFinder(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY,
+                new DefaultTargetNodeToBuildRuleTransformer())));
+
+    Path genDir = BuildTargets.getGenPath(filesystem, target, "%s");
+    CxxUnitySource unitySource = new CxxUnitySource(
+        new FakeBuildRuleParamsBuilder(target).setProjectFilesystem(filesystem).build(),
+        ImmutableList.of(
+            new FakeSourcePath(filesystem, "foo/a.cpp"),
+            new FakeSourcePath(filesystem, "foo/sub/b.cpp")),
+        genDir.resolve("unity.cpp"));
+
+    String prefix = Joiner.on('/').join(Collections.nCopies(genDir.getNameCount(), ".."));
+    assertEquals(
+        "#include \"" + prefix + "/foo/a.cpp\"\n" +
+            "#include \"" + prefix + "/foo/sub/b.cpp\"\n",
+        unitySource.getContents(pathResolver));
+  }
+}
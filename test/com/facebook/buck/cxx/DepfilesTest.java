@@ -29,6 +29,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -42,6 +44,11 @@ public class DepfilesTest {
               "output",
               ImmutableList.of("input1", "input2")
           },
+          {
+              "output: \u00fcnicode/\u65e5\u672c.h input2\n",
+              "output",
+              ImmutableList.of("\u00fcnicode/\u65e5\u672c.h", "input2")
+          },
           {
               "output: input1 input2\r\n",
               "output",
@@ -184,6 +191,16 @@ public class DepfilesTest {
   @Parameter(value = 2)
   public ImmutableList<String> expectedPrereqs;
 
+  @Test
+  public void parseDepfileFromBytes() throws IOException {
+    assertThat(
+          String.format(
+              "[%s] should parse correctly",
+              input),
+          Depfiles.parseDepfile(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))),
+          Matchers.equalTo(new Depfiles.Depfile(expectedTarget, expectedPrereqs)));
+  }
+
   @Test
   public void parseDepfile() throws IOException {
     assertThat(
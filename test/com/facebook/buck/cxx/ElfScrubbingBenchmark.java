@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfFileProcessor;
+import com.facebook.buck.cxx.elf.ElfScrubbers;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Compares scrubbing shared library interfaces with one step per edit, file after file, against
+ * running all the edits over a single mapping of each file, with the files processed in parallel.
+ *
+ * The shared libraries of the JDK running the benchmark are used as large inputs, falling back to
+ * the small library from the test data when none can be found.  Scrubbing is idempotent, so the
+ * same copies are scrubbed over and over.
+ */
+public class ElfScrubbingBenchmark {
+  @Param({"1", "100", "500"})
+  private int fileCount = 1;
+
+  @Param({"1", "2", "8"})
+  private int threadCount = 1;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ImmutableList<Path> libraries;
+  private ExecutionContext executionContext;
+  private ListeningExecutorService executorService;
+
+  private static final ImmutableList<ElfFileProcessor.Operation> OPERATIONS =
+      ImmutableList.of(
+          ElfScrubbers.clearProgramHeaders(),
+          ElfScrubbers.scrubSymbolTable(".dynsym", /* allowMissing */ false),
+          ElfScrubbers.scrubSymbolTable(".symtab", /* allowMissing */ true),
+          ElfScrubbers.scrubDynamicSection());
+
+  @Before
+  public void setUpTest() throws Exception {
+    fileCount = 4;
+    threadCount = 2;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    Path root = tempDir.getRoot();
+    filesystem = new ProjectFilesystem(root);
+
+    Path library = findLargeSharedLibrary().orElse(
+        TestDataHelper.getTestDataScenario(this, "elf_shared_lib").resolve("libfoo.so"));
+    ImmutableList.Builder<Path> copies = ImmutableList.builder();
+    for (int i = 0; i < fileCount; i++) {
+      Path copy = root.resolve(String.format("lib%d.so", i));
+      Files.copy(library, copy);
+      copies.add(copy);
+    }
+    libraries = copies.build();
+
+    executionContext = TestExecutionContext.newInstance();
+    executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threadCount));
+  }
+
+  /**
+   * @return the largest shared library of the running JDK which has the sections scrubbed.
+   */
+  private static Optional<Path> findLargeSharedLibrary() throws IOException {
+    Path javaHome = Paths.get(System.getProperty("java.home"));
+    try (Stream<Path> paths = Files.walk(javaHome)) {
+      return paths
+          .filter(path -> path.getFileName().toString().endsWith(".so"))
+          .filter(ElfScrubbingBenchmark::hasDynamicSymbols)
+          .max(Comparator.comparingLong(path -> path.toFile().length()));
+    }
+  }
+
+  private static boolean hasDynamicSymbols(Path path) {
+    try (FileChannel channel = FileChannel.open(path)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (!Elf.isElf(buffer)) {
+        return false;
+      }
+      Elf elf = new Elf(buffer);
+      return elf.getSectionByName(".dynsym").isPresent() &&
+          elf.getSectionByName(ElfScrubbers.DYNAMIC_SECTION).isPresent();
+    } catch (IOException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    tempDir.after();
+    executorService.shutdown();
+  }
+
+  @Test
+  public void scrubWithStepsCorrectness() throws Exception {
+    scrubWithSteps();
+  }
+
+  @Test
+  public void scrubWithProcessorCorrectness() throws Exception {
+    scrubWithProcessor();
+  }
+
+  @Benchmark
+  public void scrubWithSteps() throws Exception {
+    for (Path library : libraries) {
+      ImmutableList<Step> steps = ImmutableList.of(
+          ElfClearProgramHeadersStep.of(filesystem, library),
+          ElfSymbolTableScrubberStep.of(
+              filesystem,
+              library,
+              /* section */ ".dynsym",
+              /* allowMissing */ false),
+          ElfSymbolTableScrubberStep.of(
+              filesystem,
+              library,
+              /* section */ ".symtab",
+              /* allowMissing */ true),
+          ElfDynamicSectionScrubberStep.of(filesystem, library));
+      for (Step step : steps) {
+        step.execute(executionContext);
+      }
+    }
+  }
+
+  @Benchmark
+  public void scrubWithProcessor() throws Exception {
+    ElfFileProcessor.processAll(libraries, READ_WRITE, OPERATIONS, executorService);
+  }
+}
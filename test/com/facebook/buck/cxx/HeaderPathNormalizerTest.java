@@ -135,4 +135,32 @@ public class HeaderPathNormalizerTest {
         normalizer.getSourcePathForAbsolutePath(pathResolver.getAbsolutePath(headerPath)),
         Matchers.equalTo(headerPath));
   }
+
+  @Test
+  public void managedCxxHeadersAreReusedAcrossNormalizers() {
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())
+    ));
+    Path header = filesystem.getPath("foo/bar.h");
+    SourcePath headerDirPath = new PathSourcePath(filesystem, header.getParent());
+    CxxHeaders cxxHeaders =
+        CxxHeadersDir.of(CxxPreprocessables.IncludeType.LOCAL, headerDirPath);
+    SourcePath prefixHeaderPath = new PathSourcePath(filesystem, filesystem.getPath("baz.pch"));
+    for (int i = 0; i < 2; i++) {
+      HeaderPathNormalizer normalizer =
+          new HeaderPathNormalizer.Builder(pathResolver)
+              .addCxxHeaders(cxxHeaders)
+              .addPrefixHeader(prefixHeaderPath)
+              .build();
+      assertThat(
+          normalizer.getAbsolutePathForUnnormalizedPath(filesystem.resolve(header)),
+          Matchers.equalTo(Optional.of(filesystem.resolve(header))));
+      assertThat(
+          normalizer.getSourcePathForAbsolutePath(filesystem.resolve(header)),
+          Matchers.equalTo(headerDirPath));
+      assertThat(
+          normalizer.getSourcePathForAbsolutePath(pathResolver.getAbsolutePath(prefixHeaderPath)),
+          Matchers.equalTo(prefixHeaderPath));
+    }
+  }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildInfo;
+import com.facebook.buck.rules.keys.DependencyFileEntry;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class PrecompiledHeaderInferenceTest {
+
+  private static final Path A = Paths.get("foo/a.h");
+  private static final Path B = Paths.get("foo/b.h");
+  private static final Path C = Paths.get("foo/c.h");
+  private static final Path D = Paths.get("foo/d.h");
+
+  @Test
+  public void leadingHeadersSharedByEnoughSourcesAreInferredInIncludeOrder() {
+    Optional<InferredPrecompiledHeader> inferred = PrecompiledHeaderInference.infer(
+        ImmutableMap.of(
+            "1.cpp", ImmutableList.of(B, A, C),
+            "2.cpp", ImmutableList.of(B, A),
+            "3.cpp", ImmutableList.of(B, D, A),
+            "4.cpp", ImmutableList.of(B, A, D)),
+        /* minSources */ 2,
+        /* minShare */ 0.5f);
+    assertEquals(
+        Optional.of(
+            InferredPrecompiledHeader.of(
+                ImmutableList.of(B, A),
+                ImmutableSortedSet.of("1.cpp", "2.cpp", "4.cpp"))),
+        inferred);
+  }
+
+  @Test
+  public void sourcesIncludingTheSameHeadersInADifferentOrderDoNotShareThem() {
+    Optional<InferredPrecompiledHeader> inferred = PrecompiledHeaderInference.infer(
+        ImmutableMap.of(
+            "1.cpp", ImmutableList.of(A, B),
+            "2.cpp", ImmutableList.of(B, A),
+            "3.cpp", ImmutableList.of(A, B),
+            "4.cpp", ImmutableList.of(B, A, C)),
+        /* minSources */ 3,
+        /* minShare */ 0.5f);
+    assertFalse(inferred.isPresent());
+  }
+
+  @Test
+  public void headersAreOnlyAddedWhileEnoughSourcesIncludeAllOfThem() {
+    Optional<InferredPrecompiledHeader> inferred = PrecompiledHeaderInference.infer(
+        ImmutableMap.of(
+            "1.cpp", ImmutableList.of(A, B),
+            "2.cpp", ImmutableList.of(A, B),
+            "3.cpp", ImmutableList.of(A, C),
+            "4.cpp", ImmutableList.of(A, C),
+            "5.cpp", ImmutableList.of(A)),
+        /* minSources */ 3,
+        /* minShare */ 0.5f);
+    assertEquals(
+        Optional.of(
+            InferredPrecompiledHeader.of(
+                ImmutableList.of(A),
+                ImmutableSortedSet.of("1.cpp", "2.cpp", "3.cpp", "4.cpp", "5.cpp"))),
+        inferred);
+  }
+
+  @Test
+  public void nothingIsInferredForTooFewSources() {
+    assertFalse(
+        PrecompiledHeaderInference.infer(
+            ImmutableMap.of(
+                "1.cpp", ImmutableList.of(A),
+                "2.cpp", ImmutableList.of(A),
+                "3.cpp", ImmutableList.of(A)),
+            /* minSources */ 4,
+            /* minShare */ 0.5f)
+            .isPresent());
+  }
+
+  @Test
+  public void nothingIsInferredWhenNoHeaderIsSharedWidelyEnough() {
+    assertFalse(
+        PrecompiledHeaderInference.infer(
+            ImmutableMap.of(
+                "1.cpp", ImmutableList.of(A),
+                "2.cpp", ImmutableList.of(A),
+                "3.cpp", ImmutableList.of(B),
+                "4.cpp", ImmutableList.of(C),
+                "5.cpp", ImmutableList.of(D)),
+            /* minSources */ 2,
+            /* minShare */ 0.5f)
+            .isPresent());
+  }
+
+  @Test
+  public void leadingIncludesStopAtTheFirstOtherDirectiveOrCode() {
+    assertEquals(
+        ImmutableList.of("foo/a.h", "b.h", "c.h"),
+        PrecompiledHeaderInference.getLeadingIncludes(
+            "// Copyright\n" +
+                "/* multi\n   line */\n" +
+                "#pragma once\n" +
+                "\n" +
+                "#include \"foo/a.h\"\n" +
+                "#  import <b.h> // trailing\n" +
+                "#include \\\n  \"c.h\"\n" +
+                "#define X 1\n" +
+                "#include \"d.h\"\n"));
+    assertEquals(
+        ImmutableList.of(),
+        PrecompiledHeaderInference.getLeadingIncludes("#define X 1\n#include \"a.h\"\n"));
+    assertEquals(
+        ImmutableList.of("a.h"),
+        PrecompiledHeaderInference.getLeadingIncludes(
+            "#include \"a.h\"\nint x;\n#include \"b.h\"\n"));
+  }
+
+  @Test
+  public void leadingHeadersAreMatchedToRecordedHeadersUntilOneIsNotFound() {
+    Path otherA = Paths.get("bar/a.h");
+    assertEquals(
+        ImmutableList.of(B, A),
+        PrecompiledHeaderInference.getLeadingHeaders(
+            "#include \"b.h\"\n#include <foo/a.h>\n#include \"x.h\"\n#include \"c.h\"\n",
+            ImmutableList.of(A, B, C, otherA)));
+    assertEquals(
+        ImmutableList.of(B),
+        PrecompiledHeaderInference.getLeadingHeaders(
+            "#include \"b.h\"\n#include \"a.h\"\n",
+            ImmutableList.of(A, B, otherA)));
+  }
+
+  @Test
+  public void recordedHeadersSkipSourcesGeneratedFilesAndArchiveMembers() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar#compile-a.cpp.o");
+    Path generated = filesystem.getBuckPaths().getGenDir().resolve("foo/gen.h");
+    for (Path path : ImmutableList.of(A, B, Paths.get("foo/a.cpp"), generated)) {
+      filesystem.writeContentsToPath("", path);
+    }
+
+    ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+    ImmutableList.Builder<String> entries = ImmutableList.builder();
+    for (DependencyFileEntry entry : ImmutableList.of(
+        DependencyFileEntry.of(B, Optional.empty()),
+        DependencyFileEntry.of(Paths.get("foo/a.cpp"), Optional.empty()),
+        DependencyFileEntry.of(generated, Optional.empty()),
+        DependencyFileEntry.of(C, Optional.empty()),
+        DependencyFileEntry.of(Paths.get("foo/lib.jar"), Optional.of(Paths.get("x.h"))),
+        DependencyFileEntry.of(A, Optional.empty()))) {
+      entries.add(objectMapper.writeValueAsString(entry));
+    }
+    filesystem.writeContentsToPath(
+        objectMapper.writeValueAsString(entries.build()),
+        BuildInfo.getPathToMetadataDirectory(target, filesystem)
+            .resolve(BuildInfo.MetadataKey.DEP_FILE));
+
+    assertEquals(
+        Optional.of(ImmutableList.of(B, A)),
+        PrecompiledHeaderInference.getRecordedHeaders(filesystem, target));
+    assertEquals(
+        Optional.empty(),
+        PrecompiledHeaderInference.getRecordedHeaders(
+            filesystem,
+            BuildTargetFactory.newInstance("//foo:bar#compile-b.cpp.o")));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx.elf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ElfFileProcessorTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private ImmutableList<Path> copiesOfSharedLibrary(int count) throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "samples", tmp);
+    workspace.setUp();
+    Path library = workspace.resolve("libfoo.so");
+    ImmutableList.Builder<Path> copies = ImmutableList.builder();
+    for (int i = 0; i < count; i++) {
+      Path copy = workspace.resolve("libfoo" + i + ".so");
+      Files.copy(library, copy);
+      copies.add(copy);
+    }
+    return copies.build();
+  }
+
+  @Test
+  public void operationsShareOneParseOfTheFile() throws IOException {
+    Path library = copiesOfSharedLibrary(1).get(0);
+    AtomicInteger sections = new AtomicInteger();
+    ElfFileProcessor.process(
+        library,
+        FileChannel.MapMode.READ_ONLY,
+        ImmutableList.of(
+            (path, elf) -> sections.set(elf.getNumberOfSections()),
+            (path, elf) -> assertEquals(sections.get(), elf.getNumberOfSections())));
+    assertThat(sections.get(), Matchers.greaterThan(0));
+  }
+
+  @Test
+  public void processAllWritesEditsToEveryFile() throws Exception {
+    ImmutableList<Path> libraries = copiesOfSharedLibrary(8);
+    ElfFileProcessor.processAll(
+        libraries,
+        FileChannel.MapMode.READ_WRITE,
+        ImmutableList.of(ElfScrubbers.clearProgramHeaders()),
+        executor);
+
+    for (Path library : libraries) {
+      ElfFileProcessor.process(
+          library,
+          FileChannel.MapMode.READ_ONLY,
+          ImmutableList.of(
+              (path, elf) -> {
+                ByteBuffer buffer = elf.getBuffer();
+                buffer.position((int) elf.header.e_phoff);
+                for (int i = 0; i < elf.header.e_phnum * elf.header.e_phentsize; i++) {
+                  assertEquals(0, buffer.get());
+                }
+              }));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void processAllRethrowsFailures() throws Exception {
+    ElfFileProcessor.processAll(
+        copiesOfSharedLibrary(4),
+        FileChannel.MapMode.READ_WRITE,
+        ImmutableList.of(ElfScrubbers.scrubSymbolTable(".missing", /* allowMissing */ false)),
+        executor);
+  }
+
+}
@@ -25,6 +25,7 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.TargetGraph;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 
 import org.junit.Assert;
@@ -86,6 +87,24 @@ public class BuildTargetsQueueTest {
     Assert.assertEquals(0, queue.dequeueZeroDependencyNodes(zeroDepTargets).size());
   }
 
+  @Test
+  public void testQueueFromDependencyMap() {
+    BuildTargetsQueue queue = BuildTargetsQueue.newQueue(ImmutableMap.of(
+        "//:leaf", ImmutableList.of(),
+        "//:left", ImmutableList.of("//:leaf"),
+        "//:right", ImmutableList.of("//:leaf"),
+        "//:root", ImmutableList.of("//:left", "//:right")));
+
+    ImmutableList<String> zeroDepTargets = queue.dequeueZeroDependencyNodes(ImmutableList.of());
+    Assert.assertEquals(ImmutableList.of("//:leaf"), zeroDepTargets);
+
+    zeroDepTargets = queue.dequeueZeroDependencyNodes(zeroDepTargets);
+    Assert.assertEquals(2, zeroDepTargets.size());
+
+    zeroDepTargets = queue.dequeueZeroDependencyNodes(zeroDepTargets);
+    Assert.assertEquals(ImmutableList.of("//:root"), zeroDepTargets);
+  }
+
   private static BuildRuleResolver createSimpleResolver() throws NoSuchBuildTargetException {
     BuildRuleResolver resolver =
         new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.distributed.thrift.BuildJobStateFileHashEntry;
+import com.facebook.buck.distributed.thrift.FileInfo;
+import com.facebook.buck.distributed.thrift.PathWithUnixSeparators;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class FileContentsUploaderTest {
+
+  private List<List<FileInfo>> uploadedChunks;
+  private List<SettableFuture<Void>> pendingUploads;
+
+  @Before
+  public void setUp() {
+    uploadedChunks = Lists.newArrayList();
+    pendingUploads = Lists.newArrayList();
+  }
+
+  private FileContentsUploader createUploader(int maxFilesPerChunk, long maxBytesPerChunk) {
+    return new FileContentsUploader(
+        chunk -> {
+          uploadedChunks.add(ImmutableList.copyOf(chunk));
+          SettableFuture<Void> upload = SettableFuture.create();
+          pendingUploads.add(upload);
+          return upload;
+        },
+        maxFilesPerChunk,
+        maxBytesPerChunk);
+  }
+
+  private static BuildJobStateFileHashEntry file(String path, String contents) {
+    return new BuildJobStateFileHashEntry()
+        .setPath(new PathWithUnixSeparators(path))
+        .setHashCode(Integer.toHexString(contents.hashCode()))
+        .setIsDirectory(false)
+        .setContents(contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testFilesAreUploadedInChunksWhileBeingAdded() {
+    FileContentsUploader uploader = createUploader(2, 1024);
+    uploader.add(file("a", "a"));
+    assertEquals(0, uploadedChunks.size());
+    uploader.add(file("b", "b"));
+    assertEquals(1, uploadedChunks.size());
+    uploader.add(file("c", "c"));
+    assertEquals(1, uploadedChunks.size());
+
+    uploader.finish();
+    assertEquals(2, uploadedChunks.size());
+    assertEquals(2, uploadedChunks.get(0).size());
+    assertEquals(1, uploadedChunks.get(1).size());
+  }
+
+  @Test
+  public void testChunksAreCappedBySize() {
+    FileContentsUploader uploader = createUploader(100, 4);
+    uploader.add(file("a", "aaa"));
+    uploader.add(file("b", "bbb"));
+    assertEquals(1, uploadedChunks.size());
+  }
+
+  @Test
+  public void testSameContentsAreOnlyUploadedOnce() {
+    FileContentsUploader uploader = createUploader(100, 1024);
+    uploader.add(file("cell1/a", "same"));
+    uploader.add(file("cell2/a", "same"));
+    uploader.add(file("cell2/b", "different"));
+    uploader.finish();
+
+    assertEquals(1, uploadedChunks.size());
+    assertEquals(2, uploadedChunks.get(0).size());
+  }
+
+  @Test
+  public void testDirectoriesAndExternalSymlinksAreSkipped() {
+    FileContentsUploader uploader = createUploader(100, 1024);
+    uploader.add(file("dir", "").setIsDirectory(true));
+    uploader.add(file("link", "link").setRootSymLink(new PathWithUnixSeparators("link")));
+    uploader.finish();
+
+    assertEquals(0, uploadedChunks.size());
+  }
+
+  @Test
+  public void testFinishCompletesOnceAllChunksAreUploaded() throws Exception {
+    FileContentsUploader uploader = createUploader(1, 1024);
+    uploader.add(file("a", "a"));
+    uploader.add(file("b", "b"));
+    ListenableFuture<Void> finished = uploader.finish();
+
+    pendingUploads.get(0).set(null);
+    assertFalse(finished.isDone());
+    pendingUploads.get(1).set(null);
+    assertTrue(finished.isDone());
+    Futures.getUnchecked(finished);
+  }
+
+  @Test
+  public void testClosingBeforeFinishCancelsPendingUploads() {
+    FileContentsUploader uploader = createUploader(1, 1024);
+    uploader.add(file("a", "a"));
+    uploader.close();
+    assertTrue(pendingUploads.get(0).isCancelled());
+
+    // Late additions from rule key computations that are still running are ignored.
+    uploader.add(file("b", "b"));
+    assertEquals(1, uploadedChunks.size());
+  }
+
+  @Test
+  public void testClosingAfterFinishLeavesUploadsRunning() {
+    FileContentsUploader uploader = createUploader(1, 1024);
+    uploader.add(file("a", "a"));
+    ListenableFuture<Void> finished = uploader.finish();
+    uploader.close();
+
+    assertFalse(pendingUploads.get(0).isCancelled());
+    pendingUploads.get(0).set(null);
+    assertTrue(finished.isDone());
+  }
+}
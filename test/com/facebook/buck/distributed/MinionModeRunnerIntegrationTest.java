@@ -25,7 +25,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 public class MinionModeRunnerIntegrationTest {
 
@@ -52,6 +54,31 @@ public class MinionModeRunnerIntegrationTest {
     }
   }
 
+  @Test
+  public void testDiamondGraphStreamingRun()
+      throws IOException, NoSuchBuildTargetException, InterruptedException {
+    try (ThriftCoordinatorServer server = createServer()) {
+      server.start();
+      LocalBuilderImpl localBuilder = new LocalBuilderImpl();
+      MinionModeRunner minion = new MinionModeRunner(
+          "localhost",
+          server.getPort(),
+          localBuilder,
+          BUILD_ID,
+          1,
+          Optional.of(2));
+      int exitCode = minion.runAndReturnExitCode();
+      Assert.assertEquals(0, exitCode);
+      Assert.assertEquals(0, server.waitUntilBuildCompletesAndReturnExitCode());
+      // Each target is built on its own.
+      Assert.assertEquals(4, localBuilder.getCallArguments().size());
+      int lastBuildIndex = localBuilder.getCallArguments().size() - 1;
+      Assert.assertEquals(
+          ImmutableList.of(BuildTargetsQueueTest.TARGET_NAME),
+          localBuilder.getCallArguments().get(lastBuildIndex));
+    }
+  }
+
   private ThriftCoordinatorServer createServer() throws NoSuchBuildTargetException, IOException {
     BuildTargetsQueue queue = BuildTargetsQueueTest.createDiamondDependencyQueue();
     return ThriftCoordinatorServerIntegrationTest.createServerOnRandomPort(queue);
@@ -62,7 +89,7 @@ public class MinionModeRunnerIntegrationTest {
     private final List<List<String>> callArguments;
 
     public LocalBuilderImpl() {
-      callArguments = Lists.newArrayList();
+      callArguments = Collections.synchronizedList(Lists.newArrayList());
     }
 
     public List<List<String>> getCallArguments() {
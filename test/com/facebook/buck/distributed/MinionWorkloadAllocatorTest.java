@@ -20,6 +20,7 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.timing.SettableFakeClock;
 import com.google.common.collect.ImmutableList;
 
 import org.junit.Assert;
@@ -29,6 +30,8 @@ import org.junit.Test;
 public class MinionWorkloadAllocatorTest {
 
   private static final String MINION_ONE = "Super minion 1";
+  private static final String MINION_TWO = "Super minion 2";
+  private static final String MINION_THREE = "Super minion 3";
 
   private BuildTargetsQueue queue;
   private BuildTarget target;
@@ -65,4 +68,92 @@ public class MinionWorkloadAllocatorTest {
 
     Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_ONE).size());
   }
+
+  @Test
+  public void testExpiredLeaseIsReassigned() {
+    SettableFakeClock clock = new SettableFakeClock(0, 0);
+    MinionWorkloadAllocator allocator = new MinionWorkloadAllocator(queue, 2, 1000, 60000, clock);
+
+    ImmutableList<String> firstTargets = allocator.getTargetsToBuild(MINION_ONE);
+    Assert.assertEquals(1, firstTargets.size());
+    Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_TWO).size());
+
+    clock.setCurrentTimeMillis(500);
+    Assert.assertTrue(allocator.heartbeat(MINION_ONE));
+    clock.setCurrentTimeMillis(1200);
+    Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_TWO).size());
+
+    clock.setCurrentTimeMillis(2000);
+    Assert.assertEquals(firstTargets, allocator.getTargetsToBuild(MINION_TWO));
+    Assert.assertFalse(allocator.heartbeat(MINION_ONE));
+
+    allocator.finishedBuildingTargets(MINION_TWO);
+    // A late report from the lost Minion must not release the dependents a second time.
+    allocator.finishedBuildingTargets(MINION_ONE);
+    Assert.assertEquals(2, allocator.getTargetsToBuild(MINION_TWO).size());
+    Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_ONE).size());
+    allocator.finishedBuildingTargets(MINION_TWO);
+
+    Assert.assertEquals(1, allocator.getTargetsToBuild(MINION_TWO).size());
+    allocator.finishedBuildingTargets(MINION_TWO);
+    Assert.assertTrue(allocator.isBuildFinished());
+  }
+
+  @Test
+  public void testStragglersAreSpeculativelyReissued() {
+    SettableFakeClock clock = new SettableFakeClock(0, 0);
+    MinionWorkloadAllocator allocator = new MinionWorkloadAllocator(queue, 2, 60000, 1000, clock);
+
+    ImmutableList<String> firstTargets = allocator.getTargetsToBuild(MINION_ONE);
+    Assert.assertEquals(1, firstTargets.size());
+    Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_TWO).size());
+
+    clock.setCurrentTimeMillis(1500);
+    Assert.assertEquals(firstTargets, allocator.getTargetsToBuild(MINION_TWO));
+    // Each straggling target is only speculated once.
+    Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_THREE).size());
+
+    allocator.finishedBuildingTargets(MINION_TWO);
+    Assert.assertFalse(allocator.isBuildFinished());
+    Assert.assertEquals(2, allocator.getTargetsToBuild(MINION_THREE).size());
+
+    // The original copy finishing late does not change the outcome.
+    allocator.finishedBuildingTargets(MINION_ONE);
+    allocator.finishedBuildingTargets(MINION_THREE);
+    Assert.assertEquals(1, allocator.getTargetsToBuild(MINION_ONE).size());
+    allocator.finishedBuildingTargets(MINION_ONE);
+    Assert.assertTrue(allocator.isBuildFinished());
+  }
+
+  @Test
+  public void testStreamingBuildFlow() {
+    MinionWorkloadAllocator allocator = new MinionWorkloadAllocator(queue, 2);
+
+    ImmutableList<String> firstTargets =
+        allocator.updateMinionWorkload(MINION_ONE, ImmutableList.of(), 4);
+    Assert.assertEquals(1, firstTargets.size());
+    Assert.assertEquals(
+        0,
+        allocator.updateMinionWorkload(MINION_TWO, ImmutableList.of(), 4).size());
+
+    ImmutableList<String> secondTargets =
+        allocator.updateMinionWorkload(MINION_ONE, firstTargets, 1);
+    Assert.assertEquals(1, secondTargets.size());
+    // The other middle target is picked up straight away by a Minion with a free slot.
+    ImmutableList<String> otherTargets =
+        allocator.updateMinionWorkload(MINION_TWO, ImmutableList.of(), 4);
+    Assert.assertEquals(1, otherTargets.size());
+    Assert.assertNotEquals(secondTargets, otherTargets);
+
+    Assert.assertEquals(
+        0,
+        allocator.updateMinionWorkload(MINION_ONE, secondTargets, 1).size());
+    ImmutableList<String> lastTargets =
+        allocator.updateMinionWorkload(MINION_TWO, otherTargets, 1);
+    Assert.assertEquals(ImmutableList.of(target.getFullyQualifiedName()), lastTargets);
+    Assert.assertFalse(allocator.isBuildFinished());
+
+    allocator.updateMinionWorkload(MINION_TWO, lastTargets, 1);
+    Assert.assertTrue(allocator.isBuildFinished());
+  }
 }
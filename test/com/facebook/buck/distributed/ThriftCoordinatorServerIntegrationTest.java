@@ -75,6 +75,23 @@ public class ThriftCoordinatorServerIntegrationTest {
     }
   }
 
+  @Test
+  public void testHeartbeatRenewsLease() throws IOException, NoSuchBuildTargetException {
+    int port = findRandomOpenPortOnAllLocalInterfaces();
+    BuildTargetsQueue diamondQueue = BuildTargetsQueueTest.createDiamondDependencyQueue();
+    try (ThriftCoordinatorServer server = new ThriftCoordinatorServer(port, diamondQueue, BUILD_ID);
+         ThriftCoordinatorClient client =
+             new ThriftCoordinatorClient("localhost", port, BUILD_ID)) {
+      server.start();
+      client.start();
+
+      Assert.assertFalse(client.minionHeartbeat(MINION_ID).isContinueBuilding());
+      client.getTargetsToBuild(MINION_ID);
+      Assert.assertTrue(client.minionHeartbeat(MINION_ID).isContinueBuilding());
+      Assert.assertEquals(2, server.getRpcCounts().get("minionHeartbeat").intValue());
+    }
+  }
+
   public static int findRandomOpenPortOnAllLocalInterfaces() throws IOException {
     try (
         ServerSocket socket = new ServerSocket(0);
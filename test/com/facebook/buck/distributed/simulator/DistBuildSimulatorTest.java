@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.simulator;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+public class DistBuildSimulatorTest {
+
+  @Test
+  public void testDiamondGraphWithSingleMinion() throws IOException, InterruptedException {
+    SimulatedActionGraph graph = SimulatedActionGraph.of(ImmutableList.of(
+        SimulatedRule.of("//:leaf", ImmutableList.of(), 10),
+        SimulatedRule.of("//:left", ImmutableList.of("//:leaf"), 10),
+        SimulatedRule.of("//:right", ImmutableList.of("//:leaf"), 10),
+        SimulatedRule.of("//:root", ImmutableList.of("//:left", "//:right"), 10)));
+    assertEquals(30, graph.getCriticalPathMillis());
+
+    DistBuildSimulationResult result = new DistBuildSimulator(1, 2, 2, 1).run(graph);
+
+    assertEquals(0, result.getExitCode());
+    assertEquals(ImmutableList.of(40L), result.getMinionBusyMillis());
+    assertThat(result.getMakespanMillis(), greaterThanOrEqualTo(graph.getCriticalPathMillis()));
+    assertEquals(3, (int) result.getCoordinatorRpcCounts().get("finishedBuilding"));
+  }
+
+  @Test
+  public void testSyntheticGraphWithManyMinions() throws IOException, InterruptedException {
+    SimulatedActionGraph graph =
+        SimulatedActionGraph.createSynthetic(60, 5, 3, 1, 5, new Random(42));
+    assertEquals(60, graph.getRules().size());
+
+    DistBuildSimulationResult result = new DistBuildSimulator(3, 2, 4, 1).run(graph);
+
+    assertEquals(0, result.getExitCode());
+    assertEquals(3, result.getMinionCount());
+    long totalBusyMillis = 0;
+    for (long busyMillis : result.getMinionBusyMillis()) {
+      totalBusyMillis += busyMillis;
+    }
+    assertEquals(graph.getTotalDurationMillis(), totalBusyMillis);
+    assertThat(result.getOverallUtilization(), greaterThan(0.0));
+    assertThat(result.getOverallUtilization(), lessThanOrEqualTo(1.0));
+  }
+
+  @Test
+  public void testSyntheticGraphWithStreamingMinions() throws IOException, InterruptedException {
+    SimulatedActionGraph graph =
+        SimulatedActionGraph.createSynthetic(60, 5, 3, 1, 5, new Random(42));
+
+    DistBuildSimulationResult result = new DistBuildSimulator(3, 2, 4, 1, true).run(graph);
+
+    assertEquals(0, result.getExitCode());
+    long totalBusyMillis = 0;
+    for (long busyMillis : result.getMinionBusyMillis()) {
+      totalBusyMillis += busyMillis;
+    }
+    assertEquals(graph.getTotalDurationMillis(), totalBusyMillis);
+    // Streaming minions only call finishedBuilding to report failures.
+    assertEquals(0, (int) result.getCoordinatorRpcCounts().get("finishedBuilding"));
+  }
+
+  @Test
+  public void testSyntheticGraphsAreReproducible() {
+    SimulatedActionGraph first =
+        SimulatedActionGraph.createSynthetic(100, 4, 5, 1, 100, new Random(7));
+    SimulatedActionGraph second =
+        SimulatedActionGraph.createSynthetic(100, 4, 5, 1, 100, new Random(7));
+    assertEquals(first.getRules(), second.getRules());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGraphWithUnknownDependencyIsRejected() {
+    SimulatedActionGraph.of(ImmutableList.of(
+        SimulatedRule.of("//:root", ImmutableList.of("//:missing"), 10)));
+  }
+}
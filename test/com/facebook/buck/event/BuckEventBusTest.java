@@ -24,12 +24,16 @@ import static org.junit.Assert.fail;
 
 import com.facebook.buck.timing.DefaultClock;
 import com.facebook.buck.timing.SettableFakeClock;
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.Subscribe;
 
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BuckEventBusTest {
 
@@ -123,6 +127,51 @@ public class BuckEventBusTest {
     assertEquals(event.getNanoTime(), 64738);
   }
 
+  @Test
+  public void asyncBusDeliversPostedEventsBeforeClosing() throws IOException {
+    BuckEventBus eb = new BuckEventBus(
+        new DefaultClock(),
+        true,
+        BuckEventBusFactory.BUILD_ID_FOR_TEST,
+        timeoutMillis);
+    CountingSubscriber essential = new CountingSubscriber();
+    CountingSubscriber optional = new CountingSubscriber();
+    eb.register(essential);
+    eb.register(optional, BuckEventBus.OverflowPolicy.DROP);
+    for (int i = 0; i < 1000; i++) {
+      eb.post(new TestEvent());
+    }
+    eb.close();
+
+    assertEquals(1000, essential.count.get());
+    assertEquals(1000, optional.count.get());
+    ImmutableList<ListenerDispatchStats> stats = eb.getAndResetDispatchStats();
+    assertEquals(2, stats.size());
+    assertEquals(1000, stats.get(0).getDispatchedEvents());
+    assertEquals(BuckEventBus.OverflowPolicy.DROP, stats.get(1).getOverflowPolicy());
+  }
+
+  @Test
+  public void eventsPostedWithoutConfiguringKeepTheirOrderOnAnAsyncBus() throws IOException {
+    BuckEventBus eb = new BuckEventBus(
+        new DefaultClock(),
+        true,
+        BuckEventBusFactory.BUILD_ID_FOR_TEST,
+        timeoutMillis);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    eb.register(subscriber);
+    TestEvent first = new TestEvent();
+    TestEvent second = new TestEvent();
+    TestEvent third = new TestEvent();
+    eb.post(first);
+    eb.timestamp(second);
+    eb.postWithoutConfiguring(second);
+    eb.post(third);
+    eb.close();
+
+    assertEquals(ImmutableList.of(first, second, third), subscriber.events);
+  }
+
   private static class SleepEvent extends AbstractBuckEvent {
     public final long milliseconds;
 
@@ -149,6 +198,25 @@ public class BuckEventBusTest {
     }
   }
 
+  private static class CountingSubscriber {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void count(TestEvent event) {
+      count.incrementAndGet();
+    }
+  }
+
+  private static class RecordingSubscriber {
+    private final List<TestEvent> events = new CopyOnWriteArrayList<>();
+
+    @Subscribe
+    public void record(TestEvent event) {
+      events.add(event);
+    }
+  }
+
   private static class TestEvent extends AbstractBuckEvent {
 
     public TestEvent() {
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.eventbus.Subscribe;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RingBufferEventDispatcherTest {
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  private RingBufferEventDispatcher dispatcher;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    if (dispatcher != null) {
+      dispatcher.close(TIMEOUT_MILLIS);
+    }
+  }
+
+  private RingBufferEventDispatcher newDispatcher(int capacity, int batchSize) {
+    dispatcher = new RingBufferEventDispatcher(
+        capacity,
+        batchSize,
+        new MostExecutors.NamedThreadFactory("test-dispatcher"),
+        System::nanoTime);
+    return dispatcher;
+  }
+
+  @Test
+  public void everyListenerSeesEveryEventInOrder() throws InterruptedException {
+    RingBufferEventDispatcher dispatcher = newDispatcher(16, 4);
+    RecordingListener first = new RecordingListener();
+    RecordingListener second = new RecordingListener();
+    dispatcher.register(first, BuckEventBus.OverflowPolicy.BLOCK);
+    dispatcher.register(second, BuckEventBus.OverflowPolicy.BLOCK);
+
+    for (int i = 0; i < 1000; i++) {
+      dispatcher.publish(new NumberedEvent(i));
+    }
+    assertTrue(dispatcher.close(TIMEOUT_MILLIS));
+
+    assertEquals(range(1000), first.numbers);
+    assertEquals(range(1000), second.numbers);
+  }
+
+  @Test
+  public void concurrentPublishersKeepTheOrderOfEachThread() throws Exception {
+    RingBufferEventDispatcher dispatcher = newDispatcher(64, 16);
+    RecordingListener listener = new RecordingListener();
+    dispatcher.register(listener, BuckEventBus.OverflowPolicy.BLOCK);
+
+    int threads = 4;
+    int eventsPerThread = 5000;
+    List<Thread> publishers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int base = t * eventsPerThread;
+      publishers.add(new Thread(() -> {
+        for (int i = 0; i < eventsPerThread; i++) {
+          dispatcher.publish(new NumberedEvent(base + i));
+        }
+      }));
+    }
+    publishers.forEach(Thread::start);
+    for (Thread publisher : publishers) {
+      publisher.join();
+    }
+    assertTrue(dispatcher.close(TIMEOUT_MILLIS));
+
+    assertEquals(threads * eventsPerThread, listener.numbers.size());
+    int[] last = new int[threads];
+    Arrays.fill(last, -1);
+    for (int number : listener.numbers) {
+      int thread = number / eventsPerThread;
+      assertThat(number, greaterThan(last[thread]));
+      last[thread] = number;
+    }
+  }
+
+  @Test
+  public void waitingEventsAreDispatchedInBatches() throws InterruptedException {
+    RingBufferEventDispatcher dispatcher = newDispatcher(1024, 128);
+    BlockingListener listener = new BlockingListener();
+    dispatcher.register(listener, BuckEventBus.OverflowPolicy.BLOCK);
+
+    dispatcher.publish(new NumberedEvent(0));
+    assertTrue(listener.started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    for (int i = 1; i <= 500; i++) {
+      dispatcher.publish(new NumberedEvent(i));
+    }
+    listener.release.countDown();
+    assertTrue(dispatcher.close(TIMEOUT_MILLIS));
+
+    ListenerDispatchStats stats = Iterables.getOnlyElement(dispatcher.getAndResetDispatchStats());
+    assertEquals(501, stats.getDispatchedEvents());
+    assertEquals(500, stats.getMaxBacklog());
+    assertEquals(0, stats.getDroppedEvents());
+    assertEquals(range(501), listener.numbers);
+  }
+
+  @Test
+  public void droppingListenerSkipsEventsInsteadOfBlockingPublishers()
+      throws InterruptedException {
+    RingBufferEventDispatcher dispatcher = newDispatcher(8, 4);
+    BlockingListener slow = new BlockingListener();
+    RecordingListener fast = new RecordingListener();
+    dispatcher.register(slow, BuckEventBus.OverflowPolicy.DROP);
+    dispatcher.register(fast, BuckEventBus.OverflowPolicy.BLOCK);
+
+    dispatcher.publish(new NumberedEvent(0));
+    assertTrue(slow.started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    // This would never return if the slow listener could hold up publishers.
+    for (int i = 1; i < 100; i++) {
+      dispatcher.publish(new NumberedEvent(i));
+    }
+    slow.release.countDown();
+    assertTrue(dispatcher.close(TIMEOUT_MILLIS));
+
+    assertEquals(range(100), fast.numbers);
+    ListenerDispatchStats slowStats = dispatcher.getAndResetDispatchStats().get(0);
+    assertEquals(BuckEventBus.OverflowPolicy.DROP, slowStats.getOverflowPolicy());
+    assertThat(slowStats.getDroppedEvents(), greaterThan(0L));
+    assertEquals(100, slowStats.getDispatchedEvents() + slowStats.getDroppedEvents());
+    List<Integer> seen = new ArrayList<>(slow.numbers);
+    Collections.sort(seen);
+    assertEquals(seen, slow.numbers);
+  }
+
+  @Test
+  public void listenersCanPostWhenTheRingIsFull() throws InterruptedException {
+    RingBufferEventDispatcher dispatcher = newDispatcher(4, 2);
+    RecordingListener recorder = new RecordingListener();
+    dispatcher.register(new Object() {
+      @Subscribe
+      public void echo(NumberedEvent event) {
+        if (event.number < 100) {
+          // Every event turns into ten, so the ring fills up right away.
+          for (int i = 0; i < 10; i++) {
+            dispatcher.publish(new NumberedEvent(1000 + event.number * 10 + i));
+          }
+        }
+      }
+    }, BuckEventBus.OverflowPolicy.BLOCK);
+    dispatcher.register(recorder, BuckEventBus.OverflowPolicy.BLOCK);
+
+    for (int i = 0; i < 100; i++) {
+      dispatcher.publish(new NumberedEvent(i));
+    }
+    // Events posted by listeners once the dispatcher is closed are dropped, so wait for them.
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+    while (recorder.numbers.size() < 1100 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(dispatcher.close(TIMEOUT_MILLIS));
+
+    assertEquals(1100, recorder.numbers.size());
+    List<Integer> echoes = new ArrayList<>();
+    for (int number : recorder.numbers) {
+      if (number >= 1000) {
+        echoes.add(number - 1000);
+      }
+    }
+    assertEquals(range(1000), echoes);
+  }
+
+  @Test
+  public void closeGivesUpOnListenersThatDoNotFinish() throws InterruptedException {
+    RingBufferEventDispatcher dispatcher = newDispatcher(16, 4);
+    BlockingListener listener = new BlockingListener();
+    dispatcher.register(listener, BuckEventBus.OverflowPolicy.BLOCK);
+
+    dispatcher.publish(new NumberedEvent(0));
+    assertTrue(listener.started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    dispatcher.publish(new NumberedEvent(1));
+
+    assertEquals(false, dispatcher.close(100));
+    // Nothing is accepted after close.
+    dispatcher.publish(new NumberedEvent(2));
+    assertEquals(ImmutableList.of(0), listener.numbers);
+  }
+
+  private static List<Integer> range(int count) {
+    List<Integer> numbers = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      numbers.add(i);
+    }
+    return numbers;
+  }
+
+  private static class NumberedEvent extends AbstractBuckEvent {
+    private final int number;
+
+    private NumberedEvent(int number) {
+      super(EventKey.unique());
+      this.number = number;
+    }
+
+    @Override
+    protected String getValueString() {
+      return Integer.toString(number);
+    }
+
+    @Override
+    public String getEventName() {
+      return "NumberedEvent";
+    }
+  }
+
+  private static class RecordingListener {
+    protected final List<Integer> numbers = Collections.synchronizedList(new ArrayList<>());
+
+    @Subscribe
+    public void record(NumberedEvent event) throws InterruptedException {
+      numbers.add(event.number);
+    }
+  }
+
+  /**
+   * Holds on to the first event until it is released.
+   */
+  private static class BlockingListener extends RecordingListener {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    @Subscribe
+    public void record(NumberedEvent event) throws InterruptedException {
+      super.record(event);
+      started.countDown();
+      release.await();
+    }
+  }
+}
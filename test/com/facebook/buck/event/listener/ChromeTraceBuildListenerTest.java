@@ -61,6 +61,7 @@ import com.facebook.buck.timing.IncrementingFakeClock;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.perf.PerfStatsTracking;
+import com.facebook.buck.util.trace.BinaryChromeTraceReader;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.FluentIterable;
@@ -70,22 +71,27 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.TimeZone;
 import java.util.UUID;
@@ -140,7 +146,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 3,
-        false);
+        false,
+        /* binaryTraces */ false);
 
     listener.outputTrace(invocationInfo.getBuildId());
 
@@ -174,7 +181,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 42,
-        false);
+        false,
+        /* binaryTraces */ false);
 
     BuildTarget target = BuildTargetFactory.newInstance("//fake:rule");
 
@@ -534,7 +542,8 @@ public class ChromeTraceBuildListenerTest {
           Locale.US,
           TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 3,
-          false);
+          false,
+          /* binaryTraces */ false);
       listener.outputTrace(invocationInfo.getBuildId());
       fail("Expected an exception.");
     } catch (HumanReadableException e) {
@@ -559,7 +568,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 1,
-        false);
+        false,
+        /* binaryTraces */ false);
     listener.outputTrace(invocationInfo.getBuildId());
     assertTrue(
         projectFilesystem.exists(
@@ -578,7 +588,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 1,
-        true);
+        true,
+        /* binaryTraces */ false);
     listener.outputTrace(invocationInfo.getBuildId());
 
     Path tracePath = Paths.get(EXPECTED_DIR + "build.2014-09-02.16-55-51.BUILD_ID.trace.gz");
@@ -592,4 +603,35 @@ public class ChromeTraceBuildListenerTest {
     List<?> elements = new Gson().fromJson(reader, List.class);
     assertThat(elements, notNullValue());
   }
+
+  @Test
+  public void canWriteBinaryTraces() throws IOException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+
+    ChromeTraceBuildListener listener = new ChromeTraceBuildListener(
+        projectFilesystem,
+        invocationInfo,
+        new FakeClock(TIMESTAMP_NANOS),
+        ObjectMappers.newDefaultInstance(),
+        Locale.US,
+        TimeZone.getTimeZone("America/Los_Angeles"),
+        /* tracesToKeep */ 1,
+        false,
+        /* binaryTraces */ true);
+    listener.outputTrace(invocationInfo.getBuildId());
+
+    Path tracePath = Paths.get(EXPECTED_DIR + "build.2014-09-02.16-55-51.BUILD_ID.btrace");
+    assertTrue(projectFilesystem.exists(tracePath));
+
+    StringWriter json = new StringWriter();
+    try (InputStream input =
+             new BufferedInputStream(projectFilesystem.newFileInputStream(tracePath))) {
+      BinaryChromeTraceReader.convertToJson(input, json);
+    }
+    List<Map<String, Object>> elements =
+        new Gson().fromJson(json.toString(), new TypeToken<List<Map<String, Object>>>() {}
+            .getType());
+    assertEquals("process_name", elements.get(0).get("name"));
+    assertEquals("M", elements.get(0).get("ph"));
+  }
 }
@@ -20,6 +20,13 @@ import static org.junit.Assert.assertThat;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.durations.RuleDurationStore;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.timing.FakeClock;
@@ -306,4 +313,39 @@ public class ProgressEstimatorTest {
     assertThat(e.getApproximateBuildProgress().get(), Matchers.greaterThan(0.0));
     assertThat(e.getApproximateBuildProgress().get(), Matchers.lessThan(1.0));
   }
+
+  @Test
+  public void testBuildProgressIsWeightedByHistoricalRuleDurations() {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path p = filesystem.resolve(ProgressEstimator.PROGRESS_ESTIMATIONS_JSON);
+    ProgressEstimator e = new ProgressEstimator(p, getBuckEventBus(), MAPPER);
+    RuleDurationStore store = RuleDurationStore.createInMemory(MAPPER);
+    e.setRuleDurationStore(store);
+
+    SourcePathResolver resolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    FakeBuildRule slowRule = new FakeBuildRule("//a:slow", resolver);
+    ImmutableList<FakeBuildRule> fastRules = ImmutableList.of(
+        new FakeBuildRule("//a:fast1", resolver),
+        new FakeBuildRule("//a:fast2", resolver),
+        new FakeBuildRule("//a:fast3", resolver));
+    store.record(slowRule.getType(), slowRule.getFullyQualifiedName(), 900, 900);
+    for (FakeBuildRule rule : fastRules) {
+      store.record(rule.getType(), rule.getFullyQualifiedName(), 100, 100);
+    }
+
+    e.didStartBuild();
+    e.setNumberOfRules(4);
+    e.didStartRule(slowRule);
+    for (FakeBuildRule rule : fastRules) {
+      e.didStartRule(rule);
+      e.didFinishRule(rule);
+    }
+
+    // Three out of four rules are done, but they only account for a quarter of the work.
+    assertThat(e.getApproximateBuildProgress().get(), Matchers.closeTo(0.25, 0.01));
+
+    e.didFinishRule(slowRule);
+    assertThat(e.getApproximateBuildProgress().get(), Matchers.closeTo(1.0, 0.01));
+  }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class JarIndexCacheTest {
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void testIndexesEntriesByPackage() throws IOException {
+    Path jar = tmp.getRoot().resolve("lib.jar");
+    writeJar(
+        jar,
+        "Root.class",
+        "com/example/A.class",
+        "com/example/B.class",
+        "com/example/sub/C.class");
+
+    JarIndex index = new JarIndexCache().getIndex(jar);
+
+    assertEquals(
+        ImmutableSet.of("", "com.example", "com.example.sub"),
+        index.getPackageNames());
+    assertEquals(
+        ImmutableList.of("com/example/A.class", "com/example/B.class"),
+        getNames(index.getEntries("com.example")));
+    assertEquals(
+        ImmutableList.of("Root.class"),
+        getNames(index.getEntries("")));
+    assertEquals(ImmutableList.of(), getNames(index.getEntries("com.other")));
+  }
+
+  @Test
+  public void testReadsStoredAndDeflatedEntries() throws IOException {
+    Path jar = tmp.getRoot().resolve("lib.jar");
+    writeJar(jar, "com/example/Stored.class", "com/example/Deflated.class");
+
+    JarIndex index = new JarIndexCache().getIndex(jar);
+
+    for (JarIndex.Entry entry : index.getEntries("com.example")) {
+      assertArrayEquals(contentsOf(entry.getName()), index.readEntry(entry));
+    }
+  }
+
+  @Test
+  public void testEntryReadersKeepTheJarOpenUntilClosed() throws IOException {
+    Path jar = tmp.getRoot().resolve("lib.jar");
+    writeJar(jar, "com/example/Stored.class", "com/example/Deflated.class");
+    JarIndex index = new JarIndexCache().getIndex(jar);
+
+    JarIndex.EntryReader reader = index.newEntryReader();
+    for (int i = 0; i < 2; i++) {
+      for (JarIndex.Entry entry : index.getEntries("com.example")) {
+        assertArrayEquals(contentsOf(entry.getName()), reader.readEntry(entry));
+      }
+    }
+    reader.close();
+
+    try {
+      reader.readEntry(index.getEntries("com.example").get(0));
+      fail("Closed readers should not read.");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  @Test(expected = IOException.class, timeout = 10000)
+  public void testCorruptDeflatedEntriesCannotBeRead() throws IOException {
+    Path jar = tmp.getRoot().resolve("lib.jar");
+    writeJar(jar, "com/example/Deflated.class");
+    JarIndex index = new JarIndexCache().getIndex(jar);
+
+    // The only entry's data follows its local header, name and extra field.
+    byte[] bytes = Files.readAllBytes(jar);
+    ByteBuffer localHeader = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int dataOffset = ZipEntry.LOCHDR +
+        (localHeader.getShort(ZipEntry.LOCNAM) & 0xffff) +
+        (localHeader.getShort(ZipEntry.LOCEXT) & 0xffff);
+    Arrays.fill(bytes, dataOffset, dataOffset + 8, (byte) 0xff);
+    Files.write(jar, bytes);
+
+    index.readEntry(index.getEntries("com.example").get(0));
+  }
+
+  @Test
+  public void testReusesIndexesUntilTheJarChanges() throws IOException {
+    Path jar = tmp.getRoot().resolve("lib.jar");
+    writeJar(jar, "com/example/A.class");
+    JarIndexCache cache = new JarIndexCache();
+
+    JarIndex first = cache.getIndex(jar);
+    assertSame(first, cache.getIndex(jar));
+
+    writeJar(jar, "com/example/A.class", "com/example/B.class");
+    Files.setLastModifiedTime(
+        jar,
+        FileTime.fromMillis(first.getLastModifiedMillis() + 10000));
+    JarIndex second = cache.getIndex(jar);
+
+    assertNotSame(first, second);
+    assertEquals(2, second.getEntries("com.example").size());
+    assertEquals(1, cache.size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testFilesThatAreNotZipsCannotBeIndexed() throws IOException {
+    Path notAJar = tmp.getRoot().resolve("not.jar");
+    Files.write(notAJar, "not a zip".getBytes(StandardCharsets.UTF_8));
+
+    new JarIndexCache().getIndex(notAJar);
+  }
+
+  private static ImmutableList<String> getNames(Iterable<JarIndex.Entry> entries) {
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    for (JarIndex.Entry entry : entries) {
+      names.add(entry.getName());
+    }
+    return names.build();
+  }
+
+  private static byte[] contentsOf(String name) {
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      contents.append(name).append('\n');
+    }
+    return contents.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes a jar holding the given entries. Entries with "Stored" in their name are stored rather
+   * than deflated.
+   */
+  private static void writeJar(Path jar, String... names) throws IOException {
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (String name : names) {
+        byte[] contents = contentsOf(name);
+        ZipEntry entry = new ZipEntry(name);
+        if (name.contains("Stored")) {
+          CRC32 crc = new CRC32();
+          crc.update(contents);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(contents.length);
+          entry.setCompressedSize(contents.length);
+          entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(contents);
+        out.closeEntry();
+      }
+    }
+  }
+}
@@ -342,6 +342,28 @@ public class JavaBuckConfigTest {
         Matchers.equalTo(JavacOptions.JavacLocation.IN_PROCESS));
   }
 
+  @Test
+  public void testOutOfProcessWorkerHeapIsBoundedByDefault() throws IOException {
+    JavaBuckConfig config = createWithDefaultFilesystem(new StringReader(""));
+    JavacOptions options = config.getDefaultJavacOptions();
+    assertThat(
+        options.getOutOfProcessMaxHeapMegabytes(),
+        Matchers.equalTo(OutOfProcessJavacWorkerPool.DEFAULT_MAX_HEAP_MEGABYTES));
+  }
+
+  @Test
+  public void testOutOfProcessWorkerHeapIsConfigurable() throws IOException {
+    String content = Joiner.on('\n').join(
+        "[java]",
+        "    out_of_process_max_heap_mb = 2048");
+    JavaBuckConfig config = createWithDefaultFilesystem(new StringReader(content));
+    JavacOptions options = config.getDefaultJavacOptions();
+    assertThat(options.getOutOfProcessMaxHeapMegabytes(), Matchers.equalTo(2048));
+    assertThat(
+        OutOfProcessJavacWorkerPool.getWorkerCommand(2048),
+        Matchers.hasItem("-Xmx2048m"));
+  }
+
   @Test
   public void testAbisGeneratedFromClassByDefault() throws IOException {
     JavaBuckConfig config = createWithDefaultFilesystem(new StringReader(""));
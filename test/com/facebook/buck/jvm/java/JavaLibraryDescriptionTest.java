@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static com.facebook.buck.jvm.java.JavaCompilationConstants.DEFAULT_JAVAC_OPTIONS;
 import static org.hamcrest.junit.MatcherAssert.assertThat;
 
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
@@ -23,16 +24,21 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.rules.FakeExportDependenciesRule;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.TargetGraphFactory;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Paths;
+
 public class JavaLibraryDescriptionTest {
 
   private FakeExportDependenciesRule exportingRule;
@@ -69,4 +75,65 @@ public class JavaLibraryDescriptionTest {
 
     assertThat(javaLibrary.getDeps(), Matchers.<BuildRule>hasItem(exportedRule));
   }
+
+  @Test
+  public void abiPipeliningCompilesAgainstSourceAbisOfDeps() throws Exception {
+    JavacOptions javacOptions = JavacOptions.builder(DEFAULT_JAVAC_OPTIONS)
+        .setAbiPipeliningRequested(true)
+        .build();
+    TargetNode<?, ?> depNode =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:dep"), javacOptions)
+            .addSrc(Paths.get("Dep.java"))
+            .build();
+    TargetNode<?, ?> libraryNode =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:lib"), javacOptions)
+            .addSrc(Paths.get("Lib.java"))
+            .addDep(depNode.getBuildTarget())
+            .build();
+    resolver = new BuildRuleResolver(
+        TargetGraphFactory.newInstance(depNode, libraryNode),
+        new DefaultTargetNodeToBuildRuleTransformer());
+
+    DefaultJavaLibrary library =
+        (DefaultJavaLibrary) resolver.requireRule(libraryNode.getBuildTarget());
+    DefaultJavaLibrary dep = (DefaultJavaLibrary) resolver.requireRule(depNode.getBuildTarget());
+    BuildRule depAbi = resolver.requireRule(dep.getAbiJar().get());
+
+    // The library still lists its dep, but only has to wait for the dep's ABI.
+    assertThat(depAbi, Matchers.instanceOf(CalculateSourceAbi.class));
+    assertThat(library.getDeps(), Matchers.hasItems(dep, depAbi));
+    assertThat(library.getPipelinedDeps(), Matchers.contains(dep));
+
+    // The ABI of the library only needs the ABIs of its deps.
+    CalculateSourceAbi libraryAbi =
+        (CalculateSourceAbi) resolver.requireRule(library.getAbiJar().get());
+    assertThat(libraryAbi.getDeps(), Matchers.contains(depAbi));
+    assertThat(
+        libraryAbi.getCompileTimeClasspath(),
+        Matchers.contains(new BuildTargetSourcePath(depAbi.getBuildTarget())));
+  }
+
+  @Test
+  public void abiPipeliningIsOffByDefault() throws Exception {
+    TargetNode<?, ?> depNode =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:dep"))
+            .addSrc(Paths.get("Dep.java"))
+            .build();
+    TargetNode<?, ?> libraryNode =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:lib"))
+            .addSrc(Paths.get("Lib.java"))
+            .addDep(depNode.getBuildTarget())
+            .build();
+    resolver = new BuildRuleResolver(
+        TargetGraphFactory.newInstance(depNode, libraryNode),
+        new DefaultTargetNodeToBuildRuleTransformer());
+
+    DefaultJavaLibrary library =
+        (DefaultJavaLibrary) resolver.requireRule(libraryNode.getBuildTarget());
+
+    assertThat(library.getPipelinedDeps(), Matchers.empty());
+    assertThat(
+        resolver.requireRule(library.getAbiJar().get()),
+        Matchers.instanceOf(CalculateAbi.class));
+  }
 }
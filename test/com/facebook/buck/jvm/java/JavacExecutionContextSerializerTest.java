@@ -20,6 +20,7 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.event.BuckEventBusFactory;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.rules.DefaultCellPathResolver;
 import com.facebook.buck.testutil.TestConsole;
 import com.facebook.buck.util.ClassLoaderCache;
@@ -80,6 +81,7 @@ public class JavacExecutionContextSerializerTest {
         ImmutableSortedSet.of(Paths.get("some/path"), Paths.get("/other path/")),
         Optional.of("hello I am main class"),
         Optional.of(Paths.get("/MANIFEST/FILE.TXT")));
+    JarIndexCache jarIndexCache = new JarIndexCache();
 
     JavacExecutionContext input = JavacExecutionContext.of(
         eventSink,
@@ -94,7 +96,10 @@ public class JavacExecutionContextSerializerTest {
         environment,
         processExecutor,
         pathToInputs,
-        Optional.of(directToJarOutputSettings));
+        Optional.of(directToJarOutputSettings),
+        Optional.of(Paths.get("/abi/out.jar")),
+        Optional.empty(),
+        Optional.of(jarIndexCache));
     Map<String, Object> data = JavacExecutionContextSerializer.serialize(input);
     JavacExecutionContext output = JavacExecutionContextSerializer.deserialize(
         data,
@@ -102,7 +107,8 @@ public class JavacExecutionContextSerializerTest {
         stdErr,
         classLoaderCache,
         objectMapper,
-        new TestConsole());
+        new TestConsole(),
+        jarIndexCache);
 
     assertThat(output.getEventSink(), Matchers.equalTo(eventSink));
     assertThat(output.getStdErr(), Matchers.equalTo(stdErr));
@@ -165,6 +171,10 @@ public class JavacExecutionContextSerializerTest {
         output.getDirectToJarOutputSettings().get().getClassesToRemoveFromJar().size(),
         Matchers.equalToObject(directToJarOutputSettings.getClassesToRemoveFromJar().size()));
 
+    assertThat(
+        output.getAbiJarOutputPath(),
+        Matchers.equalToObject(Optional.of(Paths.get("/abi/out.jar"))));
+
     ImmutableList<Pattern> inputPatterns = directToJarOutputSettings
         .getClassesToRemoveFromJar().asList();
     ImmutableList<Pattern> outputPatterns = output.getDirectToJarOutputSettings().get()
@@ -176,5 +186,7 @@ public class JavacExecutionContextSerializerTest {
       assertThat(outputPattern.pattern(), Matchers.equalToObject(inputPattern.pattern()));
       assertThat(outputPattern.flags(), Matchers.equalTo(inputPattern.flags()));
     }
+
+    assertThat(output.getJarIndexCache(), Matchers.equalTo(Optional.of(jarIndexCache)));
   }
 }
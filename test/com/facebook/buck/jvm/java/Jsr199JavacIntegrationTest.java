@@ -17,10 +17,13 @@
 package com.facebook.buck.jvm.java;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.core.JarIndexCache;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -59,6 +62,9 @@ import java.nio.file.Paths;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
 
 import javax.lang.model.SourceVersion;
 import javax.tools.DiagnosticListener;
@@ -66,6 +72,7 @@ import javax.tools.JavaCompiler;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 
 public class Jsr199JavacIntegrationTest {
 
@@ -128,6 +135,9 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(),
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty(),
         Optional.empty());
 
     int exitCode = javac.buildWithClasspath(
@@ -177,6 +187,9 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(),
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty(),
         Optional.empty());
 
     int exitCode = javac.buildWithClasspath(
@@ -279,6 +292,9 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(fakeJavacJar),
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty(),
         Optional.empty());
 
     boolean caught = false;
@@ -303,6 +319,128 @@ public class Jsr199JavacIntegrationTest {
     assertTrue("mock Java compiler should throw", caught);
   }
 
+  @Test
+  public void testAbiJarIsWrittenInsteadOfClasses() throws IOException, InterruptedException {
+    Jsr199Javac javac = createJavac(/* withSyntaxError */ false);
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    Path abiJar = Paths.get("example-abi.jar");
+    JavacExecutionContext javacExecutionContext = JavacExecutionContext.of(
+        new JavacEventSinkToBuckEventBusBridge(executionContext.getBuckEventBus()),
+        executionContext.getStdErr(),
+        executionContext.getClassLoaderCache(),
+        executionContext.getObjectMapper(),
+        executionContext.getVerbosity(),
+        executionContext.getCellPathResolver(),
+        executionContext.getJavaPackageFinder(),
+        createProjectFilesystem(),
+        NoOpClassUsageFileWriter.instance(),
+        executionContext.getEnvironment(),
+        executionContext.getProcessExecutor(),
+        ImmutableList.of(),
+        Optional.empty(),
+        Optional.of(abiJar),
+        Optional.empty(),
+        Optional.empty());
+
+    int exitCode = javac.buildWithClasspath(
+        javacExecutionContext,
+        BuildTargetFactory.newInstance("//some:example"),
+        ImmutableList.of("-d", tmp.getRoot().resolve("out").toString()),
+        ImmutableList.of(),
+        SOURCE_PATHS,
+        pathToSrcsList,
+        Optional.empty(),
+        JavacOptions.AbiGenerationMode.CLASS);
+
+    assertEquals("javac should exit with code 0.", 0, exitCode);
+    try (JarFile jar = new JarFile(tmp.getRoot().resolve(abiJar).toFile())) {
+      assertNotNull(jar.getEntry("com/example/Example.class"));
+    }
+    assertFalse(Files.exists(tmp.getRoot().resolve("out/com/example/Example.class")));
+  }
+
+  @Test
+  public void testCompilingAgainstIndexedClasspathJar() throws IOException {
+    Path dependencySource = tmp.newFolder("dep_src").resolve("Dependency.java");
+    Files.write(
+        dependencySource,
+        Joiner.on('\n')
+            .join(
+                "package com.example.dep;",
+                "",
+                "public class Dependency {",
+                "  public static int answer() { return 42; }",
+                "}")
+            .getBytes(StandardCharsets.UTF_8));
+    Path dependencyClasses = tmp.newFolder("dep_classes");
+    assertEquals(
+        0,
+        ToolProvider.getSystemJavaCompiler().run(
+            null,
+            null,
+            null,
+            "-d",
+            dependencyClasses.toString(),
+            dependencySource.toString()));
+    Path dependencyJar = tmp.getRoot().resolve("dep.jar");
+    try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(dependencyJar))) {
+      jar.putNextEntry(new JarEntry("com/example/dep/Dependency.class"));
+      jar.write(
+          Files.readAllBytes(dependencyClasses.resolve("com/example/dep/Dependency.class")));
+      jar.closeEntry();
+    }
+
+    Files.write(
+        tmp.getRoot().resolve("UsesDependency.java"),
+        Joiner.on('\n')
+            .join(
+                "package com.example;",
+                "",
+                "import com.example.dep.Dependency;",
+                "",
+                "public class UsesDependency {",
+                "  int answer = Dependency.answer();",
+                "}")
+            .getBytes(StandardCharsets.UTF_8));
+    tmp.newFolder("out");
+
+    JarIndexCache jarIndexCache = new JarIndexCache();
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    JavacExecutionContext javacExecutionContext = JavacExecutionContext.of(
+        new JavacEventSinkToBuckEventBusBridge(executionContext.getBuckEventBus()),
+        executionContext.getStdErr(),
+        executionContext.getClassLoaderCache(),
+        executionContext.getObjectMapper(),
+        executionContext.getVerbosity(),
+        executionContext.getCellPathResolver(),
+        executionContext.getJavaPackageFinder(),
+        createProjectFilesystem(),
+        NoOpClassUsageFileWriter.instance(),
+        executionContext.getEnvironment(),
+        executionContext.getProcessExecutor(),
+        ImmutableList.of(),
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty(),
+        Optional.of(jarIndexCache));
+
+    int exitCode = new JdkProvidedInMemoryJavac().buildWithClasspath(
+        javacExecutionContext,
+        BuildTargetFactory.newInstance("//some:example"),
+        ImmutableList.of(
+            "-d", tmp.getRoot().resolve("out").toString(),
+            "-classpath", dependencyJar.toString()),
+        ImmutableList.of(),
+        ImmutableSortedSet.of(Paths.get("UsesDependency.java")),
+        pathToSrcsList,
+        Optional.empty(),
+        JavacOptions.AbiGenerationMode.CLASS);
+
+    assertEquals("javac should exit with code 0.", 0, exitCode);
+    assertTrue(Files.exists(tmp.getRoot().resolve("out/com/example/UsesDependency.class")));
+    assertEquals(1, jarIndexCache.size());
+  }
+
   private Jsr199Javac createJavac(
       boolean withSyntaxError,
       Optional<Path> javacJar) throws IOException {
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Map;
+
+public class ResolvedJavacPluginPropertiesSerializerTest {
+  @Test
+  public void testSerializingAndDeserializing() throws Exception {
+    ResolvedJavacPluginProperties input = new ResolvedJavacPluginProperties(
+        JavacPluginProperties.builder()
+            .setCanReuseClassLoader(true)
+            .addProcessorNames("com.example.FirstProcessor", "com.example.SecondProcessor")
+            .build(),
+        new URL[] {
+            new URL("file:///some/processor.jar"),
+            new URL("file:///other%20path/classes/"),
+        });
+
+    Map<String, Object> data = ResolvedJavacPluginPropertiesSerializer.serialize(input);
+    ResolvedJavacPluginProperties output =
+        ResolvedJavacPluginPropertiesSerializer.deserialize(data);
+
+    assertThat(
+        output.getCanReuseClassLoader(),
+        Matchers.equalTo(input.getCanReuseClassLoader()));
+    assertThat(
+        output.getProcessorNames(),
+        Matchers.equalTo(input.getProcessorNames()));
+    assertThat(
+        ImmutableList.copyOf(output.getClasspath()),
+        Matchers.equalTo(ImmutableList.copyOf(input.getClasspath())));
+  }
+}
@@ -27,6 +27,8 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.Optional;
 
 public class ConnectionTest {
@@ -35,6 +37,7 @@ public class ConnectionTest {
     String doString(String arg);
     int doInt(int arg);
     boolean doBoolean(String arg1, double arg2);
+    int doNothing();
   }
 
   @Test
@@ -107,4 +110,29 @@ public class ConnectionTest {
       assertThat(result, Matchers.equalTo(true));
     }
   }
+
+  @Test
+  public void testForwardingRemoteStdErr() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    MessageSerializer messageSerializer = new MessageSerializer(objectMapper);
+    WorkerProcess workerProcess = new FakeWorkerProcess(
+        ImmutableMap.of(
+            "{\"type\":\"InvocationMessage\",\"name\":\"doNothing\",\"args\":[]}",
+            WorkerJobResult.of(
+                0,
+                Optional.of("{\"type\":\"ReturnResultMessage\",\"value\":0}"),
+                Optional.of("warning: nothing done\n"))));
+    ByteArrayOutputStream stdErr = new ByteArrayOutputStream();
+    MessageTransport messageTransport = new MessageTransport(
+        workerProcess,
+        messageSerializer,
+        Optional.of(new PrintStream(stdErr, true)));
+
+    try (Connection<RemoteInterface> connection = new Connection<>(messageTransport)) {
+      connection.setRemoteInterface(RemoteInterface.class, RemoteInterface.class.getClassLoader());
+
+      assertThat(connection.getRemoteObjectProxy().doNothing(), Matchers.equalTo(0));
+      assertThat(stdErr.toString(), Matchers.equalTo("warning: nothing done\n"));
+    }
+  }
 }
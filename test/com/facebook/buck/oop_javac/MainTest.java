@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.oop_javac;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.message_ipc.InvocationMessage;
+import com.facebook.buck.message_ipc.MessageSerializer;
+import com.facebook.buck.message_ipc.ReturnResultMessage;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.ClassLoaderCache;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MainTest {
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+  private final MessageSerializer messageSerializer = new MessageSerializer(objectMapper);
+
+  @Test
+  public void testHandshakeAndInvocation() throws Exception {
+    Path args = tmp.newFile("args");
+    Path stdout = tmp.getRoot().resolve("stdout");
+    Path stderr = tmp.getRoot().resolve("stderr");
+    Files.write(
+        args,
+        messageSerializer.serializeInvocation(
+            new InvocationMessage("getRetainedHeapMegabytes", ImmutableList.of()))
+            .getBytes(StandardCharsets.UTF_8));
+
+    JsonNode output = run(
+        "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}," +
+            command(1, args, stdout, stderr) + "]");
+
+    assertThat(output.size(), equalTo(2));
+    assertThat(output.get(0).get("id").asInt(), equalTo(0));
+    assertThat(output.get(0).get("type").asText(), equalTo("handshake"));
+    assertThat(output.get(0).get("protocol_version").asText(), equalTo("0"));
+    assertThat(output.get(1).get("id").asInt(), equalTo(1));
+    assertThat(output.get(1).get("type").asText(), equalTo("result"));
+    assertThat(output.get(1).get("exit_code").asInt(), equalTo(0));
+
+    ReturnResultMessage result = messageSerializer.deserializeResult(
+        new String(Files.readAllBytes(stdout), StandardCharsets.UTF_8));
+    assertThat(result.getValue(), instanceOf(Integer.class));
+    assertThat((Integer) result.getValue(), greaterThanOrEqualTo(0));
+  }
+
+  @Test
+  public void testUnknownMethodFailsTheCommandButNotTheWorker() throws Exception {
+    Path badArgs = tmp.newFile("bad_args");
+    Path goodArgs = tmp.newFile("good_args");
+    Files.write(
+        badArgs,
+        messageSerializer.serializeInvocation(
+            new InvocationMessage("noSuchMethod", ImmutableList.of()))
+            .getBytes(StandardCharsets.UTF_8));
+    Files.write(
+        goodArgs,
+        messageSerializer.serializeInvocation(
+            new InvocationMessage("getRetainedHeapMegabytes", ImmutableList.of()))
+            .getBytes(StandardCharsets.UTF_8));
+    Path badStderr = tmp.getRoot().resolve("bad_stderr");
+
+    JsonNode output = run(
+        "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}," +
+            command(1, badArgs, tmp.getRoot().resolve("bad_stdout"), badStderr) + "," +
+            command(
+                2,
+                goodArgs,
+                tmp.getRoot().resolve("good_stdout"),
+                tmp.getRoot().resolve("good_stderr")) +
+            "]");
+
+    assertThat(output.get(1).get("exit_code").asInt(), equalTo(1));
+    assertThat(
+        new String(Files.readAllBytes(badStderr), StandardCharsets.UTF_8),
+        containsString("noSuchMethod"));
+    assertThat(output.get(2).get("exit_code").asInt(), equalTo(0));
+  }
+
+  @Test
+  public void testCommandWithoutPathsIsAnError() throws Exception {
+    JsonNode output = run(
+        "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}," +
+            "{\"id\":1,\"type\":\"command\"}]");
+
+    assertThat(output.get(1).get("type").asText(), equalTo("error"));
+    assertThat(output.get(1).get("exit_code").asInt(), equalTo(2));
+  }
+
+  private JsonNode run(String input) throws Exception {
+    StringWriter output = new StringWriter();
+    try (ClassLoaderCache classLoaderCache = new ClassLoaderCache()) {
+      new Main(new StringReader(input), output, classLoaderCache, objectMapper).run();
+    }
+    return objectMapper.readTree(output.toString());
+  }
+
+  private static String command(int id, Path args, Path stdout, Path stderr) {
+    return String.format(
+        "{\"id\":%d,\"type\":\"command\",\"args_path\":\"%s\",\"stdout_path\":\"%s\"," +
+            "\"stderr_path\":\"%s\"}",
+        id,
+        args,
+        stdout,
+        stderr);
+  }
+}
@@ -51,6 +51,7 @@ public class CachingBuildEngineFactory {
   private BuildRuleResolver buildRuleResolver;
   private ResourceAwareSchedulingInfo resourceAwareSchedulingInfo =
       ResourceAwareSchedulingInfo.NON_AWARE_SCHEDULING_INFO;
+  private Optional<CriticalPathEstimator> criticalPathEstimator = Optional.empty();
 
   public CachingBuildEngineFactory(BuildRuleResolver buildRuleResolver) {
     this.cachingBuildEngineDelegate =
@@ -106,6 +107,12 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setCriticalPathEstimator(
+      CriticalPathEstimator criticalPathEstimator) {
+    this.criticalPathEstimator = Optional.of(criticalPathEstimator);
+    return this;
+  }
+
   public CachingBuildEngine build() {
     if (ruleKeyFactoriesFunction.isPresent()) {
       SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(buildRuleResolver);
@@ -121,7 +128,8 @@ public class CachingBuildEngineFactory {
           ruleFinder,
           new SourcePathResolver(ruleFinder),
           ruleKeyFactoriesFunction.get(),
-          resourceAwareSchedulingInfo);
+          resourceAwareSchedulingInfo,
+          criticalPathEstimator);
     }
 
     return new CachingBuildEngine(
@@ -140,7 +148,8 @@ public class CachingBuildEngineFactory {
             0,
             cachingBuildEngineDelegate.createFileHashCacheLoader()::getUnchecked,
             buildRuleResolver,
-            inputFileSizeLimit));
+            inputFileSizeLimit),
+        criticalPathEstimator);
   }
 
   private static WeightedListeningExecutorService toWeighted(ListeningExecutorService service) {
@@ -133,6 +133,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
@@ -1141,6 +1142,82 @@ public class CachingBuildEngineTest {
           equalTo(BuildRuleStatus.SUCCESS));
     }
 
+    @Test
+    public void pipelinedDepsAreBuiltAlongsideTheRule() throws Exception {
+      ListeningExecutorService service = listeningDecorator(Executors.newFixedThreadPool(2));
+      final CountDownLatch ruleStarted = new CountDownLatch(1);
+
+      // The dep can only finish once the rule depending on it has started.
+      BuildRule dep =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep"))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              ImmutableList.of(
+                  new AbstractExecutionStep("wait for rule") {
+                    @Override
+                    public StepExecutionResult execute(ExecutionContext context)
+                        throws InterruptedException {
+                      return ruleStarted.await(10, TimeUnit.SECONDS) ?
+                          StepExecutionResult.SUCCESS :
+                          StepExecutionResult.ERROR;
+                    }
+                  }),
+              /* output */ null);
+      BuildRule rule =
+          new PipelinedRuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:rule"))
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              ImmutableList.of(
+                  new AbstractExecutionStep("start") {
+                    @Override
+                    public StepExecutionResult execute(ExecutionContext context) {
+                      ruleStarted.countDown();
+                      return StepExecutionResult.SUCCESS;
+                    }
+                  }),
+              ImmutableSortedSet.of(dep));
+
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory()
+          .setExecutorService(service)
+          .build();
+      BuildResult result =
+          cachingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule).get();
+      assertTrue(service.shutdownNow().isEmpty());
+
+      assertThat(result.getStatus(), equalTo(BuildRuleStatus.SUCCESS));
+      // The rule is only reported as built once its pipelined deps are built too.
+      assertTrue(cachingBuildEngine.isRuleBuilt(dep.getBuildTarget()));
+    }
+
+    @Test
+    public void failedPipelinedDepsArePropagated() throws Exception {
+      BuildRule dep =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep"))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              ImmutableList.of(new FailingStep()),
+              /* output */ null);
+      BuildRule rule =
+          new PipelinedRuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:rule"))
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              ImmutableList.of(new SleepStep(0)),
+              ImmutableSortedSet.of(dep));
+
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build();
+      BuildResult result =
+          cachingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule).get();
+
+      assertThat(result.getStatus(), equalTo(BuildRuleStatus.CANCELED));
+      assertThat(result.getFailure(), instanceOf(StepFailedException.class));
+    }
+
     @Test
     public void getNumRulesToBuild() throws Exception {
       BuildRule rule3 =
@@ -2563,6 +2640,116 @@ public class CachingBuildEngineTest {
           getSuccess(result),
           equalTo(BuildRuleSuccessType.FETCHED_FROM_CACHE_MANIFEST_BASED));
     }
+
+    @Test
+    public void manifestEntriesUsingInputsRuledOutByTheRuleAreSkipped() throws Exception {
+      DefaultDependencyFileRuleKeyFactory depFilefactory =
+          new DefaultDependencyFileRuleKeyFactory(
+              FIELD_LOADER,
+              fileHashCache,
+              pathResolver,
+              ruleFinder);
+
+      // Prepare an input file that should appear in the dep file.
+      final Genrule genrule =
+          GenruleBuilder.newGenruleBuilder(BuildTargetFactory.newInstance("//:dep"))
+              .setOut("input")
+              .build(resolver, filesystem);
+      final Path input = pathResolver.getRelativePath(
+          Preconditions.checkNotNull(genrule.getSourcePathToOutput()));
+      filesystem.writeContentsToPath("contents", input);
+
+      // Create a simple rule which just writes a file.
+      BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+      BuildRuleParams params =
+          new FakeBuildRuleParamsBuilder(target)
+              .setProjectFilesystem(filesystem)
+              .build();
+      final Path output = Paths.get("output");
+      DepFileBuildRule rule =
+          new DepFileBuildRule(params) {
+            @AddToRuleKey
+            private final SourcePath path = new BuildTargetSourcePath(genrule.getBuildTarget());
+            @Override
+            public ImmutableList<Step> getBuildSteps(
+                BuildContext context,
+                BuildableContext buildableContext) {
+              return ImmutableList.of(
+                  new WriteFileStep(filesystem, "", output, /* executable */ false));
+            }
+            @Override
+            public Predicate<SourcePath> getCoveredByDepFilePredicate() {
+              return (SourcePath path) -> true;
+            }
+            @Override
+            public Predicate<SourcePath> getExistenceOfInterestPredicate() {
+              return (SourcePath path) -> false;
+            }
+            @Override
+            public ImmutableList<SourcePath> getInputsAfterBuildingLocally(BuildContext context) {
+              return ImmutableList.of(new PathSourcePath(filesystem, input));
+            }
+            @Override
+            public Predicate<SourcePath> getPossibleInputsPredicate() {
+              return (SourcePath path) -> false;
+            }
+            @Override
+            public Path getPathToOutput() {
+              return output;
+            }
+          };
+
+      // Create the build engine.
+      CachingBuildEngine cachingBuildEngine =
+          cachingBuildEngineFactory()
+              .setDepFiles(CachingBuildEngine.DepFiles.CACHE)
+              .setRuleKeyFactoriesFunction(
+                  Functions.constant(
+                      RuleKeyFactories.of(
+                          defaultRuleKeyFactory,
+                          inputBasedRuleKeyFactory,
+                          depFilefactory)))
+              .build();
+
+      // Seed the cache with the manifest and a referenced artifact.
+      RuleKey artifactKey = new RuleKey("bbbb");
+      Manifest manifest = new Manifest();
+      manifest.addEntry(
+          fileHashCache,
+          artifactKey,
+          pathResolver,
+          ImmutableSet.of(new PathSourcePath(filesystem, input)),
+          ImmutableSet.of(new PathSourcePath(filesystem, input)));
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      try (GZIPOutputStream outputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+        manifest.serialize(outputStream);
+      }
+      cache.store(
+          ArtifactInfo.builder()
+              .addRuleKeys(
+                  cachingBuildEngine.getManifestRuleKey(rule, buildContext.getEventBus()).get())
+              .build(),
+          byteArrayOutputStream.toByteArray());
+      Path artifact = tmp.newFile("artifact.zip");
+      writeEntriesToZip(
+          artifact,
+          ImmutableMap.of(
+              BuildInfo.getPathToMetadataDirectory(target, filesystem)
+                  .resolve(BuildInfo.MetadataKey.RECORDED_PATHS),
+              MAPPER.writeValueAsString(ImmutableList.of(output.toString())),
+              output,
+              "stuff"));
+      cache.store(
+          ArtifactInfo.builder()
+              .addRuleKeys(artifactKey)
+              .build(),
+          BorrowablePath.notBorrowablePath(artifact));
+
+      // Run the build.
+      BuildResult result =
+          cachingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule).get();
+      assertThat(getSuccess(result), equalTo(BuildRuleSuccessType.BUILT_LOCALLY));
+    }
   }
 
   public static class UncachableRuleTests extends CommonFixture {
@@ -2687,6 +2874,36 @@ public class CachingBuildEngineTest {
       result2.get();
     }
 
+    @Test
+    public void criticalPathEstimatorFollowsTheBuiltGraph() throws Exception {
+      FakeBuildRule dep = new FakeBuildRule(
+          new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep"))
+              .setProjectFilesystem(filesystem)
+              .build(),
+          pathResolver);
+      FakeBuildRule rule = new FakeBuildRule(
+          BuildTargetFactory.newInstance("//:rule"),
+          filesystem,
+          pathResolver,
+          dep);
+      CriticalPathEstimator estimator = new CriticalPathEstimator(Optional.empty());
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory()
+          .setCriticalPathEstimator(estimator)
+          .setRuleKeyFactoriesFunction(
+              Functions.constant(
+                  RuleKeyFactories.of(
+                      NOOP_RULE_KEY_FACTORY,
+                      NOOP_INPUT_BASED_RULE_KEY_FACTORY,
+                      NOOP_DEP_FILE_RULE_KEY_FACTORY)))
+          .build();
+
+      cachingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule).get();
+
+      assertThat(
+          estimator.getRemainingMillis(dep),
+          equalTo(2 * CriticalPathEstimator.DEFAULT_RULE_COST_MILLIS));
+    }
+
     private class ControlledRule extends AbstractBuildRuleWithResolver
         implements OverrideScheduleRule {
 
@@ -3200,6 +3417,25 @@ public class CachingBuildEngineTest {
 
   }
 
+  private static class PipelinedRuleWithSteps extends RuleWithSteps implements HasPipelinedDeps {
+
+    private final ImmutableSortedSet<BuildRule> pipelinedDeps;
+
+    public PipelinedRuleWithSteps(
+        BuildRuleParams buildRuleParams,
+        ImmutableList<Step> steps,
+        ImmutableSortedSet<BuildRule> pipelinedDeps) {
+      super(buildRuleParams, steps, /* output */ null);
+      this.pipelinedDeps = pipelinedDeps;
+    }
+
+    @Override
+    public ImmutableSortedSet<BuildRule> getPipelinedDeps() {
+      return pipelinedDeps;
+    }
+
+  }
+
   private static class SleepStep extends AbstractExecutionStep {
 
     private final long millis;
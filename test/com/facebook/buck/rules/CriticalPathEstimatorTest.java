@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.rules.durations.RuleDurationStore;
+import com.facebook.buck.util.ObjectMappers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class CriticalPathEstimatorTest {
+
+  private SourcePathResolver pathResolver;
+
+  @Before
+  public void setUp() {
+    pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(
+            TargetGraph.EMPTY,
+            new DefaultTargetNodeToBuildRuleTransformer())));
+  }
+
+  @Test
+  public void remainingTimeIsTheLongestChainToATopLevelRule() {
+    RuleDurationStore store = RuleDurationStore.createInMemory(ObjectMappers.newDefaultInstance());
+    FakeBuildRule link = createRule("//:link", store, 3000);
+    FakeBuildRule compile = createRule("//:compile", store, 200);
+    FakeBuildRule resources = createRule("//:resources", store, 10);
+    FakeBuildRule codegen = createRule("//:codegen", store, 50);
+
+    ImmutableListMultimap<BuildRule, BuildRule> deps = ImmutableListMultimap.of(
+        resources, codegen,
+        link, compile,
+        compile, codegen);
+
+    CriticalPathEstimator estimator = new CriticalPathEstimator(Optional.of(store));
+    estimator.addTopLevelRules(ImmutableList.of(link, resources), deps::get);
+
+    assertEquals(3000, estimator.getRemainingMillis(link));
+    assertEquals(3200, estimator.getRemainingMillis(compile));
+    assertEquals(10, estimator.getRemainingMillis(resources));
+    assertEquals(3250, estimator.getRemainingMillis(codegen));
+  }
+
+  @Test
+  public void longerChainsFromLaterTopLevelRulesArePropagatedToKnownDeps() {
+    CriticalPathEstimator estimator = new CriticalPathEstimator(Optional.empty());
+    FakeBuildRule shortTop = new FakeBuildRule("//:short", pathResolver);
+    FakeBuildRule longTop = new FakeBuildRule("//:long", pathResolver);
+    FakeBuildRule middle = new FakeBuildRule("//:middle", pathResolver);
+    FakeBuildRule shared = new FakeBuildRule("//:shared", pathResolver);
+    FakeBuildRule leaf = new FakeBuildRule("//:leaf", pathResolver);
+    long cost = CriticalPathEstimator.DEFAULT_RULE_COST_MILLIS;
+    ImmutableListMultimap<BuildRule, BuildRule> deps = ImmutableListMultimap.of(
+        shortTop, shared,
+        shared, leaf,
+        longTop, middle,
+        middle, shared);
+
+    estimator.addTopLevelRules(ImmutableList.of(shortTop), deps::get);
+    assertEquals(3 * cost, estimator.getRemainingMillis(leaf));
+
+    estimator.addTopLevelRules(ImmutableList.of(longTop), deps::get);
+    assertEquals(3 * cost, estimator.getRemainingMillis(shared));
+    assertEquals(4 * cost, estimator.getRemainingMillis(leaf));
+
+    // Rules that are already known add nothing new.
+    estimator.addTopLevelRules(ImmutableList.of(middle), deps::get);
+    assertEquals(2 * cost, estimator.getRemainingMillis(middle));
+  }
+
+  private FakeBuildRule createRule(String target, RuleDurationStore store, long millis) {
+    FakeBuildRule rule = new FakeBuildRule(target, pathResolver);
+    store.record(rule.getType(), rule.getFullyQualifiedName(), millis, millis);
+    return rule;
+  }
+}
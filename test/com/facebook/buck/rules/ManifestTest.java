@@ -32,7 +32,9 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -74,6 +76,100 @@ public class ManifestTest {
         Matchers.equalTo(entries));
   }
 
+  @Test
+  public void serializeNewRecordsAppendsToSerializedManifest() throws IOException {
+    Manifest manifest =
+        Manifest.fromMap(
+            ImmutableMap.of(new RuleKey("aa"), ImmutableMap.of("foo/bar.h", HashCode.fromInt(20))));
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    manifest.serialize(byteArrayOutputStream);
+
+    Manifest deserialized =
+        new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+    assertThat(deserialized.canSerializeNewRecords(), Matchers.is(true));
+    RuleKey key = new RuleKey("bb");
+    SourcePath input = new FakeSourcePath("foo/baz.h");
+    HashCode hashCode = HashCode.fromInt(30);
+    deserialized.addEntry(
+        new FakeFileHashCache(ImmutableMap.of(RESOLVER.getAbsolutePath(input), hashCode)),
+        key,
+        RESOLVER,
+        ImmutableSet.of(input),
+        ImmutableSet.of(input));
+    deserialized.serializeNewRecords(byteArrayOutputStream);
+
+    Manifest appended =
+        new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+    assertThat(
+        appended.toMap(),
+        Matchers.equalTo(
+            ImmutableMap.of(
+                new RuleKey("aa"),
+                ImmutableMap.of("foo/bar.h", HashCode.fromInt(20)),
+                key,
+                ImmutableMap.of(RESOLVER.getRelativePath(input).toString(), hashCode))));
+  }
+
+  @Test
+  public void serializeSortsHeaders() throws IOException {
+    ImmutableMap<RuleKey, ImmutableMap<String, HashCode>> entries =
+        ImmutableMap.of(
+            new RuleKey("aa"),
+            ImmutableMap.of("b.h", HashCode.fromInt(1), "a.h", HashCode.fromInt(2)),
+            new RuleKey("bb"),
+            ImmutableMap.of("c.h", HashCode.fromInt(3), "a.h", HashCode.fromInt(2)));
+    Manifest manifest = Manifest.fromMap(entries);
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    manifest.serialize(byteArrayOutputStream);
+    String serialized = new String(byteArrayOutputStream.toByteArray(), "ISO-8859-1");
+    assertThat(serialized.indexOf("a.h"), Matchers.lessThan(serialized.indexOf("b.h")));
+    assertThat(serialized.indexOf("b.h"), Matchers.lessThan(serialized.indexOf("c.h")));
+    assertThat(manifest.toMap(), Matchers.equalTo(entries));
+    assertThat(
+        new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray())).toMap(),
+        Matchers.equalTo(entries));
+  }
+
+  @Test
+  public void deserializeLegacyManifest() throws IOException {
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(byteArrayOutputStream);
+    output.writeInt(0);
+    output.writeInt(1);
+    output.writeUTF("foo/bar.h");
+    output.writeInt(1);
+    output.writeInt(0);
+    output.writeUTF(HashCode.fromInt(20).toString());
+    output.writeInt(1);
+    output.writeInt(1);
+    output.writeInt(0);
+    output.writeUTF("aa");
+
+    Manifest manifest =
+        new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+    assertThat(
+        manifest.toMap(),
+        Matchers.equalTo(
+            ImmutableMap.of(
+                new RuleKey("aa"),
+                ImmutableMap.of("foo/bar.h", HashCode.fromInt(20)))));
+    assertThat(manifest.canSerializeNewRecords(), Matchers.is(false));
+  }
+
+  @Test
+  public void fromFile() throws IOException {
+    ImmutableMap<RuleKey, ImmutableMap<String, HashCode>> entries =
+        ImmutableMap.of(new RuleKey("aa"), ImmutableMap.of("foo/bar.h", HashCode.fromInt(20)));
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path path = Paths.get("manifest");
+    try (OutputStream outputStream = filesystem.newFileOutputStream(path)) {
+      Manifest.fromMap(entries).serialize(outputStream);
+    }
+    assertThat(
+        Manifest.fromFile(filesystem, path).toMap(),
+        Matchers.equalTo(entries));
+  }
+
   @Test
   public void addEntry() throws IOException {
     Manifest manifest = new Manifest();
@@ -297,6 +393,34 @@ public class ManifestTest {
         Matchers.equalTo(Optional.of(key2)));
   }
 
+  @Test
+  public void lookupReturnsFirstMatchAcrossHeaderSets() throws IOException {
+    SourcePath input1 = new FakeSourcePath("input1.h");
+    SourcePath input2 = new FakeSourcePath("input2.h");
+    String header1 = RESOLVER.getRelativePath(input1).toString();
+    String header2 = RESOLVER.getRelativePath(input2).toString();
+    Manifest manifest =
+        Manifest.fromMap(
+            ImmutableMap.of(
+                new RuleKey("aa"),
+                ImmutableMap.of(header1, HashCode.fromInt(3)),
+                new RuleKey("bb"),
+                ImmutableMap.of(header1, HashCode.fromInt(1), header2, HashCode.fromInt(2)),
+                new RuleKey("cc"),
+                ImmutableMap.of(header1, HashCode.fromInt(1))));
+    FileHashCache fileHashCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                RESOLVER.getAbsolutePath(input1), HashCode.fromInt(1),
+                RESOLVER.getAbsolutePath(input2), HashCode.fromInt(2)));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(input1, input2)),
+        Matchers.equalTo(Optional.of(new RuleKey("bb"))));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(input1)),
+        Matchers.equalTo(Optional.of(new RuleKey("cc"))));
+  }
+
   @Test
   public void size() {
     assertThat(new Manifest().size(), Matchers.equalTo(0));
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import static com.facebook.buck.event.TestEventConfigurator.configureTestEventAtTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleEvent;
+import com.facebook.buck.rules.BuildRuleKeys;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildRuleStatus;
+import com.facebook.buck.rules.BuildRuleSuccessType;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.keys.FakeRuleKeyFactory;
+import com.facebook.buck.step.StepEvent;
+import com.facebook.buck.util.ObjectMappers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class RuleDurationListenerTest {
+
+  private static final long THREAD_ID = 2L;
+
+  private BuildRule rule;
+  private RuleDurationStore store;
+  private RuleDurationListener listener;
+
+  @Before
+  public void setUp() {
+    rule = new FakeBuildRule(
+        BuildTargetFactory.newInstance("//banana:stand"),
+        new SourcePathResolver(new SourcePathRuleFinder(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY,
+                new DefaultTargetNodeToBuildRuleTransformer()))),
+        ImmutableSortedSet.of());
+    store = RuleDurationStore.createInMemory(ObjectMappers.newDefaultInstance());
+    listener = new RuleDurationListener(store);
+  }
+
+  @Test
+  public void recordsRunningTimeAndStepTimeOfRulesBuiltLocally() {
+    FakeRuleKeyFactory ruleKeyFactory = new FakeRuleKeyFactory(
+        ImmutableMap.of(rule.getBuildTarget(), new RuleKey("aaaa")));
+
+    listener.ruleStarted(at(BuildRuleEvent.started(rule), 100));
+    listener.ruleSuspended(at(BuildRuleEvent.suspended(rule, ruleKeyFactory), 200));
+    // Time spent waiting on dependencies is not attributed to the rule.
+    listener.ruleResumed(at(BuildRuleEvent.resumed(rule, ruleKeyFactory), 1000));
+    StepEvent.Started stepStarted = StepEvent.started("javac", "javac", UUID.randomUUID());
+    listener.stepStarted(at(stepStarted, 1100));
+    listener.stepFinished(at(StepEvent.finished(stepStarted, 0), 1350));
+    listener.ruleFinished(at(finished(BuildRuleSuccessType.BUILT_LOCALLY), 1400));
+
+    RuleDurationStats stats = store.getStats(rule).get();
+    assertEquals(1, stats.getSampleCount());
+    assertEquals(500, stats.getMedianRuleMillis());
+    assertEquals(250, stats.getMedianStepMillis());
+  }
+
+  @Test
+  public void ignoresRulesThatWereNotBuiltLocally() {
+    listener.ruleStarted(at(BuildRuleEvent.started(rule), 100));
+    listener.ruleFinished(at(finished(BuildRuleSuccessType.FETCHED_FROM_CACHE), 150));
+
+    assertFalse(store.getStats(rule).isPresent());
+  }
+
+  private BuildRuleEvent.Finished finished(BuildRuleSuccessType successType) {
+    return BuildRuleEvent.finished(
+        rule,
+        BuildRuleKeys.of(new RuleKey("aaaa")),
+        BuildRuleStatus.SUCCESS,
+        CacheResult.miss(),
+        Optional.of(successType),
+        Optional.empty(),
+        Optional.empty());
+  }
+
+  private static <T extends AbstractBuckEvent> T at(T event, long millis) {
+    return configureTestEventAtTime(event, millis, TimeUnit.MILLISECONDS, THREAD_ID);
+  }
+}
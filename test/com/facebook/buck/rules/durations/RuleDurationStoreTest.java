@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.timing.SettableFakeClock;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public class RuleDurationStoreTest {
+
+  @Rule
+  public final TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final ObjectMapper MAPPER = ObjectMappers.newDefaultInstance();
+
+  @Test
+  public void noStatsForUnknownRules() {
+    RuleDurationStore store = RuleDurationStore.createInMemory(MAPPER);
+    assertFalse(store.getStats("java_library", "//a:b").isPresent());
+    assertFalse(store.getStatsForRuleType("java_library").isPresent());
+  }
+
+  @Test
+  public void computesMedianAndP90OfRecordedSamples() {
+    RuleDurationStore store = RuleDurationStore.createInMemory(MAPPER);
+    for (long i = 1; i <= 10; ++i) {
+      store.record("java_library", "//a:b", i * 100, i * 10);
+    }
+
+    RuleDurationStats stats = store.getStats("java_library", "//a:b").get();
+    assertEquals(10, stats.getSampleCount());
+    assertEquals(500, stats.getMedianRuleMillis());
+    assertEquals(900, stats.getP90RuleMillis());
+    assertEquals(50, stats.getMedianStepMillis());
+    assertEquals(90, stats.getP90StepMillis());
+  }
+
+  @Test
+  public void onlyKeepsTheMostRecentSamples() {
+    RuleDurationStore store = new RuleDurationStore(Optional.empty(), MAPPER, 3);
+    store.record("genrule", "//a:b", 10_000, 10_000);
+    store.record("genrule", "//a:b", 10, 1);
+    store.record("genrule", "//a:b", 20, 2);
+    store.record("genrule", "//a:b", 30, 3);
+
+    RuleDurationStats stats = store.getStats("genrule", "//a:b").get();
+    assertEquals(3, stats.getSampleCount());
+    assertEquals(30, stats.getP90RuleMillis());
+  }
+
+  @Test
+  public void ruleTypeStatsAreComputedFromTheMedianOfEveryTarget() {
+    RuleDurationStore store = RuleDurationStore.createInMemory(MAPPER);
+    store.record("cxx_library", "//a:a", 100, 90);
+    store.record("cxx_library", "//a:a", 100, 90);
+    store.record("cxx_library", "//a:a", 5_000, 4_000);
+    store.record("cxx_library", "//a:b", 300, 200);
+    store.record("genrule", "//a:c", 1_000_000, 1_000_000);
+
+    RuleDurationStats stats = store.getStatsForRuleType("cxx_library").get();
+    assertEquals(2, stats.getSampleCount());
+    assertEquals(100, stats.getMedianRuleMillis());
+    assertEquals(300, stats.getP90RuleMillis());
+  }
+
+  @Test
+  public void ruleTypeStatsFollowNewlyRecordedSamples() {
+    RuleDurationStore store = RuleDurationStore.createInMemory(MAPPER);
+    store.record("cxx_library", "//a:a", 100, 90);
+    assertEquals(100, store.getStatsForRuleType("cxx_library").get().getMedianRuleMillis());
+
+    store.record("cxx_library", "//a:b", 300, 200);
+    store.record("cxx_library", "//a:c", 500, 400);
+    RuleDurationStats stats = store.getStatsForRuleType("cxx_library").get();
+    assertEquals(3, stats.getSampleCount());
+    assertEquals(300, stats.getMedianRuleMillis());
+  }
+
+  @Test
+  public void rulesThatAreNoLongerBuiltAgeOut() throws Exception {
+    Path storageFile = tmp.getRoot().resolve(RuleDurationStore.RULE_DURATIONS_JSON);
+    SettableFakeClock clock = new SettableFakeClock(0, 0);
+    RuleDurationStore store =
+        new RuleDurationStore(Optional.of(storageFile), MAPPER, clock, 20, 1_000);
+    store.record("genrule", "//a:deleted", 10_000, 10_000);
+    clock.setCurrentTimeMillis(900);
+    store.record("genrule", "//a:kept", 10, 1);
+    clock.setCurrentTimeMillis(1_500);
+    store.save();
+
+    RuleDurationStore reloaded =
+        new RuleDurationStore(Optional.of(storageFile), MAPPER, clock, 20, 1_000);
+    assertFalse(reloaded.getStats("genrule", "//a:deleted").isPresent());
+    assertTrue(reloaded.getStats("genrule", "//a:kept").isPresent());
+    assertEquals(10, reloaded.getStatsForRuleType("genrule").get().getMedianRuleMillis());
+
+    clock.setCurrentTimeMillis(3_000);
+    RuleDurationStore stale =
+        new RuleDurationStore(Optional.of(storageFile), MAPPER, clock, 20, 1_000);
+    assertFalse(stale.getStatsForRuleType("genrule").isPresent());
+  }
+
+  @Test
+  public void savedStatsAreLoadedByTheNextStore() throws Exception {
+    Path storageFile = tmp.getRoot().resolve("buck-out").resolve(
+        RuleDurationStore.RULE_DURATIONS_JSON);
+    RuleDurationStore store = new RuleDurationStore(storageFile, MAPPER);
+    store.record("java_library", "//a:b", 100, 80);
+    store.record("java_library", "//a:b", 300, 240);
+    store.save();
+    assertTrue(Files.exists(storageFile));
+
+    RuleDurationStore reloaded = new RuleDurationStore(storageFile, MAPPER);
+    assertEquals(
+        store.getStats("java_library", "//a:b"),
+        reloaded.getStats("java_library", "//a:b"));
+  }
+
+  @Test
+  public void lastRecordedTimeIsSavedAsItsOwnField() throws Exception {
+    Path storageFile = tmp.getRoot().resolve(RuleDurationStore.RULE_DURATIONS_JSON);
+    SettableFakeClock clock = new SettableFakeClock(1_234, 0);
+    RuleDurationStore store =
+        new RuleDurationStore(Optional.of(storageFile), MAPPER, clock, 20, 1_000);
+    store.record("genrule", "//a:b", 10, 1);
+    store.save();
+
+    JsonNode target = MAPPER.readTree(storageFile.toFile()).get("genrule").get("//a:b");
+    assertTrue(target.get("recorded").isNumber());
+    assertEquals(1_234, target.get("recorded").asLong());
+  }
+
+  @Test
+  public void historiesWithoutARecordedTimeStartAgingOnLoad() throws Exception {
+    Path storageFile = tmp.newFile(RuleDurationStore.RULE_DURATIONS_JSON);
+    Files.write(
+        storageFile,
+        "{\"genrule\":{\"//a:b\":{\"rule\":[10],\"steps\":[1]}}}".getBytes("UTF-8"));
+    SettableFakeClock clock = new SettableFakeClock(5_000, 0);
+    RuleDurationStore store =
+        new RuleDurationStore(Optional.of(storageFile), MAPPER, clock, 20, 1_000);
+    assertEquals(10, store.getStats("genrule", "//a:b").get().getMedianRuleMillis());
+  }
+
+  @Test
+  public void corruptStorageIsIgnored() throws Exception {
+    Path storageFile = tmp.newFile(RuleDurationStore.RULE_DURATIONS_JSON);
+    Files.write(storageFile, "{not json".getBytes("UTF-8"));
+
+    RuleDurationStore store = new RuleDurationStore(storageFile, MAPPER);
+    assertFalse(store.getStats("java_library", "//a:b").isPresent());
+    store.record("java_library", "//a:b", 100, 80);
+    assertEquals(1, store.getStats("java_library", "//a:b").get().getSampleCount());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.durations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public class RuleResourceProfileStoreTest {
+
+  @Rule
+  public final TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final ObjectMapper MAPPER = ObjectMappers.newDefaultInstance();
+  private static final ResourceAmounts DEFAULT_AMOUNTS = ResourceAmounts.of(1, 1, 2, 3);
+  private static final long UNIT = ResourceAmountsEstimator.MEMORY_UNIT_BYTES;
+
+  @Test
+  public void noAmountsForUnknownRuleTypes() {
+    RuleResourceProfileStore store = RuleResourceProfileStore.createInMemory(MAPPER);
+    assertFalse(store.getResourceAmounts("cxx_library", DEFAULT_AMOUNTS).isPresent());
+  }
+
+  @Test
+  public void amountsAreSizedByPeakMemoryAndAverageParallelism() {
+    RuleResourceProfileStore store = RuleResourceProfileStore.createInMemory(MAPPER);
+    store.record("cxx_library", 2 * UNIT, 1_000, 1_000);
+    store.record("cxx_library", 5 * UNIT + 1, 5_000, 1_000);
+
+    assertEquals(
+        Optional.of(ResourceAmounts.of(3, 6, 2, 3)),
+        store.getResourceAmounts("cxx_library", DEFAULT_AMOUNTS));
+  }
+
+  @Test
+  public void amountsNeverDropBelowOneUnit() {
+    RuleResourceProfileStore store = RuleResourceProfileStore.createInMemory(MAPPER);
+    store.record("genrule", 0, 0, 10);
+    store.record("export_file", 1, 0, 0);
+
+    assertEquals(
+        Optional.of(ResourceAmounts.of(1, 1, 2, 3)),
+        store.getResourceAmounts("genrule", DEFAULT_AMOUNTS));
+    assertEquals(
+        Optional.of(ResourceAmounts.of(DEFAULT_AMOUNTS.getCpu(), 1, 2, 3)),
+        store.getResourceAmounts("export_file", DEFAULT_AMOUNTS));
+  }
+
+  @Test
+  public void onlyKeepsTheMostRecentSamples() {
+    RuleResourceProfileStore store = new RuleResourceProfileStore(Optional.empty(), MAPPER, 2);
+    store.record("java_library", 50 * UNIT, 1_000, 1_000);
+    store.record("java_library", 2 * UNIT, 1_000, 1_000);
+    store.record("java_library", 3 * UNIT, 1_000, 1_000);
+
+    assertEquals(
+        3,
+        store.getResourceAmounts("java_library", DEFAULT_AMOUNTS).get().getMemory());
+  }
+
+  @Test
+  public void savedProfilesAreLoadedByTheNextStore() throws Exception {
+    Path storageFile = tmp.getRoot().resolve("buck-out").resolve(
+        RuleResourceProfileStore.RULE_RESOURCES_JSON);
+    RuleResourceProfileStore store = new RuleResourceProfileStore(storageFile, MAPPER);
+    store.record("java_library", 4 * UNIT, 3_000, 1_000);
+    store.save();
+    assertTrue(Files.exists(storageFile));
+
+    RuleResourceProfileStore reloaded = new RuleResourceProfileStore(storageFile, MAPPER);
+    assertEquals(
+        store.getResourceAmounts("java_library", DEFAULT_AMOUNTS),
+        reloaded.getResourceAmounts("java_library", DEFAULT_AMOUNTS));
+  }
+
+  @Test
+  public void corruptStorageIsIgnored() throws Exception {
+    Path storageFile = tmp.newFile(RuleResourceProfileStore.RULE_RESOURCES_JSON);
+    Files.write(storageFile, "{not json".getBytes("UTF-8"));
+
+    RuleResourceProfileStore store = new RuleResourceProfileStore(storageFile, MAPPER);
+    assertFalse(store.getResourceAmounts("java_library", DEFAULT_AMOUNTS).isPresent());
+  }
+}
@@ -27,6 +27,7 @@ import java.nio.file.Paths;
 public class FakeWorkerProcess extends WorkerProcess {
 
   private ImmutableMap<String, WorkerJobResult> jobArgsToJobResultMap;
+  private boolean isClosed = false;
 
   public FakeWorkerProcess(
       ImmutableMap<String, WorkerJobResult> jobArgsToJobResultMap) throws IOException {
@@ -56,5 +57,11 @@ public class FakeWorkerProcess extends WorkerProcess {
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    isClosed = true;
+  }
+
+  public boolean isClosed() {
+    return isClosed;
+  }
 }
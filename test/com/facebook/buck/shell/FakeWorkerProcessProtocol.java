@@ -17,10 +17,13 @@ package com.facebook.buck.shell;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Queue;
 
 public class FakeWorkerProcessProtocol implements WorkerProcessProtocol {
 
   private boolean isClosed = false;
+  private final Queue<Integer> unansweredCommands = new ArrayDeque<>();
 
   @Override
   public void sendHandshake(int handshakeID) throws IOException {}
@@ -29,7 +32,11 @@ public class FakeWorkerProcessProtocol implements WorkerProcessProtocol {
   public void receiveHandshake(int handshakeID) throws IOException {}
 
   @Override
-  public void sendCommand(int messageID, WorkerProcessCommand command) throws IOException {}
+  public synchronized void sendCommand(
+      int messageID,
+      WorkerProcessCommand command) throws IOException {
+    unansweredCommands.add(messageID);
+  }
 
   @Override
   public WorkerProcessCommand receiveCommand(int messageID) throws IOException {
@@ -44,6 +51,12 @@ public class FakeWorkerProcessProtocol implements WorkerProcessProtocol {
     return 0;
   }
 
+  @Override
+  public synchronized WorkerProcessCommandResponse receiveNextCommandResponse()
+      throws IOException {
+    return WorkerProcessCommandResponse.of(unansweredCommands.remove(), 0);
+  }
+
   @Override
   public void close() throws IOException {
     isClosed = true;
@@ -16,20 +16,27 @@
 
 package com.facebook.buck.shell;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WorkerProcessPoolTest {
   @Test
@@ -132,8 +139,111 @@ public class WorkerProcessPoolTest {
 
   }
 
+  @Test
+  public void testHandsOutEachWorkerToSeveralBorrowers() throws Exception {
+    WorkerProcessPool pool = createPool(2, 2);
+
+    List<WorkerProcess> borrowed = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      borrowed.add(pool.borrowWorkerProcess());
+    }
+    Set<WorkerProcess> distinctWorkers = new HashSet<>(borrowed);
+    assertThat(distinctWorkers.size(), Matchers.is(2));
+    for (WorkerProcess workerProcess : distinctWorkers) {
+      assertThat(Collections.frequency(borrowed, workerProcess), Matchers.is(2));
+    }
+
+    ListenableFuture<WorkerProcess> waiting = pool.borrowWorkerProcessAsync();
+    assertFalse(waiting.isDone());
+    pool.returnWorkerProcess(borrowed.get(0));
+    assertTrue(waiting.isDone());
+    assertThat(waiting.get(), Matchers.is(borrowed.get(0)));
+  }
+
+  @Test
+  public void testCancelledBorrowersAreSkipped() throws Exception {
+    WorkerProcessPool pool = createPool(1);
+    WorkerProcess workerProcess = pool.borrowWorkerProcess();
+
+    ListenableFuture<WorkerProcess> cancelled = pool.borrowWorkerProcessAsync();
+    ListenableFuture<WorkerProcess> waiting = pool.borrowWorkerProcessAsync();
+    cancelled.cancel(false);
+    pool.returnWorkerProcess(workerProcess);
+
+    assertThat(waiting.get(), Matchers.is(workerProcess));
+    pool.returnWorkerProcess(waiting.get());
+    pool.close();
+  }
+
+  @Test
+  public void testRetiredWorkersAreClosedAndReplaced() throws Exception {
+    WorkerProcessPool pool = createPool(1);
+    WorkerProcess retired = pool.borrowWorkerProcess();
+    ListenableFuture<WorkerProcess> waiting = pool.borrowWorkerProcessAsync();
+
+    pool.retireWorkerProcess(retired);
+    assertTrue(((FakeWorkerProcess) retired).isClosed());
+    assertTrue(waiting.isDone());
+    assertThat(waiting.get(), Matchers.not(Matchers.sameInstance(retired)));
+
+    pool.returnWorkerProcess(waiting.get());
+    assertThat(pool.borrowWorkerProcess(), Matchers.is(waiting.get()));
+  }
+
+  @Test
+  public void testRetiredWorkersAreClosedOnceEveryBorrowerIsDone() throws Exception {
+    WorkerProcessPool pool = createPool(1, 2);
+    WorkerProcess first = pool.borrowWorkerProcess();
+    WorkerProcess second = pool.borrowWorkerProcess();
+    assertThat(second, Matchers.is(first));
+
+    pool.retireWorkerProcess(first);
+    assertFalse(((FakeWorkerProcess) first).isClosed());
+    WorkerProcess replacement = pool.borrowWorkerProcess();
+    assertThat(replacement, Matchers.not(Matchers.sameInstance(first)));
+
+    pool.returnWorkerProcess(second);
+    assertTrue(((FakeWorkerProcess) first).isClosed());
+    pool.returnWorkerProcess(replacement);
+    pool.close();
+  }
+
+  @Test
+  public void testFailedReplacementsGiveTheirSlotBack() throws Exception {
+    AtomicBoolean failToStart = new AtomicBoolean(false);
+    WorkerProcessPool pool =
+        new WorkerProcessPool(1, 1, Hashing.sha1().hashLong(0)) {
+          @Override
+          protected WorkerProcess startWorkerProcess() throws IOException {
+            if (failToStart.get()) {
+              throw new IOException("cannot start worker");
+            }
+            return new FakeWorkerProcess(ImmutableMap.of());
+          }
+        };
+    WorkerProcess retired = pool.borrowWorkerProcess();
+    ListenableFuture<WorkerProcess> waiting = pool.borrowWorkerProcessAsync();
+
+    failToStart.set(true);
+    pool.retireWorkerProcess(retired);
+    assertTrue(((FakeWorkerProcess) retired).isClosed());
+    assertTrue(waiting.isDone());
+    assertEquals(0, pool.getWorkerCount());
+
+    failToStart.set(false);
+    WorkerProcess replacement = pool.borrowWorkerProcess();
+    assertThat(replacement, Matchers.not(Matchers.sameInstance(retired)));
+    assertEquals(1, pool.getWorkerCount());
+    pool.returnWorkerProcess(replacement);
+    pool.close();
+  }
+
   private static WorkerProcessPool createPool(int maxWorkers) {
-    return new WorkerProcessPool(maxWorkers, Hashing.sha1().hashLong(0)) {
+    return createPool(maxWorkers, 1);
+  }
+
+  private static WorkerProcessPool createPool(int maxWorkers, int maxJobsPerWorker) {
+    return new WorkerProcessPool(maxWorkers, maxJobsPerWorker, Hashing.sha1().hashLong(0)) {
       @Override
       protected WorkerProcess startWorkerProcess() throws IOException {
         return new FakeWorkerProcess(ImmutableMap.of());
@@ -18,6 +18,7 @@ package com.facebook.buck.shell;
 
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.util.FakeProcess;
@@ -79,6 +80,32 @@ public class WorkerProcessProtocolZeroTest {
     assertThat(jsonSentToWorkerProcess.toString(), Matchers.containsString(expectedJson));
   }
 
+  @Test
+  public void testProtocolOneHandshakeUsesVersionOne() throws IOException {
+    StringWriter jsonSentToWorkerProcess = new StringWriter();
+    int handshakeID = 123;
+    WorkerProcessProtocol protocol = new WorkerProcessProtocolOne(
+        fakeProcessExecutor,
+        fakeLaunchedProcess,
+        new JsonWriter(jsonSentToWorkerProcess),
+        createMockJsonReaderForReceiveHandshake(handshakeID, "handshake", "0"),
+        newTempFile());
+
+    protocol.sendHandshake(handshakeID);
+    assertThat(
+        jsonSentToWorkerProcess.toString(),
+        Matchers.containsString("\"protocol_version\":\"1\""));
+    try {
+      protocol.receiveHandshake(handshakeID);
+      fail("A worker that only speaks version 0 should be rejected.");
+    } catch (HumanReadableException e) {
+      assertThat(
+          e.getMessage(),
+          Matchers.containsString(
+              "Expected handshake response's \"protocol_version\" to be \"1\""));
+    }
+  }
+
   @Test
   public void testSendCommand() throws IOException {
     StringWriter jsonSentToWorkerProcess = new StringWriter();
@@ -254,6 +281,29 @@ public class WorkerProcessProtocolZeroTest {
     protocol.receiveCommandResponse(messageID);
   }
 
+  @Test
+  public void testReceiveNextCommandResponseAcceptsAnyID() throws IOException {
+    JsonReader jsonReader = new JsonReader(new StringReader(
+        "[{\"id\":7,\"type\":\"result\",\"exit_code\":0}," +
+            "{\"id\":3,\"type\":\"error\",\"exit_code\":2}"));
+    // the handshake has already been read
+    jsonReader.beginArray();
+
+    WorkerProcessProtocol protocol = new WorkerProcessProtocolOne(
+        fakeProcessExecutor,
+        fakeLaunchedProcess,
+        dummyJsonWriter,
+        jsonReader,
+        newTempFile());
+
+    assertThat(
+        protocol.receiveNextCommandResponse(),
+        Matchers.equalTo(WorkerProcessCommandResponse.of(7, 0)));
+    assertThat(
+        protocol.receiveNextCommandResponse(),
+        Matchers.equalTo(WorkerProcessCommandResponse.of(3, 2)));
+  }
+
   @Test
   public void testReceiveCommandResponseWithMalformedJSON() throws IOException {
     String malformedJson = "><(((('> blub";
@@ -37,6 +37,7 @@ import com.facebook.buck.util.ProcessExecutorParams;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -46,7 +47,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class WorkerProcessTest {
 
@@ -92,6 +99,50 @@ public class WorkerProcessTest {
     assertThat(filesystem.readFileIfItExists(argsPath).get(), Matchers.equalTo(jobArgs));
   }
 
+  @Test(timeout = 20 * 1000)
+  public void testMultiplexedJobsReceiveTheirOwnResponses() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    WorkerProcess process = new WorkerProcess(
+        new FakeProcessExecutor(),
+        createDummyParams(),
+        filesystem,
+        Files.createTempDirectory("tmp").toAbsolutePath().normalize(),
+        2);
+    CountDownLatch bothJobsSent = new CountDownLatch(2);
+    Map<Integer, Integer> exitCodes = new ConcurrentHashMap<>();
+    process.setProtocol(new FakeWorkerProcessProtocol() {
+      @Override
+      public synchronized void sendCommand(int messageID, WorkerProcessCommand command)
+          throws IOException {
+        // the tool exits with the code it was given as the job arguments
+        exitCodes.put(
+            messageID,
+            Integer.parseInt(filesystem.readFileIfItExists(command.getArgsPath()).get()));
+        bothJobsSent.countDown();
+      }
+
+      @Override
+      public WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException {
+        // only answer once both jobs are in flight, most recent one first
+        Uninterruptibles.awaitUninterruptibly(bothJobsSent);
+        synchronized (this) {
+          int messageID = exitCodes.keySet().stream().max(Integer::compare).get();
+          return WorkerProcessCommandResponse.of(messageID, exitCodes.remove(messageID));
+        }
+      }
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<WorkerJobResult> first = executor.submit(() -> process.submitAndWaitForJob("10"));
+      Future<WorkerJobResult> second = executor.submit(() -> process.submitAndWaitForJob("20"));
+      assertThat(first.get().getExitCode(), Matchers.is(10));
+      assertThat(second.get().getExitCode(), Matchers.is(20));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Test
   public void testClose() throws IOException {
     FakeWorkerProcessProtocol protocol = new FakeWorkerProcessProtocol();
@@ -127,6 +127,7 @@ public class WorkerShellStepTest {
         startupEnv,
         jobArgs,
         maxWorkers,
+        1,
         Optional.ofNullable(persistentWorkerKey),
         Optional.ofNullable(workerHash));
   }
@@ -475,7 +476,8 @@ public class WorkerShellStepTest {
               WorkerProcess createWorkerProcess(
                   ProcessExecutorParams processParams,
                   ExecutionContext context,
-                  Path tmpDir) throws IOException {
+                  Path tmpDir,
+                  int maxJobsPerWorker) throws IOException {
                 try {
                   sleep(5);
                 } catch (InterruptedException e) {
@@ -57,6 +57,12 @@ public class WorkerToolDescriptionTest {
     assertThat(workerTool.getMaxWorkers(), equalTo(Integer.MAX_VALUE));
   }
 
+  @Test
+  public void testGetMaxJobsPerWorkerDefaultsToOne() throws NoSuchBuildTargetException {
+    WorkerTool workerTool = createWorkerTool(1);
+    assertThat(workerTool.getMaxJobsPerWorker(), equalTo(1));
+  }
+
   private static WorkerTool createWorkerTool(Integer maxWorkers)
       throws NoSuchBuildTargetException {
     TargetGraph targetGraph = TargetGraph.EMPTY;
@@ -73,6 +79,7 @@ public class WorkerToolDescriptionTest {
     args.exe = shBinaryRule.getBuildTarget();
     args.args = Either.ofRight(ImmutableList.of());
     args.maxWorkers = Optional.of(maxWorkers);
+    args.maxJobsPerWorker = Optional.empty();
     args.persistent = Optional.empty();
 
     Description<WorkerToolDescription.Arg> workerToolDescription = new WorkerToolDescription(
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+public class SyncSymlinkTreeStepTest {
+
+  @Rule
+  public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+  private Path root;
+
+  @Before
+  public void setUp() throws IOException {
+    Assume.assumeFalse(Platform.detect() == Platform.WINDOWS);
+    filesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    context = TestExecutionContext.newInstance();
+    root = Paths.get("symlink-tree-root");
+    filesystem.writeContentsToPath("foo", Paths.get("source1"));
+    filesystem.writeContentsToPath("bar", Paths.get("source2"));
+    filesystem.writeContentsToPath("baz", Paths.get("source3"));
+  }
+
+  @Test
+  public void createsTreeFromScratch() throws IOException {
+    sync(
+        ImmutableMap.of(
+            Paths.get("link"), Paths.get("source1"),
+            Paths.get("a/link/under/directory"), Paths.get("source2")));
+
+    assertLinksTo(Paths.get("link"), Paths.get("source1"));
+    assertLinksTo(Paths.get("a/link/under/directory"), Paths.get("source2"));
+  }
+
+  @Test
+  public void onlyChangesEntriesThatDiffer() throws IOException {
+    sync(
+        ImmutableMap.of(
+            Paths.get("same"), Paths.get("source1"),
+            Paths.get("retargeted"), Paths.get("source1"),
+            Paths.get("removed/link"), Paths.get("source2")));
+    Object sameLinkKey = getLinkFileKey(Paths.get("same"));
+
+    sync(
+        ImmutableMap.of(
+            Paths.get("same"), Paths.get("source1"),
+            Paths.get("retargeted"), Paths.get("source2"),
+            Paths.get("added/link"), Paths.get("source3")));
+
+    assertLinksTo(Paths.get("same"), Paths.get("source1"));
+    assertEquals(sameLinkKey, getLinkFileKey(Paths.get("same")));
+    assertLinksTo(Paths.get("retargeted"), Paths.get("source2"));
+    assertLinksTo(Paths.get("added/link"), Paths.get("source3"));
+    assertFalse(filesystem.exists(root.resolve("removed")));
+  }
+
+  @Test
+  public void replacesFilesAndDirectoriesThatAreInTheWay() throws IOException {
+    filesystem.mkdirs(root.resolve("dir"));
+    filesystem.writeContentsToPath("stray", root.resolve("file"));
+    filesystem.writeContentsToPath("stray", root.resolve("dir/file"));
+    filesystem.writeContentsToPath("stray", root.resolve("parent"));
+
+    sync(
+        ImmutableMap.of(
+            Paths.get("file"), Paths.get("source1"),
+            Paths.get("dir"), Paths.get("source2"),
+            Paths.get("parent/link"), Paths.get("source3")));
+
+    assertLinksTo(Paths.get("file"), Paths.get("source1"));
+    assertLinksTo(Paths.get("dir"), Paths.get("source2"));
+    assertLinksTo(Paths.get("parent/link"), Paths.get("source3"));
+  }
+
+  @Test
+  public void syncsLargeTreesInParallel() throws IOException {
+    ImmutableMap.Builder<Path, Path> links = ImmutableMap.builder();
+    for (int i = 0; i < SyncSymlinkTreeStep.PARALLEL_OPERATIONS_THRESHOLD * 2; i++) {
+      links.put(Paths.get("dir" + (i % 10), "link" + i), Paths.get("source" + (i % 3 + 1)));
+    }
+    sync(links.build());
+    sync(ImmutableMap.of(Paths.get("link"), Paths.get("source1")));
+
+    assertLinksTo(Paths.get("link"), Paths.get("source1"));
+    assertEquals(1, filesystem.getDirectoryContents(root).size());
+  }
+
+  private void sync(ImmutableMap<Path, Path> links) {
+    assertEquals(
+        0,
+        new SyncSymlinkTreeStep(filesystem, root, links).execute(context).getExitCode());
+  }
+
+  private Object getLinkFileKey(Path link) throws IOException {
+    return Files.readAttributes(
+        filesystem.resolve(root.resolve(link)),
+        BasicFileAttributes.class,
+        LinkOption.NOFOLLOW_LINKS)
+        .fileKey();
+  }
+
+  private void assertLinksTo(Path link, Path target) throws IOException {
+    Path path = root.resolve(link);
+    assertTrue(filesystem.isSymLink(path));
+    assertEquals(filesystem.resolve(target), filesystem.readSymLink(path));
+  }
+}
@@ -48,6 +48,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.CopyOption;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
@@ -599,6 +600,21 @@ public class FakeProjectFilesystem extends ProjectFilesystem {
   /**
    * Does not support symlinks.
    */
+  @Override
+  public OutputStream newFileAppendingOutputStream(Path pathRelativeToProjectRoot)
+      throws IOException {
+    OutputStream outputStream = newFileOutputStream(pathRelativeToProjectRoot);
+    if (fileContents.containsKey(MorePaths.normalize(pathRelativeToProjectRoot))) {
+      outputStream.write(getFileBytes(pathRelativeToProjectRoot));
+    }
+    return outputStream;
+  }
+
+  @Override
+  public ByteBuffer mapFileForReading(Path pathRelativeToProjectRoot) throws IOException {
+    return ByteBuffer.wrap(getFileBytes(normalizePathToProjectRoot(pathRelativeToProjectRoot)));
+  }
+
   @Override
   public InputStream newFileInputStream(Path pathRelativeToProjectRoot)
     throws IOException {
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+public class HostResourceMonitorTest {
+
+  @Test
+  public void cpuUtilizationIsTheBusyShareOfTicksSinceThePreviousSample() {
+    HostResourceMonitor.CpuUtilization utilization = new HostResourceMonitor.CpuUtilization(
+        (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean());
+    //                                user nice system idle iowait irq softirq steal guest
+    assertEquals(-1, utilization.update("cpu  100 0 100 700 100 0 0 0 500"), 0);
+    // 150 busy ticks out of 200, the rest idle or waiting on IO. Guest time is part of user time.
+    assertEquals(
+        0.75,
+        utilization.update("cpu  200 10 140 730 120 0 0 0 900"),
+        0.0001);
+  }
+
+  @Test
+  public void usageIsReportedInBusyCores() {
+    HostResourceMonitor monitor = new HostResourceMonitor(
+        8,
+        ResourceAmountsEstimator.MEMORY_UNIT_BYTES * 4,
+        () -> 0.5,
+        () -> ResourceAmountsEstimator.MEMORY_UNIT_BYTES,
+        () -> 0,
+        1000);
+    assertEquals(ResourceAmounts.of(4, 3, 0, 0), monitor.getUsage());
+  }
+}
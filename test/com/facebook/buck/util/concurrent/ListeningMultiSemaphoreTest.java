@@ -23,7 +23,9 @@ import com.google.common.util.concurrent.MoreExecutors;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ListeningMultiSemaphoreTest {
   @Test
@@ -83,6 +85,34 @@ public class ListeningMultiSemaphoreTest {
     assertThat(array.getAvailableResources(), Matchers.equalTo(array.getMaximumValues()));
   }
 
+  @Test
+  public void testPendingItemsAreProcessedInPriorityOrder() {
+    ListeningMultiSemaphore array = getFairListeningMultiSemaphore(amountsOfCpu(1));
+    array.acquire(amountsOfCpu(1));
+
+    ListenableFuture<Void> low = array.acquire(amountsOfCpu(1), 10);
+    ListenableFuture<Void> high = array.acquire(amountsOfCpu(1), 1000);
+    ListenableFuture<Void> alsoHigh = array.acquire(amountsOfCpu(1), 1000);
+    ListenableFuture<Void> unprioritized = array.acquire(amountsOfCpu(1));
+    assertThat(array.getQueueLength(), Matchers.equalTo(4));
+
+    array.release(amountsOfCpu(1));
+    assertThat(high.isDone(), Matchers.equalTo(true));
+    assertThat(alsoHigh.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(alsoHigh.isDone(), Matchers.equalTo(true));
+    assertThat(low.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(low.isDone(), Matchers.equalTo(true));
+    assertThat(unprioritized.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(unprioritized.isDone(), Matchers.equalTo(true));
+    assertThat(array.getQueueLength(), Matchers.equalTo(0));
+  }
+
   @Test
   public void testProcessingPendingQueueWithCancelledFuturesReleasesPendingItems() {
     ResourceAmounts values = amountsOfCpu(7);
@@ -219,6 +249,101 @@ public class ListeningMultiSemaphoreTest {
     assertThat(second.isDone(), Matchers.equalTo(true));
   }
 
+  @Test
+  public void adaptiveSchedulingHoldsBackWorkWhileTheHostIsBusy() {
+    AtomicLong load = new AtomicLong(6);
+    ListeningMultiSemaphore semaphore = new ListeningMultiSemaphore(
+        amountsOfCpu(8),
+        ResourceAllocationFairness.FAIR,
+        Optional.of(getHostResourceMonitor(load, 0)));
+
+    // Nothing is running yet, so the first job goes through however busy the host is.
+    ListenableFuture<Void> first = semaphore.acquire(amountsOfCpu(1));
+    assertThat(first.isDone(), Matchers.equalTo(true));
+
+    // 6 of the 8 cores are busy, which leaves room for 2 more.
+    ListenableFuture<Void> second = semaphore.acquire(amountsOfCpu(3));
+    assertThat(second.isDone(), Matchers.equalTo(false));
+    ListenableFuture<Void> third = semaphore.acquire(amountsOfCpu(2));
+    assertThat(third.isDone(), Matchers.equalTo(true));
+
+    load.set(3);
+    semaphore.release(amountsOfCpu(2));
+    assertThat(second.isDone(), Matchers.equalTo(true));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+  }
+
+  @Test
+  public void adaptiveSchedulingDoesNotCountItsOwnJobsTwice() {
+    AtomicLong busyCores = new AtomicLong(0);
+    ListeningMultiSemaphore semaphore = new ListeningMultiSemaphore(
+        amountsOfCpu(8),
+        ResourceAllocationFairness.FAIR,
+        Optional.of(getHostResourceMonitor(busyCores, 0)));
+
+    ListenableFuture<Void> first = semaphore.acquire(amountsOfCpu(4));
+    assertThat(first.isDone(), Matchers.equalTo(true));
+
+    // The 5 busy cores are the 4 the build holds plus 1 used by someone else.
+    busyCores.set(5);
+    ListenableFuture<Void> second = semaphore.acquire(amountsOfCpu(4));
+    assertThat(second.isDone(), Matchers.equalTo(false));
+    ListenableFuture<Void> third = semaphore.acquire(amountsOfCpu(3));
+    assertThat(third.isDone(), Matchers.equalTo(true));
+  }
+
+  @Test
+  public void adaptiveSchedulingRetriesPendingWorkOnEverySample() {
+    AtomicLong busyCores = new AtomicLong(7);
+    HostResourceMonitor monitor = getHostResourceMonitor(busyCores, 0);
+    ListeningMultiSemaphore semaphore = new ListeningMultiSemaphore(
+        amountsOfCpu(8),
+        ResourceAllocationFairness.FAIR,
+        Optional.of(monitor));
+
+    ListenableFuture<Void> first = semaphore.acquire(amountsOfCpu(1));
+    assertThat(first.isDone(), Matchers.equalTo(true));
+    ListenableFuture<Void> second = semaphore.acquire(amountsOfCpu(2));
+    assertThat(second.isDone(), Matchers.equalTo(false));
+
+    // Nothing was released, but the rest of the host has calmed down.
+    busyCores.set(1);
+    monitor.sampleAndNotifyListeners();
+    assertThat(second.isDone(), Matchers.equalTo(true));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+  }
+
+  @Test
+  public void adaptiveSchedulingCountsMemoryUsedByOtherProcesses() {
+    ListeningMultiSemaphore semaphore = new ListeningMultiSemaphore(
+        amountsOfCpuAndMemory(8, 10),
+        ResourceAllocationFairness.FAIR,
+        Optional.of(getHostResourceMonitor(new AtomicLong(0), 7)));
+
+    ListenableFuture<Void> first = semaphore.acquire(amountsOfCpuAndMemory(1, 1));
+    assertThat(first.isDone(), Matchers.equalTo(true));
+
+    // Only 3 of the 10 memory units are left on the host, even though the build holds just 1.
+    ListenableFuture<Void> second = semaphore.acquire(amountsOfCpuAndMemory(1, 4));
+    assertThat(second.isDone(), Matchers.equalTo(false));
+    ListenableFuture<Void> third = semaphore.acquire(amountsOfCpuAndMemory(1, 3));
+    assertThat(third.isDone(), Matchers.equalTo(true));
+  }
+
+  private static HostResourceMonitor getHostResourceMonitor(
+      AtomicLong busyCores,
+      int usedMemoryUnits) {
+    long totalMemoryBytes = 10 * ResourceAmountsEstimator.MEMORY_UNIT_BYTES;
+    return new HostResourceMonitor(
+        8,
+        totalMemoryBytes,
+        () -> busyCores.get() / 8.0,
+        () -> totalMemoryBytes - usedMemoryUnits * ResourceAmountsEstimator.MEMORY_UNIT_BYTES,
+        () -> 0,
+        // Sample on every call.
+        0);
+  }
+
   private ListeningMultiSemaphore getFairListeningMultiSemaphore(ResourceAmounts values) {
     return new ListeningMultiSemaphore(
         values,
@@ -27,6 +27,8 @@ import com.google.common.util.concurrent.MoreExecutors;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -98,6 +100,27 @@ public class WeightedListeningExecutorServiceTest {
     assertThat(semaphore.getAvailableResources(), Matchers.equalTo(ResourceAmounts.of(1, 0, 0, 0)));
   }
 
+  @Test
+  public void tasksWaitingForResourcesRunInPriorityOrder() {
+    ExplicitRunExecutorService wrappedService = new ExplicitRunExecutorService();
+    WeightedListeningExecutorService service =
+        new WeightedListeningExecutorService(
+            new ListeningMultiSemaphore(
+                ResourceAmounts.of(1, 0, 0, 0),
+                ResourceAllocationFairness.FAIR),
+            ResourceAmounts.of(1, 0, 0, 0),
+            wrappedService);
+    List<String> order = new ArrayList<>();
+    ResourceAmounts amounts = ResourceAmounts.of(1, 0, 0, 0);
+    service.submit(() -> order.add("first"), amounts);
+    service.submit(() -> order.add("unprioritized"), amounts);
+    service.submit(() -> order.add("low"), amounts, 10);
+    service.submit(() -> order.add("high"), amounts, 1000);
+
+    wrappedService.run();
+    assertThat(order, Matchers.contains("first", "high", "low", "unprioritized"));
+  }
+
   private AtomicBoolean submitSetBool(
       WeightedListeningExecutorService service,
       ResourceAmounts amounts) {
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.spawn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeThat;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.python.PythonBuckConfig;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.ProcessHelper;
+import com.facebook.buck.util.ProcessRegistry;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SpawnHelperProcessExecutorTest {
+
+  private SpawnHelper spawnHelper;
+  private ProcessExecutor executor;
+
+  @Before
+  public void setUp() {
+    assumeThat(Platform.detect(), Matchers.not(Platform.WINDOWS));
+    spawnHelper = new SpawnHelper(
+        new PythonBuckConfig(FakeBuckConfig.builder().build(), new ExecutableFinder())
+            .getPythonInterpreter());
+    executor = new SpawnHelperProcessExecutor(new TestConsole(), spawnHelper);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (spawnHelper != null) {
+      spawnHelper.close();
+    }
+  }
+
+  @Test
+  public void outputAndExitCodeAreForwarded() throws IOException, InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      ProcessExecutor.Result result = executor.launchAndExecute(
+          ProcessExecutorParams.ofCommand("sh", "-c", "echo out; echo err >&2; exit 3"),
+          ImmutableSet.of(ProcessExecutor.Option.IS_SILENT),
+          /* stdin */ Optional.empty(),
+          /* timeOutMs */ Optional.empty(),
+          /* timeOutHandler */ Optional.empty());
+
+      assertEquals(3, result.getExitCode());
+      assertEquals("out\n", result.getStdout().get());
+      assertEquals("err\n", result.getStderr().get());
+    }
+    assertFalse(spawnHelper.isDisabled());
+  }
+
+  @Test
+  public void stdinIsForwarded() throws IOException, InterruptedException {
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        ProcessExecutorParams.ofCommand("cat"),
+        ImmutableSet.of(),
+        Optional.of("hello from stdin"),
+        /* timeOutMs */ Optional.empty(),
+        /* timeOutHandler */ Optional.empty());
+
+    assertEquals(0, result.getExitCode());
+    assertEquals("hello from stdin\n", result.getStdout().get());
+    assertFalse(spawnHelper.isDisabled());
+  }
+
+  @Test
+  public void timedOutProcessesAreKilled() throws IOException, InterruptedException {
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        ProcessExecutorParams.ofCommand("sleep", "60"),
+        ImmutableSet.of(),
+        /* stdin */ Optional.empty(),
+        Optional.of(100L),
+        /* timeOutHandler */ Optional.empty());
+
+    assertTrue(result.isTimedOut());
+    assertFalse(spawnHelper.isDisabled());
+  }
+
+  @Test
+  public void spawnedProcessesAreRegisteredWithTheirPid()
+      throws IOException, InterruptedException {
+    List<Long> registeredPids = new CopyOnWriteArrayList<>();
+    ProcessRegistry.ProcessRegisterCallback callback =
+        (process, params, context) -> registeredPids.add(
+            ProcessHelper.getInstance().getPid(process));
+    ProcessRegistry.getInstance().subscribe(callback);
+    ProcessExecutor.Result result;
+    try {
+      result = executor.launchAndExecute(
+          ProcessExecutorParams.ofCommand("sh", "-c", "echo $$"));
+    } finally {
+      ProcessRegistry.getInstance().unsubscribe(callback);
+    }
+
+    assertEquals(0, result.getExitCode());
+    assertFalse(spawnHelper.isDisabled());
+    assertEquals(
+        ImmutableList.of(Long.parseLong(result.getStdout().get().trim())),
+        registeredPids);
+  }
+
+  @Test(expected = IOException.class)
+  public void missingProgramsCannotBeLaunched() throws IOException, InterruptedException {
+    try {
+      executor.launchAndExecute(
+          ProcessExecutorParams.ofCommand("/this/program/does/not/exist"));
+    } finally {
+      assertFalse(spawnHelper.isDisabled());
+    }
+  }
+
+  @Test
+  public void processesAreForkedWhenTheHelperCannotStart()
+      throws IOException, InterruptedException {
+    try (SpawnHelper brokenHelper = new SpawnHelper(ImmutableList.of("false"))) {
+      ProcessExecutor brokenExecutor =
+          new SpawnHelperProcessExecutor(new TestConsole(), brokenHelper);
+      ProcessExecutor.Result result = brokenExecutor.launchAndExecute(
+          ProcessExecutorParams.ofCommand("echo", "forked"));
+
+      assertEquals(0, result.getExitCode());
+      assertThat(result.getStdout().get(), Matchers.containsString("forked"));
+      assertTrue(brokenHelper.isDisabled());
+    }
+  }
+}
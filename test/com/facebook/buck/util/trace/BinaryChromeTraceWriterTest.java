@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+
+public class BinaryChromeTraceWriterTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static BinaryChromeTraceWriter newWriter(OutputStream output) throws IOException {
+    // Tiny buffers, so that records get split across them.
+    return new BinaryChromeTraceWriter(
+        output,
+        new MostExecutors.NamedThreadFactory("trace-writer"),
+        /* bufferSize */ 16,
+        /* bufferCount */ 2);
+  }
+
+  @Test
+  public void eventsSurviveTheRoundTrip() throws IOException {
+    String longName = Strings.repeat("//very/long:target", 100);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (BinaryChromeTraceWriter writer = newWriter(bytes)) {
+      for (int i = 0; i < 100; i++) {
+        writer.writeEvent(
+            "buck",
+            i % 2 == 0 ? "//foo:bar" : longName,
+            i % 2 == 0 ? "B" : "E",
+            0,
+            i % 7,
+            // Events from different threads do not always arrive in order.
+            1000000L + i * 10 - (i % 3) * 25,
+            i * 3,
+            i % 5 == 0 ? ImmutableMap.of("cache_result", "miss", "index", "" + i) :
+                ImmutableMap.of());
+      }
+    }
+
+    StringWriter json = new StringWriter();
+    BinaryChromeTraceReader.convertToJson(new ByteArrayInputStream(bytes.toByteArray()), json);
+    JsonArray events = new JsonParser().parse(json.toString()).getAsJsonArray();
+
+    assertEquals(100, events.size());
+    for (int i = 0; i < 100; i++) {
+      JsonObject event = events.get(i).getAsJsonObject();
+      assertEquals("buck", event.get("cat").getAsString());
+      assertEquals(i % 2 == 0 ? "//foo:bar" : longName, event.get("name").getAsString());
+      assertEquals(i % 2 == 0 ? "B" : "E", event.get("ph").getAsString());
+      assertEquals(0, event.get("pid").getAsLong());
+      assertEquals(i % 7, event.get("tid").getAsLong());
+      assertEquals(1000000L + i * 10 - (i % 3) * 25, event.get("ts").getAsLong());
+      assertEquals(i * 3, event.get("tts").getAsLong());
+      JsonObject args = event.get("args").getAsJsonObject();
+      if (i % 5 == 0) {
+        assertEquals("miss", args.get("cache_result").getAsString());
+        assertEquals("" + i, args.get("index").getAsString());
+      } else {
+        assertEquals(0, args.entrySet().size());
+      }
+    }
+  }
+
+  @Test
+  public void truncatedTraceEndsAtTheLastCompleteEvent() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (BinaryChromeTraceWriter writer = newWriter(bytes)) {
+      writer.writeEvent("buck", "first", "B", 0, 1, 10, 0, ImmutableMap.of());
+      writer.writeEvent("buck", "second", "E", 0, 1, 20, 0, ImmutableMap.of());
+    }
+    byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 2);
+
+    BinaryChromeTraceReader reader =
+        new BinaryChromeTraceReader(new ByteArrayInputStream(truncated));
+    Optional<JsonObject> first = reader.next();
+    assertTrue(first.isPresent());
+    assertEquals("first", first.get().get("name").getAsString());
+    assertFalse(reader.next().isPresent());
+  }
+
+  @Test
+  public void stringsOfAnEventThatFailedToWriteAreNotReferencedLater() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (BinaryChromeTraceWriter writer = newWriter(bytes)) {
+      writer.writeEvent("buck", "first", "B", 0, 1, 10, 0, ImmutableMap.of());
+      // The event does not fit in the current buffer, and handing it off is interrupted.
+      Thread.currentThread().interrupt();
+      try {
+        writer.writeEvent("buck", "interrupted", "B", 0, 1, 20, 0, ImmutableMap.of());
+        fail("Expected the interrupted write to fail.");
+      } catch (IOException e) {
+        assertTrue(Thread.interrupted());
+      }
+      writer.writeEvent("buck", "interrupted", "E", 0, 1, 30, 0, ImmutableMap.of());
+    }
+
+    StringWriter json = new StringWriter();
+    BinaryChromeTraceReader.convertToJson(new ByteArrayInputStream(bytes.toByteArray()), json);
+    JsonArray events = new JsonParser().parse(json.toString()).getAsJsonArray();
+    assertEquals(2, events.size());
+    assertEquals("first", events.get(0).getAsJsonObject().get("name").getAsString());
+    JsonObject second = events.get(1).getAsJsonObject();
+    assertEquals("interrupted", second.get("name").getAsString());
+    assertEquals("E", second.get("ph").getAsString());
+    assertEquals(30, second.get("ts").getAsLong());
+  }
+
+  @Test
+  public void jsonTracesAreNotMistakenForBinaryOnes() throws IOException {
+    InputStream json = new BufferedInputStream(new ByteArrayInputStream("[]".getBytes("UTF-8")));
+    assertFalse(BinaryChromeTraceReader.isBinaryTrace(json));
+    assertEquals('[', json.read());
+  }
+
+  @Test
+  public void parserReadsBinaryTraces() throws IOException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmp.getRoot());
+    Path trace = Paths.get("build.btrace");
+    try (BinaryChromeTraceWriter writer =
+             newWriter(projectFilesystem.newFileOutputStream(trace))) {
+      writer.writeEvent("buck", "process_name", "M", 0, 0, 0, 0, ImmutableMap.of("name", "buck"));
+      writer.writeEvent(
+          "buck",
+          "build",
+          "B",
+          0,
+          1,
+          100,
+          0,
+          ImmutableMap.of("command_args", "//foo:bar"));
+    }
+
+    Map<ChromeTraceParser.ChromeTraceEventMatcher<?>, Object> results =
+        new ChromeTraceParser(projectFilesystem).parse(
+            trace,
+            ImmutableSet.of(ChromeTraceParser.COMMAND));
+    assertEquals(
+        Optional.of("buck build //foo:bar"),
+        ChromeTraceParser.getResultForMatcher(ChromeTraceParser.COMMAND, results));
+  }
+}